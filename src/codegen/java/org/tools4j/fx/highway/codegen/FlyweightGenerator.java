@@ -0,0 +1,341 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.codegen;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates fixed-layout flyweights from a schema file, run at build time by the {@code flyweightTool} task.
+ * <p>
+ * Every field of a flyweight is at a constant offset, aligned to the size of its type, hence a flyweight can be
+ * written straight into a claimed range of the mapped queue memory and read from the buffer of a message, in any
+ * order of fields. Accessors delegate to a final {@code UnsafeBuffer} with constant offsets, arrays of fixed length
+ * are accessed with an index checked against the array length.
+ * <p>
+ * Schema example:
+ * <pre>
+ * &lt;flyweights package="org.tools4j.fx.highway.flyweight"&gt;
+ *     &lt;flyweight name="TradeFlyweight" templateId="2" description="A trade"&gt;
+ *         &lt;field name="timestamp" type="int64"/&gt;
+ *         &lt;field name="venue" type="uint8"/&gt;
+ *         &lt;array name="fill" type="float64" length="4"/&gt;
+ *     &lt;/flyweight&gt;
+ * &lt;/flyweights&gt;
+ * </pre>
+ * Supported types are int8, uint8, int16, uint16, int32, int64, float32, float64 and char (a single ASCII byte).
+ */
+public final class FlyweightGenerator {
+
+    enum Type {
+        INT8("int8", 1, "byte", "int", "getByte", "putByte", "(byte)value", "", ""),
+        UINT8("uint8", 1, "int", "int", "getByte", "putByte", "(byte)value", "0xff & ", ""),
+        INT16("int16", 2, "short", "int", "getShort", "putShort", "(short)value", "", ""),
+        UINT16("uint16", 2, "int", "int", "getShort", "putShort", "(short)value", "0xffff & ", ""),
+        INT32("int32", 4, "int", "int", "getInt", "putInt", "value", "", ""),
+        INT64("int64", 8, "long", "long", "getLong", "putLong", "value", "", ""),
+        FLOAT32("float32", 4, "float", "float", "getFloat", "putFloat", "value", "", ""),
+        FLOAT64("float64", 8, "double", "double", "getDouble", "putDouble", "value", "", ""),
+        CHAR("char", 1, "char", "char", "getByte", "putByte", "(byte)value", "(char)(0xff & ", ")");
+
+        final String schemaName;
+        final int size;
+        final String javaType;
+        final String setterType;
+        final String getMethod;
+        final String putMethod;
+        final String putValue;
+        final String getPrefix;
+        final String getSuffix;
+
+        Type(final String schemaName, final int size, final String javaType, final String setterType,
+             final String getMethod, final String putMethod, final String putValue,
+             final String getPrefix, final String getSuffix) {
+            this.schemaName = schemaName;
+            this.size = size;
+            this.javaType = javaType;
+            this.setterType = setterType;
+            this.getMethod = getMethod;
+            this.putMethod = putMethod;
+            this.putValue = putValue;
+            this.getPrefix = getPrefix;
+            this.getSuffix = getSuffix;
+        }
+
+        static Type forSchemaName(final String schemaName) {
+            for (final Type type : values()) {
+                if (type.schemaName.equals(schemaName)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Invalid type: " + schemaName);
+        }
+    }
+
+    static final class Field {
+        final String name;
+        final Type type;
+        final int length;//0 for single value fields
+        int offset;
+
+        Field(final String name, final Type type, final int length) {
+            this.name = name;
+            this.type = type;
+            this.length = length;
+        }
+
+        boolean isArray() {
+            return length > 0;
+        }
+
+        String constantName() {
+            return FlyweightGenerator.constantName(name);
+        }
+    }
+
+    public static void main(final String... args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: " + FlyweightGenerator.class.getName() + " <schema-file> <output-dir>");
+            System.exit(1);
+        }
+        generate(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Generates one source file per flyweight defined in the schema file.
+     *
+     * @param schemaFile the schema file
+     * @param outputDir  the source root directory of the generated files
+     * @return the generated files
+     * @throws Exception if the schema is invalid or writing a file fails
+     */
+    public static List<File> generate(final File schemaFile, final File outputDir) throws Exception {
+        final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(schemaFile);
+        final Element root = document.getDocumentElement();
+        final String packageName = requiredAttribute(root, "package");
+        final File packageDir = new File(outputDir, packageName.replace('.', File.separatorChar));
+        if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+            throw new IOException("Cannot create output directory " + packageDir);
+        }
+        final List<File> files = new ArrayList<>();
+        final NodeList flyweights = root.getElementsByTagName("flyweight");
+        for (int i = 0; i < flyweights.getLength(); i++) {
+            final Element flyweight = (Element)flyweights.item(i);
+            final String name = requiredAttribute(flyweight, "name");
+            final File file = new File(packageDir, name + ".java");
+            final String source = generateSource(packageName, flyweight);
+            Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        return files;
+    }
+
+    static String generateSource(final String packageName, final Element flyweight) {
+        final String name = requiredAttribute(flyweight, "name");
+        final int templateId = Integer.parseInt(requiredAttribute(flyweight, "templateId"));
+        final String description = flyweight.getAttribute("description");
+        final List<Field> fields = parseFields(flyweight);
+        final int length = layout(fields);
+
+        final StringBuilder sb = new StringBuilder(4096);
+        sb.append("/* Generated by ").append(FlyweightGenerator.class.getName()).append(", do not edit */\n");
+        sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("import org.agrona.DirectBuffer;\n");
+        sb.append("import org.agrona.concurrent.UnsafeBuffer;\n");
+        sb.append("import org.tools4j.fx.highway.direct.Appender;\n");
+        sb.append("import org.tools4j.fx.highway.direct.MessageClaim;\n\n");
+        sb.append("/**\n");
+        if (!description.isEmpty()) {
+            sb.append(" * ").append(description).append(".\n * <p>\n");
+        }
+        sb.append(" * Fixed-layout flyweight of ").append(length).append(" bytes, either wrapping a buffer to read or\n");
+        sb.append(" * {@link #claim(Appender) claiming} a message to write fields at constant offsets in the queue memory.\n");
+        sb.append(" */\n");
+        sb.append("@javax.annotation.Generated(value = {\"").append(FlyweightGenerator.class.getName()).append("\"})\n");
+        sb.append("public final class ").append(name).append(" {\n\n");
+        sb.append("    public static final int TEMPLATE_ID = ").append(templateId).append(";\n");
+        sb.append("    public static final int LENGTH = ").append(length).append(";\n\n");
+        for (final Field field : fields) {
+            sb.append("    public static final int ").append(field.constantName()).append("_OFFSET = ").append(field.offset).append(";\n");
+            if (field.isArray()) {
+                sb.append("    public static final int ").append(field.constantName()).append("_LENGTH = ").append(field.length).append(";\n");
+            }
+        }
+        sb.append("\n");
+        sb.append("    private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);\n");
+        sb.append("    private MessageClaim claim;\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Wraps the flyweight around {@link #LENGTH} bytes of the given buffer, for instance the buffer of a message reader.\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(name).append(" wrap(final DirectBuffer buffer, final int offset) {\n");
+        sb.append("        this.buffer.wrap(buffer, offset, LENGTH);\n");
+        sb.append("        this.claim = null;\n");
+        sb.append("        return this;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    /**\n");
+        sb.append("     * Claims a message of {@link #LENGTH} bytes; the fields are written directly to the queue memory until the\n");
+        sb.append("     * message is {@link #commit() committed}.\n");
+        sb.append("     */\n");
+        sb.append("    public ").append(name).append(" claim(final Appender appender) {\n");
+        sb.append("        final MessageClaim claim = appender.claim(LENGTH);\n");
+        sb.append("        this.buffer.wrap(claim.buffer(), 0, LENGTH);\n");
+        sb.append("        this.claim = claim;\n");
+        sb.append("        return this;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public Appender commit() {\n");
+        sb.append("        final MessageClaim claim = this.claim;\n");
+        sb.append("        if (claim == null) {\n");
+        sb.append("            throw new IllegalStateException(\"No message claimed\");\n");
+        sb.append("        }\n");
+        sb.append("        this.claim = null;\n");
+        sb.append("        return claim.commit();\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public Appender abort() {\n");
+        sb.append("        final MessageClaim claim = this.claim;\n");
+        sb.append("        if (claim == null) {\n");
+        sb.append("            throw new IllegalStateException(\"No message claimed\");\n");
+        sb.append("        }\n");
+        sb.append("        this.claim = null;\n");
+        sb.append("        return claim.abort();\n");
+        sb.append("    }\n\n");
+
+        for (final Field field : fields) {
+            appendAccessors(sb, name, field);
+        }
+
+        sb.append("    private static int checkIndex(final int index, final int length) {\n");
+        sb.append("        if (index < 0 || index >= length) {\n");
+        sb.append("            throw new IndexOutOfBoundsException(\"Index \" + index + \" is out of bounds for length \" + length);\n");
+        sb.append("        }\n");
+        sb.append("        return index;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void appendAccessors(final StringBuilder sb, final String className, final Field field) {
+        final Type type = field.type;
+        final String offset = field.constantName() + "_OFFSET";
+        if (field.isArray()) {
+            final String index = offset + " + checkIndex(index, " + field.constantName() + "_LENGTH)" +
+                    (type.size > 1 ? " * " + type.size : "");
+            sb.append("    public ").append(type.javaType).append(" ").append(field.name).append("(final int index) {\n");
+            sb.append("        return ").append(getter(type, index)).append(";\n");
+            sb.append("    }\n\n");
+            sb.append("    public ").append(className).append(" ").append(field.name)
+                    .append("(final int index, final ").append(type.setterType).append(" value) {\n");
+            sb.append("        buffer.").append(type.putMethod).append("(").append(index).append(", ").append(type.putValue).append(");\n");
+            sb.append("        return this;\n");
+            sb.append("    }\n\n");
+        } else {
+            sb.append("    public ").append(type.javaType).append(" ").append(field.name).append("() {\n");
+            sb.append("        return ").append(getter(type, offset)).append(";\n");
+            sb.append("    }\n\n");
+            sb.append("    public ").append(className).append(" ").append(field.name)
+                    .append("(final ").append(type.setterType).append(" value) {\n");
+            sb.append("        buffer.").append(type.putMethod).append("(").append(offset).append(", ").append(type.putValue).append(");\n");
+            sb.append("        return this;\n");
+            sb.append("    }\n\n");
+        }
+    }
+
+    private static String getter(final Type type, final String index) {
+        return type.getPrefix + "buffer." + type.getMethod + "(" + index + ")" + type.getSuffix;
+    }
+
+    private static List<Field> parseFields(final Element flyweight) {
+        final List<Field> fields = new ArrayList<>();
+        final NodeList children = flyweight.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node node = children.item(i);
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            final Element element = (Element)node;
+            final String name = requiredAttribute(element, "name");
+            final Type type = Type.forSchemaName(requiredAttribute(element, "type"));
+            switch (element.getTagName()) {
+                case "field":
+                    fields.add(new Field(name, type, 0));
+                    break;
+                case "array":
+                    final int length = Integer.parseInt(requiredAttribute(element, "length"));
+                    if (length <= 0) {
+                        throw new IllegalArgumentException("Invalid length " + length + " of array " + name);
+                    }
+                    fields.add(new Field(name, type, length));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid element: " + element.getTagName());
+            }
+        }
+        return fields;
+    }
+
+    //assigns the offset of every field aligned to its type size and returns the total length padded to 8 bytes
+    static int layout(final List<Field> fields) {
+        int offset = 0;
+        for (final Field field : fields) {
+            final int size = field.type.size;
+            offset = (offset + size - 1) & -size;
+            field.offset = offset;
+            offset += size * Math.max(1, field.length);
+        }
+        return (offset + 7) & -8;
+    }
+
+    private static String requiredAttribute(final Element element, final String name) {
+        final String value = element.getAttribute(name);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Missing attribute " + name + " of element " + element.getTagName());
+        }
+        return value;
+    }
+
+    static String constantName(final String fieldName) {
+        final StringBuilder sb = new StringBuilder(fieldName.length() + 8);
+        for (int i = 0; i < fieldName.length(); i++) {
+            final char ch = fieldName.charAt(i);
+            if (Character.isUpperCase(ch) && i > 0) {
+                sb.append('_');
+            }
+            sb.append(Character.toUpperCase(ch));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Base class for message claims of appenders wrapping the claimed bytes with an {@link UnsafeBuffer}.
+ */
+abstract public class AbstractMessageClaim implements MessageClaim {
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);
+    private boolean claimed;
+
+    abstract protected Appender commitMessage();
+    abstract protected Appender abortMessage();
+
+    protected MessageClaim claim(final long address, final int length) {
+        buffer.wrap(address, length);
+        claimed = true;
+        return this;
+    }
+
+    @Override
+    public MutableDirectBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int length() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public Appender commit() {
+        ensureClaimed();
+        claimed = false;
+        return commitMessage();
+    }
+
+    @Override
+    public Appender abort() {
+        ensureClaimed();
+        claimed = false;
+        return abortMessage();
+    }
+
+    private void ensureClaimed() {
+        if (!claimed) {
+            throw new IllegalStateException("No message claimed");
+        }
+    }
+}
@@ -23,6 +23,11 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.MutableDirectBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 abstract public class AbstractMessageReader implements MessageReader {
 
     @Override
@@ -82,84 +87,160 @@ abstract public class AbstractMessageReader implements MessageReader {
     public CharSequence getStringAscii() {
         final int len = UInts.readUIntCompact(this);
         final StringBuilder sb = new StringBuilder(len);
+        getStringAscii(len, sb);
+        return sb.toString();
+    }
+
+    @Override
+    public MessageReader getStringAscii(final Appendable dst) {
+        return getStringAscii(UInts.readUIntCompact(this), dst);
+    }
+
+    private MessageReader getStringAscii(final int len, final Appendable dst) {
+        try {
+            for (int i = 0; i < len; i++) {
+                dst.append(getCharAscii());
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public MessageReader getStringAscii(final MutableAsciiString dst) {
+        dst.read(this, UInts.readUIntCompact(this));
+        return this;
+    }
+
+    @Override
+    public boolean equalsStringAscii(final CharSequence value) {
+        final int len = UInts.readUIntCompact(this);
+        //all chars are read even if there is a mismatch
+        boolean equal = len == value.length();
         for (int i = 0; i < len; i++) {
-            sb.append(getCharAscii());
+            final char ch = getCharAscii();
+            equal = equal && ch == value.charAt(i);
         }
-        return sb.toString();
+        return equal;
     }
 
-    /**
-     * {@link java.io.DataInputStream#readUTF(java.io.DataInput)}
-     */
     public CharSequence getStringUtf8() {
         final int utflen = UInts.readUIntCompact(this);
         final StringBuilder sb = new StringBuilder(utflen);
+        getStringUtf8(utflen, sb);
+        return sb.toString();
+    }
 
-        int count = 0;
-
-        int char1 = 0;
-        while (count < utflen) {
-            char1 = getInt8AsInt();
-            if (char1 > 127) break;
-            count++;
-            sb.append((char)char1);
-        }
+    @Override
+    public MessageReader getStringUtf8(final Appendable dst) {
+        return getStringUtf8(UInts.readUIntCompact(this), dst);
+    }
 
-        while (true) {
-            switch (char1 >> 4) {
-                case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7: {
-                    /* 0xxxxxxx*/
-                    sb.append((char) char1);
-                    break;
-                }
-                case 12: case 13: {
-                    /* 110x xxxx   10xx xxxx*/
-                    count += 2;
-                    if (count > utflen)
-                        throw new RuntimeException(
-                                "UTF malformed input: partial character at end");
-                    final int char2 = getInt8AsInt();
-                    if ((char2 & 0xC0) != 0x80)
+    /**
+     * {@link java.io.DataInputStream#readUTF(java.io.DataInput)}
+     */
+    private MessageReader getStringUtf8(final int utflen, final Appendable dst) {
+        int count = 0;
+        try {
+            while (count < utflen) {
+                final int char1 = getInt8AsInt();
+                switch (char1 >> 4) {
+                    case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7: {
+                        /* 0xxxxxxx*/
+                        count++;
+                        dst.append((char) char1);
+                        break;
+                    }
+                    case 12: case 13: {
+                        /* 110x xxxx   10xx xxxx*/
+                        count += 2;
+                        if (count > utflen)
+                            throw new RuntimeException(
+                                    "UTF malformed input: partial character at end");
+                        final int char2 = getInt8AsInt();
+                        if ((char2 & 0xC0) != 0x80)
+                            throw new RuntimeException(
+                                    "UTF malformed input around byte " + count);
+                        dst.append((char) (((char1 & 0x1F) << 6) | (char2 & 0x3F)));
+                        break;
+                    }
+                    case 14: {
+                        /* 1110 xxxx  10xx xxxx  10xx xxxx */
+                        count += 3;
+                        if (count > utflen)
+                            throw new RuntimeException(
+                                    "UTF malformed input: partial character at end");
+                        final int char2 = getInt8AsInt();
+                        final int char3 = getInt8AsInt();
+                        if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80))
+                            throw new RuntimeException(
+                                    "UTF malformed input around byte " + (count - 1));
+                        dst.append((char) (((char1 & 0x0F) << 12) | ((char2 & 0x3F) << 6) | ((char3 & 0x3F) << 0)));
+                        break;
+                    }
+                    default:
+                        /* 10xx xxxx,  1111 xxxx */
                         throw new RuntimeException(
                                 "UTF malformed input around byte " + count);
-                    sb.append((char) (((char1 & 0x1F) << 6) | (char2 & 0x3F)));
-                    break;
-                }
-                case 14: {
-                    /* 1110 xxxx  10xx xxxx  10xx xxxx */
-                    count += 3;
-                    if (count > utflen)
-                        throw new RuntimeException(
-                                "UTF malformed input: partial character at end");
-                    final int char2 = getInt8AsInt();
-                    final int char3 = getInt8AsInt();
-                    if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80))
-                        throw new RuntimeException(
-                                "UTF malformed input around byte " + (count - 1));
-                    sb.append((char) (((char1 & 0x0F) << 12) | ((char2 & 0x3F) << 6) | ((char3 & 0x3F) << 0)));
-                    break;
                 }
-                default:
-                    /* 10xx xxxx,  1111 xxxx */
-                    throw new RuntimeException(
-                            "UTF malformed input around byte " + count);
-            }
-            if (count < utflen) {
-                char1 = getInt8AsInt();
-            } else {
-                break;
             }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
         }
         // The number of chars produced may be less than utflen
-        return sb.toString();
+        return this;
     }
 
     public CharSequence getString() {
         final int len = UInts.readUIntCompact(this);
         final StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) {
-            sb.append(getChar());
-        }
+        getString(len, sb);
         return sb.toString();
     }
+
+    @Override
+    public MessageReader getString(final Appendable dst) {
+        return getString(UInts.readUIntCompact(this), dst);
+    }
+
+    private MessageReader getString(final int len, final Appendable dst) {
+        try {
+            for (int i = 0; i < len; i++) {
+                dst.append(getChar());
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final byte[] dst) {
+        return getBytes(dst, 0, dst.length);
+    }
+
+    @Override
+    public MessageReader getBytes(final byte[] dst, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            dst[offset + i] = getInt8();
+        }
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final ByteBuffer dst, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            dst.put(offset + i, getInt8());
+        }
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final MutableDirectBuffer dst, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            dst.putByte(offset + i, getInt8());
+        }
+        return this;
+    }
 }
@@ -23,6 +23,10 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.DirectBuffer;
+
+import java.nio.ByteBuffer;
+
 abstract public class AbstractMessageWriter implements MessageWriter {
 
     public MessageWriter putBoolean(final boolean value) {
@@ -133,4 +137,33 @@ abstract public class AbstractMessageWriter implements MessageWriter {
         }
         return this;
     }
+
+    @Override
+    public MessageWriter putBytes(final byte[] src) {
+        return putBytes(src, 0, src.length);
+    }
+
+    @Override
+    public MessageWriter putBytes(final byte[] src, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            putInt8(src[offset + i]);
+        }
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final ByteBuffer src, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            putInt8(src.get(offset + i));
+        }
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final DirectBuffer src, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+            putInt8(src.getByte(offset + i));
+        }
+        return this;
+    }
 }
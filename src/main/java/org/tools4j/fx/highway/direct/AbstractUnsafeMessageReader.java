@@ -23,12 +23,67 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.BufferUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 abstract public class AbstractUnsafeMessageReader extends AbstractMessageReader {
 
+    private final UnsafeBuffer view = new UnsafeBuffer(0, 0);
+    private byte[] copy = new byte[0];
+
     abstract protected long getAndIncrementAddress(final int len);
 
+    /**
+     * Returns the number of bytes that can be obtained as a single contiguous range from
+     * {@link #getAndIncrementAddress(int)}, at least one.
+     */
+    abstract protected long getContiguousBytesRemaining();
+
+    /**
+     * Returns a buffer over the next length bytes at the position of the given pointer without moving the pointer.
+     * Bytes within a single region are wrapped in place, bytes spanning multiple regions are copied to a buffer
+     * owned by this reader.
+     *
+     * @param ptr       the pointer to the first byte
+     * @param length    the number of bytes to wrap
+     * @return the buffer with the bytes, valid until the next invocation of this method
+     */
+    protected DirectBuffer wrap(final RollingRegionPointer ptr, final long length) {
+        if (length <= ptr.getBytesRemaining()) {
+            view.wrap(ptr.getAddress(), (int)length);
+            return view;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Message too large for buffer: " + length);
+        }
+        if (copy.length < length) {
+            copy = new byte[(int)length];
+        }
+        final long position = ptr.getPosition();
+        long offset = 0;
+        while (offset < length) {
+            final long len = Math.min(length - offset, ptr.getBytesRemaining());
+            UNSAFE.copyMemory(null, ptr.getAddress(), copy, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, len);
+            offset += len;
+            ptr.moveBy(len);
+        }
+        ptr.moveToPosition(position);
+        view.wrap(copy, 0, (int)length);
+        return view;
+    }
+
+    @Override
+    public long regionBytesRemaining() {
+        return getContiguousBytesRemaining();
+    }
+
     @Override
     public byte getInt8() {
         return UNSAFE.getByte(null, getAndIncrementAddress(1));
@@ -64,4 +119,38 @@ abstract public class AbstractUnsafeMessageReader extends AbstractMessageReader
         return UNSAFE.getChar(null, getAndIncrementAddress(2));
     }
 
+    @Override
+    public MessageReader getBytes(final byte[] dst, final int offset, final int length) {
+        BufferUtil.boundsCheck(dst, offset, length);
+        return copyTo(dst, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, length);
+    }
+
+    @Override
+    public MessageReader getBytes(final ByteBuffer dst, final int offset, final int length) {
+        BufferUtil.boundsCheck(dst, offset, length);
+        if (dst.isDirect()) {
+            return copyTo(null, BufferUtil.address(dst) + offset, length);
+        }
+        if (dst.hasArray()) {
+            return copyTo(dst.array(), Unsafe.ARRAY_BYTE_BASE_OFFSET + dst.arrayOffset() + offset, length);
+        }
+        return super.getBytes(dst, offset, length);
+    }
+
+    @Override
+    public MessageReader getBytes(final MutableDirectBuffer dst, final int offset, final int length) {
+        dst.boundsCheck(offset, length);
+        return copyTo(dst.byteArray(), dst.addressOffset() + offset, length);
+    }
+
+    //one copy per contiguous range
+    private MessageReader copyTo(final Object dstBase, final long dstOffset, final int length) {
+        int copied = 0;
+        while (copied < length) {
+            final int len = (int)Math.min(length - copied, getContiguousBytesRemaining());
+            UNSAFE.copyMemory(null, getAndIncrementAddress(len), dstBase, dstOffset + copied, len);
+            copied += len;
+        }
+        return this;
+    }
 }
@@ -23,12 +23,24 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.BufferUtil;
+import org.agrona.DirectBuffer;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 abstract public class AbstractUnsafeMessageWriter extends AbstractMessageWriter {
 
     abstract protected long getAndIncrementAddress(final int len);
 
+    /**
+     * Returns the number of bytes that can be obtained as a single contiguous range from
+     * {@link #getAndIncrementAddress(int)}, at least one.
+     */
+    abstract protected long getContiguousBytesRemaining();
+
     @Override
     public MessageWriter putInt8(byte value) {
         UNSAFE.putByte(null, getAndIncrementAddress(1), value);
@@ -71,4 +83,38 @@ abstract public class AbstractUnsafeMessageWriter extends AbstractMessageWriter
         return this;
     }
 
+    @Override
+    public MessageWriter putBytes(final byte[] src, final int offset, final int length) {
+        BufferUtil.boundsCheck(src, offset, length);
+        return copyFrom(src, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, length);
+    }
+
+    @Override
+    public MessageWriter putBytes(final ByteBuffer src, final int offset, final int length) {
+        BufferUtil.boundsCheck(src, offset, length);
+        if (src.isDirect()) {
+            return copyFrom(null, BufferUtil.address(src) + offset, length);
+        }
+        if (src.hasArray()) {
+            return copyFrom(src.array(), Unsafe.ARRAY_BYTE_BASE_OFFSET + src.arrayOffset() + offset, length);
+        }
+        return super.putBytes(src, offset, length);
+    }
+
+    @Override
+    public MessageWriter putBytes(final DirectBuffer src, final int offset, final int length) {
+        src.boundsCheck(offset, length);
+        return copyFrom(src.byteArray(), src.addressOffset() + offset, length);
+    }
+
+    //one copy per contiguous range, bytes are never padded at region end
+    private MessageWriter copyFrom(final Object srcBase, final long srcOffset, final int length) {
+        int copied = 0;
+        while (copied < length) {
+            final int len = (int)Math.min(length - copied, getContiguousBytesRemaining());
+            UNSAFE.copyMemory(srcBase, srcOffset + copied, null, getAndIncrementAddress(len), len);
+            copied += len;
+        }
+        return this;
+    }
 }
@@ -30,5 +30,39 @@ import java.io.Closeable;
  */
 public interface Appender extends Closeable {
     MessageWriter appendMessage();
+
+    /**
+     * Claims length contiguous bytes for a message that is written directly to the mapped memory of the queue. The
+     * claim must be committed or aborted before the next message can be appended.
+     *
+     * @param length the message length in bytes
+     * @return the claim providing access to the claimed bytes
+     * @throws IllegalArgumentException if length is negative or the message does not fit into a single region
+     */
+    MessageClaim claim(int length);
+
+    /**
+     * Starts a batch of messages. Messages appended until the batch is committed or aborted are not visible to
+     * enumerators. All messages of the batch become visible at once when the batch is committed.
+     *
+     * @return this appender to append the messages of the batch
+     */
+    Appender appendBatch();
+
+    /**
+     * Publishes all messages appended since {@link #appendBatch()} with a single ordered write. A message still
+     * in progress is finished first.
+     *
+     * @return this appender
+     */
+    Appender commitBatch();
+
+    /**
+     * Discards all messages appended since {@link #appendBatch()} including a message still in progress.
+     *
+     * @return this appender
+     */
+    Appender abortBatch();
+
     void close();
 }
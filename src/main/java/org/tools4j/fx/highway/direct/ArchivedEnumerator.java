@@ -0,0 +1,234 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.BufferUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import static org.tools4j.fx.highway.direct.ArchivedQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Enumerator of an {@link ArchivedQueue} decompressing one block at a time into a buffer owned by the enumerator.
+ * Messages are read from this buffer in place.
+ */
+public final class ArchivedEnumerator implements Enumerator {
+
+    private final ArchivedQueue queue;
+    private final MessageReaderImpl messageReader;
+
+    public ArchivedEnumerator(final ArchivedQueue queue) {
+        this(queue, StartPosition.HEAD);
+    }
+
+    /**
+     * Constructor for an enumerator starting at the given position.
+     *
+     * @param queue         the archived queue
+     * @param startPosition the start position, where {@link StartPosition#atPosition(long) a position} is the
+     *                      sequence number of a message
+     */
+    public ArchivedEnumerator(final ArchivedQueue queue, final StartPosition startPosition) {
+        this.queue = Objects.requireNonNull(queue);
+        this.messageReader = new MessageReaderImpl();
+        switch (startPosition.getType()) {
+            case HEAD:
+                break;
+            case TAIL:
+                seek(queue.getMessageCount());
+                break;
+            case AT_POSITION:
+                if (startPosition.getPosition() < 0 || startPosition.getPosition() > queue.getMessageCount()) {
+                    messageReader.close();
+                    throw new IllegalArgumentException("Not a valid message position: " + startPosition.getPosition());
+                }
+                seek(startPosition.getPosition());
+                break;
+            default:
+                messageReader.close();
+                throw new IllegalArgumentException("Invalid start position: " + startPosition);
+        }
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        return messageReader.hasNextMessage();
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        if (messageReader.hasNextMessage()) {
+            return messageReader.readNextMessage();
+        }
+        throw new IllegalStateException("No next message found");
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        return readNextMessage().finishReadMessage();
+    }
+
+    /**
+     * Moves to the message with the given sequence number, decompressing only the block containing the message.
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        if (sequence < 0 || sequence > queue.getMessageCount()) {
+            throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+        }
+        messageReader.seek(sequence);
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return messageReader.sequence;
+    }
+
+    @Override
+    public void close() {
+        messageReader.close();
+    }
+
+    private final class MessageReaderImpl extends AbstractUnsafeMessageReader {
+
+        private final RollingRegionPointer ptr = new RollingRegionPointer(queue.getFile());
+        private final ByteBuffer block = ByteBuffer.allocateDirect(Math.max(1, queue.getMaxBlockLength()));
+        private final long blockAddress = BufferUtil.address(block);
+        private final UnsafeBuffer view = new UnsafeBuffer(0, 0);
+        private final long sourceRegionSize = queue.getSourceRegionSize();
+        private int blockIndex = -1;
+        private int blockLength;
+        private int offset;
+        private int messageEnd = -1;
+        //offset of the next region boundary of the archived queue in the current message
+        private long boundary;
+        private long sequence;
+
+        private boolean hasNextMessage() {
+            ptr.ensureNotClosed();
+            if (messageEnd >= 0) {
+                finishReadMessage();
+            }
+            while (offset >= blockLength) {
+                if (blockIndex + 1 >= queue.getBlockCount()) {
+                    return false;
+                }
+                loadBlock(blockIndex + 1);
+            }
+            return true;
+        }
+
+        private MessageReader readNextMessage() {
+            final int length = UNSAFE.getInt(null, blockAddress + offset + RECORD_LENGTH_OFFSET);
+            final int spanning = UNSAFE.getInt(null, blockAddress + offset + RECORD_SPANNING_OFFSET);
+            offset += RECORD_HEADER_LENGTH;
+            messageEnd = offset + length;
+            boundary = messageEnd - spanning;
+            sequence++;
+            return this;
+        }
+
+        private void loadBlock(final int index) {
+            final int compressedLength = queue.getCompressedLength(index);
+            ptr.moveToPosition(queue.getBlockPosition(index));
+            if (compressedLength > ptr.getBytesRemaining()) {
+                throw new IllegalStateException("Compressed block " + index + " exceeds region at position " + ptr.getPosition());
+            }
+            final int length = LzBlockCodec.decompress(null, ptr.getAddress(), compressedLength, null, blockAddress, block.capacity());
+            if (length != queue.getBlockLength(index)) {
+                throw new IllegalStateException("Block " + index + " decompressed to " + length + " bytes but expected " + queue.getBlockLength(index));
+            }
+            blockIndex = index;
+            blockLength = length;
+            offset = 0;
+        }
+
+        private void seek(final long target) {
+            ptr.ensureNotClosed();
+            messageEnd = -1;
+            if (queue.getBlockCount() == 0) {
+                sequence = 0;
+                return;
+            }
+            final int index = queue.getBlockForSequence(target);
+            if (index != blockIndex) {
+                loadBlock(index);
+            }
+            offset = 0;
+            for (long seq = queue.getFirstSequence(index); seq < target; seq++) {
+                offset += RECORD_HEADER_LENGTH + UNSAFE.getInt(null, blockAddress + offset);
+            }
+            sequence = target;
+        }
+
+        private void close() {
+            ptr.close();
+        }
+
+        @Override
+        public Enumerator finishReadMessage() {
+            if (messageEnd >= 0) {
+                offset = messageEnd;
+                messageEnd = -1;
+                return ArchivedEnumerator.this;
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        public DirectBuffer buffer() {
+            if (messageEnd >= 0) {
+                view.wrap(blockAddress + offset, messageEnd - offset);
+                return view;
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = boundary - offset;
+            return rem > 0 ? rem : Math.max(1, sourceRegionSize);
+        }
+
+        //skips the padding the writer of the archived queue inserted before a value that did not fit into a region
+        @Override
+        protected long getAndIncrementAddress(final int add) {
+            if (offset + add > boundary && boundary < messageEnd) {
+                offset = (int)boundary;
+                boundary += sourceRegionSize;
+            }
+            if (offset + add <= messageEnd) {
+                final long address = blockAddress + offset;
+                offset += add;
+                return address;
+            }
+            throw new IllegalStateException("Attempt to read beyond message end: " + (offset + add) + " > " + messageEnd);
+        }
+    }
+}
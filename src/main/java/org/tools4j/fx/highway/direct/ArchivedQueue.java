@@ -0,0 +1,217 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Read-only MappedQueue over an archive file written by {@link QueueArchiver}. The messages are decompressed
+ * transparently by the enumerators, hence an archived queue can be replayed like the queue it was created from.
+ * <p>
+ * The archive starts with a header followed by the blocks compressed with {@link LzBlockCodec}. A decompressed block
+ * is a sequence of messages, each with a 4 byte length and the 4 byte number of bytes after the first region
+ * boundary of the archived queue, followed by the message bytes; messages never span blocks. The message bytes are stored as
+ * written to the archived queue including padding before values that the writer moved to the next region, which
+ * the enumerators skip based on the boundary and the region size of the archived queue.
+ * A compressed block is never split across two regions of {@link #getRegionSize() region size} so that it can be
+ * decompressed straight from the mapped region. The block index after the last block holds one entry per block
+ * with the block position, the sequence number of the first message in the block and the compressed and
+ * decompressed lengths; it is loaded when the archive is opened and allows enumerators to seek a message sequence
+ * without decompressing preceding blocks. The header is written last so that an incomplete archive is never opened.
+ * <p>
+ * A position of an enumerator is the sequence number of a message.
+ */
+public class ArchivedQueue implements MappedQueue {
+
+    public static final String SUFFIX_ARCHIVE = ".lzq";
+    public static final long MAGIC = 0x32305141485846L;//"FXHAQ02"
+    public static final int HEADER_LENGTH = 64;
+    public static final int INDEX_ENTRY_LENGTH = 24;
+    public static final int RECORD_HEADER_LENGTH = 8;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int MAX_BLOCK_LENGTH_OFFSET = 8;
+    static final int REGION_SIZE_OFFSET = 16;
+    static final int INDEX_POSITION_OFFSET = 24;
+    static final int BLOCK_COUNT_OFFSET = 32;
+    static final int MESSAGE_COUNT_OFFSET = 40;
+    static final int SOURCE_REGION_SIZE_OFFSET = 48;
+
+    static final int RECORD_LENGTH_OFFSET = 0;
+    static final int RECORD_SPANNING_OFFSET = 4;
+
+    static final int INDEX_BLOCK_POSITION_OFFSET = 0;
+    static final int INDEX_FIRST_SEQUENCE_OFFSET = 8;
+    static final int INDEX_COMPRESSED_LENGTH_OFFSET = 16;
+    static final int INDEX_BLOCK_LENGTH_OFFSET = 20;
+
+    private final MappedFile file;
+    private final int maxBlockLength;
+    private final long messageCount;
+    private final long sourceRegionSize;
+    private final long[] blockPositions;
+    private final long[] firstSequences;
+    private final int[] compressedLengths;
+    private final int[] blockLengths;
+    private final WakeupSignal wakeupSignal = new WakeupSignal();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private ArchivedQueue(final File file, final ByteBuffer header, final ByteBuffer index) throws IOException {
+        this.maxBlockLength = header.getInt(MAX_BLOCK_LENGTH_OFFSET);
+        this.messageCount = header.getLong(MESSAGE_COUNT_OFFSET);
+        this.sourceRegionSize = header.getLong(SOURCE_REGION_SIZE_OFFSET);
+        final int blockCount = (int)header.getLong(BLOCK_COUNT_OFFSET);
+        this.blockPositions = new long[blockCount];
+        this.firstSequences = new long[blockCount];
+        this.compressedLengths = new int[blockCount];
+        this.blockLengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            final int entry = i * INDEX_ENTRY_LENGTH;
+            blockPositions[i] = index.getLong(entry + INDEX_BLOCK_POSITION_OFFSET);
+            firstSequences[i] = index.getLong(entry + INDEX_FIRST_SEQUENCE_OFFSET);
+            compressedLengths[i] = index.getInt(entry + INDEX_COMPRESSED_LENGTH_OFFSET);
+            blockLengths[i] = index.getInt(entry + INDEX_BLOCK_LENGTH_OFFSET);
+        }
+        this.file = new MappedFile(file, MappedFile.Mode.READ_ONLY, header.getLong(REGION_SIZE_OFFSET));
+    }
+
+    public static final ArchivedQueue open(final String fileName) throws IOException {
+        return open(new File(fileName));
+    }
+
+    public static final ArchivedQueue open(final File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel fileChannel = raf.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+            if (fileChannel.size() < HEADER_LENGTH || fileChannel.read(header, 0) < HEADER_LENGTH ||
+                    header.getLong(MAGIC_OFFSET) != MAGIC) {
+                throw new IllegalArgumentException("Invalid file format");
+            }
+            final long indexPosition = header.getLong(INDEX_POSITION_OFFSET);
+            final long indexLength = header.getLong(BLOCK_COUNT_OFFSET) * INDEX_ENTRY_LENGTH;
+            if (indexPosition < HEADER_LENGTH || indexLength < 0 || indexLength > Integer.MAX_VALUE ||
+                    indexPosition + indexLength > fileChannel.size()) {
+                throw new IllegalArgumentException("Invalid file format");
+            }
+            final ByteBuffer index = ByteBuffer.allocate((int)indexLength).order(ByteOrder.nativeOrder());
+            while (index.hasRemaining()) {
+                fileChannel.read(index, indexPosition + index.position());
+            }
+            return new ArchivedQueue(file, header, index);
+        }
+    }
+
+    @Override
+    public Appender appender() {
+        throw new IllegalStateException("Cannot access appender for archived queue");
+    }
+
+    @Override
+    public Enumerator enumerator(final StartPosition startPosition) {
+        return new ArchivedEnumerator(this, startPosition);
+    }
+
+    /**
+     * Returns the signal of this queue which is never signalled as no messages can be appended to an archive.
+     */
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public int getBlockCount() {
+        return blockPositions.length;
+    }
+
+    public long getRegionSize() {
+        return file.getRegionSize();
+    }
+
+    /**
+     * Returns the region size of the archived queue if a message crossed a region boundary, or zero otherwise.
+     */
+    long getSourceRegionSize() {
+        return sourceRegionSize;
+    }
+
+    MappedFile getFile() {
+        return file;
+    }
+
+    int getMaxBlockLength() {
+        return maxBlockLength;
+    }
+
+    long getBlockPosition(final int block) {
+        return blockPositions[block];
+    }
+
+    long getFirstSequence(final int block) {
+        return firstSequences[block];
+    }
+
+    int getCompressedLength(final int block) {
+        return compressedLengths[block];
+    }
+
+    int getBlockLength(final int block) {
+        return blockLengths[block];
+    }
+
+    /**
+     * Returns the block containing the message with the given sequence number, or the last block if the sequence
+     * is equal to the message count.
+     */
+    int getBlockForSequence(final long sequence) {
+        int low = 0;
+        int high = firstSequences.length - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (firstSequences[mid] <= sequence) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            file.close();
+        }
+    }
+}
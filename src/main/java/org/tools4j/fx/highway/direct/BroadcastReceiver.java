@@ -0,0 +1,145 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.Closeable;
+
+import static org.tools4j.fx.highway.direct.MappedBroadcastBuffer.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Receiver of a {@link MappedBroadcastBuffer}. A receiver starts with the next message transmitted after its
+ * creation. Messages are copied to a buffer owned by the receiver and validated before they are passed to the
+ * handler; if the transmitter has overwritten the next message, the receiver resynchronises with the latest message
+ * transmitted and increments its {@link #getLappedCount() lapped count}.
+ */
+public final class BroadcastReceiver implements Closeable {
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final long mask;
+    private final long dataAddress;
+    private final long tailIntentAddress;
+    private final long tailAddress;
+    private final long latestAddress;
+    private final UnsafeBuffer scratch;
+    private long nextRecord;
+    private long lappedCount;
+    private boolean closed;
+
+    BroadcastReceiver(final MappedBroadcastBuffer buffer) {
+        this.file = buffer.getFile();
+        this.capacity = buffer.getCapacity();
+        this.mask = capacity - 1;
+        this.region = file.reserveRegion(0);
+        this.dataAddress = region.getAddress(HEADER_LENGTH);
+        this.tailIntentAddress = region.getAddress(TAIL_INTENT_OFFSET);
+        this.tailAddress = region.getAddress(TAIL_OFFSET);
+        this.latestAddress = region.getAddress(LATEST_OFFSET);
+        this.scratch = new UnsafeBuffer(new byte[buffer.getMaxMessageLength()]);
+        this.nextRecord = UNSAFE.getLongVolatile(null, tailAddress);
+    }
+
+    /**
+     * Receives up to limit messages and passes them to the handler.
+     *
+     * @param handler   the handler invoked for every message
+     * @param limit     the maximum number of messages to receive
+     * @return the number of messages passed to the handler, zero if no message was available
+     */
+    public int receive(final BroadcastHandler handler, final int limit) {
+        if (closed) {
+            throw new IllegalStateException("Receiver is closed");
+        }
+        int count = 0;
+        while (count < limit && receiveNext(handler)) {
+            count++;
+        }
+        return count;
+    }
+
+    private boolean receiveNext(final BroadcastHandler handler) {
+        while (true) {
+            long record = nextRecord;
+            if (UNSAFE.getLongVolatile(null, tailAddress) <= record) {
+                return false;
+            }
+            if (!isValid(record)) {
+                resynchronise();
+                continue;
+            }
+            long address = dataAddress + (record & mask);
+            if (UNSAFE.getInt(null, address + TYPE_ID_OFFSET) == PADDING_TYPE_ID) {
+                record += UNSAFE.getInt(null, address + RECORD_LENGTH_OFFSET);
+                address = dataAddress;
+            }
+            final int recordLength = UNSAFE.getInt(null, address + RECORD_LENGTH_OFFSET);
+            final int typeId = UNSAFE.getInt(null, address + TYPE_ID_OFFSET);
+            final int length = recordLength - RECORD_HEADER_LENGTH;
+            if (length < 0 || length > scratch.capacity()) {
+                //overwritten while reading the record header
+                resynchronise();
+                continue;
+            }
+            UNSAFE.copyMemory(null, address + RECORD_HEADER_LENGTH, scratch.byteArray(),
+                    scratch.addressOffset(), length);
+            if (!isValid(record)) {
+                resynchronise();
+                continue;
+            }
+            nextRecord = record + align(recordLength);
+            handler.onMessage(typeId, scratch, 0, length);
+            return true;
+        }
+    }
+
+    //the record has not been overwritten if the transmitter has not announced to write a full lap beyond it
+    private boolean isValid(final long record) {
+        UNSAFE.loadFence();
+        return record + capacity > UNSAFE.getLongVolatile(null, tailIntentAddress);
+    }
+
+    private void resynchronise() {
+        lappedCount++;
+        nextRecord = UNSAFE.getLongVolatile(null, latestAddress);
+    }
+
+    /**
+     * @return the number of times this receiver has been lapped by the transmitter and has resynchronised
+     */
+    public long getLappedCount() {
+        return lappedCount;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            file.releaseRegion(region);
+        }
+    }
+}
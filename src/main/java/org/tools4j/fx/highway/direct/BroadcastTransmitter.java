@@ -0,0 +1,115 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+
+import java.io.Closeable;
+
+import static org.tools4j.fx.highway.direct.MappedBroadcastBuffer.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * The single transmitter of a {@link MappedBroadcastBuffer}. Transmitting a message never waits and is independent
+ * of the number of receivers: the transmitter announces the bytes it is about to overwrite as tail intent, writes the
+ * record and then publishes the new tail with an ordered write.
+ */
+public final class BroadcastTransmitter implements Closeable {
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final long mask;
+    private final int maxMessageLength;
+    private final long dataAddress;
+    private final long tailIntentAddress;
+    private final long tailAddress;
+    private final long latestAddress;
+    private boolean closed;
+
+    BroadcastTransmitter(final MappedBroadcastBuffer buffer) {
+        this.file = buffer.getFile();
+        this.capacity = buffer.getCapacity();
+        this.mask = capacity - 1;
+        this.maxMessageLength = buffer.getMaxMessageLength();
+        this.region = file.reserveRegion(0);
+        this.dataAddress = region.getAddress(HEADER_LENGTH);
+        this.tailIntentAddress = region.getAddress(TAIL_INTENT_OFFSET);
+        this.tailAddress = region.getAddress(TAIL_OFFSET);
+        this.latestAddress = region.getAddress(LATEST_OFFSET);
+    }
+
+    /**
+     * Transmits a message to all receivers overwriting the oldest messages if necessary.
+     *
+     * @param typeId    the message type id, not negative
+     * @param src       the buffer with the message bytes
+     * @param offset    the offset of the message in src
+     * @param length    the message length, at most {@link MappedBroadcastBuffer#getMaxMessageLength()}
+     */
+    public void transmit(final int typeId, final DirectBuffer src, final int offset, final int length) {
+        if (closed) {
+            throw new IllegalStateException("Transmitter is closed");
+        }
+        if (typeId < 0) {
+            throw new IllegalArgumentException("Invalid type id: " + typeId);
+        }
+        if (length < 0 || length > maxMessageLength) {
+            throw new IllegalArgumentException("Invalid message length " + length + ", max length is " + maxMessageLength);
+        }
+        src.boundsCheck(offset, length);
+        long tail = UNSAFE.getLong(null, tailAddress);
+        final int recordLength = RECORD_HEADER_LENGTH + length;
+        final long alignedLength = align(recordLength);
+        final long toEnd = capacity - (tail & mask);
+        if (toEnd < alignedLength) {
+            UNSAFE.putOrderedLong(null, tailIntentAddress, tail + toEnd + alignedLength);
+            UNSAFE.storeFence();
+            putRecordHeader(tail, (int)toEnd, PADDING_TYPE_ID);
+            tail += toEnd;
+        } else {
+            UNSAFE.putOrderedLong(null, tailIntentAddress, tail + alignedLength);
+            UNSAFE.storeFence();
+        }
+        final long address = putRecordHeader(tail, recordLength, typeId);
+        UNSAFE.copyMemory(src.byteArray(), src.addressOffset() + offset, null, address + RECORD_HEADER_LENGTH, length);
+        UNSAFE.putOrderedLong(null, latestAddress, tail);
+        UNSAFE.putOrderedLong(null, tailAddress, tail + alignedLength);
+    }
+
+    private long putRecordHeader(final long position, final int recordLength, final int typeId) {
+        final long address = dataAddress + (position & mask);
+        UNSAFE.putInt(null, address + RECORD_LENGTH_OFFSET, recordLength);
+        UNSAFE.putInt(null, address + TYPE_ID_OFFSET, typeId);
+        return address;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            file.releaseRegion(region);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * The durable position of a named consumer of a {@link MappedQueue}, stored in a small mapped cursor file next to
+ * the queue file. The position is written with an ordered write by a {@link CursorEnumerator} so that a restarted
+ * consumer resumes where it left off, and it can be read by other threads or processes for instance to determine
+ * the {@link ConsumerLag lag} of the consumer.
+ * <p>
+ * A cursor must be updated by a single consumer only.
+ */
+public final class ConsumerCursor implements Closeable {
+
+    public static final String SUFFIX = ".cursor";
+    public static final int HEADER_LENGTH = 64;
+    static final int POSITION_OFFSET = 0;
+
+    /** Position value of a cursor that has not recorded a position yet */
+    public static final long NO_POSITION = -1;
+
+    private final String consumerName;
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long positionAddress;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private ConsumerCursor(final String consumerName, final MappedFile file) {
+        this.consumerName = Objects.requireNonNull(consumerName);
+        this.file = Objects.requireNonNull(file);
+        this.region = file.reserveRegion(0);
+        this.positionAddress = region.getAddress(POSITION_OFFSET);
+    }
+
+    /**
+     * Opens the cursor of the named consumer of the queue with the given file name, or creates it if it does not
+     * exist yet.
+     *
+     * @param queueFileName the file name of the queue as passed to its factory method
+     * @param consumerName  the consumer name, must not be empty or contain path separators
+     * @return the cursor
+     * @throws IOException if the cursor file cannot be opened or created
+     */
+    public static ConsumerCursor createOrOpen(final String queueFileName, final String consumerName) throws IOException {
+        return open(queueFileName, consumerName, MappedFile.Mode.READ_WRITE);
+    }
+
+    /**
+     * Opens the cursor of the named consumer for reading, for instance to monitor the consumer's lag.
+     *
+     * @param queueFileName the file name of the queue as passed to its factory method
+     * @param consumerName  the consumer name
+     * @return the cursor
+     * @throws IOException if the cursor file does not exist or cannot be opened
+     */
+    public static ConsumerCursor openReadOnly(final String queueFileName, final String consumerName) throws IOException {
+        return open(queueFileName, consumerName, MappedFile.Mode.READ_ONLY);
+    }
+
+    private static ConsumerCursor open(final String queueFileName, final String consumerName,
+                                       final MappedFile.Mode mode) throws IOException {
+        final File cursorFile = cursorFile(queueFileName, consumerName);
+        return new ConsumerCursor(consumerName,
+                new MappedFile(cursorFile, mode, MappedRegion.REGION_SIZE_GRANULARITY, ConsumerCursor::initFile));
+    }
+
+    /**
+     * Returns the cursor file of the named consumer of the queue with the given file name.
+     */
+    public static File cursorFile(final String queueFileName, final String consumerName) {
+        if (consumerName.isEmpty() || consumerName.indexOf('/') >= 0 || consumerName.indexOf(File.separatorChar) >= 0) {
+            throw new IllegalArgumentException("Invalid consumer name: '" + consumerName + "'");
+        }
+        return new File(queueFileName + "-" + consumerName + SUFFIX);
+    }
+
+    private static void initFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
+        final FileLock lock = fileChannel.lock(0, Long.MAX_VALUE, mode == MappedFile.Mode.READ_ONLY);
+        try {
+            switch (mode) {
+                case READ_ONLY:
+                    if (fileChannel.size() < MappedRegion.REGION_SIZE_GRANULARITY) {
+                        throw new IllegalArgumentException("Invalid file format");
+                    }
+                    break;
+                case READ_WRITE:
+                    if (fileChannel.size() >= MappedRegion.REGION_SIZE_GRANULARITY) {
+                        break;
+                    }
+                    //else: FALL THROUGH
+                case READ_WRITE_CLEAR:
+                    //a full region so that the file can be mapped in read-only mode
+                    final ByteBuffer init = ByteBuffer.allocate((int)MappedRegion.REGION_SIZE_GRANULARITY).order(ByteOrder.nativeOrder());
+                    init.putLong(POSITION_OFFSET, NO_POSITION);
+                    fileChannel.truncate(0);
+                    fileChannel.write(init, 0);
+                    fileChannel.force(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid mode: " + mode);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    /**
+     * @return true if the consumer has recorded a position
+     */
+    public boolean hasPosition() {
+        return position() >= 0;
+    }
+
+    /**
+     * Returns the recorded position of the next message to be consumed, to be used with
+     * {@link StartPosition#atPosition(long)}.
+     *
+     * @return the recorded position or {@link #NO_POSITION} if no position has been recorded yet
+     */
+    public long position() {
+        return UNSAFE.getLongVolatile(null, ensureNotClosed());
+    }
+
+    /**
+     * Records the position of the next message to be consumed with an ordered write.
+     *
+     * @param position the position as returned by {@link Enumerator#position()}
+     * @return this cursor
+     */
+    public ConsumerCursor position(final long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid position: " + position);
+        }
+        if (file.getMode() == MappedFile.Mode.READ_ONLY) {
+            throw new IllegalStateException("Cannot record position of cursor in read-only mode");
+        }
+        UNSAFE.putOrderedLong(null, ensureNotClosed(), position);
+        return this;
+    }
+
+    /**
+     * Returns the start position for an enumerator resuming at the recorded position, or the given initial position
+     * if no position has been recorded yet.
+     *
+     * @param initialPosition the start position of a consumer that has not recorded a position yet
+     * @return the start position
+     */
+    public StartPosition startPosition(final StartPosition initialPosition) {
+        final long position = position();
+        return position >= 0 ? StartPosition.atPosition(position) : Objects.requireNonNull(initialPosition);
+    }
+
+    private long ensureNotClosed() {
+        if (closed.get()) {
+            throw new IllegalStateException("Cursor " + consumerName + " is closed");
+        }
+        return positionAddress;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            file.releaseRegion(region);
+            file.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerCursor{" + consumerName + "}";
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * The lag of a consumer, that is, the number of messages and message bytes appended to a queue but not yet consumed
+ * by the consumer. The lag is computed from the position recorded in the consumer's {@link ConsumerCursor} and the
+ * tail position of the queue; measuring hence neither reads the unconsumed messages nor involves the consumer, and it
+ * does not occupy a consumer slot of a {@link OneToManyRingQueue}.
+ * <p>
+ * The lag can be measured for every {@link PositionedQueue}. The number of messages is only known for a
+ * {@link OneToManyIndexedQueue} whose positions are message sequences; for other queues it is {@link #UNKNOWN}.
+ */
+public final class ConsumerLag {
+
+    /** Number of messages of a lag measured for a queue without message index */
+    public static final long UNKNOWN = -1;
+
+    private long messages;
+    private long bytes;
+
+    /**
+     * Measures the lag of the consumer with the given cursor; a consumer that has not recorded a position yet lags
+     * behind by all messages in the queue.
+     *
+     * @param queue  the queue consumed by the consumer
+     * @param cursor the cursor of the consumer, for instance {@link ConsumerCursor#openReadOnly(String, String) opened}
+     *               in read-only mode
+     * @return the lag
+     * @throws IllegalArgumentException if the given queue is not a {@link PositionedQueue}
+     */
+    public static ConsumerLag measure(final MappedQueue queue, final ConsumerCursor cursor) {
+        return new ConsumerLag().update(queue, cursor);
+    }
+
+    /**
+     * Measures the lag again, reusing this instance.
+     *
+     * @param queue  the queue consumed by the consumer
+     * @param cursor the cursor of the consumer
+     * @return this lag instance
+     * @throws IllegalArgumentException if the given queue is not a {@link PositionedQueue}
+     */
+    public ConsumerLag update(final MappedQueue queue, final ConsumerCursor cursor) {
+        if (!(queue instanceof PositionedQueue)) {
+            throw new IllegalArgumentException("Lag cannot be measured for queue type " + queue.getClass().getSimpleName());
+        }
+        final PositionedQueue positionedQueue = (PositionedQueue)queue;
+        //the cursor is read first so that it cannot be ahead of the tail
+        final long position = cursor.position();
+        final long tail = positionedQueue.tailPosition();
+        final long from = position >= 0 ? Math.min(position, tail) : positionedQueue.headPosition();
+        messages = positionedQueue.messagesBetween(from, tail);
+        bytes = positionedQueue.bytesBetween(from, tail);
+        return this;
+    }
+
+    /**
+     * @return the number of messages not yet consumed, or {@link #UNKNOWN} if the queue has no message index
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the number of bytes not yet consumed: the message data including alignment padding for an indexed
+     *         queue, and the message bytes including length fields, frame headers and padding otherwise
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerLag{messages=" + messages + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.Objects;
+
+/**
+ * Enumerator of a named consumer recording its position in a {@link ConsumerCursor} so that a restarted consumer
+ * resumes with the first message it has not consumed yet.
+ * <p>
+ * The position is recorded after {@link #drain(MessageHandler, int) drain}, {@link #skipNextMessage()},
+ * {@link #seek(long)} and {@link #hasNextMessage()}, the latter implicitly finishing the message read before.
+ * Messages are hence delivered at least once: a message that was read but not followed by any of these calls is
+ * delivered again after a restart. Readers return this enumerator when the message is finished, hence chained
+ * invocations also record the position.
+ */
+public final class CursorEnumerator implements Enumerator {
+
+    private final Enumerator enumerator;
+    private final ConsumerCursor cursor;
+    private final DelegatingMessageReader messageReader = new DelegatingMessageReader(this);
+    private long recordedPosition;
+
+    /**
+     * Constructor for an enumerator of the given queue resuming at the position recorded in the cursor, or starting
+     * at the initial position if the cursor has no position yet. The cursor is closed when the enumerator is closed.
+     *
+     * @param queue           the queue to read
+     * @param cursor          the cursor of the consumer
+     * @param initialPosition the start position if no position has been recorded yet
+     * @throws IllegalArgumentException if the recorded position is not a valid position in the queue
+     */
+    public CursorEnumerator(final MappedQueue queue, final ConsumerCursor cursor, final StartPosition initialPosition) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.enumerator = queue.enumerator(cursor.startPosition(initialPosition));
+        this.recordedPosition = cursor.position();
+        recordPosition();
+    }
+
+    public ConsumerCursor getCursor() {
+        return cursor;
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        final boolean hasNext = enumerator.hasNextMessage();
+        recordPosition();
+        return hasNext;
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        return messageReader.wrap(enumerator.readNextMessage());
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        enumerator.skipNextMessage();
+        recordPosition();
+        return this;
+    }
+
+    @Override
+    public Enumerator seek(final long sequence) {
+        enumerator.seek(sequence);
+        recordPosition();
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return enumerator.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        final int count = enumerator.drain(handler, limit);
+        if (count > 0) {
+            recordPosition();
+        }
+        return count;
+    }
+
+    private void recordPosition() {
+        final long position = enumerator.position();
+        if (position != recordedPosition) {
+            cursor.position(position);
+            recordedPosition = position;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            enumerator.close();
+        } finally {
+            cursor.close();
+        }
+    }
+}
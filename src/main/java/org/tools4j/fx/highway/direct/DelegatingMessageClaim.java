@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Claim of a wrapping appender delegating to the claim of an underlying appender. Committing or aborting the claim
+ * returns the wrapping appender so that the next message is appended through the wrapping appender as well.
+ */
+final class DelegatingMessageClaim implements MessageClaim {
+
+    private final Appender appender;
+    private MessageClaim claim;
+
+    DelegatingMessageClaim(final Appender appender) {
+        this.appender = appender;
+    }
+
+    MessageClaim wrap(final MessageClaim claim) {
+        this.claim = claim;
+        return this;
+    }
+
+    private MessageClaim claim() {
+        if (claim != null) {
+            return claim;
+        }
+        throw new IllegalStateException("No message claimed");
+    }
+
+    @Override
+    public MutableDirectBuffer buffer() {
+        return claim().buffer();
+    }
+
+    @Override
+    public int length() {
+        return claim().length();
+    }
+
+    @Override
+    public Appender commit() {
+        claim().commit();
+        claim = null;
+        return appender;
+    }
+
+    @Override
+    public Appender abort() {
+        claim().abort();
+        claim = null;
+        return appender;
+    }
+}
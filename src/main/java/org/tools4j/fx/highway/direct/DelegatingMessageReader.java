@@ -0,0 +1,195 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reader of a wrapping enumerator delegating to the reader of an underlying enumerator. Finishing the message
+ * returns the wrapping enumerator so that the next message is read through the wrapping enumerator as well.
+ */
+final class DelegatingMessageReader implements MessageReader {
+
+    private final Enumerator enumerator;
+    private MessageReader reader;
+
+    DelegatingMessageReader(final Enumerator enumerator) {
+        this.enumerator = enumerator;
+    }
+
+    MessageReader wrap(final MessageReader reader) {
+        this.reader = reader;
+        return this;
+    }
+
+    private MessageReader reader() {
+        if (reader != null) {
+            return reader;
+        }
+        throw new IllegalStateException("No message is currently being read");
+    }
+
+    @Override
+    public boolean getBoolean() {
+        return reader().getBoolean();
+    }
+
+    @Override
+    public byte getInt8() {
+        return reader().getInt8();
+    }
+
+    @Override
+    public int getInt8AsInt() {
+        return reader().getInt8AsInt();
+    }
+
+    @Override
+    public short getInt16() {
+        return reader().getInt16();
+    }
+
+    @Override
+    public int getInt16AsInt() {
+        return reader().getInt16AsInt();
+    }
+
+    @Override
+    public int getInt32() {
+        return reader().getInt32();
+    }
+
+    @Override
+    public long getInt64() {
+        return reader().getInt64();
+    }
+
+    @Override
+    public float getFloat32() {
+        return reader().getFloat32();
+    }
+
+    @Override
+    public double getFloat64() {
+        return reader().getFloat64();
+    }
+
+    @Override
+    public char getChar() {
+        return reader().getChar();
+    }
+
+    @Override
+    public char getCharAscii() {
+        return reader().getCharAscii();
+    }
+
+    @Override
+    public CharSequence getStringAscii() {
+        return reader().getStringAscii();
+    }
+
+    @Override
+    public CharSequence getStringUtf8() {
+        return reader().getStringUtf8();
+    }
+
+    @Override
+    public CharSequence getString() {
+        return reader().getString();
+    }
+
+    @Override
+    public MessageReader getStringAscii(final Appendable dst) {
+        reader().getStringAscii(dst);
+        return this;
+    }
+
+    @Override
+    public MessageReader getStringAscii(final MutableAsciiString dst) {
+        reader().getStringAscii(dst);
+        return this;
+    }
+
+    @Override
+    public MessageReader getStringUtf8(final Appendable dst) {
+        reader().getStringUtf8(dst);
+        return this;
+    }
+
+    @Override
+    public MessageReader getString(final Appendable dst) {
+        reader().getString(dst);
+        return this;
+    }
+
+    @Override
+    public boolean equalsStringAscii(final CharSequence value) {
+        return reader().equalsStringAscii(value);
+    }
+
+    @Override
+    public MessageReader getBytes(final byte[] dst) {
+        reader().getBytes(dst);
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final byte[] dst, final int offset, final int length) {
+        reader().getBytes(dst, offset, length);
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final ByteBuffer dst, final int offset, final int length) {
+        reader().getBytes(dst, offset, length);
+        return this;
+    }
+
+    @Override
+    public MessageReader getBytes(final MutableDirectBuffer dst, final int offset, final int length) {
+        reader().getBytes(dst, offset, length);
+        return this;
+    }
+
+    @Override
+    public DirectBuffer buffer() {
+        return reader().buffer();
+    }
+
+    @Override
+    public long regionBytesRemaining() {
+        return reader().regionBytesRemaining();
+    }
+
+    @Override
+    public Enumerator finishReadMessage() {
+        reader().finishReadMessage();
+        reader = null;
+        return enumerator;
+    }
+}
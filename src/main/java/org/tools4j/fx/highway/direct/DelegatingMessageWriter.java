@@ -0,0 +1,169 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writer of a wrapping appender delegating to the writer of an underlying appender. Finishing the message returns
+ * the wrapping appender so that the next message is appended through the wrapping appender as well.
+ */
+final class DelegatingMessageWriter implements MessageWriter {
+
+    private final Appender appender;
+    private MessageWriter writer;
+
+    DelegatingMessageWriter(final Appender appender) {
+        this.appender = appender;
+    }
+
+    MessageWriter wrap(final MessageWriter writer) {
+        this.writer = writer;
+        return this;
+    }
+
+    private MessageWriter writer() {
+        if (writer != null) {
+            return writer;
+        }
+        throw new IllegalStateException("Message not started");
+    }
+
+    @Override
+    public MessageWriter putBoolean(final boolean value) {
+        writer().putBoolean(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt8(final byte value) {
+        writer().putInt8(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt8(final int value) {
+        writer().putInt8(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt16(final short value) {
+        writer().putInt16(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt16(final int value) {
+        writer().putInt16(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt32(final int value) {
+        writer().putInt32(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putInt64(final long value) {
+        writer().putInt64(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putFloat32(final float value) {
+        writer().putFloat32(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putFloat64(final double value) {
+        writer().putFloat64(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putCharAscii(final char value) {
+        writer().putCharAscii(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putChar(final char value) {
+        writer().putChar(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putStringAscii(final CharSequence value) {
+        writer().putStringAscii(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putStringUtf8(final CharSequence value) {
+        writer().putStringUtf8(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putString(final CharSequence value) {
+        writer().putString(value);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final byte[] src) {
+        writer().putBytes(src);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final byte[] src, final int offset, final int length) {
+        writer().putBytes(src, offset, length);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final ByteBuffer src, final int offset, final int length) {
+        writer().putBytes(src, offset, length);
+        return this;
+    }
+
+    @Override
+    public MessageWriter putBytes(final DirectBuffer src, final int offset, final int length) {
+        writer().putBytes(src, offset, length);
+        return this;
+    }
+
+    @Override
+    public Appender finishAppendMessage() {
+        writer().finishAppendMessage();
+        writer = null;
+        return appender;
+    }
+}
@@ -23,6 +23,8 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.concurrent.IdleStrategy;
+
 import java.io.Closeable;
 
 /**
@@ -32,5 +34,66 @@ public interface Enumerator extends Closeable {
     boolean hasNextMessage();
     MessageReader readNextMessage();
     Enumerator skipNextMessage();
+
+    /**
+     * Moves this enumerator to the message with the given sequence number, the zero based index of the message in
+     * the queue. The next message read is the message with this sequence number; if sequence is equal to the
+     * number of messages appended so far, the enumerator is moved to the end of the queue.
+     *
+     * @param sequence the sequence number of the next message to read
+     * @return this enumerator
+     * @throws IllegalArgumentException if sequence is negative or greater than the number of messages appended
+     */
+    Enumerator seek(long sequence);
+
+    /**
+     * Returns the position of the next message to read, or of the message after the one currently being read. The
+     * position can be passed to {@link StartPosition#atPosition(long)} to create an enumerator starting at the same
+     * message. Its meaning depends on the queue implementation.
+     *
+     * @return the position of the next message
+     */
+    long position();
+
+    /**
+     * Reads up to limit available messages in a tight loop and passes them to the handler.
+     *
+     * @param handler   the handler invoked for every message
+     * @param limit     the maximum number of messages to read
+     * @return the number of messages passed to the handler, zero if no message was available
+     */
+    default int drain(final MessageHandler handler, final int limit) {
+        int count = 0;
+        while (count < limit && hasNextMessage()) {
+            final MessageReader reader = readNextMessage();
+            handler.onMessage(reader);
+            reader.finishReadMessage();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads up to limit messages and passes them to the handler, idling with the given strategy until at least one
+     * message is available.
+     *
+     * @param handler       the handler invoked for every message
+     * @param limit         the maximum number of messages to read
+     * @param idleStrategy  the strategy invoked while no message is available, for instance a
+     *                      {@link WakeableIdleStrategy} or one of the idle strategies of agrona
+     * @return the number of messages passed to the handler, zero only if the current thread has been interrupted
+     */
+    default int poll(final MessageHandler handler, final int limit, final IdleStrategy idleStrategy) {
+        int count;
+        while ((count = drain(handler, limit)) == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            idleStrategy.idle();
+        }
+        idleStrategy.reset();
+        return count;
+    }
+
     void close();
 }
@@ -0,0 +1,157 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.Objects;
+
+/**
+ * Enumerator of messages appended with a {@link FrameHeader} returning only messages accepted by a
+ * {@link FrameFilter}. Skipped messages are never decoded beyond the header. Returned readers are positioned at the
+ * start of the payload after the header, hence the payload starts at index zero of the
+ * {@link MessageReader#buffer() buffer}; the header of the current message is available through {@link #header()}.
+ * <p>
+ * As {@link #hasNextMessage()} has to read the header of the next message, the position of a pending message is
+ * the position of the underlying enumerator before it was read. Sequence numbers passed to {@link #seek(long)} refer
+ * to all messages of the underlying enumerator. Readers return this enumerator when the
+ * message is finished, hence chained invocations continue to filter.
+ */
+public final class FilteredEnumerator implements Enumerator {
+
+    private final Enumerator enumerator;
+    private final FrameFilter filter;
+    private final FrameHeader header = new FrameHeader();
+    private final MessageHandler filteringHandler = this::onMessage;
+    private final DelegatingMessageReader messageReader = new DelegatingMessageReader(this);
+
+    private MessageReader pending;
+    private long pendingPosition;
+    private MessageHandler handler;
+    private int accepted;
+
+    public FilteredEnumerator(final Enumerator enumerator, final FrameFilter filter) {
+        this.enumerator = Objects.requireNonNull(enumerator);
+        this.filter = Objects.requireNonNull(filter);
+    }
+
+    /**
+     * Returns the header of the message returned by the last invocation of {@link #readNextMessage()} or passed to
+     * the handler.
+     */
+    public FrameHeader header() {
+        return header;
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        if (pending != null) {
+            return true;
+        }
+        while (true) {
+            final long position = enumerator.position();
+            if (!enumerator.hasNextMessage()) {
+                return false;
+            }
+            final MessageReader reader = enumerator.readNextMessage();
+            if (filter.accept(header.readFrom(reader))) {
+                pending = reader;
+                pendingPosition = position;
+                return true;
+            }
+            reader.finishReadMessage();
+        }
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        if (!hasNextMessage()) {
+            throw new IllegalStateException("No next message found");
+        }
+        final MessageReader reader = pending;
+        pending = null;
+        return messageReader.wrap(reader);
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        readNextMessage().finishReadMessage();
+        return this;
+    }
+
+    @Override
+    public Enumerator seek(final long sequence) {
+        finishPending();
+        enumerator.seek(sequence);
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return pending != null ? pendingPosition : enumerator.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        int count = 0;
+        if (pending != null && limit > 0) {
+            final MessageReader reader = readNextMessage();
+            handler.onMessage(reader);
+            reader.finishReadMessage();
+            count++;
+        }
+        this.handler = handler;
+        try {
+            while (count < limit) {
+                accepted = 0;
+                final int drained = enumerator.drain(filteringHandler, limit - count);
+                count += accepted;
+                if (drained == 0) {
+                    break;
+                }
+            }
+        } finally {
+            this.handler = null;
+        }
+        return count;
+    }
+
+    private void onMessage(final MessageReader reader) {
+        if (filter.accept(header.readFrom(reader))) {
+            accepted++;
+            handler.onMessage(reader);
+        }
+    }
+
+    private void finishPending() {
+        if (pending != null) {
+            pending.finishReadMessage();
+            pending = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        pending = null;
+        enumerator.close();
+    }
+}
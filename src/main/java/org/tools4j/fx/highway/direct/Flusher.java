@@ -0,0 +1,173 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background worker of a {@link MappedFile} writing modified bytes up to the
+ * {@link MappedFile#setWrittenPosition(long) written position} to the storage device as defined by a
+ * {@link SyncPolicy}, so that appenders never block on disk I/O. The flusher publishes the
+ * {@link #getDurablePosition() durable position}, up to which all bytes of the file have been written to the storage
+ * device, for consumers such as replicators that must only process durable data.
+ * <p>
+ * Every file is flushed independently; for a queue consisting of multiple files such as the
+ * {@link OneToManyIndexedQueue} the durable positions of the files refer to the respective file only.
+ */
+public final class Flusher implements Closeable {
+
+    public static final long DEFAULT_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final MappedFile file;
+    private final SyncPolicy syncPolicy;
+    private final long idleNanos;
+    private final Thread thread;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong durablePosition = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final Recorder flushLatencyRecorder = new Recorder(3);
+
+    private long lastFlushNanos;
+
+    Flusher(final MappedFile file, final SyncPolicy syncPolicy, final long idleNanos) {
+        this.file = Objects.requireNonNull(file);
+        this.syncPolicy = Objects.requireNonNull(syncPolicy);
+        this.idleNanos = syncPolicy.getType() == SyncPolicy.Type.INTERVAL ?
+                Math.min(idleNanos, TimeUnit.MILLISECONDS.toNanos(syncPolicy.getValue())) : idleNanos;
+        this.thread = new Thread(this::run, "flusher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        if (syncPolicy.getType() != SyncPolicy.Type.NONE && running.compareAndSet(false, true)) {
+            lastFlushNanos = System.nanoTime();
+            thread.start();
+        }
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Returns the position up to which all bytes of the file have been written to the storage device. It is
+     * always zero for the sync policy {@link SyncPolicy#NONE NONE}.
+     */
+    public long getDurablePosition() {
+        return durablePosition.get();
+    }
+
+    /**
+     * Returns the number of flushes performed by this flusher.
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Returns a histogram of the flush latencies in nanoseconds recorded since the last invocation of this method.
+     */
+    public Histogram getIntervalFlushLatencyHistogram() {
+        return flushLatencyRecorder.getIntervalHistogram();
+    }
+
+    private void run() {
+        while (running.get()) {
+            final long target = flushTarget(file.getWrittenPosition());
+            if (target > durablePosition.get()) {
+                flush(target);
+            } else {
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+    }
+
+    //returns the position up to which bytes should be flushed now according to the sync policy
+    private long flushTarget(final long writtenPosition) {
+        final long durable = durablePosition.get();
+        switch (syncPolicy.getType()) {
+            case INTERVAL:
+                return System.nanoTime() - lastFlushNanos >= TimeUnit.MILLISECONDS.toNanos(syncPolicy.getValue()) ?
+                        writtenPosition : durable;
+            case BYTES:
+                return writtenPosition - durable >= syncPolicy.getValue() ? writtenPosition : durable;
+            case REGION_ROLL:
+                //only completed regions
+                return writtenPosition - (writtenPosition % file.getRegionSize());
+            default:
+                return durable;
+        }
+    }
+
+    private void flush(final long target) {
+        final long start = System.nanoTime();
+        final long regionSize = file.getRegionSize();
+        long position = durablePosition.get();
+        while (position < target) {
+            final int index = file.getRegionIndexForPosition(position);
+            final long regionStart = index * regionSize;
+            final long end = Math.min(target, regionStart + regionSize);
+            final MappedRegion region = file.reserveFlushedRegion(index);
+            try {
+                region.force(position - regionStart, end - position);
+            } finally {
+                file.releaseFlushedRegion(region);
+            }
+            position = end;
+        }
+        final long end = System.nanoTime();
+        flushLatencyRecorder.recordValue(end - start);
+        flushCount.incrementAndGet();
+        lastFlushNanos = end;
+        durablePosition.lazySet(target);
+    }
+
+    /**
+     * Stops the flusher thread after a final flush of all bytes up to the written position.
+     */
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for flusher to stop", e);
+            }
+            final long target = file.getWrittenPosition();
+            if (target > durablePosition.get()) {
+                flush(target);
+            }
+        }
+    }
+}
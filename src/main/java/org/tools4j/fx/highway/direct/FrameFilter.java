@@ -0,0 +1,76 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Filter of a {@link FilteredEnumerator} deciding from the {@link FrameHeader} alone whether a message is
+ * returned.
+ */
+@FunctionalInterface
+public interface FrameFilter {
+
+    /**
+     * @param header the header of the current message
+     * @return true if the message is returned, false if it is skipped
+     */
+    boolean accept(FrameHeader header);
+
+    default FrameFilter and(final FrameFilter other) {
+        Objects.requireNonNull(other);
+        return header -> accept(header) && other.accept(header);
+    }
+
+    /**
+     * Returns a filter accepting messages with any of the given template ids.
+     */
+    static FrameFilter templateIds(final int... templateIds) {
+        final BitSet accepted = new BitSet(FrameHeader.MAX_TEMPLATE_ID + 1);
+        for (final int templateId : templateIds) {
+            accepted.set(templateId);
+        }
+        return header -> accepted.get(header.templateId());
+    }
+
+    /**
+     * Returns a filter accepting messages with keys set in the given bitset; negative keys are never accepted.
+     */
+    static FrameFilter keys(final BitSet keys) {
+        final BitSet accepted = (BitSet)keys.clone();
+        return header -> header.key() >= 0 && accepted.get(header.key());
+    }
+
+    /**
+     * Returns a filter accepting messages with any of the given non-negative keys.
+     */
+    static FrameFilter keys(final int... keys) {
+        final BitSet accepted = new BitSet();
+        for (final int key : keys) {
+            accepted.set(key);
+        }
+        return keys(accepted);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/**
+ * Typed header at the start of messages appended through a {@link FramedAppender}, carrying template id,
+ * sequence number, partition or instrument key and publish timestamp in milliseconds since the epoch. The header
+ * allows a {@link FilteredEnumerator} to skip messages without decoding the payload which starts after the header.
+ * <p>
+ * The header starts with its version and length; headers of later versions may be longer and readers skip fields
+ * they do not know. The header bytes are always contiguous in the message, including when the message spans two
+ * regions, hence the fields are at fixed offsets.
+ * <p>
+ * This class is a flyweight reading the header of the current message into a buffer owned by the instance.
+ */
+public final class FrameHeader {
+
+    public static final byte VERSION = 1;
+    public static final int LENGTH = 24;
+    public static final int MAX_TEMPLATE_ID = 0xffff;
+
+    static final int VERSION_OFFSET = 0;
+    static final int HEADER_LENGTH_OFFSET = 1;
+    static final int TEMPLATE_ID_OFFSET = 2;
+    static final int KEY_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int TIMESTAMP_OFFSET = 16;
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[LENGTH]);
+
+    /**
+     * Writes a header of the current version to the given buffer.
+     *
+     * @param dst           the destination buffer
+     * @param offset        the offset of the header in dst
+     * @param templateId    the template id of the payload, at least zero and at most {@link #MAX_TEMPLATE_ID}
+     * @param key           the partition or instrument key
+     * @param sequence      the sequence number of the message
+     * @param timestamp     the publish timestamp in milliseconds since the epoch
+     */
+    public static void encode(final MutableDirectBuffer dst, final int offset, final int templateId, final int key,
+                              final long sequence, final long timestamp) {
+        if (templateId < 0 || templateId > MAX_TEMPLATE_ID) {
+            throw new IllegalArgumentException("Invalid template id: " + templateId);
+        }
+        dst.putByte(offset + VERSION_OFFSET, VERSION);
+        dst.putByte(offset + HEADER_LENGTH_OFFSET, (byte)LENGTH);
+        dst.putShort(offset + TEMPLATE_ID_OFFSET, (short)templateId);
+        dst.putInt(offset + KEY_OFFSET, key);
+        dst.putLong(offset + SEQUENCE_OFFSET, sequence);
+        dst.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+    }
+
+    /**
+     * Reads the header of the message, leaving the reader positioned at the start of the payload.
+     *
+     * @param reader the reader of a message appended with a frame header
+     * @return this header
+     * @throws IllegalStateException if the message does not start with a valid frame header
+     */
+    public FrameHeader readFrom(final MessageReader reader) {
+        reader.getBytes(buffer, 0, LENGTH);
+        final int headerLength = headerLength();
+        if (version() < VERSION || headerLength < LENGTH) {
+            throw new IllegalStateException("Invalid frame header version " + version() + " with length " + headerLength);
+        }
+        //skip fields of later versions
+        for (int i = LENGTH; i < headerLength; i++) {
+            reader.getInt8();
+        }
+        return this;
+    }
+
+    public int version() {
+        return buffer.getByte(VERSION_OFFSET) & 0xff;
+    }
+
+    public int headerLength() {
+        return buffer.getByte(HEADER_LENGTH_OFFSET) & 0xff;
+    }
+
+    public int templateId() {
+        return buffer.getShort(TEMPLATE_ID_OFFSET) & 0xffff;
+    }
+
+    public int key() {
+        return buffer.getInt(KEY_OFFSET);
+    }
+
+    public long sequence() {
+        return buffer.getLong(SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Returns the publish timestamp in milliseconds since the epoch.
+     */
+    public long timestamp() {
+        return buffer.getLong(TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameHeader{version=" + version() + ", templateId=" + templateId() + ", key=" + key() +
+                ", sequence=" + sequence() + ", timestamp=" + timestamp() + "}";
+    }
+}
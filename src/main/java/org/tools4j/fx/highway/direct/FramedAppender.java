@@ -0,0 +1,109 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.Closeable;
+import java.util.Objects;
+
+/**
+ * Appender writing a {@link FrameHeader} before the payload of every message, numbering messages with consecutive
+ * sequence numbers and stamping them with the publish time in milliseconds since the epoch, which unlike
+ * {@link System#nanoTime()} is comparable across processes and hosts. The sequence number of an aborted claim is not
+ * reused.
+ */
+public final class FramedAppender implements Closeable {
+
+    private final Appender appender;
+    private final EpochClock clock;
+    private final UnsafeBuffer header = new UnsafeBuffer(new byte[FrameHeader.LENGTH]);
+    private long sequence;
+
+    public FramedAppender(final Appender appender) {
+        this(appender, 0, new SystemEpochClock());
+    }
+
+    /**
+     * Constructor for a framed appender.
+     *
+     * @param appender      the appender of the queue
+     * @param firstSequence the sequence number of the first message, for instance the sequence after the last
+     *                      message in the queue when appending to an existing queue
+     * @param clock         the clock providing publish timestamps in milliseconds since the epoch
+     */
+    public FramedAppender(final Appender appender, final long firstSequence, final EpochClock clock) {
+        this.appender = Objects.requireNonNull(appender);
+        this.clock = Objects.requireNonNull(clock);
+        this.sequence = firstSequence;
+    }
+
+    /**
+     * Starts a message with the given template id and key; the payload is written with the returned writer.
+     *
+     * @param templateId    the template id of the payload
+     * @param key           the partition or instrument key
+     * @return the writer positioned after the frame header
+     */
+    public MessageWriter appendFrame(final int templateId, final int key) {
+        FrameHeader.encode(header, 0, templateId, key, sequence, clock.time());
+        sequence++;
+        //copied in one piece so that the header is contiguous even if the message spans regions
+        return appender.appendMessage().putBytes(header, 0, FrameHeader.LENGTH);
+    }
+
+    /**
+     * Claims a message with the given template id and key; the payload is written to the claimed buffer at offset
+     * {@link FrameHeader#LENGTH}.
+     *
+     * @param templateId    the template id of the payload
+     * @param key           the partition or instrument key
+     * @param payloadLength the length of the payload
+     * @return the claim with the frame header written
+     */
+    public MessageClaim claimFrame(final int templateId, final int key, final int payloadLength) {
+        final MessageClaim claim = appender.claim(FrameHeader.LENGTH + payloadLength);
+        FrameHeader.encode(claim.buffer(), 0, templateId, key, sequence, clock.time());
+        sequence++;
+        return claim;
+    }
+
+    /**
+     * Returns the sequence number of the next message.
+     */
+    public long nextSequence() {
+        return sequence;
+    }
+
+    public Appender appender() {
+        return appender;
+    }
+
+    @Override
+    public void close() {
+        appender.close();
+    }
+}
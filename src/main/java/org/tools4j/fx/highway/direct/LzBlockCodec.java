@@ -0,0 +1,252 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.Arrays;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Block codec in the style of LZ4 for repetitive message data such as prices and timestamps. A compressed block is
+ * a sequence of literal runs, each followed by a back reference of at least {@link #MIN_MATCH} bytes into the
+ * previous {@link #MAX_OFFSET} bytes of the decompressed block; the block always ends with a literal run.
+ * <p>
+ * Every sequence starts with a token byte holding the literal length in the upper and the match length minus
+ * {@link #MIN_MATCH} in the lower four bits. Lengths of 15 and more continue in the following bytes, each adding up
+ * to 255. The literals follow, and then the match offset as two bytes in little endian order.
+ * <p>
+ * Source and destination are given as base object and address as used by {@link sun.misc.Unsafe}, that is, a byte
+ * array with an offset relative to {@link sun.misc.Unsafe#ARRAY_BYTE_BASE_OFFSET} or null with an absolute address.
+ * Instances are not thread safe as the hash table of the compressor is reused.
+ */
+public final class LzBlockCodec {
+
+    public static final int MIN_MATCH = 4;
+    public static final int MAX_OFFSET = 0xffff;
+
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int RUN_MASK = 0xf;
+    private static final int SHORT_COPY_LENGTH = 64;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * Returns the maximum length of a compressed block for the given input length, used to size the destination of
+     * {@link #compress(Object, long, int, Object, long)}.
+     *
+     * @param length the length of the uncompressed input
+     * @return the maximum compressed length
+     */
+    public static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses length bytes from the source into the destination which must have room for at least
+     * {@link #maxCompressedLength(int)} bytes.
+     *
+     * @param srcBase       the source array or null for off-heap memory
+     * @param srcAddress    the address of the first source byte
+     * @param length        the number of bytes to compress
+     * @param dstBase       the destination array or null for off-heap memory
+     * @param dstAddress    the address of the first destination byte
+     * @return the length of the compressed block
+     */
+    public int compress(final Object srcBase, final long srcAddress, final int length,
+                        final Object dstBase, final long dstAddress) {
+        long op = dstAddress;
+        int anchor = 0;
+        if (length > MATCH_FIND_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            final int matchLimit = length - LAST_LITERALS;
+            final int findLimit = length - MATCH_FIND_LIMIT;
+            int searchCount = 1 << SKIP_TRIGGER;
+            int i = 0;
+            while (i < findLimit) {
+                final int sequence = UNSAFE.getInt(srcBase, srcAddress + i);
+                final int hash = hash(sequence);
+                final int ref = hashTable[hash];
+                hashTable[hash] = i;
+                if (ref < 0 || i - ref > MAX_OFFSET || UNSAFE.getInt(srcBase, srcAddress + ref) != sequence) {
+                    //step faster through data that does not compress
+                    i += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+                int matchLen = MIN_MATCH;
+                while (i + matchLen + 8 <= matchLimit &&
+                        UNSAFE.getLong(srcBase, srcAddress + i + matchLen) == UNSAFE.getLong(srcBase, srcAddress + ref + matchLen)) {
+                    matchLen += 8;
+                }
+                while (i + matchLen < matchLimit &&
+                        UNSAFE.getByte(srcBase, srcAddress + i + matchLen) == UNSAFE.getByte(srcBase, srcAddress + ref + matchLen)) {
+                    matchLen++;
+                }
+                op = writeLiterals(srcBase, srcAddress + anchor, i - anchor, matchLen - MIN_MATCH, dstBase, op);
+                UNSAFE.putByte(dstBase, op++, (byte)(i - ref));
+                UNSAFE.putByte(dstBase, op++, (byte)((i - ref) >>> 8));
+                if (matchLen - MIN_MATCH >= RUN_MASK) {
+                    op = writeLength(dstBase, op, matchLen - MIN_MATCH - RUN_MASK);
+                }
+                i += matchLen;
+                anchor = i;
+            }
+        }
+        op = writeLiterals(srcBase, srcAddress + anchor, length - anchor, 0, dstBase, op);
+        return (int)(op - dstAddress);
+    }
+
+    /**
+     * Decompresses a block into the destination.
+     *
+     * @param srcBase           the source array or null for off-heap memory
+     * @param srcAddress        the address of the compressed block
+     * @param compressedLength  the length of the compressed block
+     * @param dstBase           the destination array or null for off-heap memory
+     * @param dstAddress        the address of the first destination byte
+     * @param dstCapacity       the number of bytes available in the destination
+     * @return the length of the decompressed block
+     * @throws IllegalStateException if the block is corrupt or does not fit into the destination
+     */
+    public static int decompress(final Object srcBase, final long srcAddress, final int compressedLength,
+                                 final Object dstBase, final long dstAddress, final int dstCapacity) {
+        final long srcEnd = srcAddress + compressedLength;
+        final long dstEnd = dstAddress + dstCapacity;
+        long ip = srcAddress;
+        long op = dstAddress;
+        while (ip < srcEnd) {
+            final int token = UNSAFE.getByte(srcBase, ip++) & 0xff;
+            long literalLen = token >>> 4;
+            if (literalLen == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw corruptBlock(ip - srcAddress);
+                    }
+                    b = UNSAFE.getByte(srcBase, ip++) & 0xff;
+                    literalLen += b;
+                } while (b == 255);
+            }
+            if (ip + literalLen > srcEnd || op + literalLen > dstEnd) {
+                throw corruptBlock(ip - srcAddress);
+            }
+            copy(srcBase, ip, dstBase, op, literalLen);
+            ip += literalLen;
+            op += literalLen;
+            if (ip == srcEnd) {
+                return (int)(op - dstAddress);
+            }
+            if (ip + 2 > srcEnd) {
+                throw corruptBlock(ip - srcAddress);
+            }
+            final int offset = (UNSAFE.getByte(srcBase, ip) & 0xff) | ((UNSAFE.getByte(srcBase, ip + 1) & 0xff) << 8);
+            ip += 2;
+            long matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw corruptBlock(ip - srcAddress);
+                    }
+                    b = UNSAFE.getByte(srcBase, ip++) & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            final long ref = op - offset;
+            if (offset == 0 || ref < dstAddress || op + matchLen > dstEnd) {
+                throw corruptBlock(ip - srcAddress);
+            }
+            if (offset >= matchLen) {
+                copy(dstBase, ref, dstBase, op, matchLen);
+            } else {
+                //overlapping match repeats the last offset bytes which copyMemory with its memmove semantics does not
+                copyForward(dstBase, ref, op, matchLen, offset >= 8);
+            }
+            op += matchLen;
+        }
+        throw corruptBlock(ip - srcAddress);
+    }
+
+    //short runs are copied word by word as copyMemory has a considerable fixed cost
+    private static void copy(final Object srcBase, final long srcAddress, final Object dstBase, final long dstAddress,
+                             final long length) {
+        if (length > SHORT_COPY_LENGTH) {
+            UNSAFE.copyMemory(srcBase, srcAddress, dstBase, dstAddress, length);
+            return;
+        }
+        long i = 0;
+        for (; i + 8 <= length; i += 8) {
+            UNSAFE.putLong(dstBase, dstAddress + i, UNSAFE.getLong(srcBase, srcAddress + i));
+        }
+        for (; i < length; i++) {
+            UNSAFE.putByte(dstBase, dstAddress + i, UNSAFE.getByte(srcBase, srcAddress + i));
+        }
+    }
+
+    //a forward copy of words is correct for overlapping matches if the offset is at least 8
+    private static void copyForward(final Object base, final long srcAddress, final long dstAddress,
+                                    final long length, final boolean words) {
+        long i = 0;
+        if (words) {
+            for (; i + 8 <= length; i += 8) {
+                UNSAFE.putLong(base, dstAddress + i, UNSAFE.getLong(base, srcAddress + i));
+            }
+        }
+        for (; i < length; i++) {
+            UNSAFE.putByte(base, dstAddress + i, UNSAFE.getByte(base, srcAddress + i));
+        }
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static long writeLiterals(final Object srcBase, final long srcAddress, final int literalLen,
+                                      final int matchToken, final Object dstBase, long op) {
+        final int token = (Math.min(literalLen, RUN_MASK) << 4) | Math.min(matchToken, RUN_MASK);
+        UNSAFE.putByte(dstBase, op++, (byte)token);
+        if (literalLen >= RUN_MASK) {
+            op = writeLength(dstBase, op, literalLen - RUN_MASK);
+        }
+        UNSAFE.copyMemory(srcBase, srcAddress, dstBase, op, literalLen);
+        return op + literalLen;
+    }
+
+    private static long writeLength(final Object dstBase, long op, int length) {
+        while (length >= 255) {
+            UNSAFE.putByte(dstBase, op++, (byte)255);
+            length -= 255;
+        }
+        UNSAFE.putByte(dstBase, op++, (byte)length);
+        return op;
+    }
+
+    private static IllegalStateException corruptBlock(final long offset) {
+        return new IllegalStateException("Corrupt compressed block at offset " + offset);
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.Objects;
+
+import static org.tools4j.fx.highway.direct.ManyToManyQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * One of possibly many appenders of a {@link ManyToManyQueue}. An appender instance itself is not thread safe
+ * and should be used by a single thread, but multiple appenders of the same queue file can be used concurrently
+ * from different threads or processes.
+ * <p>
+ * Messages are written as frames to a private buffer first. When the message (or batch of messages) is finished,
+ * space for all frames is claimed atomically by incrementing the tail position in the file header, the frames
+ * are copied into the claimed space and then published with an ordered write of the first frame header.
+ * Messages appended via {@link #claim(int)} outside of a batch skip the private buffer; the space is claimed
+ * directly and the message published when the claim is committed.
+ */
+public final class ManyToManyAppender implements Appender {
+
+    private static final int INITIAL_BUFFER_CAPACITY = 1024;
+
+    private final MappedFile file;
+    private final MappedRegion headerRegion;
+    private final long tailPositionAddress;
+    private final WakeupSignal wakeupSignal;
+    private final MessageWriterImpl messageWriter;
+    private final MessageClaimImpl messageClaim;
+
+    private MappedRegion region;
+
+    public ManyToManyAppender(final MappedFile file) {
+        this(file, new WakeupSignal());
+    }
+
+    public ManyToManyAppender(final MappedFile file, final WakeupSignal wakeupSignal) {
+        this.file = Objects.requireNonNull(file);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
+        this.headerRegion = file.reserveRegion(0);
+        this.tailPositionAddress = headerRegion.getAddress(TAIL_POSITION_OFFSET);
+        //frames of up to half a region size are guaranteed to fit into a region after padding
+        this.messageWriter = new MessageWriterImpl(file.getRegionSize() / 2);
+        this.messageClaim = new MessageClaimImpl();
+    }
+
+    @Override
+    public MessageWriter appendMessage() {
+        return messageWriter.startAppendMessage();
+    }
+
+    @Override
+    public MessageClaim claim(final int length) {
+        return messageClaim.claim(messageWriter.startClaim(length), length);
+    }
+
+    @Override
+    public Appender appendBatch() {
+        messageWriter.startBatch();
+        return this;
+    }
+
+    @Override
+    public Appender commitBatch() {
+        messageWriter.commitBatch();
+        return this;
+    }
+
+    @Override
+    public Appender abortBatch() {
+        messageWriter.abortBatch();
+        return this;
+    }
+
+    private void publish(final long bufferAddress, final long frameLength) {
+        final long address = getAddress(claimPosition(frameLength));
+        UNSAFE.copyMemory(null, bufferAddress + FRAME_HEADER_LENGTH, null, address + FRAME_HEADER_LENGTH, frameLength - FRAME_HEADER_LENGTH);
+        UNSAFE.putOrderedLong(null, address, UNSAFE.getLong(null, bufferAddress));
+        wakeupSignal.signal();
+    }
+
+    private long claimPosition(final long frameLength) {
+        final long regionSize = file.getRegionSize();
+        long position;
+        while (true) {
+            position = UNSAFE.getAndAddLong(null, tailPositionAddress, frameLength);
+            final long regionEnd = (position / regionSize + 1) * regionSize;
+            if (position + frameLength <= regionEnd) {
+                break;
+            }
+            //claimed space straddles region boundary, pad the part in each region and claim again
+            final long spill = position + frameLength - regionEnd;
+            writePadding(position, regionEnd - position);
+            writePadding(regionEnd, spill);
+        }
+        return position;
+    }
+
+    private void writePadding(final long position, final long frameLength) {
+        UNSAFE.putOrderedLong(null, getAddress(position), frameHeader(TYPE_PADDING, (int)(frameLength - FRAME_HEADER_LENGTH)));
+    }
+
+    private long getAddress(final long position) {
+        final int index = file.getRegionIndexForPosition(position);
+        if (region == null || region.getIndex() != index) {
+            final MappedRegion newRegion = file.reserveRegion(index);
+            //always keep the file one region ahead so that enumerators never have to extend it
+            file.ensureFileLength((index + 2) * file.getRegionSize());
+            if (region != null) {
+                file.releaseRegion(region);
+            }
+            region = newRegion;
+        }
+        return region.getAddress(position - region.getPosition());
+    }
+
+    @Override
+    public void close() {
+        messageWriter.close();
+    }
+
+    private final class MessageWriterImpl extends AbstractUnsafeMessageWriter {
+
+        private final long maxBufferCapacity;
+        private long bufferAddress;
+        private long bufferCapacity;
+        private long bufferPosition;
+        private long frameStart = -1;
+        private boolean batch;
+        private long claimAddress;
+        private int claimLength;
+
+        public MessageWriterImpl(final long maxBufferCapacity) {
+            this.maxBufferCapacity = maxBufferCapacity;
+            this.bufferCapacity = Math.min(INITIAL_BUFFER_CAPACITY, maxBufferCapacity);
+            this.bufferAddress = UNSAFE.allocateMemory(bufferCapacity);
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            //buffer grows as needed
+            return maxBufferCapacity;
+        }
+
+        @Override
+        protected long getAndIncrementAddress(final int add) {
+            if (frameStart < 0) {
+                throw new IllegalStateException("Message not started");
+            }
+            final long pos = bufferPosition;
+            ensureCapacity(pos + add);
+            bufferPosition = pos + add;
+            return bufferAddress + pos;
+        }
+
+        private void ensureCapacity(final long capacity) {
+            if (capacity <= bufferCapacity) {
+                return;
+            }
+            if (capacity > maxBufferCapacity) {
+                throw new IllegalStateException("Message or batch exceeds half of region size: " + capacity + " > " + maxBufferCapacity);
+            }
+            final long newCapacity = Math.min(Math.max(capacity, bufferCapacity * 2), maxBufferCapacity);
+            bufferAddress = UNSAFE.reallocateMemory(bufferAddress, newCapacity);
+            bufferCapacity = newCapacity;
+        }
+
+        private MessageWriter startAppendMessage() {
+            ensureNotClosed();
+            if (frameStart >= 0 || claimAddress != 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before appending next");
+            }
+            ensureCapacity(bufferPosition + FRAME_HEADER_LENGTH);
+            frameStart = bufferPosition;
+            bufferPosition += FRAME_HEADER_LENGTH;
+            return this;
+        }
+
+        private long startClaim(final int length) {
+            ensureNotClosed();
+            if (length < 0 || frameLength(length) > maxBufferCapacity) {
+                throw new IllegalArgumentException("Invalid claim length " + length + " exceeding half of region size " + maxBufferCapacity);
+            }
+            if (batch) {
+                startAppendMessage();
+                return getAndIncrementAddress(length);
+            }
+            if (frameStart >= 0 || claimAddress != 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before claiming next");
+            }
+            final long frameLength = frameLength(length);
+            final long address = getAddress(claimPosition(frameLength));
+            UNSAFE.setMemory(null, address + FRAME_HEADER_LENGTH + length, frameLength - FRAME_HEADER_LENGTH - length, (byte)0);
+            claimAddress = address;
+            claimLength = length;
+            return address + FRAME_HEADER_LENGTH;
+        }
+
+        private Appender commitClaim() {
+            if (claimAddress == 0) {
+                return finishAppendMessage();
+            }
+            ensureNotClosed();
+            UNSAFE.putOrderedLong(null, claimAddress, frameHeader(TYPE_DATA, claimLength));
+            claimAddress = 0;
+            wakeupSignal.signal();
+            return ManyToManyAppender.this;
+        }
+
+        private Appender abortClaim() {
+            ensureNotClosed();
+            if (claimAddress != 0) {
+                //claimed space cannot be returned, it is skipped as padding by enumerators
+                UNSAFE.putOrderedLong(null, claimAddress, frameHeader(TYPE_PADDING, claimLength));
+                claimAddress = 0;
+            } else if (frameStart >= 0) {
+                bufferPosition = frameStart;
+                frameStart = -1;
+            } else {
+                throw new IllegalStateException("No message to abort");
+            }
+            return ManyToManyAppender.this;
+        }
+
+        @Override
+        public Appender finishAppendMessage() {
+            ensureNotClosed();
+            if (frameStart < 0) {
+                throw new IllegalStateException("No message to finish");
+            }
+            final long payloadLength = bufferPosition - frameStart - FRAME_HEADER_LENGTH;
+            final long frameEnd = frameStart + frameLength(payloadLength);
+            ensureCapacity(frameEnd);
+            UNSAFE.setMemory(null, bufferAddress + bufferPosition, frameEnd - bufferPosition, (byte)0);
+            UNSAFE.putLong(null, bufferAddress + frameStart, frameHeader(TYPE_DATA, (int)payloadLength));
+            bufferPosition = frameEnd;
+            frameStart = -1;
+            if (!batch) {
+                publishBuffer();
+            }
+            return ManyToManyAppender.this;
+        }
+
+        private void publishBuffer() {
+            if (bufferPosition > 0) {
+                publish(bufferAddress, bufferPosition);
+                bufferPosition = 0;
+            }
+        }
+
+        private void startBatch() {
+            ensureNotClosed();
+            if (batch) {
+                throw new IllegalStateException("Batch already started");
+            }
+            if (frameStart >= 0 || claimAddress != 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before starting a batch");
+            }
+            batch = true;
+        }
+
+        private void commitBatch() {
+            ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to commit");
+            }
+            if (frameStart >= 0) {
+                finishAppendMessage();
+            }
+            publishBuffer();
+            batch = false;
+        }
+
+        private void abortBatch() {
+            ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to abort");
+            }
+            bufferPosition = 0;
+            frameStart = -1;
+            batch = false;
+        }
+
+        private void ensureNotClosed() {
+            if (bufferAddress == 0) {
+                throw new IllegalStateException("Appender has already been closed");
+            }
+        }
+
+        public void close() {
+            if (bufferAddress != 0) {
+                if (batch) {
+                    commitBatch();
+                } else if (frameStart >= 0) {
+                    finishAppendMessage();
+                } else if (claimAddress != 0) {
+                    commitClaim();
+                }
+                if (region != null) {
+                    file.releaseRegion(region);
+                    region = null;
+                }
+                file.releaseRegion(headerRegion);
+                UNSAFE.freeMemory(bufferAddress);
+                bufferAddress = 0;
+            }
+        }
+    }
+
+    private final class MessageClaimImpl extends AbstractMessageClaim {
+        @Override
+        protected Appender commitMessage() {
+            return messageWriter.commitClaim();
+        }
+
+        @Override
+        protected Appender abortMessage() {
+            return messageWriter.abortClaim();
+        }
+    }
+}
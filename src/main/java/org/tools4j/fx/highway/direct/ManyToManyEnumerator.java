@@ -0,0 +1,244 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+
+import static org.tools4j.fx.highway.direct.ManyToManyQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Enumerator of a {@link ManyToManyQueue}.
+ */
+public final class ManyToManyEnumerator implements Enumerator {
+
+    private final MappedFile file;
+    private final MessageReaderImpl messageReader;
+    private long messageLen = -1;
+
+    public ManyToManyEnumerator(final MappedFile file) {
+        this(file, StartPosition.HEAD);
+    }
+
+    /**
+     * Constructor for an enumerator starting at the given position. The tail is the tail position in the file
+     * header; messages of frames claimed before but committed after creation of the enumerator are not read.
+     *
+     * @param file          the queue file
+     * @param startPosition the start position, where {@link StartPosition#atPosition(long) a position} is the
+     *                      byte position of a frame in the file
+     */
+    public ManyToManyEnumerator(final MappedFile file, final StartPosition startPosition) {
+        if (file.getFileLength() < HEADER_LENGTH) {
+            throw new IllegalStateException("Not a many-to-many queue file");
+        }
+        this.file = file;
+        this.messageReader = new MessageReaderImpl(startPosition);
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        return getMessageLength() >= 0;
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        final long messageLength = getMessageLength();
+        if (messageLength >= 0) {
+            this.messageLen = -1;
+            return messageReader.readNextMessage(messageLength);
+        }
+        throw new IllegalStateException("No next message found");
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        return readNextMessage().finishReadMessage();
+    }
+
+    /**
+     * Moves to the message with the given sequence number by enumerating all messages from the start of the queue.
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        messageReader.seek(sequence);
+        messageLen = -1;
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return messageReader.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        messageLen = -1;
+        return messageReader.drain(handler, limit);
+    }
+
+    private long getMessageLength() {
+        if (messageLen < 0) {
+            messageLen = messageReader.pollNextMessageLength();
+        }
+        return messageLen;
+    }
+
+    @Override
+    public void close() {
+        messageReader.close();
+    }
+
+    private final class MessageReaderImpl extends AbstractUnsafeMessageReader {
+
+        private final RollingRegionPointer ptr = new RollingRegionPointer(file);
+        private long messageEndPosition = -1;
+
+        public MessageReaderImpl(final StartPosition startPosition) {
+            //the pointer is still in region 0 containing the header
+            final long tail = UNSAFE.getLongVolatile(null, ptr.getRegion().getAddress(TAIL_POSITION_OFFSET));
+            switch (startPosition.getType()) {
+                case HEAD:
+                    ptr.moveToPosition(HEADER_LENGTH);
+                    break;
+                case TAIL:
+                    ptr.moveToPosition(tail);
+                    break;
+                case AT_POSITION:
+                    final long position = startPosition.getPosition();
+                    if (position < HEADER_LENGTH || (position & 0x7) != 0 || position > tail) {
+                        ptr.close();
+                        throw new IllegalArgumentException("Not a valid frame position: " + position);
+                    }
+                    ptr.moveToPosition(position);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid start position: " + startPosition);
+            }
+        }
+
+        private long position() {
+            return messageEndPosition >= 0 ? (messageEndPosition + 7) & ~7L : ptr.ensureNotClosed().getPosition();
+        }
+
+        private long pollNextMessageLength() {
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            while (true) {
+                final long frameHeader = UNSAFE.getLongVolatile(null, ptr.ensureNotClosed().getAddress());
+                switch (frameType(frameHeader)) {
+                    case TYPE_DATA:
+                        return framePayloadLength(frameHeader);
+                    case TYPE_PADDING:
+                        ptr.moveBy(frameLength(framePayloadLength(frameHeader)));
+                        break;
+                    default:
+                        return -1;
+                }
+            }
+        }
+
+        private int drain(final MessageHandler handler, final int limit) {
+            int count = 0;
+            long messageLen;
+            while (count < limit && (messageLen = pollNextMessageLength()) >= 0) {
+                ptr.moveBy(FRAME_HEADER_LENGTH);
+                messageEndPosition = ptr.getPosition() + messageLen;
+                handler.onMessage(this);
+                finishReadMessage();
+                count++;
+            }
+            return count;
+        }
+
+        private void seek(final long sequence) {
+            if (sequence < 0) {
+                throw new IllegalArgumentException("Invalid sequence: " + sequence);
+            }
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            final long position = ptr.ensureNotClosed().getPosition();
+            ptr.moveToPosition(HEADER_LENGTH);
+            for (long i = 0; i < sequence; i++) {
+                final long messageLen = pollNextMessageLength();
+                if (messageLen < 0) {
+                    ptr.moveToPosition(position);
+                    throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+                }
+                ptr.moveBy(FRAME_HEADER_LENGTH);
+                messageEndPosition = ptr.getPosition() + messageLen;
+                finishReadMessage();
+            }
+        }
+
+        public void close() {
+            ptr.close();
+        }
+
+        private MessageReader readNextMessage(final long messageLen) {
+            if (messageEndPosition < 0) {
+                ptr.ensureNotClosed().moveBy(FRAME_HEADER_LENGTH);
+                messageEndPosition = ptr.getPosition() + messageLen;
+                return messageReader;
+            }
+            //should never get here
+            throw new IllegalStateException("Message reading not finished");
+        }
+
+        @Override
+        public Enumerator finishReadMessage() {
+            if (messageEndPosition >= 0) {
+                ptr.ensureNotClosed().moveToPosition((messageEndPosition + 7) & ~7L);
+                messageEndPosition = -1;
+                return ManyToManyEnumerator.this;
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        public DirectBuffer buffer() {
+            if (messageEndPosition >= 0) {
+                return wrap(ptr.ensureNotClosed(), messageEndPosition - ptr.getPosition());
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = ptr.ensureNotClosed().getBytesRemaining();
+            return rem > 0 ? rem : file.getRegionSize();
+        }
+
+        @Override
+        protected long getAndIncrementAddress(final int add) {
+            final long pos = ptr.ensureNotClosed().getPosition();
+            if (pos + add <= messageEndPosition) {
+                return ptr.getAndIncrementAddress(add, false);
+            }
+            throw new IllegalStateException("Attempt to read beyond message end: " + (pos + add) + " > " + messageEndPosition);
+        }
+    }
+}
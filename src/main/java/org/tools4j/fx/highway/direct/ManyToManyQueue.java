@@ -0,0 +1,194 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * MappedQueue implementation supporting multiple Appenders and multiple Enumerators. Appenders can live in
+ * different threads or processes; they claim space atomically via the tail position stored in the file header.
+ * <p>
+ * File layout: a header of {@link #HEADER_LENGTH} bytes followed by frames. Each frame starts with an 8 byte
+ * frame header containing type and payload length, followed by the payload padded to a multiple of 8 bytes.
+ * Frames never straddle region boundaries; padding frames are inserted where necessary. The frames of a message
+ * or a batch of messages can hence occupy at most half of the region size.
+ */
+public class ManyToManyQueue implements MappedQueue, PositionedQueue {
+
+    public static final long DEFAULT_REGION_SIZE = 4L << 20;//4 MB
+
+    public static final int HEADER_LENGTH = 64;
+    public static final int TAIL_POSITION_OFFSET = 0;
+    public static final int FRAME_HEADER_LENGTH = 8;
+
+    /** Frame header value of a frame that has not been published yet*/
+    public static final int TYPE_NONE = 0;
+    public static final int TYPE_DATA = 1;
+    public static final int TYPE_PADDING = 2;
+
+    private final MappedFile file;
+    private final WakeupSignal wakeupSignal;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private MappedRegion headerRegion;//guarded by this
+
+    private ManyToManyQueue(final MappedFile file, final WakeupSignal wakeupSignal) {
+        this.file = Objects.requireNonNull(file);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
+        //appenders of other processes extend the file concurrently
+        file.setLockOnExtend(true);
+    }
+
+    public static final MappedQueue createOrReplace(final String fileName) throws IOException {
+        return createOrReplace(fileName, DEFAULT_REGION_SIZE);
+    }
+
+    public static final MappedQueue createOrReplace(final String fileName, final long regionSize) throws IOException {
+        return open(new MappedFile(fileName, MappedFile.Mode.READ_WRITE_CLEAR, regionSize, ManyToManyQueue::initFile));
+    }
+
+    public static final MappedQueue createOrAppend(final String fileName) throws IOException {
+        return createOrAppend(fileName, DEFAULT_REGION_SIZE);
+    }
+
+    public static final MappedQueue createOrAppend(final String fileName, final long regionSize) throws IOException {
+        return open(new MappedFile(fileName, MappedFile.Mode.READ_WRITE, regionSize, ManyToManyQueue::initFile));
+    }
+
+    public static final MappedQueue openReadOnly(final String fileName) throws IOException {
+        return openReadOnly(fileName, DEFAULT_REGION_SIZE);
+    }
+
+    public static final MappedQueue openReadOnly(final String fileName, final long regionSize) throws IOException {
+        return open(new MappedFile(fileName, MappedFile.Mode.READ_ONLY, regionSize));
+    }
+
+    public static final MappedQueue open(final MappedFile file) {
+        return open(file, new WakeupSignal());
+    }
+
+    public static final MappedQueue open(final MappedFile file, final WakeupSignal wakeupSignal) {
+        return new ManyToManyQueue(file, wakeupSignal);
+    }
+
+    private static void initFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
+        final FileLock lock = fileChannel.lock();
+        try {
+            switch (mode) {
+                case READ_ONLY:
+                    if (fileChannel.size() < HEADER_LENGTH) {
+                        throw new IllegalArgumentException("Invalid file format");
+                    }
+                    break;
+                case READ_WRITE:
+                    if (fileChannel.size() >= HEADER_LENGTH) {
+                        break;
+                    }
+                    //else: FALL THROUGH
+                case READ_WRITE_CLEAR:
+                    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+                    header.putLong(TAIL_POSITION_OFFSET, HEADER_LENGTH);
+                    fileChannel.truncate(0);
+                    fileChannel.write(header, 0);
+                    fileChannel.force(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid mode: " + mode);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    static long frameHeader(final int type, final int payloadLength) {
+        return (((long)type) << 32) | (0xffffffffL & payloadLength);
+    }
+
+    static int frameType(final long frameHeader) {
+        return (int)(frameHeader >>> 32);
+    }
+
+    static int framePayloadLength(final long frameHeader) {
+        return (int)frameHeader;
+    }
+
+    static long frameLength(final long payloadLength) {
+        return (FRAME_HEADER_LENGTH + payloadLength + 7) & ~7L;
+    }
+
+    @Override
+    public Appender appender() {
+        if (file.getMode() == MappedFile.Mode.READ_ONLY) {
+            throw new IllegalStateException("Cannot access appender for file in read-only mode");
+        }
+        return new ManyToManyAppender(file, wakeupSignal);
+    }
+
+    @Override
+    public Enumerator enumerator(final StartPosition startPosition) {
+        return new ManyToManyEnumerator(file, startPosition);
+    }
+
+    @Override
+    public long headPosition() {
+        return HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the tail position from the file header, the position after the last reserved frame.
+     */
+    @Override
+    public synchronized long tailPosition() {
+        if (headerRegion == null) {
+            headerRegion = file.reserveRegion(0);
+        }
+        return UNSAFE.getLongVolatile(null, headerRegion.getAddress(TAIL_POSITION_OFFSET));
+    }
+
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (headerRegion != null) {
+                    file.releaseRegion(headerRegion);
+                    headerRegion = null;
+                }
+            }
+            file.close();
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Fixed size broadcast buffer over a mapped file in the style of agrona's broadcast buffer: a single
+ * {@link BroadcastTransmitter} overwrites the oldest messages and never waits for receivers, while any number of
+ * {@link BroadcastReceiver}s, possibly in other processes, read the most recent messages. Receivers are not
+ * registered anywhere; a receiver that has been lapped by the transmitter detects this and resynchronises with the
+ * latest message. This suits consumers only interested in recent data such as GUIs or throttled clients.
+ * <p>
+ * File layout: a header of {@link #HEADER_LENGTH} bytes with tail intent, tail, latest record position and capacity
+ * each in a separate cache line, followed by the ring buffer. Records consist of an 8 byte record header with the
+ * record length and message type id followed by the message bytes, padded to a multiple of 8 bytes. Records never
+ * wrap; a padding record fills the end of the ring buffer if necessary.
+ */
+public class MappedBroadcastBuffer implements Closeable {
+
+    public static final long DEFAULT_CAPACITY = 1L << 20;//1 MB
+
+    public static final int HEADER_LENGTH = 256;
+    static final int TAIL_INTENT_OFFSET = 0;
+    static final int TAIL_OFFSET = 64;
+    static final int LATEST_OFFSET = 128;
+    static final int CAPACITY_OFFSET = 192;
+
+    static final int RECORD_HEADER_LENGTH = 8;
+    static final int RECORD_LENGTH_OFFSET = 0;
+    static final int TYPE_ID_OFFSET = 4;
+    static final int PADDING_TYPE_ID = -1;
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final AtomicBoolean transmitterCreated = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private MappedBroadcastBuffer(final MappedFile file) {
+        this.file = Objects.requireNonNull(file);
+        this.region = file.reserveRegion(0);
+        this.capacity = UNSAFE.getLong(null, region.getAddress(CAPACITY_OFFSET));
+        if (!isValidCapacity(capacity) || HEADER_LENGTH + capacity > region.getSize()) {
+            file.releaseRegion(region);
+            file.close();
+            throw new IllegalArgumentException("Invalid file format");
+        }
+    }
+
+    public static final MappedBroadcastBuffer createOrReplace(final String fileName) throws IOException {
+        return createOrReplace(fileName, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new broadcast buffer replacing any existing file.
+     *
+     * @param fileName  the file name, for instance a file in {@code /dev/shm}
+     * @param capacity  the capacity of the ring buffer in bytes, a power of two
+     * @return the broadcast buffer
+     * @throws IOException if the file cannot be created
+     */
+    public static final MappedBroadcastBuffer createOrReplace(final String fileName, final long capacity) throws IOException {
+        if (!isValidCapacity(capacity)) {
+            throw new IllegalArgumentException("Capacity must be a power of two and at least 64 but was " + capacity);
+        }
+        final long fileLength = fileLength(capacity);
+        return new MappedBroadcastBuffer(new MappedFile(fileName, MappedFile.Mode.READ_WRITE_CLEAR, fileLength,
+                (c, m) -> initFile(c, capacity)));
+    }
+
+    /**
+     * Opens an existing broadcast buffer, for instance to create receivers in a process other than the one that
+     * created the buffer.
+     *
+     * @param fileName the file name of an existing broadcast buffer
+     * @return the broadcast buffer
+     * @throws IOException if the file does not exist or cannot be opened
+     */
+    public static final MappedBroadcastBuffer open(final String fileName) throws IOException {
+        final File file = new File(fileName);
+        final long granularity = MappedRegion.REGION_SIZE_GRANULARITY;
+        final long fileLength = file.length();
+        if (fileLength < granularity || fileLength % granularity != 0) {
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        return new MappedBroadcastBuffer(new MappedFile(file, MappedFile.Mode.READ_WRITE, fileLength));
+    }
+
+    private static boolean isValidCapacity(final long capacity) {
+        return capacity >= 64 && Long.bitCount(capacity) == 1;
+    }
+
+    private static long fileLength(final long capacity) {
+        final long granularity = MappedRegion.REGION_SIZE_GRANULARITY;
+        return ((HEADER_LENGTH + capacity + granularity - 1) / granularity) * granularity;
+    }
+
+    private static void initFile(final FileChannel fileChannel, final long capacity) throws IOException {
+        final FileLock lock = fileChannel.lock();
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+            header.putLong(CAPACITY_OFFSET, capacity);
+            fileChannel.truncate(0);
+            fileChannel.write(header, 0);
+            //preallocate the whole file, it is mapped as a single region
+            fileChannel.write(ByteBuffer.allocate(1), fileLength(capacity) - 1);
+            fileChannel.force(true);
+        } finally {
+            lock.release();
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the maximum message length, an eighth of the capacity to keep receivers from being lapped while
+     *         reading a single message
+     */
+    public int getMaxMessageLength() {
+        return (int)Math.min(Integer.MAX_VALUE, capacity >> 3);
+    }
+
+    MappedFile getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the single transmitter of this broadcast buffer instance.
+     *
+     * @throws IllegalStateException if the transmitter has already been created
+     */
+    public BroadcastTransmitter transmitter() {
+        ensureNotClosed();
+        if (transmitterCreated.compareAndSet(false, true)) {
+            return new BroadcastTransmitter(this);
+        }
+        throw new IllegalStateException("Only one transmitter supported");
+    }
+
+    /**
+     * Returns a new receiver starting with the next message transmitted.
+     */
+    public BroadcastReceiver receiver() {
+        ensureNotClosed();
+        return new BroadcastReceiver(this);
+    }
+
+    private void ensureNotClosed() {
+        if (closed.get()) {
+            throw new IllegalStateException("Broadcast buffer is closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            file.releaseRegion(region);
+            file.close();
+        }
+    }
+
+    static long align(final long length) {
+        return (length + 7) & ~7L;
+    }
+}
@@ -25,7 +25,17 @@ package org.tools4j.fx.highway.direct;
 
 import java.io.*;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class MappedFile implements Closeable {
@@ -50,11 +60,33 @@ public class MappedFile implements Closeable {
         void init(FileChannel file, Mode mode) throws IOException;
     }
 
+    //monitors of the files opened by this process, file locks of instances for the same file would overlap
+    private static final Map<String, FileMonitor> FILE_MONITORS = new HashMap<>();
+
     private final RandomAccessFile file;
+    private final FileMonitor fileMonitor;
     private final Mode mode;
     private final long regionSize;
+    private final Set<Prefault> prefault;
+
+    private final AtomicLong unpreparedReserveCount = new AtomicLong();
+    private final AtomicLong mapCount = new AtomicLong();
+    private final AtomicLong unmapCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong prefaultFailureCount = new AtomicLong();
+    private final AtomicLong releaseSequence = new AtomicLong();
+    //regions of the window, each holding one reference on behalf of the window
+    private final List<MappedRegion> windowRegions = new ArrayList<>();
+    private volatile int maxMappedRegions;
 
     private volatile AtomicReferenceArray<MappedRegion> mappedRegions = new AtomicReferenceArray<MappedRegion>(2);
+    private final AtomicInteger maxReservedIndex = new AtomicInteger(-1);
+    private volatile long knownFileLength;
+    private volatile boolean lockOnExtend;
+    private RegionPreparer regionPreparer;
+    private Flusher flusher;
+    //position up to which the single writer of the file has written complete data, see setWrittenPosition
+    private final AtomicLong writtenPosition = new AtomicLong();
 
     public MappedFile(final String fileName, final Mode mode, final long regionSize) throws IOException {
         this(new File(fileName), mode, regionSize);
@@ -69,6 +101,14 @@ public class MappedFile implements Closeable {
     }
 
     public MappedFile(final File file, final Mode mode, final long regionSize, final FileInitialiser fileInitialiser) throws IOException {
+        this(file, mode, regionSize, fileInitialiser, EnumSet.noneOf(Prefault.class));
+    }
+
+    public MappedFile(final String fileName, final Mode mode, final long regionSize, final FileInitialiser fileInitialiser, final Set<Prefault> prefault) throws IOException {
+        this(new File(fileName), mode, regionSize, fileInitialiser, prefault);
+    }
+
+    public MappedFile(final File file, final Mode mode, final long regionSize, final FileInitialiser fileInitialiser, final Set<Prefault> prefault) throws IOException {
         if (regionSize <= 0 || (regionSize % MappedRegion.REGION_SIZE_GRANULARITY) != 0) {
             throw new IllegalArgumentException("Region size must be positive and a multiple of " + MappedRegion.REGION_SIZE_GRANULARITY + " but was " + regionSize);
         }
@@ -83,9 +123,40 @@ public class MappedFile implements Closeable {
         }
         final RandomAccessFile raf = new RandomAccessFile(file, mode.getRandomAccessMode());
         this.file = Objects.requireNonNull(raf);
+        this.fileMonitor = acquireFileMonitor(file.getCanonicalPath());
         this.mode = Objects.requireNonNull(mode);
         this.regionSize = regionSize;
-        fileInitialiser.init(raf.getChannel(), mode);
+        this.prefault = EnumSet.noneOf(Prefault.class);
+        for (final Prefault p : prefault) {
+            if (p.isSupported()) {
+                this.prefault.add(p);
+            }
+        }
+        try {
+            synchronized (fileMonitor) {
+                fileInitialiser.init(raf.getChannel(), mode);
+            }
+        } catch (final IOException | RuntimeException e) {
+            releaseFileMonitor(fileMonitor);
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static FileMonitor acquireFileMonitor(final String path) {
+        synchronized (FILE_MONITORS) {
+            final FileMonitor monitor = FILE_MONITORS.computeIfAbsent(path, FileMonitor::new);
+            monitor.users++;
+            return monitor;
+        }
+    }
+
+    private static void releaseFileMonitor(final FileMonitor monitor) {
+        synchronized (FILE_MONITORS) {
+            if (--monitor.users == 0) {
+                FILE_MONITORS.remove(monitor.path);
+            }
+        }
     }
 
     public Mode getMode() {
@@ -96,6 +167,14 @@ public class MappedFile implements Closeable {
         return regionSize;
     }
 
+    /**
+     * Returns the {@link Prefault#isSupported() supported} prefault options applied to regions mapped by the
+     * {@link RegionPreparer} of this file.
+     */
+    public Set<Prefault> getPrefault() {
+        return Collections.unmodifiableSet(prefault);
+    }
+
     public long getFileLength() {
         ensureNotClosed();
         try {
@@ -114,6 +193,78 @@ public class MappedFile implements Closeable {
         }
     }
 
+    /**
+     * Defines whether {@link #ensureFileLength(long)} takes an exclusive file lock while extending the file, which is
+     * required if multiple processes append to the file, see {@link ManyToManyQueue}. Files written by a single
+     * appender are extended without file lock.
+     *
+     * @param lockOnExtend true to lock the file while extending it
+     */
+    public void setLockOnExtend(final boolean lockOnExtend) {
+        this.lockOnExtend = lockOnExtend;
+    }
+
+    public boolean isLockOnExtend() {
+        return lockOnExtend;
+    }
+
+    /**
+     * Extends the file to the given minimum length if it is shorter. The file is never truncated by concurrent
+     * extensions of threads using this instance; if {@link #setLockOnExtend(boolean) lock on extend} is set, this also
+     * holds for other processes and other instances for the same file. The file length is only queried if the length
+     * known to this instance is insufficient, hence calling this method is cheap in the common case.
+     *
+     * @param minLength the minimum file length
+     */
+    public void ensureFileLength(final long minLength) {
+        if (knownFileLength >= minLength) {
+            return;
+        }
+        //a file in read-only mode can neither be locked exclusively nor extended
+        if (lockOnExtend && mode != Mode.READ_ONLY) {
+            //file locks of instances of this process for the same file would fail with OverlappingFileLockException
+            synchronized (fileMonitor) {
+                extendLocked(minLength);
+            }
+        } else {
+            synchronized (this) {
+                extend(minLength);
+            }
+        }
+    }
+
+    private void extend(final long minLength) {
+        try {
+            final long length = file.length();
+            if (length < minLength && mode != Mode.READ_ONLY) {
+                setFileLength(minLength);
+            }
+            knownFileLength = mode == Mode.READ_ONLY ? length : Math.max(length, minLength);
+        } catch (final IOException e) {
+            throw new RuntimeException("could not ensure file length " + minLength, e);
+        }
+    }
+
+    private void extendLocked(final long minLength) {
+        final long position = knownFileLength;
+        final FileLock lock;
+        try {
+            //locks up to the maximum file length, hence overlaps with the lock of every other extension
+            lock = file.getChannel().lock(position, Long.MAX_VALUE - position, false);
+        } catch (final IOException e) {
+            throw new RuntimeException("could not lock file to ensure file length " + minLength, e);
+        }
+        try {
+            extend(minLength);
+        } finally {
+            try {
+                lock.release();
+            } catch (final IOException e) {
+                throw new RuntimeException("could not release file lock", e);
+            }
+        }
+    }
+
     public int getRegionIndexForPosition(final long position) {
         final long index = position / regionSize;
         return index <= Integer.MAX_VALUE ? (int)index : -1;
@@ -125,7 +276,13 @@ public class MappedFile implements Closeable {
     }
     public void releaseRegionInternal(final AtomicReferenceArray<MappedRegion> mappedRegions,
                                       final MappedRegion mappedRegion) {
-        if (0 == mappedRegion.decAndGetRefCount()) {
+        final int refCount = mappedRegion.decAndGetRefCount();
+        if (refCount == 1 && mappedRegion.isCached()) {
+            //only referenced by the window now
+            mappedRegion.setLastReleased(releaseSequence.incrementAndGet());
+        }
+        if (0 == refCount && mappedRegion.isClosed()) {
+            unmapCount.incrementAndGet();
             final long index = mappedRegion.getIndex();
             if (index < mappedRegions.length()) {
                 final int ix = (int) index;
@@ -138,29 +295,267 @@ public class MappedFile implements Closeable {
     }
 
     public MappedRegion reserveRegion(final int index) {
+        //regions are reserved concurrently by appenders and enumerators, the maximum must never move backwards
+        if (index > maxReservedIndex.get()) {
+            maxReservedIndex.accumulateAndGet(index, Math::max);
+        }
+        return reserveRegion(index, true);
+    }
+
+    /**
+     * Reserves a region on behalf of a {@link RegionPreparer}; same as {@link #reserveRegion(int)} but neither
+     * counted as unprepared reservation nor taken into account for {@link #getMaxReservedIndex()}.
+     */
+    MappedRegion prepareRegion(final int index) {
+        return reserveRegion(index, false);
+    }
+
+    /**
+     * Reserves a region on behalf of a {@link Flusher}. A region already mapped is shared, otherwise the region is
+     * mapped privately and unmapped again by {@link #releaseFlushedRegion(MappedRegion)}. Neither the statistics used
+     * by the {@link RegionPreparer} nor the region window and its release order are affected, and the file is never
+     * extended since only written bytes are flushed.
+     */
+    MappedRegion reserveFlushedRegion(final int index) {
+        ensureNotClosed();
+        final AtomicReferenceArray<MappedRegion> regions = mappedRegions;
+        if (index < regions.length()) {
+            final MappedRegion mr = regions.get(index);
+            if (mr != null && !mr.isClosed() && mr.incAndGetRefCount() > 0) {
+                return mr;
+            }
+        }
+        return new MappedRegion(file.getChannel(), index, index * regionSize, regionSize, mode == Mode.READ_ONLY);
+    }
+
+    /**
+     * Releases a region reserved via {@link #reserveFlushedRegion(int)} without touching the region window.
+     */
+    void releaseFlushedRegion(final MappedRegion mappedRegion) {
+        final int index = mappedRegion.getIndex();
+        final AtomicReferenceArray<MappedRegion> regions = mappedRegions;
+        final boolean shared = index < regions.length() && regions.get(index) == mappedRegion;
+        if (0 == mappedRegion.decAndGetRefCount() && shared && mappedRegion.isClosed()) {
+            //the region has been released by its other users while flushing, we were the last one
+            unmapCount.incrementAndGet();
+            regions.compareAndSet(index, mappedRegion, null);
+        }
+    }
+
+    private MappedRegion reserveRegion(final int index, final boolean countUnprepared) {
         ensureNotClosed();
         ensureSufficientMappedRegionsCapacity(index);
         //ASSERT: index < mappedRegions.length
         final MappedRegion mr = mappedRegions.get(index);
         if (mr == null || mr.isClosed() || mr.incAndGetRefCount() == 0) {
             final long position = index * regionSize;
-            final long minLen = position + regionSize;
-            final long curLen = getFileLength();
-            if (curLen < minLen) {
-                setFileLength(minLen);
+            ensureFileLength(position + regionSize);
+            final MappedRegion newRegion = new MappedRegion(file.getChannel(), index, position, regionSize, mode == Mode.READ_ONLY);
+            if (!countUnprepared) {
+                //prefaulting is expensive and hence only done by the preparer, never on the hot path
+                for (final Prefault p : prefault) {
+                    if (!p.apply(newRegion, mode)) {
+                        prefaultFailureCount.incrementAndGet();
+                    }
+                }
             }
-            final MappedRegion newRegion = new MappedRegion(file.getChannel(), index, position, regionSize);
+            mapCount.incrementAndGet();
             if (mappedRegions.compareAndSet(index, mr, newRegion)) {
+                if (countUnprepared) {
+                    unpreparedReserveCount.incrementAndGet();
+                }
+                if (maxMappedRegions > 0) {
+                    addToWindow(newRegion);
+                }
                 return newRegion;
             }
             //region has been created by someone else
             newRegion.decAndGetRefCount();
-            return reserveRegion(index);
+            unmapCount.incrementAndGet();
+            return reserveRegion(index, countUnprepared);
         }
         //region exists and ref count increment was successful
         return mr;
     }
 
+    private void addToWindow(final MappedRegion region) {
+        region.incAndGetRefCount();
+        region.setCached(true);
+        synchronized (windowRegions) {
+            windowRegions.add(region);
+            evictIdleRegions();
+        }
+    }
+
+    //evicts the least recently released regions only referenced by the window until the window fits
+    private void evictIdleRegions() {
+        final int max = maxMappedRegions;
+        while (windowRegions.size() > max) {
+            int victim = -1;
+            for (int i = 0; i < windowRegions.size(); i++) {
+                final MappedRegion region = windowRegions.get(i);
+                if (region.getRefCount() == 1 && (victim < 0 || region.getLastReleased() < windowRegions.get(victim).getLastReleased())) {
+                    victim = i;
+                }
+            }
+            if (victim < 0) {
+                //all regions are in use and cannot be unmapped
+                return;
+            }
+            final MappedRegion region = windowRegions.remove(victim);
+            region.setCached(false);
+            //someone could have reserved it in the meantime in which case the last user unmaps it
+            releaseRegionInternal(mappedRegions, region);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets the maximum number of regions that remain mapped. With the default of zero, a region is unmapped as
+     * soon as it is no longer reserved. Otherwise regions remain mapped when released, and the least recently
+     * released ones are evicted when a new region is mapped and the maximum is exceeded; they are mapped again
+     * when reserved the next time. Regions in use are never unmapped, hence the maximum can be exceeded while all
+     * mapped regions are in use.
+     *
+     * @param maxMappedRegions the maximum number of mapped regions, or zero to unmap regions when released
+     */
+    public void setMaxMappedRegions(final int maxMappedRegions) {
+        if (maxMappedRegions < 0) {
+            throw new IllegalArgumentException("Max mapped regions must not be negative: " + maxMappedRegions);
+        }
+        ensureNotClosed();
+        synchronized (windowRegions) {
+            this.maxMappedRegions = maxMappedRegions;
+            evictIdleRegions();
+        }
+    }
+
+    public int getMaxMappedRegions() {
+        return maxMappedRegions;
+    }
+
+    /**
+     * Returns the number of reservations of the region other than the one held by the region window.
+     */
+    int getReservedCount(final MappedRegion region) {
+        final int refCount = region.getRefCount();
+        return region.isCached() ? refCount - 1 : refCount;
+    }
+
+    /**
+     * Returns the number of regions mapped so far including regions mapped again after they had been unmapped.
+     */
+    public long getMapCount() {
+        return mapCount.get();
+    }
+
+    /**
+     * Returns the number of regions unmapped so far.
+     */
+    public long getUnmapCount() {
+        return unmapCount.get();
+    }
+
+    /**
+     * Returns the number of regions evicted from the region window; the regions are unmapped unless they were
+     * reserved again concurrently in which case they are unmapped when released.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of prefault options that failed when applied to a region, for instance mlock exceeding the
+     * RLIMIT_MEMLOCK resource limit; the region is used without the failed option.
+     */
+    public long getPrefaultFailureCount() {
+        return prefaultFailureCount.get();
+    }
+
+    /**
+     * Returns the number of currently mapped regions.
+     */
+    public long getMappedRegionCount() {
+        return mapCount.get() - unmapCount.get();
+    }
+
+    /**
+     * Returns the highest region index ever reserved via {@link #reserveRegion(int)}, or -1 if no region has
+     * been reserved yet.
+     */
+    public int getMaxReservedIndex() {
+        return maxReservedIndex.get();
+    }
+
+    /**
+     * Returns the number of reservations that had to map the region on the caller's thread because it was not
+     * prepared or not mapped anymore.
+     */
+    public long getUnpreparedReserveCount() {
+        return unpreparedReserveCount.get();
+    }
+
+    /**
+     * Starts a {@link RegionPreparer} for this file that keeps the given number of regions prepared ahead of the
+     * highest reserved region and releases regions no longer in use in the background.
+     *
+     * @param regionsAhead  number of regions to map ahead of the highest reserved region
+     * @param idleNanos     time to park the preparer thread if there is no work to do
+     * @return the started region preparer, stopped at the latest when this file is closed
+     */
+    public synchronized RegionPreparer startRegionPreparer(final int regionsAhead, final long idleNanos) {
+        ensureNotClosed();
+        if (regionPreparer != null) {
+            throw new IllegalStateException("Region preparer already started");
+        }
+        regionPreparer = new RegionPreparer(this, regionsAhead, idleNanos);
+        regionPreparer.start();
+        return regionPreparer;
+    }
+
+    /**
+     * Sets the position up to which the writer of this file has written complete data, for instance the end of the
+     * last message published by an appender. The position is used by the {@link Flusher}; it is set with an ordered
+     * write and is hence cheap to call on the hot path.
+     *
+     * @param position the position up to which data is complete
+     */
+    public void setWrittenPosition(final long position) {
+        writtenPosition.lazySet(position);
+    }
+
+    public long getWrittenPosition() {
+        return writtenPosition.get();
+    }
+
+    /**
+     * Starts a {@link Flusher} for this file that writes modified bytes up to the
+     * {@link #setWrittenPosition(long) written position} to the storage device in the background as defined by the
+     * given sync policy.
+     *
+     * @param syncPolicy    the policy defining when to flush
+     * @return the started flusher, stopped at the latest when this file is closed
+     */
+    public synchronized Flusher startFlusher(final SyncPolicy syncPolicy) {
+        ensureNotClosed();
+        if (mode == Mode.READ_ONLY) {
+            throw new IllegalStateException("Cannot flush file in read-only mode");
+        }
+        if (flusher != null) {
+            throw new IllegalStateException("Flusher already started");
+        }
+        flusher = new Flusher(this, syncPolicy, Flusher.DEFAULT_IDLE_NANOS);
+        flusher.start();
+        return flusher;
+    }
+
+    /**
+     * @return the flusher of this file or null if no flusher has been started
+     */
+    public synchronized Flusher getFlusher() {
+        return flusher;
+    }
+
     private void ensureSufficientMappedRegionsCapacity(final int index) {
         if (index < mappedRegions.length()) {
             return;
@@ -201,6 +596,28 @@ public class MappedFile implements Closeable {
             return;
         }
         try {
+            final Flusher fl;
+            final RegionPreparer preparer;
+            synchronized (this) {
+                fl = flusher;
+                preparer = regionPreparer;
+                regionPreparer = null;
+            }
+            if (fl != null) {
+                //final flush, outside of synchronized block as the flusher thread may be waiting for our lock
+                fl.close();
+            }
+            if (preparer != null) {
+                //must be closed outside of synchronized block as preparer thread may be waiting for our lock
+                preparer.close();
+            }
+            synchronized (windowRegions) {
+                for (final MappedRegion region : windowRegions) {
+                    region.setCached(false);
+                    releaseRegionInternal(mappedRegions, region);
+                }
+                windowRegions.clear();
+            }
             final AtomicReferenceArray<MappedRegion> arr;
             synchronized (this) {
                 arr = mappedRegions;
@@ -230,9 +647,18 @@ public class MappedFile implements Closeable {
             }
             file.getChannel().close();
             file.close();
+            releaseFileMonitor(fileMonitor);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static final class FileMonitor {
+        private final String path;
+        private int users;
+
+        FileMonitor(final String path) {
+            this.path = Objects.requireNonNull(path);
+        }
+    }
 }
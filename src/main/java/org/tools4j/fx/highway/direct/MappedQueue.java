@@ -31,6 +31,52 @@ import java.io.Closeable;
  */
 public interface MappedQueue extends Closeable {
     Appender appender();
-    Enumerator enumerator();
+
+    /**
+     * Returns an enumerator starting at the head of the queue.
+     */
+    default Enumerator enumerator() {
+        return enumerator(StartPosition.HEAD);
+    }
+
+    /**
+     * Returns an enumerator starting at the given position.
+     *
+     * @param startPosition the position of the first message read by the enumerator
+     * @return a new enumerator
+     * @throws IllegalArgumentException if the start position is {@link StartPosition.Type#AT_POSITION AT_POSITION}
+     *                                  and does not denote a valid position in this queue
+     */
+    Enumerator enumerator(StartPosition startPosition);
+
+    /**
+     * Returns an enumerator of a named consumer resuming at the position recorded in the given cursor.
+     *
+     * @param cursor            the cursor of the consumer, closed when the enumerator is closed
+     * @param initialPosition   the start position if the cursor has not recorded a position yet
+     * @return a new enumerator recording its position in the cursor
+     * @see CursorEnumerator
+     */
+    default Enumerator enumerator(final ConsumerCursor cursor, final StartPosition initialPosition) {
+        return new CursorEnumerator(this, cursor, initialPosition);
+    }
+
+    /**
+     * Returns an enumerator returning only messages with a {@link FrameHeader} accepted by the filter.
+     *
+     * @param filter            the filter applied to the frame header of every message
+     * @param startPosition     the position of the first message read by the enumerator
+     * @return a new filtered enumerator
+     * @see FilteredEnumerator
+     */
+    default FilteredEnumerator enumerator(final FrameFilter filter, final StartPosition startPosition) {
+        return new FilteredEnumerator(enumerator(startPosition), filter);
+    }
+
+    /**
+     * Returns the signal used by the appender of this queue instance to wake up consumers parked by a
+     * {@link WakeableIdleStrategy}.
+     */
+    WakeupSignal wakeupSignal();
     void close();
 }
@@ -25,7 +25,11 @@ package org.tools4j.fx.highway.direct;
 
 import sun.nio.ch.FileChannelImpl;
 
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -38,6 +42,14 @@ public final class MappedRegion {
 
     private static final Method MAP_METHOD = getMethod(FileChannelImpl.class, "map0", int.class, long.class, long.class);
     private static final Method UNMAP_METHOD = getMethod(FileChannelImpl.class, "unmap0", long.class, long.class);
+    //msync of an address range, an instance method of MappedByteBuffer not using any state of the instance
+    private static final Method FORCE_METHOD = getMethod(MappedByteBuffer.class, "force0", FileDescriptor.class, long.class, long.class);
+    private static final MappedByteBuffer FORCE_INSTANCE = (MappedByteBuffer)ByteBuffer.allocateDirect(1);
+    private static final Field FD_FIELD = getField(FileChannelImpl.class, "fd");
+
+    //map modes of FileChannelImpl.map0
+    private static final int MAP_RO = 0;
+    private static final int MAP_RW = 1;
 
     public static final long REGION_SIZE_GRANULARITY = initRegionSizeGranularity();
 
@@ -48,13 +60,20 @@ public final class MappedRegion {
     private final long address;
     private final AtomicInteger refCount = new AtomicInteger(1);
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    //region window state maintained by MappedFile
+    private volatile boolean cached;
+    private volatile long lastReleased;
 
     public MappedRegion(final FileChannel fileChannel, final int index, final long position, final long size) {
+        this(fileChannel, index, position, size, false);
+    }
+
+    public MappedRegion(final FileChannel fileChannel, final int index, final long position, final long size, final boolean readOnly) {
         this.fileChannel = Objects.requireNonNull(fileChannel);
         this.index = index;
         this.position = position;
         this.size = size;
-        this.address = map(fileChannel, position, size);
+        this.address = map(fileChannel, readOnly ? MAP_RO : MAP_RW, position, size);
     }
 
     public int getIndex() {
@@ -91,6 +110,11 @@ public final class MappedRegion {
         return closed.get();
     }
 
+    public int getRefCount() {
+        final int rc = refCount.get();
+        return rc > 0 ? rc : 0;
+    }
+
     public int incAndGetRefCount() {
         if (!isClosed()) {
             final int rc = refCount.incrementAndGet();
@@ -112,6 +136,22 @@ public final class MappedRegion {
         return rc > 0 ? rc : 0;
     }
 
+    boolean isCached() {
+        return cached;
+    }
+
+    void setCached(final boolean cached) {
+        this.cached = cached;
+    }
+
+    long getLastReleased() {
+        return lastReleased;
+    }
+
+    void setLastReleased(final long lastReleased) {
+        this.lastReleased = lastReleased;
+    }
+
     int decAndGetRefCountButDontClose() {
         return refCount.decrementAndGet();
     }
@@ -130,9 +170,9 @@ public final class MappedRegion {
         }
     }
 
-    private static long map(final FileChannel fileChannel, final long position, final long length) {
+    private static long map(final FileChannel fileChannel, final int mapMode, final long position, final long length) {
         try {
-            return (long) MAP_METHOD.invoke(fileChannel, 1, position, length);
+            return (long) MAP_METHOD.invoke(fileChannel, mapMode, position, length);
         } catch (final Exception e) {
             throw new RuntimeException("Mapping failed for " + fileChannel + ":" + position + ":" + length, e);
         }
@@ -146,6 +186,29 @@ public final class MappedRegion {
         }
     }
 
+    /**
+     * Writes modified bytes in the given range of this region to the storage device and waits until this has
+     * completed, in the same way as {@link MappedByteBuffer#force()}.
+     *
+     * @param offset    the offset of the first byte, relative to the region start
+     * @param length    the number of bytes to write
+     */
+    public void force(final long offset, final long length) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IllegalArgumentException("Invalid range [" + offset + ", " + (offset + length) + ") for region size " + size);
+        }
+        if (isClosed()) {
+            throw new IllegalStateException("Region is closed");
+        }
+        //msync requires a page aligned start address, the region start address is aligned
+        final long alignedOffset = offset - (offset % REGION_SIZE_GRANULARITY);
+        try {
+            FORCE_METHOD.invoke(FORCE_INSTANCE, FD_FIELD.get(fileChannel), address + alignedOffset, length + offset - alignedOffset);
+        } catch (final Exception e) {
+            throw new RuntimeException("Forcing failed for " + fileChannel + ":" + (position + offset) + ":" + length, e);
+        }
+    }
+
     private static long initRegionSizeGranularity() {
         try {
             return (Long)getMethod(FileChannelImpl.class, "initIDs").invoke(null);
@@ -154,6 +217,16 @@ public final class MappedRegion {
         }
     }
 
+    private static Field getField(final Class<?> cls, final String name) {
+        try {
+            final Field f = cls.getDeclaredField(name);
+            f.setAccessible(true);
+            return f;
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not get declared field " + cls.getName() + "." + name, e);
+        }
+    }
+
     private static Method getMethod(final Class<?> cls, final String name, final Class<?>... params) {
         try {
             final Method m = cls.getDeclaredMethod(name, params);
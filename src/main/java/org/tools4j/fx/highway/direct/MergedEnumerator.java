@@ -0,0 +1,153 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * Enumerator merging the messages of several enumerators, for instance of the partitions of a
+ * {@link PartitionedMappedQueue} a consumer subscribes to. Messages of the same enumerator are returned in order,
+ * the enumerators are visited in round robin order as messages of different enumerators are not ordered. Closing
+ * this enumerator closes all merged enumerators.
+ * <p>
+ * The position of a merged enumerator is composed of the positions of the merged enumerators, available through
+ * {@link #position(int)} to resume every partition individually. {@link #position()} returns their sum which grows
+ * with every message read, for instance to wrap a merged view in a {@link FilteredEnumerator}, but is not a valid
+ * start position. Readers return this enumerator when the message is finished, hence chained invocations continue
+ * with the merged enumerators.
+ */
+public final class MergedEnumerator implements Enumerator {
+
+    private final Enumerator[] enumerators;
+    private final DelegatingMessageReader messageReader = new DelegatingMessageReader(this);
+    private int next;
+    private int selected = -1;
+
+    public MergedEnumerator(final Enumerator... enumerators) {
+        if (enumerators.length == 0) {
+            throw new IllegalArgumentException("No enumerators to merge");
+        }
+        this.enumerators = enumerators.clone();
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        if (selected >= 0 && enumerators[selected].hasNextMessage()) {
+            return true;
+        }
+        for (int i = 0; i < enumerators.length; i++) {
+            final int index = (next + i) % enumerators.length;
+            if (enumerators[index].hasNextMessage()) {
+                selected = index;
+                return true;
+            }
+        }
+        selected = -1;
+        return false;
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        if (!hasNextMessage()) {
+            throw new IllegalStateException("No next message found");
+        }
+        final MessageReader reader = enumerators[selected].readNextMessage();
+        next = (selected + 1) % enumerators.length;
+        selected = -1;
+        return messageReader.wrap(reader);
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        readNextMessage().finishReadMessage();
+        return this;
+    }
+
+    /**
+     * Drains the merged enumerators in turn, each up to the remaining limit, so that messages of the same
+     * enumerator are read in a tight loop.
+     */
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        int count = 0;
+        for (int i = 0; i < enumerators.length && count < limit; i++) {
+            count += enumerators[(next + i) % enumerators.length].drain(handler, limit - count);
+        }
+        next = (next + 1) % enumerators.length;
+        selected = -1;
+        return count;
+    }
+
+    /**
+     * Moves every merged enumerator to the message with the given sequence number of its own enumeration.
+     *
+     * @throws IllegalArgumentException if sequence is negative or greater than the number of messages of any merged
+     *                                  enumerator, in which case enumerators before that one have already been moved
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        for (final Enumerator enumerator : enumerators) {
+            enumerator.seek(sequence);
+        }
+        next = 0;
+        selected = -1;
+        return this;
+    }
+
+    /**
+     * Returns the sum of the positions of all merged enumerators, which grows with every message read. Use
+     * {@link #position(int)} for start positions.
+     */
+    @Override
+    public long position() {
+        long position = 0;
+        for (final Enumerator enumerator : enumerators) {
+            position += enumerator.position();
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position of a merged enumerator, which can be passed to {@link StartPosition#atPosition(long)} to
+     * resume the enumeration of its queue.
+     *
+     * @param index the index of the merged enumerator in the order passed to the constructor
+     * @return the position of the next message of the merged enumerator
+     */
+    public long position(final int index) {
+        return enumerators[index].position();
+    }
+
+    /**
+     * Returns the number of merged enumerators.
+     */
+    public int getEnumeratorCount() {
+        return enumerators.length;
+    }
+
+    @Override
+    public void close() {
+        for (final Enumerator enumerator : enumerators) {
+            enumerator.close();
+        }
+    }
+}
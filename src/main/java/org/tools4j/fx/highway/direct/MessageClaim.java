@@ -0,0 +1,60 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * A range of bytes claimed in a {@link MappedQueue} for a single message. The bytes are written directly through
+ * the {@link #buffer() buffer}, for instance with an SBE encoder, and become visible to enumerators when the claim
+ * is committed.
+ */
+public interface MessageClaim {
+    /**
+     * Returns the buffer wrapping the claimed bytes. The buffer starts at index zero and has the claimed length.
+     * It must not be used after the claim has been committed or aborted.
+     *
+     * @return the buffer to write the message to
+     */
+    MutableDirectBuffer buffer();
+
+    /**
+     * @return the number of bytes claimed
+     */
+    int length();
+
+    /**
+     * Finishes the message written to the claimed bytes.
+     *
+     * @return the appender to append the next message
+     */
+    Appender commit();
+
+    /**
+     * Discards the claimed bytes; no message is appended.
+     *
+     * @return the appender to append the next message
+     */
+    Appender abort();
+}
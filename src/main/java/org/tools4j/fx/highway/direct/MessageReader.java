@@ -23,6 +23,11 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteBuffer;
+
 /**
  * Message writer offers methods to write different value types for elements of a message.
  */
@@ -41,5 +46,62 @@ public interface MessageReader {
     CharSequence getStringAscii();
     CharSequence getStringUtf8();
     CharSequence getString();
+
+    /**
+     * Reads a string written with {@link MessageWriter#putStringAscii(CharSequence)} and appends its characters to
+     * dst, without allocation if dst has sufficient capacity; the same applies to the other string overloads.
+     */
+    MessageReader getStringAscii(Appendable dst);
+
+    /**
+     * Reads a string written with {@link MessageWriter#putStringAscii(CharSequence)} replacing the content of dst.
+     */
+    MessageReader getStringAscii(MutableAsciiString dst);
+    MessageReader getStringUtf8(Appendable dst);
+    MessageReader getString(Appendable dst);
+
+    /**
+     * Reads a string written with {@link MessageWriter#putStringAscii(CharSequence)} and compares it with value
+     * without decoding it into a char sequence.
+     *
+     * @param value the value to compare with
+     * @return true if the string read is equal to value
+     */
+    boolean equalsStringAscii(CharSequence value);
+    MessageReader getBytes(byte[] dst);
+    MessageReader getBytes(byte[] dst, int offset, int length);
+
+    /**
+     * Reads length bytes into dst starting at offset; the position of dst is not changed.
+     */
+    MessageReader getBytes(ByteBuffer dst, int offset, int length);
+    MessageReader getBytes(MutableDirectBuffer dst, int offset, int length);
+
+    /**
+     * Returns a buffer with the bytes of the current message that have not been read yet, for instance to decode
+     * the message with an SBE decoder. The buffer starts at index zero and is valid until the message is finished
+     * or this method is invoked again; reading from the buffer does not change the position of this reader.
+     * <p>
+     * Messages within a single region are wrapped in place. Messages spanning multiple regions are copied; note
+     * that such a copy contains the padding bytes the writer inserted before a value that did not fit into the
+     * remaining bytes of a region. Messages written with {@link Appender#claim(int)} never span regions. The
+     * buffer may contain trailing padding bytes after the message.
+     *
+     * @return a buffer with the remaining bytes of the current message
+     */
+    DirectBuffer buffer();
+
+    /**
+     * Returns the number of bytes that can be read from the current position until the end of the region of the
+     * underlying queue. A value that does not fit into the remaining bytes was written at the start of the next
+     * region, and the reader skips the padding bytes in between.
+     *
+     * @return the number of bytes to the end of the current region, or {@link Long#MAX_VALUE} if the reader has no
+     *         region boundaries
+     */
+    default long regionBytesRemaining() {
+        return Long.MAX_VALUE;
+    }
+
     Enumerator finishReadMessage();
 }
@@ -23,6 +23,10 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.DirectBuffer;
+
+import java.nio.ByteBuffer;
+
 /**
  * Message writer offers methods to write different value types for elements of a message.
  */
@@ -41,5 +45,13 @@ public interface MessageWriter {
     MessageWriter putStringAscii(CharSequence value);
     MessageWriter putStringUtf8(CharSequence value);
     MessageWriter putString(CharSequence value);
+    MessageWriter putBytes(byte[] src);
+    MessageWriter putBytes(byte[] src, int offset, int length);
+
+    /**
+     * Writes length bytes of src starting at offset; the position of src is not changed.
+     */
+    MessageWriter putBytes(ByteBuffer src, int offset, int length);
+    MessageWriter putBytes(DirectBuffer src, int offset, int length);
     Appender finishAppendMessage();
 }
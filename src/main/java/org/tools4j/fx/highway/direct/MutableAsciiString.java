@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable mutable sequence of ASCII characters, for instance to read strings without allocation through
+ * {@link MessageReader#getStringAscii(MutableAsciiString)}. Characters are stored as single bytes; the capacity
+ * grows when needed but is never reduced.
+ */
+public final class MutableAsciiString implements CharSequence {
+
+    private byte[] chars;
+    private int length;
+
+    public MutableAsciiString() {
+        this(16);
+    }
+
+    public MutableAsciiString(final int capacity) {
+        this.chars = new byte[capacity];
+    }
+
+    public MutableAsciiString clear() {
+        length = 0;
+        return this;
+    }
+
+    public MutableAsciiString append(final char ch) {
+        ensureCapacity(length + 1);
+        chars[length++] = (byte)ch;
+        return this;
+    }
+
+    public MutableAsciiString append(final CharSequence value) {
+        final int len = value.length();
+        ensureCapacity(length + len);
+        for (int i = 0; i < len; i++) {
+            chars[length + i] = (byte)value.charAt(i);
+        }
+        length += len;
+        return this;
+    }
+
+    //replaces the content with length bytes read from the reader
+    MutableAsciiString read(final MessageReader reader, final int length) {
+        this.length = 0;
+        ensureCapacity(length);
+        reader.getBytes(chars, 0, length);
+        this.length = length;
+        return this;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, 2 * chars.length));
+        }
+    }
+
+    public int capacity() {
+        return chars.length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + length);
+        }
+        return (char)(chars[index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ") for length " + length);
+        }
+        return new String(chars, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean contentEquals(final CharSequence value) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((chars[i] & 0xff) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return contentEquals((MutableAsciiString)o);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (chars[i] & 0xff);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import com.sun.jna.Function;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+
+/**
+ * Small helper invoking madvise and mlock of the C library via JNA. All methods are no-ops returning false if
+ * the native functions are not available, for instance because JNA is missing or the OS is not supported.
+ */
+final class NativeMemory {
+
+    static final int MADV_WILLNEED = 3;
+    static final int MADV_HUGEPAGE = 14;
+
+    private static final Function MADVISE = getFunction("madvise");
+    private static final Function MLOCK = getFunction("mlock");
+
+    static boolean isAvailable() {
+        return MADVISE != null && MLOCK != null;
+    }
+
+    static boolean madvise(final long address, final long length, final int advice) {
+        return MADVISE != null && 0 == MADVISE.invokeInt(new Object[] {new Pointer(address), length, advice});
+    }
+
+    static boolean mlock(final long address, final long length) {
+        return MLOCK != null && 0 == MLOCK.invokeInt(new Object[] {new Pointer(address), length});
+    }
+
+    private static Function getFunction(final String name) {
+        try {
+            return NativeLibrary.getInstance("c").getFunction(name);
+        } catch (final Throwable t) {
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ package org.tools4j.fx.highway.direct;
 
 import java.util.Objects;
 
+import static org.tools4j.fx.highway.direct.OneToManyQueue.*;
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 /**
@@ -33,11 +34,19 @@ import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 public final class OneToManyAppender implements Appender {
 
     private final MappedFile file;
+    private final WakeupSignal wakeupSignal;
     private final MessageWriterImpl messageWriter;
+    private final MessageClaimImpl messageClaim;
 
     public OneToManyAppender(final MappedFile file) {
+        this(file, new WakeupSignal());
+    }
+
+    public OneToManyAppender(final MappedFile file, final WakeupSignal wakeupSignal) {
         this.file = Objects.requireNonNull(file);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
         this.messageWriter = new MessageWriterImpl();
+        this.messageClaim = new MessageClaimImpl();
     }
 
     @Override
@@ -45,6 +54,29 @@ public final class OneToManyAppender implements Appender {
         return messageWriter.startAppendMessage();
     }
 
+    @Override
+    public MessageClaim claim(final int length) {
+        return messageClaim.claim(messageWriter.startClaim(length), length);
+    }
+
+    @Override
+    public Appender appendBatch() {
+        messageWriter.startBatch();
+        return this;
+    }
+
+    @Override
+    public Appender commitBatch() {
+        messageWriter.commitBatch();
+        return this;
+    }
+
+    @Override
+    public Appender abortBatch() {
+        messageWriter.abortBatch();
+        return this;
+    }
+
     @Override
     public void close() {
         messageWriter.close();
@@ -53,21 +85,62 @@ public final class OneToManyAppender implements Appender {
     private final class MessageWriterImpl extends AbstractUnsafeMessageWriter {
 
         private final RollingRegionPointer ptr = new RollingRegionPointer(file);
+        private final MappedRegion headerRegion = file.reserveRegion(0);
+        private final long tailCheckpointAddress = headerRegion.getAddress(TAIL_CHECKPOINT_OFFSET);
+        private int checkpointRegionIndex = -1;
 
         private MappedRegion startRegion;
         private long startOffset;
 
+        private boolean batch;
+        private MappedRegion batchRegion;
+        private long batchOffset;
+        private long batchLength;
+
         public MessageWriterImpl() {
             skipExistingMessages();
+            checkpointTail();
+            file.setWrittenPosition(ptr.getPosition());
         }
 
         private void skipExistingMessages() {
+            final long checkpoint = UNSAFE.getLongVolatile(null, tailCheckpointAddress);
+            ptr.moveToPosition(isValidCheckpoint(checkpoint) ? checkpoint : HEADER_LENGTH);
             long messageLen;
-            while ((messageLen = UNSAFE.getLong(null, ptr.getAddress())) >= 0) {
-                ptr.moveBy(8 + messageLen);
+            while ((messageLen = UNSAFE.getLong(null, ptr.getAddress())) >= 0 || messageLen == PADDING_LENGTH) {
+                ptr.moveBy(messageLen >= 0 ? 8 + messageLen : ptr.getBytesRemaining());
             }
         }
 
+        private boolean isValidCheckpoint(final long checkpoint) {
+            if (checkpoint < HEADER_LENGTH || (checkpoint & 0x7) != 0 || checkpoint + 8 > file.getFileLength()) {
+                return false;
+            }
+            ptr.moveToPosition(checkpoint);
+            return UNSAFE.getLong(null, ptr.getAddress()) >= PADDING_LENGTH;
+        }
+
+        //records the tail position once per region so that reopening an appender scans at most about one region
+        private void checkpointTail() {
+            final int regionIndex = ptr.getRegion().getIndex();
+            if (regionIndex != checkpointRegionIndex) {
+                UNSAFE.putOrderedLong(null, tailCheckpointAddress, ptr.getPosition());
+                checkpointRegionIndex = regionIndex;
+            }
+        }
+
+        private void onPublished() {
+            checkpointTail();
+            file.setWrittenPosition(ptr.getPosition());
+            wakeupSignal.signal();
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = ptr.ensureNotClosed().getBytesRemaining();
+            return rem > 0 ? rem : file.getRegionSize();
+        }
+
         @Override
         protected long getAndIncrementAddress(final int add) {
             if (startRegion == null) {
@@ -87,30 +160,86 @@ public final class OneToManyAppender implements Appender {
             return this;
         }
 
+        private long startClaim(final int length) {
+            if (length < 0 || 8L + length > file.getRegionSize()) {
+                throw new IllegalArgumentException("Invalid claim length " + length + " for region size " + file.getRegionSize());
+            }
+            if (startRegion != null) {
+                throw new IllegalStateException("Current message is not finished, must be finished before claiming next");
+            }
+            if (ptr.ensureNotClosed().getBytesRemaining() < 8 + length) {
+                padToNextRegion();
+            }
+            startAppendMessage();
+            return ptr.getAndIncrementAddress(length, false);
+        }
+
+        //claimed bytes must be contiguous, hence the next message starts in the next region
+        private void padToNextRegion() {
+            final MappedRegion region = ptr.getRegion();
+            final long offset = ptr.getOffset();
+            region.incAndGetRefCount();
+            ptr.moveBy(ptr.getBytesRemaining());
+            writeNextLength();
+            writeLength(region, offset, PADDING_LENGTH);
+        }
+
+        private Appender abortAppendMessage() {
+            if (startRegion == null) {
+                throw new IllegalStateException("No message to abort");
+            }
+            //the length field of the message still contains -1
+            ptr.ensureNotClosed().moveToPosition(startRegion.getPosition() + startOffset);
+            file.releaseRegion(startRegion);
+            startRegion = null;
+            startOffset = -1;
+            return OneToManyAppender.this;
+        }
+
         @Override
         public Appender finishAppendMessage() {
             if (startRegion == null) {
                 throw new IllegalStateException("No message to finish");
             }
             ptr.ensureNotClosed();
-            padMessageAndWriteNextLength();
+            padMessageEnd();
+            writeNextLength();
             writeMessageLength();
+            if (!batch) {
+                onPublished();
+            }
             return OneToManyAppender.this;
         }
 
         private void writeMessageLength() {
-            final long startAddr = startRegion.getAddress(startOffset);
             final long startPos = startRegion.getPosition() + startOffset;
-            final long length = ptr.getPosition() - startPos - 8;
-            UNSAFE.putOrderedLong(null, startAddr, length);
-            file.releaseRegion(startRegion);
+            writeLength(startRegion, startOffset, ptr.getPosition() - startPos - 8);
             startRegion = null;
             startOffset = -1;
         }
 
-        private void padMessageAndWriteNextLength() {
-            padMessageEnd();
-            UNSAFE.putOrderedLong(null, ptr.getAddress(), -1);
+        //releases the region unless the length is written when the batch is committed
+        private void writeLength(final MappedRegion region, final long offset, final long length) {
+            if (!batch) {
+                UNSAFE.putOrderedLong(null, region.getAddress(offset), length);
+                file.releaseRegion(region);
+            } else if (batchRegion == null) {
+                //first message of batch, length is written when batch is committed
+                batchRegion = region;
+                batchOffset = offset;
+                batchLength = length;
+            } else {
+                UNSAFE.putLong(null, region.getAddress(offset), length);
+                file.releaseRegion(region);
+            }
+        }
+
+        private void writeNextLength() {
+            if (batch) {
+                UNSAFE.putLong(null, ptr.getAddress(), -1);
+            } else {
+                UNSAFE.putOrderedLong(null, ptr.getAddress(), -1);
+            }
         }
 
         //POSTCONDITION: guaranteed that we can write a 8 byte msg len after padding
@@ -124,14 +253,82 @@ public final class OneToManyAppender implements Appender {
             }
         }
 
+        private void startBatch() {
+            ptr.ensureNotClosed();
+            if (batch) {
+                throw new IllegalStateException("Batch already started");
+            }
+            if (startRegion != null) {
+                throw new IllegalStateException("Current message is not finished, must be finished before starting a batch");
+            }
+            batch = true;
+        }
+
+        private void commitBatch() {
+            ptr.ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to commit");
+            }
+            if (startRegion != null) {
+                finishAppendMessage();
+            }
+            if (batchRegion != null) {
+                UNSAFE.putOrderedLong(null, batchRegion.getAddress(batchOffset), batchLength);
+                file.releaseRegion(batchRegion);
+                batchRegion = null;
+                batchOffset = -1;
+            }
+            batch = false;
+            onPublished();
+        }
+
+        private void abortBatch() {
+            ptr.ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to abort");
+            }
+            //the length field of the first message in the batch still contains -1
+            if (batchRegion != null) {
+                ptr.moveToPosition(batchRegion.getPosition() + batchOffset);
+            } else if (startRegion != null) {
+                ptr.moveToPosition(startRegion.getPosition() + startOffset);
+            }
+            if (startRegion != null) {
+                file.releaseRegion(startRegion);
+                startRegion = null;
+                startOffset = -1;
+            }
+            if (batchRegion != null) {
+                file.releaseRegion(batchRegion);
+                batchRegion = null;
+                batchOffset = -1;
+            }
+            batch = false;
+        }
+
         public void close() {
             if (!ptr.isClosed()) {
-                if (startRegion != null) {
+                if (batch) {
+                    commitBatch();
+                } else if (startRegion != null) {
                     finishAppendMessage();
                 }
                 ptr.close();
+                file.releaseRegion(headerRegion);
             }
         }
 
     }
+
+    private final class MessageClaimImpl extends AbstractMessageClaim {
+        @Override
+        protected Appender commitMessage() {
+            return messageWriter.finishAppendMessage();
+        }
+
+        @Override
+        protected Appender abortMessage() {
+            return messageWriter.abortAppendMessage();
+        }
+    }
 }
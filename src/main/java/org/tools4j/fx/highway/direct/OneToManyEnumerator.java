@@ -23,6 +23,9 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.DirectBuffer;
+
+import static org.tools4j.fx.highway.direct.OneToManyQueue.*;
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 /**
@@ -35,11 +38,30 @@ public final class OneToManyEnumerator implements Enumerator {
     private long messageLen = -1;
 
     public OneToManyEnumerator(final MappedFile file) {
-        if (file.getFileLength() < 8) {
+        this(file, StartPosition.HEAD);
+    }
+
+    /**
+     * Constructor for an enumerator starting at the given position. The tail is found by scanning forward from the
+     * tail checkpoint in the file header, hence only the header region and the regions after the checkpoint are
+     * mapped.
+     *
+     * <p>
+     * A position at or after the tail checkpoint is verified by walking the messages from the checkpoint. Positions
+     * before the checkpoint are only checked for alignment and a valid length field; starting at such a position
+     * which is not the start of a message, for instance a position inside a message payload, is undefined behaviour.
+     *
+     * @param file          the queue file
+     * @param startPosition the start position, where {@link StartPosition#atPosition(long) a position} is the
+     *                      byte position of a message in the file
+     * @throws IllegalArgumentException if the start position is not a valid message position
+     */
+    public OneToManyEnumerator(final MappedFile file, final StartPosition startPosition) {
+        if (file.getFileLength() < HEADER_LENGTH + 8) {
             throw new IllegalStateException("Not a direct queue file");
         }
         this.file = file;
-        this.messageReader = new MessageReaderImpl();
+        this.messageReader = new MessageReaderImpl(startPosition);
     }
 
     @Override
@@ -62,6 +84,27 @@ public final class OneToManyEnumerator implements Enumerator {
         return readNextMessage().finishReadMessage();
     }
 
+    /**
+     * Moves to the message with the given sequence number by enumerating all messages from the start of the queue.
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        messageReader.seek(sequence);
+        messageLen = -1;
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return messageReader.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        messageLen = -1;
+        return messageReader.drain(handler, limit);
+    }
+
     private long getMessageLength() {
         if (messageLen < 0) {
             messageLen = messageReader.pollNextMessageLength();
@@ -79,11 +122,124 @@ public final class OneToManyEnumerator implements Enumerator {
         private final RollingRegionPointer ptr = new RollingRegionPointer(file);
         private long messageEndPosition = -1;
 
+        public MessageReaderImpl(final StartPosition startPosition) {
+            switch (startPosition.getType()) {
+                case HEAD:
+                    ptr.moveToPosition(HEADER_LENGTH);
+                    break;
+                case TAIL:
+                    moveToTail();
+                    break;
+                case AT_POSITION:
+                    //positions beyond the tail are zero and can hence not be distinguished from empty messages
+                    final long position = startPosition.getPosition();
+                    final long scanStart = moveToTail();
+                    if (position > ptr.getPosition() || !moveToMessageAt(position)
+                            || (position >= scanStart && !isMessageStart(scanStart, position))) {
+                        ptr.close();
+                        throw new IllegalArgumentException("Not a valid message position: " + position);
+                    }
+                    ptr.moveToPosition(position);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid start position: " + startPosition);
+            }
+        }
+
+        //returns the position from where the tail was found, the tail checkpoint or the first message
+        private long moveToTail() {
+            //the pointer is still in region 0 containing the header
+            final long checkpoint = UNSAFE.getLongVolatile(null, ptr.getRegion().getAddress(TAIL_CHECKPOINT_OFFSET));
+            if (!moveToMessageAt(checkpoint)) {
+                ptr.moveToPosition(HEADER_LENGTH);
+            }
+            final long scanStart = ptr.getPosition();
+            long messageLen;
+            while ((messageLen = pollLength()) >= 0) {
+                ptr.moveBy(8 + messageLen);
+            }
+            return scanStart;
+        }
+
+        //walks the messages from the given message position to check that position is the start of a message or
+        //of region end padding; positions before the scan start are not verified as this would read the whole queue
+        private boolean isMessageStart(final long scanStart, final long position) {
+            ptr.moveToPosition(scanStart);
+            while (ptr.getPosition() < position) {
+                final long messageLen = UNSAFE.getLongVolatile(null, ptr.getAddress());
+                if (messageLen == PADDING_LENGTH) {
+                    ptr.moveBy(ptr.getBytesRemaining());
+                } else if (messageLen >= 0) {
+                    ptr.moveBy(8 + messageLen);
+                } else {
+                    return false;
+                }
+            }
+            return ptr.getPosition() == position;
+        }
+
+        private boolean moveToMessageAt(final long position) {
+            if (position < HEADER_LENGTH || (position & 0x7) != 0 || position + 8 > file.getFileLength()) {
+                return false;
+            }
+            ptr.moveToPosition(position);
+            return UNSAFE.getLongVolatile(null, ptr.getAddress()) >= PADDING_LENGTH;
+        }
+
+        private long position() {
+            return messageEndPosition >= 0 ? messageEndPosition : ptr.ensureNotClosed().getPosition();
+        }
+
         private long pollNextMessageLength() {
             if (messageEndPosition >= 0) {
                 finishReadMessage();
             }
-            return UNSAFE.getLongVolatile(null, ptr.getAddress());
+            return pollLength();
+        }
+
+        private long pollLength() {
+            long messageLen;
+            while ((messageLen = UNSAFE.getLongVolatile(null, ptr.ensureNotClosed().getAddress())) == PADDING_LENGTH) {
+                ptr.moveBy(ptr.getBytesRemaining());
+            }
+            return messageLen;
+        }
+
+        private int drain(final MessageHandler handler, final int limit) {
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            int count = 0;
+            long messageLen;
+            while (count < limit && (messageLen = pollLength()) >= 0) {
+                ptr.moveBy(8);
+                messageEndPosition = ptr.getPosition() + messageLen;
+                handler.onMessage(this);
+                finishReadMessage();
+                count++;
+            }
+            return count;
+        }
+
+        private void seek(final long sequence) {
+            if (sequence < 0) {
+                throw new IllegalArgumentException("Invalid sequence: " + sequence);
+            }
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            final long position = ptr.ensureNotClosed().getPosition();
+            ptr.moveToPosition(HEADER_LENGTH);
+            for (long i = 0; i < sequence; i++) {
+                final long messageLen = pollLength();
+                if (messageLen < 0) {
+                    ptr.moveToPosition(position);
+                    throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+                }
+                ptr.moveBy(8);
+                messageEndPosition = ptr.getPosition() + messageLen;
+                finishReadMessage();
+            }
         }
 
         public void close() {
@@ -114,6 +270,20 @@ public final class OneToManyEnumerator implements Enumerator {
             throw new IllegalStateException("No message is currently being read");
         }
 
+        @Override
+        public DirectBuffer buffer() {
+            if (messageEndPosition >= 0) {
+                return wrap(ptr.ensureNotClosed(), messageEndPosition - ptr.getPosition());
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = ptr.ensureNotClosed().getBytesRemaining();
+            return rem > 0 ? rem : file.getRegionSize();
+        }
+
         @Override
         protected long getAndIncrementAddress(final int add) {
             final long pos = ptr.ensureNotClosed().getPosition();
@@ -25,6 +25,7 @@ package org.tools4j.fx.highway.direct;
 
 import java.util.Objects;
 
+import static org.tools4j.fx.highway.direct.OneToManyIndexedQueue.*;
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 /**
@@ -34,12 +35,20 @@ public final class OneToManyIndexedAppender implements Appender {
 
     private final MappedFile indexFile;
     private final MappedFile dataFile;
+    private final WakeupSignal wakeupSignal;
     private final MessageWriterImpl messageWriter;
+    private final MessageClaimImpl messageClaim;
 
     public OneToManyIndexedAppender(final MappedFile indexFile, final MappedFile dataFile) {
+        this(indexFile, dataFile, new WakeupSignal());
+    }
+
+    public OneToManyIndexedAppender(final MappedFile indexFile, final MappedFile dataFile, final WakeupSignal wakeupSignal) {
         this.indexFile = Objects.requireNonNull(indexFile);
         this.dataFile = Objects.requireNonNull(dataFile);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
         this.messageWriter = new MessageWriterImpl();
+        this.messageClaim = new MessageClaimImpl();
     }
 
     @Override
@@ -47,6 +56,29 @@ public final class OneToManyIndexedAppender implements Appender {
         return messageWriter.startAppendMessage();
     }
 
+    @Override
+    public MessageClaim claim(final int length) {
+        return messageClaim.claim(messageWriter.startClaim(length), length);
+    }
+
+    @Override
+    public Appender appendBatch() {
+        messageWriter.startBatch();
+        return this;
+    }
+
+    @Override
+    public Appender commitBatch() {
+        messageWriter.commitBatch();
+        return this;
+    }
+
+    @Override
+    public Appender abortBatch() {
+        messageWriter.abortBatch();
+        return this;
+    }
+
     @Override
     public void close() {
         messageWriter.close();
@@ -56,20 +88,70 @@ public final class OneToManyIndexedAppender implements Appender {
 
         private final RollingRegionPointer indexPtr = new RollingRegionPointer(indexFile);
         private final RollingRegionPointer dataPtr = new RollingRegionPointer(dataFile);
+        private final MappedRegion headerRegion = indexFile.reserveRegion(0);
+        private final long tailCheckpointAddress = headerRegion.getAddress(TAIL_CHECKPOINT_OFFSET);
+        private int checkpointRegionIndex = -1;
         long messageStartPosition = -1;
 
+        private boolean batch;
+        private MappedRegion batchRegion;
+        private long batchLengthAddress;
+        private long batchLength;
+        private long batchIndexPosition = -1;
+        private long batchDataPosition = -1;
+
         public MessageWriterImpl() {
             skipExistingMessages();
+            checkpointTail();
+            setWrittenPositions();
         }
 
         private void skipExistingMessages() {
-            long offset = 0;
+            final long checkpoint = UNSAFE.getLongVolatile(null, tailCheckpointAddress);
+            //start with the entry before the checkpoint to find the data position
+            indexPtr.moveToPosition(isValidCheckpoint(checkpoint) ? checkpoint - INDEX_ENTRY_LENGTH : INDEX_HEADER_LENGTH);
+            long dataEnd = 0;
             long messageLen;
-            while ((messageLen = UNSAFE.getLong(null, indexPtr.getAddress())) >= 0) {
-                indexPtr.moveBy(8);
-                offset += messageLen;
+            while ((messageLen = UNSAFE.getLong(null, indexPtr.getAddress() + INDEX_LENGTH_OFFSET)) >= 0) {
+                dataEnd = UNSAFE.getLong(null, indexPtr.getAddress() + INDEX_POSITION_OFFSET) + messageLen;
+                indexPtr.moveBy(INDEX_ENTRY_LENGTH);
+            }
+            dataPtr.moveToPosition((dataEnd + 7) & ~7L);
+        }
+
+        private boolean isValidCheckpoint(final long checkpoint) {
+            if (checkpoint <= INDEX_HEADER_LENGTH || (checkpoint - INDEX_HEADER_LENGTH) % INDEX_ENTRY_LENGTH != 0
+                    || checkpoint + 8 > indexFile.getFileLength()) {
+                return false;
             }
-            dataPtr.moveToPosition(offset);
+            indexPtr.moveToPosition(checkpoint - INDEX_ENTRY_LENGTH);
+            return UNSAFE.getLong(null, indexPtr.getAddress() + INDEX_LENGTH_OFFSET) >= 0;
+        }
+
+        //records the tail position once per index region so that reopening an appender scans at most about one region
+        private void checkpointTail() {
+            final int regionIndex = indexPtr.getRegion().getIndex();
+            if (regionIndex != checkpointRegionIndex) {
+                UNSAFE.putOrderedLong(null, tailCheckpointAddress, indexPtr.getPosition());
+                checkpointRegionIndex = regionIndex;
+            }
+        }
+
+        private void onPublished() {
+            checkpointTail();
+            setWrittenPositions();
+            wakeupSignal.signal();
+        }
+
+        private void setWrittenPositions() {
+            dataFile.setWrittenPosition(dataPtr.getPosition());
+            indexFile.setWrittenPosition(indexPtr.getPosition());
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = dataPtr.ensureNotClosed().getBytesRemaining();
+            return rem > 0 ? rem : dataFile.getRegionSize();
         }
 
         @Override
@@ -88,38 +170,81 @@ public final class OneToManyIndexedAppender implements Appender {
             return this;
         }
 
+        private long startClaim(final int length) {
+            if (length < 0 || length > dataFile.getRegionSize()) {
+                throw new IllegalArgumentException("Invalid claim length " + length + " for region size " + dataFile.getRegionSize());
+            }
+            if (messageStartPosition >= 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before claiming next");
+            }
+            if (dataPtr.ensureNotClosed().getBytesRemaining() < length) {
+                //claimed bytes must be contiguous, the index entry holds the position in the next region
+                dataPtr.moveBy(dataPtr.getBytesRemaining());
+            }
+            startAppendMessage();
+            return dataPtr.getAndIncrementAddress(length, false);
+        }
+
+        private Appender abortAppendMessage() {
+            if (messageStartPosition < 0) {
+                throw new IllegalStateException("No message to abort");
+            }
+            dataPtr.ensureNotClosed().moveToPosition(messageStartPosition);
+            messageStartPosition = -1;
+            return OneToManyIndexedAppender.this;
+        }
+
         @Override
         public Appender finishAppendMessage() {
             if (messageStartPosition < 0) {
                 throw new IllegalStateException("No message to finish");
             }
+            writeNextAndCurrentIndexEntry(messageStartPosition, dataPtr.getPosition() - messageStartPosition);
             padMessageEnd();
-            writeNextAndCurrentMessageLength();
+            messageStartPosition = -1;
+            if (!batch) {
+                onPublished();
+            }
             return OneToManyIndexedAppender.this;
         }
 
-        private void writeNextAndCurrentMessageLength() {
-            final long messageLen = dataPtr.getPosition() - messageStartPosition;
-            long rem = indexPtr.getBytesRemaining();
-            if (rem < 8) {
-                indexPtr.getAndIncrementAddress(rem, true);
-                rem = indexPtr.getBytesRemaining();
+        private void writeNextAndCurrentIndexEntry(final long position, final long messageLen) {
+            if (indexPtr.getBytesRemaining() == 0) {
+                indexPtr.moveBy(0);//roll to next region
             }
-            if (rem >= 16) {
-                UNSAFE.putOrderedLong(null, indexPtr.getAddress() + 8, -1);
-                UNSAFE.putOrderedLong(null, indexPtr.getAndIncrementAddress(8, false), messageLen);
+            final boolean firstOfBatch = batch && batchRegion == null;
+            if (indexPtr.getBytesRemaining() >= 2 * INDEX_ENTRY_LENGTH && !firstOfBatch) {
+                final long addr = indexPtr.getAndIncrementAddress(INDEX_ENTRY_LENGTH, false);
+                writeLength(addr + INDEX_ENTRY_LENGTH + INDEX_LENGTH_OFFSET, -1);
+                UNSAFE.putLong(null, addr + INDEX_POSITION_OFFSET, position);
+                writeLength(addr + INDEX_LENGTH_OFFSET, messageLen);
             } else {
-                //current message lenght and next message length are in different regions
+                //current and next index entry may be in different regions
                 final MappedRegion region = indexPtr.getRegion();
                 region.incAndGetRefCount();
-                final long addr0 = indexPtr.getAndIncrementAddress(8, true);
-                final long addr1 = indexPtr.getAndIncrementAddress(8, true);
-                UNSAFE.putOrderedLong(null, addr1, -1);
-                UNSAFE.putOrderedLong(null, addr0, messageLen);
-                indexPtr.moveBy(-8);
-                indexFile.releaseRegion(region);
+                final long addr0 = indexPtr.getAndIncrementAddress(INDEX_ENTRY_LENGTH, false);
+                final long addr1 = indexPtr.getAndIncrementAddress(INDEX_ENTRY_LENGTH, false);
+                writeLength(addr1 + INDEX_LENGTH_OFFSET, -1);
+                indexPtr.moveBy(-INDEX_ENTRY_LENGTH);
+                UNSAFE.putLong(null, addr0 + INDEX_POSITION_OFFSET, position);
+                if (firstOfBatch) {
+                    //length is written when batch is committed
+                    batchRegion = region;
+                    batchLengthAddress = addr0 + INDEX_LENGTH_OFFSET;
+                    batchLength = messageLen;
+                } else {
+                    writeLength(addr0 + INDEX_LENGTH_OFFSET, messageLen);
+                    indexFile.releaseRegion(region);
+                }
+            }
+        }
+
+        private void writeLength(final long address, final long length) {
+            if (batch) {
+                UNSAFE.putLong(null, address, length);
+            } else {
+                UNSAFE.putOrderedLong(null, address, length);
             }
-            messageStartPosition = -1;
         }
 
         private void padMessageEnd() {
@@ -127,20 +252,80 @@ public final class OneToManyIndexedAppender implements Appender {
             if (pad < 8) {
                 UNSAFE.setMemory(null, dataPtr.getAndIncrementAddress(pad, false), pad, (byte) 0);
             }
-            if (dataPtr.getBytesRemaining() < 8) {
-                dataPtr.getAndIncrementAddress(8, true);
+        }
+
+        private void startBatch() {
+            dataPtr.ensureNotClosed();
+            if (batch) {
+                throw new IllegalStateException("Batch already started");
             }
+            if (messageStartPosition >= 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before starting a batch");
+            }
+            batch = true;
+            batchIndexPosition = indexPtr.getPosition();
+            batchDataPosition = dataPtr.getPosition();
+        }
+
+        private void commitBatch() {
+            dataPtr.ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to commit");
+            }
+            if (messageStartPosition >= 0) {
+                finishAppendMessage();
+            }
+            if (batchRegion != null) {
+                UNSAFE.putOrderedLong(null, batchLengthAddress, batchLength);
+                indexFile.releaseRegion(batchRegion);
+                batchRegion = null;
+            }
+            batch = false;
+            onPublished();
+        }
+
+        private void abortBatch() {
+            dataPtr.ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to abort");
+            }
+            //the index entry of the first message in the batch still contains -1
+            indexPtr.moveToPosition(batchIndexPosition);
+            dataPtr.moveToPosition(batchDataPosition);
+            messageStartPosition = -1;
+            if (batchRegion != null) {
+                indexFile.releaseRegion(batchRegion);
+                batchRegion = null;
+            }
+            batch = false;
         }
 
         public void close() {
             if (!indexPtr.isClosed() && !dataPtr.isClosed()) {
-                if (messageStartPosition >= 0) {
+                if (batch) {
+                    commitBatch();
+                } else if (messageStartPosition >= 0) {
                     finishAppendMessage();
                 }
             }
+            if (!indexPtr.isClosed()) {
+                indexFile.releaseRegion(headerRegion);
+            }
             dataPtr.close();
             indexPtr.close();
         }
 
     }
+
+    private final class MessageClaimImpl extends AbstractMessageClaim {
+        @Override
+        protected Appender commitMessage() {
+            return messageWriter.finishAppendMessage();
+        }
+
+        @Override
+        protected Appender abortMessage() {
+            return messageWriter.abortAppendMessage();
+        }
+    }
 }
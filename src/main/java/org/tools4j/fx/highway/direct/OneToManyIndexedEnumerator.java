@@ -23,8 +23,11 @@
  */
 package org.tools4j.fx.highway.direct;
 
+import org.agrona.DirectBuffer;
+
 import java.util.Objects;
 
+import static org.tools4j.fx.highway.direct.OneToManyIndexedQueue.*;
 import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
 
 /**
@@ -38,12 +41,26 @@ public final class OneToManyIndexedEnumerator implements Enumerator {
     private long messageLen = -1;
 
     public OneToManyIndexedEnumerator(final MappedFile indexFile, final MappedFile dataFile) {
-        if (indexFile.getFileLength() < 8) {
+        this(indexFile, dataFile, StartPosition.HEAD);
+    }
+
+    /**
+     * Constructor for an enumerator starting at the given position. The tail is found by scanning forward from the
+     * tail checkpoint in the index file header, hence only the index regions after the checkpoint are mapped.
+     *
+     * @param indexFile     the index file
+     * @param dataFile      the data file
+     * @param startPosition the start position, where {@link StartPosition#atPosition(long) a position} is the
+     *                      sequence number of a message
+     */
+    public OneToManyIndexedEnumerator(final MappedFile indexFile, final MappedFile dataFile,
+                                      final StartPosition startPosition) {
+        if (indexFile.getFileLength() < INDEX_HEADER_LENGTH + 8) {
             throw new IllegalStateException("Not a valid index file");
         }
         this.indexFile = indexFile;
         this.dataFile = Objects.requireNonNull(dataFile);
-        this.messageReader = new MessageReaderImpl();
+        this.messageReader = new MessageReaderImpl(startPosition);
     }
 
     @Override
@@ -66,6 +83,29 @@ public final class OneToManyIndexedEnumerator implements Enumerator {
         return readNextMessage().finishReadMessage();
     }
 
+    /**
+     * Moves to the message with the given sequence number via its index entry. This takes constant time unless the
+     * sequence is beyond the tail checkpoint, in which case the index entries from the checkpoint are scanned which
+     * is bounded by the index region size.
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        messageReader.seek(sequence);
+        messageLen = -1;
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return messageReader.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        messageLen = -1;
+        return messageReader.drain(handler, limit);
+    }
+
     private long getMessageLength() {
         if (messageLen < 0) {
             messageLen = messageReader.pollNextMessageLength();
@@ -82,24 +122,119 @@ public final class OneToManyIndexedEnumerator implements Enumerator {
 
         private final RollingRegionPointer indexPtr = new RollingRegionPointer(indexFile);
         private final RollingRegionPointer dataPtr = new RollingRegionPointer(dataFile);
+        private final MappedRegion headerRegion = indexFile.reserveRegion(0);
         private long messageEndPosition = -1;
+        //all index entries before this position are known to be written
+        private long writtenEndPosition = INDEX_HEADER_LENGTH;
+
+        public MessageReaderImpl(final StartPosition startPosition) {
+            switch (startPosition.getType()) {
+                case HEAD:
+                    indexPtr.moveToPosition(INDEX_HEADER_LENGTH);
+                    break;
+                case TAIL:
+                    moveToTail();
+                    break;
+                case AT_POSITION:
+                    try {
+                        seek(startPosition.getPosition());
+                    } catch (final IllegalArgumentException e) {
+                        close();
+                        throw e;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid start position: " + startPosition);
+            }
+        }
+
+        private void moveToTail() {
+            moveToWrittenEnd(Long.MAX_VALUE);
+        }
+
+        //moves forward from the tail checkpoint or the last known written entry, but not beyond the given position;
+        //entries beyond the tail are zero and can hence not be distinguished from empty messages
+        private void moveToWrittenEnd(final long maxPosition) {
+            final long checkpoint = UNSAFE.getLongVolatile(null, headerRegion.getAddress(TAIL_CHECKPOINT_OFFSET));
+            if (checkpoint > writtenEndPosition && (checkpoint - INDEX_HEADER_LENGTH) % INDEX_ENTRY_LENGTH == 0
+                    && checkpoint + 8 <= indexFile.getFileLength()) {
+                writtenEndPosition = checkpoint;
+            }
+            indexPtr.moveToPosition(Math.min(writtenEndPosition, maxPosition));
+            while (indexPtr.getPosition() < maxPosition && pollLength() >= 0) {
+                indexPtr.moveBy(INDEX_ENTRY_LENGTH);
+            }
+            writtenEndPosition = Math.max(writtenEndPosition, indexPtr.getPosition());
+        }
+
+        private long position() {
+            return (indexPtr.ensureNotClosed().getPosition() - INDEX_HEADER_LENGTH) / INDEX_ENTRY_LENGTH;
+        }
 
         private long pollNextMessageLength() {
             if (messageEndPosition >= 0) {
                 finishReadMessage();
             }
-            return UNSAFE.getLongVolatile(null, indexPtr.getAddress());
+            return pollLength();
+        }
+
+        private long pollLength() {
+            return UNSAFE.getLongVolatile(null, indexPtr.ensureNotClosed().getAddress() + INDEX_LENGTH_OFFSET);
+        }
+
+        private void seek(final long sequence) {
+            if (sequence < 0) {
+                throw new IllegalArgumentException("Invalid sequence: " + sequence);
+            }
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            final long position = indexPtr.ensureNotClosed().getPosition();
+            final long target = INDEX_HEADER_LENGTH + sequence * INDEX_ENTRY_LENGTH;
+            writtenEndPosition = Math.max(writtenEndPosition, position);
+            if (target > writtenEndPosition) {
+                moveToWrittenEnd(target);
+                if (indexPtr.getPosition() < target) {
+                    indexPtr.moveToPosition(position);
+                    throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+                }
+            }
+            indexPtr.moveToPosition(target);
+        }
+
+        private void moveToMessage(final long messageLen) {
+            final long messagePosition = UNSAFE.getLong(null, indexPtr.getAddress() + INDEX_POSITION_OFFSET);
+            indexPtr.moveBy(INDEX_ENTRY_LENGTH);
+            dataPtr.ensureNotClosed().moveToPosition(messagePosition);
+            messageEndPosition = messagePosition + messageLen;
+        }
+
+        private int drain(final MessageHandler handler, final int limit) {
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            int count = 0;
+            long messageLen;
+            while (count < limit && (messageLen = pollLength()) >= 0) {
+                moveToMessage(messageLen);
+                handler.onMessage(this);
+                finishReadMessage();
+                count++;
+            }
+            return count;
         }
 
         public void close() {
+            if (!indexPtr.isClosed()) {
+                indexFile.releaseRegion(headerRegion);
+            }
             indexPtr.close();
             dataPtr.close();
         }
 
         private MessageReader readNextMessage(final long messageLen) {
             if (messageEndPosition < 0) {
-                indexPtr.ensureNotClosed().moveBy(8);//prepare to read next length
-                messageEndPosition = dataPtr.getPosition() + messageLen;
+                moveToMessage(messageLen);
                 return messageReader;
             }
             //should never get here
@@ -109,17 +244,27 @@ public final class OneToManyIndexedEnumerator implements Enumerator {
         @Override
         public Enumerator finishReadMessage() {
             if (messageEndPosition >= 0) {
-                dataPtr.ensureNotClosed().moveToPosition(messageEndPosition);
-                final long rem = dataPtr.getBytesRemaining();
-                if (rem < 8) {
-                    dataPtr.moveBy(rem);
-                }
+                //the index entry of the next message holds its position
                 messageEndPosition = -1;
                 return OneToManyIndexedEnumerator.this;
             }
             throw new IllegalStateException("No message is currently being read");
         }
 
+        @Override
+        public DirectBuffer buffer() {
+            if (messageEndPosition >= 0) {
+                return wrap(dataPtr.ensureNotClosed(), messageEndPosition - dataPtr.getPosition());
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            final long rem = dataPtr.ensureNotClosed().getBytesRemaining();
+            return rem > 0 ? rem : dataFile.getRegionSize();
+        }
+
         @Override
         protected long getAndIncrementAddress(final int add) {
             final long pos = dataPtr.ensureNotClosed().getPosition();
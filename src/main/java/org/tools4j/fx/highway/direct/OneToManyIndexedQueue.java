@@ -25,28 +25,51 @@ package org.tools4j.fx.highway.direct;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
 /**
  * MappedQueue implementation optimised for single Appender and multiple Enumerator support.
  * Uses an index file to avoid back tracking for volatile puts of message length field.
+ * <p>
+ * Every message has an index entry with the message length followed by the message position in the data file.
+ * The entry of the message with sequence number N is at position
+ * {@link #INDEX_HEADER_LENGTH} + N * {@link #INDEX_ENTRY_LENGTH} in the index file which allows an
+ * {@link Enumerator#seek(long) enumerator to seek} any message in constant time. The index file header holds the
+ * {@link #MAGIC magic} and {@link #VERSION format version}, which are validated when the queue is opened, and a
+ * tail checkpoint, the position of the next index entry that the appender records whenever the tail moves to a new
+ * index region; a reopened appender starts searching for the end of the queue there.
  */
-public class OneToManyIndexedQueue implements MappedQueue {
+public class OneToManyIndexedQueue implements MappedQueue, PositionedQueue {
 
     public static final String SUFFIX_INDEX = ".idx";
     public static final String SUFFIX_DATA = ".dat";
     public static final long DEFAULT_INDEX_REGION_SIZE = 4L << 20;//4 MB
     public static final long DEFAULT_DATA_REGION_SIZE = 4L << 20;//4 MB
 
-    private static final ByteBuffer BUF_INIT_FILE = ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, -1, -1, -1});
+    public static final int INDEX_HEADER_LENGTH = 64;
+    public static final int INDEX_ENTRY_LENGTH = 16;
+    public static final long MAGIC = 0x494D4F485846L;//"FXHOMI"
+    public static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int TAIL_CHECKPOINT_OFFSET = 16;
+    static final int INDEX_LENGTH_OFFSET = 0;
+    static final int INDEX_POSITION_OFFSET = 8;
+
 
     private final MappedFile indexFile;
     private final MappedFile dataFile;
+    private final WakeupSignal wakeupSignal = new WakeupSignal();
     private final AtomicBoolean appenderCreated = new AtomicBoolean(false);
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private Enumerator tailEnumerator;//guarded by this
+    private MappedRegion indexRegion;//guarded by this
 
     private OneToManyIndexedQueue(final MappedFile indexFile, final MappedFile dataFile) {
         this.indexFile = Objects.requireNonNull(indexFile);
@@ -74,7 +97,7 @@ public class OneToManyIndexedQueue implements MappedQueue {
     }
 
     public static final MappedQueue openReadOnly(final String fileName, final long indexRgionSize, final long dataRegionSize) throws IOException {
-        return open(new MappedFile(fileName + SUFFIX_INDEX, MappedFile.Mode.READ_ONLY, indexRgionSize), new MappedFile(fileName + SUFFIX_DATA, MappedFile.Mode.READ_ONLY, dataRegionSize));
+        return open(new MappedFile(fileName + SUFFIX_INDEX, MappedFile.Mode.READ_ONLY, indexRgionSize, OneToManyIndexedQueue::initIndexFile), new MappedFile(fileName + SUFFIX_DATA, MappedFile.Mode.READ_ONLY, dataRegionSize));
     }
 
     private static final MappedQueue open(final MappedFile indexFile, final MappedFile dataFile) {
@@ -82,22 +105,29 @@ public class OneToManyIndexedQueue implements MappedQueue {
     }
 
     private static void initIndexFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
-        final FileLock lock = fileChannel.lock();
+        final FileLock lock = fileChannel.lock(0, Long.MAX_VALUE, mode == MappedFile.Mode.READ_ONLY);
         try {
             switch (mode) {
                 case READ_ONLY:
-                    if (fileChannel.size() < 8) {
+                    if (fileChannel.size() < INDEX_HEADER_LENGTH + 8) {
                         throw new IllegalArgumentException("Invalid file format");
                     }
+                    checkHeader(fileChannel);
                     break;
                 case READ_WRITE:
-                    if (fileChannel.size() >= 8) {
+                    if (fileChannel.size() >= INDEX_HEADER_LENGTH + 8) {
+                        checkHeader(fileChannel);
                         break;
                     }
                     //else: FALL THROUGH
                 case READ_WRITE_CLEAR:
+                    final ByteBuffer init = ByteBuffer.allocate(INDEX_HEADER_LENGTH + 8).order(ByteOrder.nativeOrder());
+                    init.putLong(MAGIC_OFFSET, MAGIC);
+                    init.putInt(VERSION_OFFSET, VERSION);
+                    init.putLong(TAIL_CHECKPOINT_OFFSET, INDEX_HEADER_LENGTH);
+                    init.putLong(INDEX_HEADER_LENGTH + INDEX_LENGTH_OFFSET, -1);
                     fileChannel.truncate(0);
-                    fileChannel.transferFrom(InitialBytes.MINUS_ONE, 0, 8);
+                    fileChannel.write(init, 0);
                     fileChannel.force(true);
                     break;
                 default:
@@ -108,25 +138,102 @@ public class OneToManyIndexedQueue implements MappedQueue {
         }
     }
 
+    private static void checkHeader(final FileChannel fileChannel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        if (fileChannel.read(header, 0) < INDEX_HEADER_LENGTH || header.getLong(MAGIC_OFFSET) != MAGIC) {
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IllegalArgumentException("Unsupported file format version: " + header.getInt(VERSION_OFFSET));
+        }
+    }
+
     @Override
     public Appender appender() {
         if (indexFile.getMode() == MappedFile.Mode.READ_ONLY) {
             throw new IllegalStateException("Cannot access appender for file in read-only mode");
         }
         if (appenderCreated.compareAndSet(false, true)) {
-            return new OneToManyIndexedAppender(indexFile, dataFile);
+            return new OneToManyIndexedAppender(indexFile, dataFile, wakeupSignal);
         }
         throw new IllegalStateException("Only one appender supported");
     }
 
     @Override
-    public Enumerator enumerator() {
-        return new OneToManyIndexedEnumerator(indexFile, dataFile);
+    public Enumerator enumerator(final StartPosition startPosition) {
+        return new OneToManyIndexedEnumerator(indexFile, dataFile, startPosition);
+    }
+
+    @Override
+    public long headPosition() {
+        return 0;
+    }
+
+    /**
+     * Returns the sequence of the next message to be appended. The first invocation scans forward from the tail
+     * checkpoint, subsequent invocations only skip the messages appended since the previous invocation.
+     */
+    @Override
+    public synchronized long tailPosition() {
+        if (tailEnumerator == null) {
+            tailEnumerator = enumerator(StartPosition.TAIL);
+        }
+        while (tailEnumerator.hasNextMessage()) {
+            tailEnumerator.skipNextMessage();
+        }
+        return tailEnumerator.position();
+    }
+
+    @Override
+    public long messagesBetween(final long from, final long to) {
+        return Math.max(0, to - from);
+    }
+
+    /**
+     * Returns the bytes of the message data between two sequences as recorded in their index entries, from the
+     * start of the first message to the aligned end of the last message.
+     */
+    @Override
+    public synchronized long bytesBetween(final long from, final long to) {
+        if (to <= from) {
+            return 0;
+        }
+        final long last = to - 1;
+        final long end = (readIndexEntry(last, INDEX_POSITION_OFFSET) + readIndexEntry(last, INDEX_LENGTH_OFFSET) + 7) & ~7L;
+        return end - readIndexEntry(from, INDEX_POSITION_OFFSET);
+    }
+
+    //keeps the last region reserved as consecutive measurements usually read entries of the same region
+    private long readIndexEntry(final long sequence, final int offset) {
+        final long position = INDEX_HEADER_LENGTH + sequence * INDEX_ENTRY_LENGTH + offset;
+        final int index = indexFile.getRegionIndexForPosition(position);
+        if (indexRegion == null || indexRegion.getIndex() != index) {
+            if (indexRegion != null) {
+                indexFile.releaseRegion(indexRegion);
+            }
+            indexRegion = indexFile.reserveRegion(index);
+        }
+        return UNSAFE.getLongVolatile(null, indexRegion.getAddress(position - indexRegion.getPosition()));
+    }
+
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
     }
 
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (tailEnumerator != null) {
+                    tailEnumerator.close();
+                    tailEnumerator = null;
+                }
+                if (indexRegion != null) {
+                    indexFile.releaseRegion(indexRegion);
+                    indexRegion = null;
+                }
+            }
             indexFile.close();
             dataFile.close();
         }
@@ -24,6 +24,8 @@
 package org.tools4j.fx.highway.direct;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.Objects;
@@ -31,17 +33,37 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * MappedQueue implementation optimised for single Appender and multiple Enumerator support.
+ * <p>
+ * The file starts with a header holding the {@link #MAGIC magic} and {@link #VERSION format version}, which are
+ * validated when the file is opened, and a tail checkpoint, the position of the next message length field that the
+ * appender records whenever the tail moves to a new region. A reopened appender starts searching for the end of
+ * the queue at the checkpoint instead of the first message.
  */
-public class OneToManyQueue implements MappedQueue {
+public class OneToManyQueue implements MappedQueue, PositionedQueue {
 
     public static final long DEFAULT_REGION_SIZE = 4L << 20;//4 MB
+    public static final int HEADER_LENGTH = 64;
+    public static final long MAGIC = 0x514D4F485846L;//"FXHOMQ"
+    public static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int TAIL_CHECKPOINT_OFFSET = 16;
+
+    /**
+     * Value of a message length field indicating that the next message starts at the beginning of the next region;
+     * used to keep {@link Appender#claim(int) claimed} messages contiguous.
+     */
+    static final long PADDING_LENGTH = -2;
 
     private final MappedFile file;
+    private final WakeupSignal wakeupSignal;
     private final AtomicBoolean appenderCreated = new AtomicBoolean(false);
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private Enumerator tailEnumerator;//guarded by this
 
-    private OneToManyQueue(final MappedFile file) {
+    private OneToManyQueue(final MappedFile file, final WakeupSignal wakeupSignal) {
         this.file = Objects.requireNonNull(file);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
     }
 
     public static final MappedQueue createOrReplace(final String fileName) throws IOException {
@@ -60,35 +82,50 @@ public class OneToManyQueue implements MappedQueue {
         return open(new MappedFile(fileName, MappedFile.Mode.READ_WRITE, regionSize, OneToManyQueue::initFile));
     }
 
+    static MappedQueue createOrAppend(final String fileName, final long regionSize, final WakeupSignal wakeupSignal) throws IOException {
+        return open(new MappedFile(fileName, MappedFile.Mode.READ_WRITE, regionSize, OneToManyQueue::initFile), wakeupSignal);
+    }
+
     public static final MappedQueue openReadOnly(final String fileName) throws IOException {
         return openReadOnly(fileName, DEFAULT_REGION_SIZE);
     }
 
     public static final MappedQueue openReadOnly(final String fileName, final long regionSize) throws IOException {
-        return open(new MappedFile(fileName, MappedFile.Mode.READ_ONLY, regionSize));
+        return open(new MappedFile(fileName, MappedFile.Mode.READ_ONLY, regionSize, OneToManyQueue::initFile));
     }
 
     public static final MappedQueue open(final MappedFile file) {
-        return new OneToManyQueue(file);
+        return open(file, new WakeupSignal());
+    }
+
+    public static final MappedQueue open(final MappedFile file, final WakeupSignal wakeupSignal) {
+        return new OneToManyQueue(file, wakeupSignal);
     }
 
     private static void initFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
-        final FileLock lock = fileChannel.lock();
+        final FileLock lock = fileChannel.lock(0, Long.MAX_VALUE, mode == MappedFile.Mode.READ_ONLY);
         try {
             switch (mode) {
                 case READ_ONLY:
-                    if (fileChannel.size() < 8) {
+                    if (fileChannel.size() < HEADER_LENGTH + 8) {
                         throw new IllegalArgumentException("Invalid file format");
                     }
+                    checkHeader(fileChannel);
                     break;
                 case READ_WRITE:
-                    if (fileChannel.size() >= 8) {
+                    if (fileChannel.size() >= HEADER_LENGTH + 8) {
+                        checkHeader(fileChannel);
                         break;
                     }
                     //else: FALL THROUGH
                 case READ_WRITE_CLEAR:
+                    final ByteBuffer init = ByteBuffer.allocate(HEADER_LENGTH + 8).order(ByteOrder.nativeOrder());
+                    init.putLong(MAGIC_OFFSET, MAGIC);
+                    init.putInt(VERSION_OFFSET, VERSION);
+                    init.putLong(TAIL_CHECKPOINT_OFFSET, HEADER_LENGTH);
+                    init.putLong(HEADER_LENGTH, -1);
                     fileChannel.truncate(0);
-                    fileChannel.transferFrom(InitialBytes.MINUS_ONE, 0, 8);
+                    fileChannel.write(init, 0);
                     fileChannel.force(true);
                     break;
                 default:
@@ -99,25 +136,76 @@ public class OneToManyQueue implements MappedQueue {
         }
     }
 
+    private static void checkHeader(final FileChannel fileChannel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        if (fileChannel.read(header, 0) < HEADER_LENGTH || header.getLong(MAGIC_OFFSET) != MAGIC) {
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IllegalArgumentException("Unsupported file format version: " + header.getInt(VERSION_OFFSET));
+        }
+    }
+
     @Override
     public Appender appender() {
         if (file.getMode() == MappedFile.Mode.READ_ONLY) {
             throw new IllegalStateException("Cannot access appender for file in read-only mode");
         }
         if (appenderCreated.compareAndSet(false, true)) {
-            return new OneToManyAppender(file);
+            return new OneToManyAppender(file, wakeupSignal);
         }
         throw new IllegalStateException("Only one appender supported");
     }
 
     @Override
-    public Enumerator enumerator() {
-        return new OneToManyEnumerator(file);
+    public Enumerator enumerator(final StartPosition startPosition) {
+        return new OneToManyEnumerator(file, startPosition);
+    }
+
+    @Override
+    public long headPosition() {
+        return HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the position after the last published message. The first invocation scans forward from the tail
+     * checkpoint, subsequent invocations only skip the messages appended since the previous invocation.
+     */
+    @Override
+    public synchronized long tailPosition() {
+        if (tailEnumerator == null) {
+            tailEnumerator = enumerator(StartPosition.TAIL);
+        }
+        while (tailEnumerator.hasNextMessage()) {
+            tailEnumerator.skipNextMessage();
+        }
+        return tailEnumerator.position();
+    }
+
+    /**
+     * Starts a {@link Flusher} writing published messages to the storage device in the background.
+     *
+     * @param syncPolicy the policy defining when to flush
+     * @return the started flusher whose durable position is the end of the last durable message
+     */
+    public Flusher startFlusher(final SyncPolicy syncPolicy) {
+        return file.startFlusher(syncPolicy);
+    }
+
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
     }
 
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (tailEnumerator != null) {
+                    tailEnumerator.close();
+                    tailEnumerator = null;
+                }
+            }
             file.close();
         }
     }
@@ -0,0 +1,319 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.Objects;
+
+import static org.tools4j.fx.highway.direct.OneToManyRingQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * The single appender of a {@link OneToManyRingQueue}. The appender continues at the tail published in the file
+ * header, hence it can be reopened after a restart.
+ * <p>
+ * A message or batch must fit into the ring buffer as it is published as a whole; appending more bytes fails with
+ * an {@link IllegalStateException} and discards the unpublished message or batch.
+ */
+public final class OneToManyRingAppender implements Appender {
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final long mask;
+    private final long dataAddress;
+    private final long tailAddress;
+    private final long tailIntentAddress;
+    private final long consumersAddress;
+    private final int maxConsumers;
+    private final OverflowPolicy overflowPolicy;
+    private final IdleStrategy idleStrategy;
+    private final WakeupSignal wakeupSignal;
+    private final MessageWriterImpl messageWriter;
+    private final MessageClaimImpl messageClaim;
+
+    OneToManyRingAppender(final OneToManyRingQueue queue, final IdleStrategy idleStrategy, final WakeupSignal wakeupSignal) {
+        this.file = queue.getFile();
+        this.capacity = queue.getCapacity();
+        this.mask = capacity - 1;
+        this.maxConsumers = queue.getMaxConsumers();
+        this.overflowPolicy = queue.getOverflowPolicy();
+        this.idleStrategy = Objects.requireNonNull(idleStrategy);
+        this.wakeupSignal = Objects.requireNonNull(wakeupSignal);
+        this.region = file.reserveRegion(0);
+        this.dataAddress = region.getAddress(queue.getDataOffset());
+        this.tailAddress = region.getAddress(TAIL_OFFSET);
+        this.tailIntentAddress = region.getAddress(TAIL_INTENT_OFFSET);
+        this.consumersAddress = region.getAddress(CONSUMERS_OFFSET);
+        this.messageWriter = new MessageWriterImpl();
+        this.messageClaim = new MessageClaimImpl();
+    }
+
+    @Override
+    public MessageWriter appendMessage() {
+        return messageWriter.startAppendMessage();
+    }
+
+    @Override
+    public MessageClaim claim(final int length) {
+        return messageClaim.claim(messageWriter.startClaim(length), length);
+    }
+
+    @Override
+    public Appender appendBatch() {
+        messageWriter.startBatch();
+        return this;
+    }
+
+    @Override
+    public Appender commitBatch() {
+        messageWriter.commitBatch();
+        return this;
+    }
+
+    @Override
+    public Appender abortBatch() {
+        messageWriter.abortBatch();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        messageWriter.close();
+    }
+
+    private final class MessageWriterImpl extends AbstractUnsafeMessageWriter {
+
+        //published tail, next write position and position up to which writes are permitted
+        private long tail = UNSAFE.getLongVolatile(null, tailAddress);
+        private long position = tail;
+        private long limit = tail;
+        private long messageStartPosition = -1;
+        private boolean batch;
+        private boolean closed;
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            return capacity - (position & mask);
+        }
+
+        @Override
+        protected long getAndIncrementAddress(final int add) {
+            if (messageStartPosition < 0) {
+                throw new IllegalStateException("Message not started");
+            }
+            //values do not wrap around, the reader skips the same bytes
+            final long rem = capacity - (position & mask);
+            if (rem < add) {
+                position += rem;
+            }
+            return getAndIncrement(add);
+        }
+
+        private long getAndIncrement(final long add) {
+            final long end = position + add;
+            if (end > limit) {
+                ensureCapacity(end);
+            }
+            final long address = dataAddress + (position & mask);
+            position = end;
+            return address;
+        }
+
+        private void ensureCapacity(final long end) {
+            if (end - tail > capacity) {
+                discardUnpublished();
+                throw new IllegalStateException((batch ? "Batch" : "Message") + " exceeds ring buffer capacity " + capacity);
+            }
+            //the tail intent announces positions that may be overwritten
+            long newLimit = Math.min(end + (capacity >> 2), tail + capacity);
+            if (overflowPolicy == OverflowPolicy.BACKPRESSURE) {
+                do {
+                    newLimit = Math.min(newLimit, awaitConsumers(end));
+                    UNSAFE.putOrderedLong(null, tailIntentAddress, newLimit);
+                    //an enumerator registering concurrently either sees the tail intent or is seen by us
+                    UNSAFE.fullFence();
+                } while (consumerLimit() < newLimit);
+            } else {
+                UNSAFE.putOrderedLong(null, tailIntentAddress, newLimit);
+                UNSAFE.storeFence();
+            }
+            limit = newLimit;
+        }
+
+        private long awaitConsumers(final long end) {
+            long consumerLimit;
+            while ((consumerLimit = consumerLimit()) < end) {
+                if (Thread.currentThread().isInterrupted()) {
+                    discardUnpublished();
+                    throw new IllegalStateException("Interrupted while waiting for consumers");
+                }
+                idleStrategy.idle();
+            }
+            idleStrategy.reset();
+            return consumerLimit;
+        }
+
+        //the position up to which writes do not overwrite messages not yet read by the slowest consumer
+        private long consumerLimit() {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < maxConsumers; i++) {
+                final long consumer = UNSAFE.getLongVolatile(null, consumersAddress + i * CONSUMER_SLOT_LENGTH);
+                if (consumer != NO_CONSUMER && consumer < min) {
+                    min = consumer;
+                }
+            }
+            return min == Long.MAX_VALUE ? Long.MAX_VALUE : min + capacity;
+        }
+
+        private void discardUnpublished() {
+            position = tail;
+            messageStartPosition = -1;
+            batch = false;
+        }
+
+        private void ensureNotClosed() {
+            if (closed) {
+                throw new IllegalStateException("Appender is closed");
+            }
+        }
+
+        private MessageWriter startAppendMessage() {
+            ensureNotClosed();
+            if (messageStartPosition >= 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before appending next");
+            }
+            final long start = position;
+            getAndIncrement(8);//length field, positions are 8 byte aligned hence it never wraps
+            messageStartPosition = start;
+            return this;
+        }
+
+        private long startClaim(final int length) {
+            ensureNotClosed();
+            if (length < 0 || 8L + length > capacity) {
+                throw new IllegalArgumentException("Invalid claim length " + length + " for capacity " + capacity);
+            }
+            if (messageStartPosition >= 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before claiming next");
+            }
+            final long rem = capacity - (position & mask);
+            if (rem < 8 + length) {
+                //claimed bytes must be contiguous, hence the message starts at the beginning of the ring buffer
+                UNSAFE.putLong(null, getAndIncrement(8), PADDING_LENGTH);
+                position += rem - 8;
+            }
+            startAppendMessage();
+            return getAndIncrement(length);
+        }
+
+        private Appender abortAppendMessage() {
+            if (messageStartPosition < 0) {
+                throw new IllegalStateException("No message to abort");
+            }
+            position = messageStartPosition;
+            messageStartPosition = -1;
+            return OneToManyRingAppender.this;
+        }
+
+        @Override
+        public Appender finishAppendMessage() {
+            if (messageStartPosition < 0) {
+                throw new IllegalStateException("No message to finish");
+            }
+            final long pad = (8 - (position & 0x7)) & 0x7;
+            if (pad > 0) {
+                UNSAFE.setMemory(null, getAndIncrement(pad), pad, (byte) 0);
+            }
+            UNSAFE.putLong(null, dataAddress + (messageStartPosition & mask), position - messageStartPosition - 8);
+            messageStartPosition = -1;
+            if (!batch) {
+                publishTail();
+            }
+            return OneToManyRingAppender.this;
+        }
+
+        private void publishTail() {
+            UNSAFE.putOrderedLong(null, tailAddress, position);
+            tail = position;
+            wakeupSignal.signal();
+        }
+
+        private void startBatch() {
+            ensureNotClosed();
+            if (batch) {
+                throw new IllegalStateException("Batch already started");
+            }
+            if (messageStartPosition >= 0) {
+                throw new IllegalStateException("Current message is not finished, must be finished before starting a batch");
+            }
+            batch = true;
+        }
+
+        private void commitBatch() {
+            ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to commit");
+            }
+            if (messageStartPosition >= 0) {
+                finishAppendMessage();
+            }
+            batch = false;
+            publishTail();
+        }
+
+        private void abortBatch() {
+            ensureNotClosed();
+            if (!batch) {
+                throw new IllegalStateException("No batch to abort");
+            }
+            discardUnpublished();
+        }
+
+        public void close() {
+            if (!closed) {
+                if (batch) {
+                    commitBatch();
+                } else if (messageStartPosition >= 0) {
+                    finishAppendMessage();
+                }
+                closed = true;
+                file.releaseRegion(region);
+            }
+        }
+    }
+
+    private final class MessageClaimImpl extends AbstractMessageClaim {
+        @Override
+        protected Appender commitMessage() {
+            return messageWriter.finishAppendMessage();
+        }
+
+        @Override
+        protected Appender abortMessage() {
+            return messageWriter.abortAppendMessage();
+        }
+    }
+}
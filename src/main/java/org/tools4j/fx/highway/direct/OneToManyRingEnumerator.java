@@ -0,0 +1,359 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import sun.misc.Unsafe;
+
+import static org.tools4j.fx.highway.direct.OneToManyRingQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Enumerator of a {@link OneToManyRingQueue} registered in a consumer slot of the file header. The position of the
+ * next message is written to the slot whenever a message has been read; the slot is released when the enumerator
+ * is closed.
+ * <p>
+ * If the appender laps the enumerator, that is, if it overwrites a message before the enumerator has finished
+ * reading it, an {@link IllegalStateException} is thrown when the message is finished or the next message is
+ * polled. This can only happen if the overflow policy is {@link OverflowPolicy#LAP_CONSUMERS LAP_CONSUMERS}.
+ */
+public final class OneToManyRingEnumerator implements Enumerator {
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final long mask;
+    private final long dataAddress;
+    private final long tailAddress;
+    private final long tailIntentAddress;
+    private final long slotAddress;
+    private final MessageReaderImpl messageReader;
+    private long messageLen = -1;
+
+    /**
+     * Constructor for an enumerator starting at the given position and registered in a free consumer slot.
+     *
+     * @param queue         the ring queue
+     * @param startPosition the start position, where {@link StartPosition#atPosition(long) a position} is the virtual
+     *                      byte position of a message not yet overwritten
+     * @throws IllegalStateException    if all consumer slots are in use
+     * @throws IllegalArgumentException if the start position is not a valid position
+     */
+    OneToManyRingEnumerator(final OneToManyRingQueue queue, final StartPosition startPosition) {
+        this.file = queue.getFile();
+        this.capacity = queue.getCapacity();
+        this.mask = capacity - 1;
+        this.region = file.reserveRegion(0);
+        this.dataAddress = region.getAddress(queue.getDataOffset());
+        this.tailAddress = region.getAddress(TAIL_OFFSET);
+        this.tailIntentAddress = region.getAddress(TAIL_INTENT_OFFSET);
+        try {
+            this.slotAddress = registerConsumer(queue.getMaxConsumers());
+        } catch (final RuntimeException e) {
+            file.releaseRegion(region);
+            throw e;
+        }
+        this.messageReader = new MessageReaderImpl();
+        try {
+            messageReader.moveToStart(startPosition);
+        } catch (final RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private long registerConsumer(final int maxConsumers) {
+        //the tail is a valid position that cannot be lapped before the appender sees the slot
+        final long tail = UNSAFE.getLongVolatile(null, tailAddress);
+        for (int i = 0; i < maxConsumers; i++) {
+            final long address = region.getAddress(CONSUMERS_OFFSET + i * CONSUMER_SLOT_LENGTH);
+            if (UNSAFE.compareAndSwapLong(null, address, NO_CONSUMER, tail)) {
+                return address;
+            }
+        }
+        throw new IllegalStateException("All " + maxConsumers + " consumer slots are in use");
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        return getMessageLength() >= 0;
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        final long messageLength = getMessageLength();
+        if (messageLength >= 0) {
+            this.messageLen = -1;
+            return messageReader.readNextMessage(messageLength);
+        }
+        throw new IllegalStateException("No next message found");
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        return readNextMessage().finishReadMessage();
+    }
+
+    /**
+     * Moves to the message with the given sequence number by enumerating all messages from the start of the queue.
+     *
+     * @throws IllegalStateException if the ring buffer has wrapped and the first messages have been overwritten
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        messageReader.seek(sequence);
+        messageLen = -1;
+        return this;
+    }
+
+    /**
+     * Returns the virtual byte position of the next message.
+     */
+    @Override
+    public long position() {
+        return messageReader.position();
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        messageLen = -1;
+        return messageReader.drain(handler, limit);
+    }
+
+    private long getMessageLength() {
+        if (messageLen < 0) {
+            messageLen = messageReader.pollNextMessageLength();
+        }
+        return messageLen;
+    }
+
+    @Override
+    public void close() {
+        messageReader.close();
+    }
+
+    private final class MessageReaderImpl extends AbstractUnsafeMessageReader {
+
+        private final UnsafeBuffer view = new UnsafeBuffer(0, 0);
+        private byte[] copy = new byte[0];
+        private long position;
+        private long cachedTail;
+        private long readPosition = -1;
+        private long messageEndPosition = -1;
+        private boolean closed;
+
+        private void moveToStart(final StartPosition startPosition) {
+            switch (startPosition.getType()) {
+                case HEAD:
+                    if (!moveTo(0)) {
+                        moveToTail();
+                    }
+                    break;
+                case TAIL:
+                    moveToTail();
+                    break;
+                case AT_POSITION:
+                    final long pos = startPosition.getPosition();
+                    if ((pos & 0x7) != 0 || pos > UNSAFE.getLongVolatile(null, tailAddress) || !moveTo(pos)) {
+                        throw new IllegalArgumentException("Not a valid message position: " + pos);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid start position: " + startPosition);
+            }
+        }
+
+        private void moveToTail() {
+            //the appender never announces overwriting more than capacity bytes beyond its tail
+            while (!moveTo(UNSAFE.getLongVolatile(null, tailAddress))) {
+                Thread.yield();
+            }
+        }
+
+        //registers the position in the consumer slot unless the appender has already announced to overwrite it
+        private boolean moveTo(final long newPosition) {
+            final long oldPosition = UNSAFE.getLongVolatile(null, slotAddress);
+            UNSAFE.putLongVolatile(null, slotAddress, newPosition);
+            if (UNSAFE.getLongVolatile(null, tailIntentAddress) - newPosition > capacity) {
+                UNSAFE.putLongVolatile(null, slotAddress, oldPosition);
+                return false;
+            }
+            position = newPosition;
+            return true;
+        }
+
+        private void ensureNotClosed() {
+            if (closed) {
+                throw new IllegalStateException("Enumerator is closed");
+            }
+        }
+
+        private void ensureNotLapped(final long pos) {
+            UNSAFE.loadFence();
+            if (UNSAFE.getLongVolatile(null, tailIntentAddress) - pos > capacity) {
+                throw new IllegalStateException("Enumerator has been lapped by the appender at position " + pos);
+            }
+        }
+
+        private long position() {
+            return messageEndPosition >= 0 ? messageEndPosition : position;
+        }
+
+        private long pollNextMessageLength() {
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            return pollLength();
+        }
+
+        private long pollLength() {
+            ensureNotClosed();
+            while (position < cachedTail || position < (cachedTail = UNSAFE.getLongVolatile(null, tailAddress))) {
+                final long messageLen = UNSAFE.getLong(null, dataAddress + (position & mask));
+                ensureNotLapped(position);
+                if (messageLen != PADDING_LENGTH) {
+                    return messageLen;
+                }
+                position += capacity - (position & mask);
+            }
+            return -1;
+        }
+
+        private void startMessage(final long messageLen) {
+            readPosition = position + 8;
+            messageEndPosition = readPosition + messageLen;
+        }
+
+        private int drain(final MessageHandler handler, final int limit) {
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            int count = 0;
+            long messageLen;
+            while (count < limit && (messageLen = pollLength()) >= 0) {
+                startMessage(messageLen);
+                handler.onMessage(this);
+                finishReadMessage();
+                count++;
+            }
+            return count;
+        }
+
+        private void seek(final long sequence) {
+            if (sequence < 0) {
+                throw new IllegalArgumentException("Invalid sequence: " + sequence);
+            }
+            if (messageEndPosition >= 0) {
+                finishReadMessage();
+            }
+            ensureNotClosed();
+            final long oldPosition = position;
+            if (!moveTo(0)) {
+                throw new IllegalStateException("Cannot seek sequence " + sequence + " as the ring buffer has wrapped");
+            }
+            for (long i = 0; i < sequence; i++) {
+                final long messageLen = pollLength();
+                if (messageLen < 0) {
+                    moveTo(oldPosition);
+                    throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+                }
+                startMessage(messageLen);
+                finishReadMessage();
+            }
+        }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                UNSAFE.putOrderedLong(null, slotAddress, NO_CONSUMER);
+                file.releaseRegion(region);
+            }
+        }
+
+        private MessageReader readNextMessage(final long messageLen) {
+            if (messageEndPosition < 0) {
+                startMessage(messageLen);
+                return messageReader;
+            }
+            //should never get here
+            throw new IllegalStateException("Message reading not finished");
+        }
+
+        @Override
+        public Enumerator finishReadMessage() {
+            if (messageEndPosition >= 0) {
+                ensureNotClosed();
+                ensureNotLapped(position);
+                position = messageEndPosition;
+                UNSAFE.putOrderedLong(null, slotAddress, position);
+                readPosition = -1;
+                messageEndPosition = -1;
+                return OneToManyRingEnumerator.this;
+            }
+            throw new IllegalStateException("No message is currently being read");
+        }
+
+        @Override
+        public DirectBuffer buffer() {
+            if (messageEndPosition < 0) {
+                throw new IllegalStateException("No message is currently being read");
+            }
+            final int length = (int)(messageEndPosition - readPosition);
+            final long offset = readPosition & mask;
+            if (offset + length <= capacity) {
+                view.wrap(dataAddress + offset, length);
+                return view;
+            }
+            if (copy.length < length) {
+                copy = new byte[length];
+            }
+            final long len = capacity - offset;
+            UNSAFE.copyMemory(null, dataAddress + offset, copy, Unsafe.ARRAY_BYTE_BASE_OFFSET, len);
+            UNSAFE.copyMemory(null, dataAddress, copy, Unsafe.ARRAY_BYTE_BASE_OFFSET + len, length - len);
+            view.wrap(copy, 0, length);
+            return view;
+        }
+
+        @Override
+        protected long getContiguousBytesRemaining() {
+            return capacity - (readPosition & mask);
+        }
+
+        @Override
+        protected long getAndIncrementAddress(final int add) {
+            ensureNotClosed();
+            long pos = readPosition;
+            final long rem = capacity - (pos & mask);
+            if (rem < add) {
+                pos += rem;
+            }
+            if (pos + add <= messageEndPosition) {
+                readPosition = pos + add;
+                return dataAddress + (pos & mask);
+            }
+            throw new IllegalStateException("Attempt to read beyond message end: " + (pos + add) + " > " + messageEndPosition);
+        }
+    }
+}
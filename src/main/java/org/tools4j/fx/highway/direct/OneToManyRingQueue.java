@@ -0,0 +1,290 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * MappedQueue implementation for a single Appender and multiple Enumerators over a fixed size ring buffer, for
+ * instance for inter process communication via a file in {@code /dev/shm}. The file is preallocated and mapped as a
+ * single region when the queue is opened; appending and enumerating messages maps and unmaps no further regions.
+ * <p>
+ * Positions are virtual byte positions growing forever; the byte of position p is stored at p modulo capacity in the
+ * ring buffer. The appender publishes the tail position with an ordered write after every message or batch and
+ * announces the position up to which it may overwrite older messages as tail intent. Every enumerator registers its
+ * position in a consumer slot of the file header; the {@link OverflowPolicy overflow policy} stored in the header
+ * defines whether the appender waits for the slowest consumer or laps it.
+ * <p>
+ * A ring queue only retains the most recent messages: an enumerator starting at the {@link StartPosition#HEAD head}
+ * starts with the first message of the queue if the ring has not wrapped yet, and at the tail otherwise. Consumer
+ * slots of enumerators that are not closed, for instance because the consumer process died, keep blocking the
+ * appender if the policy is {@link OverflowPolicy#BACKPRESSURE BACKPRESSURE}.
+ * <p>
+ * File layout: a header with tail, tail intent, capacity, max consumers, overflow policy and consumer slots each in
+ * a separate cache line, followed by the ring buffer. Messages are stored as 8 byte length followed by the message
+ * bytes padded to a multiple of 8 bytes. A length of {@link #PADDING_LENGTH} indicates that the next message starts
+ * at the beginning of the ring buffer.
+ */
+public class OneToManyRingQueue implements MappedQueue, PositionedQueue {
+
+    public enum OverflowPolicy {
+        /** The appender waits until the slowest registered consumer has read the messages it would overwrite */
+        BACKPRESSURE,
+        /** The appender never waits; a consumer whose messages are overwritten fails when reading the next message */
+        LAP_CONSUMERS
+    }
+
+    public static final long DEFAULT_CAPACITY = 4L << 20;//4 MB
+    public static final int DEFAULT_MAX_CONSUMERS = 16;
+
+    static final int TAIL_OFFSET = 0;
+    static final int TAIL_INTENT_OFFSET = 64;
+    static final int CAPACITY_OFFSET = 128;
+    static final int MAX_CONSUMERS_OFFSET = 136;
+    static final int OVERFLOW_POLICY_OFFSET = 144;
+    static final int CONSUMERS_OFFSET = 192;
+    static final int CONSUMER_SLOT_LENGTH = 64;
+
+    static final long PADDING_LENGTH = -2;
+    /** Value of a consumer slot not used by any enumerator */
+    static final long NO_CONSUMER = -1;
+
+    private final MappedFile file;
+    private final MappedRegion region;
+    private final long capacity;
+    private final int maxConsumers;
+    private final OverflowPolicy overflowPolicy;
+    private final WakeupSignal wakeupSignal = new WakeupSignal();
+    private final AtomicBoolean appenderCreated = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private OneToManyRingQueue(final MappedFile file) {
+        this.file = Objects.requireNonNull(file);
+        this.region = file.reserveRegion(0);
+        this.capacity = UNSAFE.getLong(null, region.getAddress(CAPACITY_OFFSET));
+        this.maxConsumers = (int)UNSAFE.getLong(null, region.getAddress(MAX_CONSUMERS_OFFSET));
+        final long policy = UNSAFE.getLong(null, region.getAddress(OVERFLOW_POLICY_OFFSET));
+        if (!isValidCapacity(capacity) || maxConsumers <= 0 || policy < 0 || policy >= OverflowPolicy.values().length
+                || dataOffset(maxConsumers) + capacity > region.getSize()) {
+            file.releaseRegion(region);
+            file.close();
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        this.overflowPolicy = OverflowPolicy.values()[(int)policy];
+    }
+
+    public static final OneToManyRingQueue createOrReplace(final String fileName) throws IOException {
+        return createOrReplace(fileName, DEFAULT_CAPACITY);
+    }
+
+    public static final OneToManyRingQueue createOrReplace(final String fileName, final long capacity) throws IOException {
+        return createOrReplace(fileName, capacity, DEFAULT_MAX_CONSUMERS, OverflowPolicy.BACKPRESSURE);
+    }
+
+    /**
+     * Creates a new ring queue replacing any existing file.
+     *
+     * @param fileName          the file name, for instance a file in {@code /dev/shm}
+     * @param capacity          the capacity of the ring buffer in bytes, a power of two
+     * @param maxConsumers      the maximum number of enumerators open at the same time
+     * @param overflowPolicy    defines the behaviour of the appender when the ring buffer is full
+     * @return the queue
+     * @throws IOException if the file cannot be created
+     */
+    public static final OneToManyRingQueue createOrReplace(final String fileName, final long capacity,
+                                                           final int maxConsumers,
+                                                           final OverflowPolicy overflowPolicy) throws IOException {
+        if (!isValidCapacity(capacity)) {
+            throw new IllegalArgumentException("Capacity must be a power of two and at least 64 but was " + capacity);
+        }
+        if (maxConsumers <= 0) {
+            throw new IllegalArgumentException("Invalid max consumers: " + maxConsumers);
+        }
+        Objects.requireNonNull(overflowPolicy);
+        final long fileLength = fileLength(capacity, maxConsumers);
+        return new OneToManyRingQueue(new MappedFile(fileName, MappedFile.Mode.READ_WRITE_CLEAR, fileLength,
+                (c, m) -> initFile(c, capacity, maxConsumers, overflowPolicy)));
+    }
+
+    /**
+     * Opens an existing ring queue, for instance to create enumerators in a process other than the one that created
+     * the queue. Capacity, max consumers and overflow policy are read from the file header.
+     *
+     * @param fileName the file name of an existing ring queue
+     * @return the queue
+     * @throws IOException if the file does not exist or cannot be opened
+     */
+    public static final OneToManyRingQueue open(final String fileName) throws IOException {
+        final File file = new File(fileName);
+        final long granularity = MappedRegion.REGION_SIZE_GRANULARITY;
+        final long fileLength = file.length();
+        if (fileLength < granularity || fileLength % granularity != 0) {
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        return new OneToManyRingQueue(new MappedFile(file, MappedFile.Mode.READ_WRITE, fileLength));
+    }
+
+    private static boolean isValidCapacity(final long capacity) {
+        return capacity >= 64 && Long.bitCount(capacity) == 1;
+    }
+
+    private static long dataOffset(final int maxConsumers) {
+        return CONSUMERS_OFFSET + (long)maxConsumers * CONSUMER_SLOT_LENGTH;
+    }
+
+    private static long fileLength(final long capacity, final int maxConsumers) {
+        final long granularity = MappedRegion.REGION_SIZE_GRANULARITY;
+        return ((dataOffset(maxConsumers) + capacity + granularity - 1) / granularity) * granularity;
+    }
+
+    private static void initFile(final FileChannel fileChannel, final long capacity, final int maxConsumers,
+                                 final OverflowPolicy overflowPolicy) throws IOException {
+        final FileLock lock = fileChannel.lock();
+        try {
+            final ByteBuffer header = ByteBuffer.allocate((int)dataOffset(maxConsumers)).order(ByteOrder.nativeOrder());
+            header.putLong(TAIL_OFFSET, 0);
+            header.putLong(TAIL_INTENT_OFFSET, 0);
+            header.putLong(CAPACITY_OFFSET, capacity);
+            header.putLong(MAX_CONSUMERS_OFFSET, maxConsumers);
+            header.putLong(OVERFLOW_POLICY_OFFSET, overflowPolicy.ordinal());
+            for (int i = 0; i < maxConsumers; i++) {
+                header.putLong(CONSUMERS_OFFSET + i * CONSUMER_SLOT_LENGTH, NO_CONSUMER);
+            }
+            fileChannel.truncate(0);
+            fileChannel.write(header, 0);
+            //preallocate the whole file, it is mapped as a single region
+            fileChannel.write(ByteBuffer.allocate(1), fileLength(capacity, maxConsumers) - 1);
+            fileChannel.force(true);
+        } finally {
+            lock.release();
+        }
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    MappedFile getFile() {
+        return file;
+    }
+
+    long getDataOffset() {
+        return dataOffset(maxConsumers);
+    }
+
+    /**
+     * Returns the tail position published by the appender, the position after the last published message.
+     */
+    @Override
+    public long tailPosition() {
+        ensureNotClosed();
+        return UNSAFE.getLongVolatile(null, region.getAddress(TAIL_OFFSET));
+    }
+
+    /**
+     * Returns the position where an enumerator starting at the {@link StartPosition#HEAD head} would start: zero if
+     * the first message has not been overwritten yet and the tail otherwise.
+     */
+    @Override
+    public long headPosition() {
+        final long tail = tailPosition();
+        return UNSAFE.getLongVolatile(null, region.getAddress(TAIL_INTENT_OFFSET)) > capacity ? tail : 0;
+    }
+
+    /**
+     * Returns the appender which waits with a {@link BackoffIdleStrategy} if the overflow policy is
+     * {@link OverflowPolicy#BACKPRESSURE BACKPRESSURE} and the ring buffer is full.
+     */
+    @Override
+    public Appender appender() {
+        return appender(new BackoffIdleStrategy(100, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    /**
+     * Returns the appender using the given idle strategy while it waits for consumers if the overflow policy is
+     * {@link OverflowPolicy#BACKPRESSURE BACKPRESSURE}.
+     *
+     * @param backpressureIdleStrategy the idle strategy used while waiting for consumers
+     * @return the appender
+     */
+    public Appender appender(final IdleStrategy backpressureIdleStrategy) {
+        ensureNotClosed();
+        if (appenderCreated.compareAndSet(false, true)) {
+            return new OneToManyRingAppender(this, backpressureIdleStrategy, wakeupSignal);
+        }
+        throw new IllegalStateException("Only one appender supported");
+    }
+
+    /**
+     * Returns an enumerator registered in a free consumer slot.
+     *
+     * @throws IllegalStateException if all consumer slots are in use
+     */
+    @Override
+    public Enumerator enumerator(final StartPosition startPosition) {
+        ensureNotClosed();
+        return new OneToManyRingEnumerator(this, startPosition);
+    }
+
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
+    }
+
+    private void ensureNotClosed() {
+        if (closed.get()) {
+            throw new IllegalStateException("Queue is closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            file.releaseRegion(region);
+            file.close();
+        }
+    }
+
+}
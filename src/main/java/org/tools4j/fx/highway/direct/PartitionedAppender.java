@@ -0,0 +1,82 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.Closeable;
+import java.util.Objects;
+
+/**
+ * The single appender of a {@link PartitionedMappedQueue} appending every message to the partition of its key. The
+ * appenders of the partitions are created when the first message is appended to a partition; batches are supported
+ * per partition through {@link #appender(Object)}.
+ *
+ * @param <K> the type of the partition key
+ */
+public final class PartitionedAppender<K> implements Closeable {
+
+    private final PartitionedMappedQueue<K> queue;
+    private final Appender[] appenders;
+
+    PartitionedAppender(final PartitionedMappedQueue<K> queue) {
+        this.queue = Objects.requireNonNull(queue);
+        this.appenders = new Appender[queue.getPartitionCount()];
+    }
+
+    /**
+     * Returns the appender of the partition of the given key.
+     *
+     * @param key the partition key
+     * @return the appender of the partition
+     * @throws IllegalArgumentException if the key is mapped to an invalid partition
+     */
+    public Appender appender(final K key) {
+        return partitionAppender(queue.partitionOf(key));
+    }
+
+    public Appender partitionAppender(final int partition) {
+        final Appender appender = appenders[partition];
+        if (appender != null) {
+            return appender;
+        }
+        return appenders[partition] = queue.partition(partition).appender();
+    }
+
+    public MessageWriter appendMessage(final K key) {
+        return appender(key).appendMessage();
+    }
+
+    public MessageClaim claim(final K key, final int length) {
+        return appender(key).claim(length);
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < appenders.length; i++) {
+            if (appenders[i] != null) {
+                appenders[i].close();
+                appenders[i] = null;
+            }
+        }
+    }
+}
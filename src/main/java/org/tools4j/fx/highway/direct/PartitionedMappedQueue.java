@@ -0,0 +1,318 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Queue routing every appended message to one of several {@link OneToManyQueue} partitions determined by the
+ * {@link Partitioner} from the partition key of the message, for instance the currency pair. Consumers enumerate
+ * only the partitions they subscribe to, hence the data read by a consumer is proportional to its subscriptions and
+ * not to the total traffic; a {@link MergedEnumerator} provides a combined view of several partitions.
+ * <p>
+ * The file of a partition is named by {@link #partitionFileName(String, int)}. Every partition is a queue of its
+ * own, so messages are ordered within a partition but not across partitions. The number of partitions is stored in
+ * a small partitions file next to the partition files, and a queue opened with a different number of partitions is
+ * rejected since keys would be mapped to other partitions.
+ *
+ * @param <K> the type of the partition key
+ */
+public class PartitionedMappedQueue<K> implements Closeable {
+
+    public static final String SUFFIX_PARTITIONS = ".partitions";
+    public static final int HEADER_LENGTH = 64;
+    public static final long MAGIC = 0x504D4F485846L;//"FXHOMP"
+    public static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int PARTITION_COUNT_OFFSET = 16;
+
+    private final MappedQueue[] partitions;
+    private final Partitioner<? super K> partitioner;
+    private final AtomicBoolean appenderCreated = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private PartitionedMappedQueue(final MappedQueue[] partitions, final Partitioner<? super K> partitioner) {
+        this.partitions = Objects.requireNonNull(partitions);
+        this.partitioner = Objects.requireNonNull(partitioner);
+    }
+
+    public static final <K> PartitionedMappedQueue<K> createOrReplace(final String fileName, final int partitions,
+                                                                      final Partitioner<? super K> partitioner) throws IOException {
+        return createOrReplace(fileName, partitions, partitioner, OneToManyQueue.DEFAULT_REGION_SIZE);
+    }
+
+    public static final <K> PartitionedMappedQueue<K> createOrReplace(final String fileName, final int partitions,
+                                                                      final Partitioner<? super K> partitioner,
+                                                                      final long regionSize) throws IOException {
+        return open(fileName, partitions, partitioner, MappedFile.Mode.READ_WRITE_CLEAR,
+                name -> OneToManyQueue.createOrReplace(name, regionSize));
+    }
+
+    public static final <K> PartitionedMappedQueue<K> createOrAppend(final String fileName, final int partitions,
+                                                                     final Partitioner<? super K> partitioner) throws IOException {
+        return createOrAppend(fileName, partitions, partitioner, OneToManyQueue.DEFAULT_REGION_SIZE);
+    }
+
+    public static final <K> PartitionedMappedQueue<K> createOrAppend(final String fileName, final int partitions,
+                                                                     final Partitioner<? super K> partitioner,
+                                                                     final long regionSize) throws IOException {
+        return open(fileName, partitions, partitioner, MappedFile.Mode.READ_WRITE,
+                name -> OneToManyQueue.createOrAppend(name, regionSize));
+    }
+
+    public static final <K> PartitionedMappedQueue<K> openReadOnly(final String fileName, final int partitions,
+                                                                   final Partitioner<? super K> partitioner) throws IOException {
+        return openReadOnly(fileName, partitions, partitioner, OneToManyQueue.DEFAULT_REGION_SIZE);
+    }
+
+    public static final <K> PartitionedMappedQueue<K> openReadOnly(final String fileName, final int partitions,
+                                                                   final Partitioner<? super K> partitioner,
+                                                                   final long regionSize) throws IOException {
+        return open(fileName, partitions, partitioner, MappedFile.Mode.READ_ONLY,
+                name -> OneToManyQueue.openReadOnly(name, regionSize));
+    }
+
+    private interface PartitionFactory {
+        MappedQueue open(String fileName) throws IOException;
+    }
+
+    private static <K> PartitionedMappedQueue<K> open(final String fileName, final int partitionCount,
+                                                      final Partitioner<? super K> partitioner,
+                                                      final MappedFile.Mode mode,
+                                                      final PartitionFactory factory) throws IOException {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Partitions must be positive: " + partitionCount);
+        }
+        initPartitionsFile(fileName, partitionCount, mode);
+        final MappedQueue[] partitions = new MappedQueue[partitionCount];
+        try {
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = factory.open(partitionFileName(fileName, i));
+            }
+        } catch (final IOException | RuntimeException e) {
+            for (final MappedQueue partition : partitions) {
+                if (partition != null) {
+                    partition.close();
+                }
+            }
+            throw e;
+        }
+        return new PartitionedMappedQueue<>(partitions, partitioner);
+    }
+
+    private static void initPartitionsFile(final String fileName, final int partitionCount,
+                                           final MappedFile.Mode mode) throws IOException {
+        final boolean readOnly = mode == MappedFile.Mode.READ_ONLY;
+        try (final RandomAccessFile file = new RandomAccessFile(partitionsFile(fileName), readOnly ? "r" : "rw")) {
+            final FileChannel fileChannel = file.getChannel();
+            final FileLock lock = fileChannel.lock(0, Long.MAX_VALUE, readOnly);
+            try {
+                switch (mode) {
+                    case READ_ONLY:
+                        checkPartitionCount(fileChannel, partitionCount);
+                        break;
+                    case READ_WRITE:
+                        if (fileChannel.size() > 0) {
+                            checkPartitionCount(fileChannel, partitionCount);
+                            break;
+                        }
+                        //else: FALL THROUGH
+                    case READ_WRITE_CLEAR:
+                        final ByteBuffer init = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+                        init.putLong(MAGIC_OFFSET, MAGIC);
+                        init.putInt(VERSION_OFFSET, VERSION);
+                        init.putInt(PARTITION_COUNT_OFFSET, partitionCount);
+                        fileChannel.truncate(0);
+                        fileChannel.write(init, 0);
+                        fileChannel.force(true);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid mode: " + mode);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static void checkPartitionCount(final FileChannel fileChannel, final int partitionCount) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+        if (fileChannel.read(header, 0) < HEADER_LENGTH || header.getLong(MAGIC_OFFSET) != MAGIC) {
+            throw new IllegalArgumentException("Invalid file format");
+        }
+        if (header.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IllegalArgumentException("Unsupported file format version: " + header.getInt(VERSION_OFFSET));
+        }
+        if (header.getInt(PARTITION_COUNT_OFFSET) != partitionCount) {
+            throw new IllegalArgumentException("Queue has " + header.getInt(PARTITION_COUNT_OFFSET) +
+                    " partitions but was opened with " + partitionCount);
+        }
+    }
+
+    public static String partitionFileName(final String fileName, final int partition) {
+        return fileName + "-" + partition;
+    }
+
+    /**
+     * Returns the file storing the number of partitions of the queue with the given file name.
+     */
+    public static File partitionsFile(final String fileName) {
+        return new File(fileName + SUFFIX_PARTITIONS);
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Returns the partition for the given key.
+     *
+     * @param key the partition key
+     * @return the partition determined by the partitioner
+     * @throws IllegalArgumentException if the partitioner returns an invalid partition for the key
+     */
+    public int partitionOf(final K key) {
+        final int partition = partitioner.partition(key);
+        if (partition < 0 || partition >= partitions.length) {
+            throw new IllegalArgumentException("Invalid partition " + partition + " for key " + key);
+        }
+        return partition;
+    }
+
+    /**
+     * Returns the queue of the given partition, for instance to open an enumerator with a
+     * {@link ConsumerCursor cursor} for a single partition.
+     *
+     * @param partition the partition index
+     * @return the queue of the partition
+     */
+    public MappedQueue partition(final int partition) {
+        return partitions[partition];
+    }
+
+    public PartitionedAppender<K> appender() {
+        if (appenderCreated.compareAndSet(false, true)) {
+            return new PartitionedAppender<>(this);
+        }
+        throw new IllegalStateException("Only one appender supported");
+    }
+
+    /**
+     * Returns an enumerator of the partition of the given key starting at the head of the partition. The
+     * enumerator returns all messages of the partition including messages of other keys mapped to the same
+     * partition.
+     *
+     * @param key the partition key
+     * @return a new enumerator of the partition
+     */
+    public Enumerator enumerator(final K key) {
+        return enumerator(key, StartPosition.HEAD);
+    }
+
+    public Enumerator enumerator(final K key, final StartPosition startPosition) {
+        return partitions[partitionOf(key)].enumerator(startPosition);
+    }
+
+    /**
+     * Returns a merged enumerator of all partitions.
+     *
+     * @param startPosition the start position in every partition, {@link StartPosition#HEAD HEAD} or
+     *                      {@link StartPosition#TAIL TAIL}
+     * @return a new merged enumerator
+     */
+    public Enumerator mergedEnumerator(final StartPosition startPosition) {
+        final int[] all = new int[partitions.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return mergedEnumerator(startPosition, all);
+    }
+
+    /**
+     * Returns a merged enumerator of the partitions of the given keys, each partition included once.
+     *
+     * @param startPosition the start position in every partition, {@link StartPosition#HEAD HEAD} or
+     *                      {@link StartPosition#TAIL TAIL}
+     * @param keys          the keys subscribed to
+     * @return a new merged enumerator
+     */
+    @SafeVarargs
+    public final Enumerator mergedEnumerator(final StartPosition startPosition, final K... keys) {
+        final boolean[] subscribed = new boolean[partitions.length];
+        int count = 0;
+        for (final K key : keys) {
+            final int partition = partitionOf(key);
+            if (!subscribed[partition]) {
+                subscribed[partition] = true;
+                count++;
+            }
+        }
+        final int[] selected = new int[count];
+        for (int i = 0, j = 0; i < subscribed.length; i++) {
+            if (subscribed[i]) {
+                selected[j++] = i;
+            }
+        }
+        return mergedEnumerator(startPosition, selected);
+    }
+
+    private Enumerator mergedEnumerator(final StartPosition startPosition, final int[] selected) {
+        if (startPosition.getType() == StartPosition.Type.AT_POSITION) {
+            throw new IllegalArgumentException("Positions are not comparable across partitions: " + startPosition);
+        }
+        final Enumerator[] enumerators = new Enumerator[selected.length];
+        try {
+            for (int i = 0; i < selected.length; i++) {
+                enumerators[i] = partitions[selected[i]].enumerator(startPosition);
+            }
+        } catch (final RuntimeException e) {
+            for (final Enumerator enumerator : enumerators) {
+                if (enumerator != null) {
+                    enumerator.close();
+                }
+            }
+            throw e;
+        }
+        return enumerators.length == 1 ? enumerators[0] : new MergedEnumerator(enumerators);
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            for (final MappedQueue partition : partitions) {
+                partition.close();
+            }
+        }
+    }
+}
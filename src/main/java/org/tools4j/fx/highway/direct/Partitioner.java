@@ -0,0 +1,64 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * Maps the partition key of a message, for instance a currency pair, to a partition of a
+ * {@link PartitionedMappedQueue}.
+ *
+ * @param <K> the type of the partition key
+ */
+@FunctionalInterface
+public interface Partitioner<K> {
+    /**
+     * @param key the partition key
+     * @return the partition for the key, at least zero and less than the number of partitions
+     */
+    int partition(K key);
+
+    /**
+     * Returns a partitioner using the ordinal of enum keys, for instance to store every currency pair in a partition
+     * of its own.
+     *
+     * @param <E> the enum type
+     * @return a partitioner returning the enum ordinal
+     */
+    static <E extends Enum<E>> Partitioner<E> ordinal() {
+        return e -> e.ordinal();
+    }
+
+    /**
+     * Returns a partitioner distributing keys by their hash code.
+     *
+     * @param partitions the number of partitions
+     * @param <K> the type of the partition key
+     * @return a partitioner returning the hash code of the key modulo the number of partitions
+     */
+    static <K> Partitioner<K> hash(final int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+        }
+        return key -> (key.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * A queue reporting its head and tail positions without reading messages, which allows measuring the
+ * {@link ConsumerLag lag} of a consumer from the position recorded in its {@link ConsumerCursor}.
+ */
+public interface PositionedQueue {
+    /**
+     * Returns the position of the first message read by an enumerator starting at the {@link StartPosition#HEAD head}.
+     */
+    long headPosition();
+
+    /**
+     * Returns the position after the last published message, that is, the position of an enumerator that has read
+     * all messages.
+     */
+    long tailPosition();
+
+    /**
+     * Returns the number of messages between two positions.
+     *
+     * @param from  the start position, not after to
+     * @param to    the end position, not after the tail position
+     * @return the number of messages, or {@link ConsumerLag#UNKNOWN} if positions are not message sequences
+     */
+    default long messagesBetween(final long from, final long to) {
+        return ConsumerLag.UNKNOWN;
+    }
+
+    /**
+     * Returns the number of bytes between two positions including length fields, frame headers and padding.
+     *
+     * @param from  the start position, not after to
+     * @param to    the end position, not after the tail position
+     * @return the number of bytes
+     */
+    default long bytesBetween(final long from, final long to) {
+        return Math.max(0, to - from);
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Pre-faulting options applied by {@link MappedFile} to regions newly mapped by its {@link RegionPreparer}. Options
+ * are applied in declaration order. Regions mapped by appenders or enumerators because the preparer has not got to
+ * them yet are not prefaulted, hence prefaulting has no effect unless a preparer is started.
+ * <p>
+ * Madvise and mlock options are dropped by the mapped file if the native functions are not
+ * {@link #isSupported() supported}; {@link #HUGEPAGE} for file mappings
+ * requires a tmpfs file such as one in {@link org.tools4j.fx.highway.util.FileUtil#SHARED_MEM_DIR /dev/shm} and
+ * transparent huge pages enabled for shmem. Native functions failing for a region, for instance mlock exceeding the
+ * RLIMIT_MEMLOCK resource limit, are counted by {@link MappedFile#getPrefaultFailureCount()}.
+ */
+public enum Prefault {
+    /** Advise the kernel to back the region with transparent huge pages: madvise(MADV_HUGEPAGE)*/
+    HUGEPAGE {
+        @Override
+        public boolean apply(final MappedRegion region, final MappedFile.Mode mode) {
+            return NativeMemory.madvise(region.getAddress(), region.getSize(), NativeMemory.MADV_HUGEPAGE);
+        }
+    },
+    /** Advise the kernel that the region's pages will be needed soon: madvise(MADV_WILLNEED)*/
+    WILLNEED {
+        @Override
+        public boolean apply(final MappedRegion region, final MappedFile.Mode mode) {
+            return NativeMemory.madvise(region.getAddress(), region.getSize(), NativeMemory.MADV_WILLNEED);
+        }
+    },
+    /** Lock the region's pages in memory: mlock; mostly useful for files in /dev/shm*/
+    MLOCK {
+        @Override
+        public boolean apply(final MappedRegion region, final MappedFile.Mode mode) {
+            return NativeMemory.mlock(region.getAddress(), region.getSize());
+        }
+    },
+    /**
+     * Touch every page of the region; in writable mode via atomic add of zero which causes a write fault without
+     * modifying data possibly written concurrently by another appender.
+     */
+    TOUCH {
+        @Override
+        public boolean apply(final MappedRegion region, final MappedFile.Mode mode) {
+            final long pageSize = UNSAFE.pageSize();
+            final long address = region.getAddress();
+            final long end = address + region.getSize();
+            if (mode == MappedFile.Mode.READ_ONLY) {
+                for (long addr = address; addr < end; addr += pageSize) {
+                    UNSAFE.getByte(null, addr);
+                }
+            } else {
+                for (long addr = address; addr < end; addr += pageSize) {
+                    UNSAFE.getAndAddInt(null, addr, 0);
+                }
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Applies this option to the given region.
+     *
+     * @param region    the newly mapped region
+     * @param mode      the mode of the mapped file
+     * @return false if the native function failed, for instance mlock because of the RLIMIT_MEMLOCK resource limit
+     */
+    abstract public boolean apply(MappedRegion region, MappedFile.Mode mode);
+
+    /**
+     * @return true if this option can be applied, that is, if it requires no native functions or if the native
+     *         functions are available
+     */
+    public boolean isSupported() {
+        return this == TOUCH || NativeMemory.isAvailable();
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.tools4j.fx.highway.direct.ArchivedQueue.*;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Compresses the messages of a queue into an archive file that can be replayed through an {@link ArchivedQueue}.
+ * Meant for queue files that are no longer appended to, such as the files of past cycles of a
+ * {@link RollingMappedQueue}; only messages available when the archiver reaches the end of the queue are archived.
+ * <p>
+ * Messages are collected in blocks of up to the given block size which are compressed with {@link LzBlockCodec}; a
+ * message larger than the block size is stored in a block of its own.
+ */
+public final class QueueArchiver {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 << 10;//64 KB
+    public static final long DEFAULT_REGION_SIZE = 4L << 20;//4 MB
+
+    private final int blockSize;
+    private final long regionSize;
+    private final LzBlockCodec codec = new LzBlockCodec();
+    private byte[] block;
+    private byte[] compressed;
+    private ByteBuffer index;
+
+    public QueueArchiver() {
+        this(DEFAULT_BLOCK_SIZE, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Constructor with block and region size.
+     *
+     * @param blockSize     the maximum length of an uncompressed block unless it contains a single larger message
+     * @param regionSize    the region size used to map the archive; no compressed block can be larger
+     */
+    public QueueArchiver(final int blockSize, final long regionSize) {
+        if (blockSize <= RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        if (regionSize <= 0 || regionSize % MappedRegion.REGION_SIZE_GRANULARITY != 0 ||
+                LzBlockCodec.maxCompressedLength(blockSize) > regionSize) {
+            throw new IllegalArgumentException("Invalid region size " + regionSize + " for block size " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.regionSize = regionSize;
+        this.block = new byte[blockSize];
+        this.compressed = new byte[LzBlockCodec.maxCompressedLength(blockSize)];
+        this.index = ByteBuffer.allocate(64 * INDEX_ENTRY_LENGTH).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Archives a rolled cycle file of a {@link RollingMappedQueue} or another {@link OneToManyQueue} file into a file
+     * with the same name and {@link ArchivedQueue#SUFFIX_ARCHIVE}.
+     *
+     * @param queueFile         the queue file, opened read-only
+     * @param queueRegionSize   the region size used to map the queue file
+     * @return the archive file
+     * @throws IOException if reading the queue or writing the archive fails
+     */
+    public File archiveQueueFile(final File queueFile, final long queueRegionSize) throws IOException {
+        final File archiveFile = new File(queueFile.getPath() + SUFFIX_ARCHIVE);
+        try (final MappedQueue queue = OneToManyQueue.openReadOnly(queueFile.getAbsolutePath(), queueRegionSize)) {
+            archive(queue, archiveFile);
+        }
+        return archiveFile;
+    }
+
+    /**
+     * Archives all messages of the queue.
+     *
+     * @param queue         the queue to archive
+     * @param archiveFile   the archive file, replaced if it exists
+     * @return the number of messages archived
+     * @throws IOException if writing the archive fails
+     */
+    public long archive(final MappedQueue queue, final File archiveFile) throws IOException {
+        try (final Enumerator enumerator = queue.enumerator()) {
+            return archive(enumerator, archiveFile);
+        }
+    }
+
+    /**
+     * Archives the messages from the current position of the enumerator to the end of the queue.
+     *
+     * @param enumerator    the enumerator providing the messages
+     * @param archiveFile   the archive file, replaced if it exists
+     * @return the number of messages archived
+     * @throws IOException if writing the archive fails
+     */
+    public long archive(final Enumerator enumerator, final File archiveFile) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(archiveFile, "rw")) {
+            final FileChannel fileChannel = raf.getChannel();
+            fileChannel.truncate(0);
+            index.clear();
+            long position = HEADER_LENGTH;
+            long messageCount = 0;
+            long firstSequence = 0;
+            int blockLength = 0;
+            int maxBlockLength = 0;
+            long sourceRegionSize = 0;
+            while (enumerator.hasNextMessage()) {
+                final MessageReader reader = enumerator.readNextMessage();
+                final int length = reader.buffer().capacity();
+                final int recordLength = RECORD_HEADER_LENGTH + length;
+                if (blockLength > 0 && blockLength + recordLength > blockSize) {
+                    position = writeBlock(fileChannel, position, firstSequence, blockLength);
+                    maxBlockLength = Math.max(maxBlockLength, blockLength);
+                    firstSequence = messageCount;
+                    blockLength = 0;
+                }
+                if (recordLength > block.length) {
+                    ensureBlockCapacity(recordLength);
+                }
+                //the raw bytes include the padding of values the writer moved to the next region; the region
+                //boundary allows the archived reader to skip the padding like the reader of the queue
+                final int boundary = (int)Math.min(length, reader.regionBytesRemaining());
+                UNSAFE.putInt(block, Unsafe.ARRAY_BYTE_BASE_OFFSET + (long)blockLength + RECORD_LENGTH_OFFSET, length);
+                UNSAFE.putInt(block, Unsafe.ARRAY_BYTE_BASE_OFFSET + (long)blockLength + RECORD_SPANNING_OFFSET, length - boundary);
+                reader.getBytes(block, blockLength + RECORD_HEADER_LENGTH, boundary);
+                if (boundary < length) {
+                    sourceRegionSize = Math.max(sourceRegionSize, reader.regionBytesRemaining());
+                    reader.getBytes(block, blockLength + RECORD_HEADER_LENGTH + boundary, length - boundary);
+                }
+                blockLength += recordLength;
+                reader.finishReadMessage();
+                messageCount++;
+            }
+            if (blockLength > 0) {
+                position = writeBlock(fileChannel, position, firstSequence, blockLength);
+                maxBlockLength = Math.max(maxBlockLength, blockLength);
+            }
+            final long indexPosition = (position + 7) & ~7L;
+            index.flip();
+            write(fileChannel, index, indexPosition);
+            fileChannel.force(true);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.nativeOrder());
+            header.putInt(MAX_BLOCK_LENGTH_OFFSET, maxBlockLength);
+            header.putLong(REGION_SIZE_OFFSET, regionSize);
+            header.putLong(INDEX_POSITION_OFFSET, indexPosition);
+            header.putLong(BLOCK_COUNT_OFFSET, index.limit() / INDEX_ENTRY_LENGTH);
+            header.putLong(MESSAGE_COUNT_OFFSET, messageCount);
+            header.putLong(SOURCE_REGION_SIZE_OFFSET, sourceRegionSize);
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            write(fileChannel, header, 0);
+            fileChannel.force(true);
+            return messageCount;
+        }
+    }
+
+    private void ensureBlockCapacity(final int length) {
+        if (LzBlockCodec.maxCompressedLength(length) > regionSize) {
+            throw new IllegalStateException("Message of " + (length - RECORD_HEADER_LENGTH) + " bytes exceeds region size " + regionSize);
+        }
+        block = new byte[length];
+        compressed = new byte[LzBlockCodec.maxCompressedLength(length)];
+    }
+
+    //compressed blocks never span regions so that they can be decompressed from the mapped region in place
+    private long writeBlock(final FileChannel fileChannel, final long position, final long firstSequence,
+                            final int blockLength) throws IOException {
+        final int compressedLength = codec.compress(block, Unsafe.ARRAY_BYTE_BASE_OFFSET, blockLength, compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET);
+        final long regionRemaining = regionSize - (position % regionSize);
+        final long blockPosition = compressedLength <= regionRemaining ? position : position + regionRemaining;
+        write(fileChannel, ByteBuffer.wrap(compressed, 0, compressedLength), blockPosition);
+        if (index.remaining() < INDEX_ENTRY_LENGTH) {
+            final ByteBuffer grown = ByteBuffer.allocate(2 * index.capacity()).order(ByteOrder.nativeOrder());
+            index.flip();
+            index = grown.put(index);
+        }
+        final int entry = index.position();
+        index.putLong(entry + INDEX_BLOCK_POSITION_OFFSET, blockPosition);
+        index.putLong(entry + INDEX_FIRST_SEQUENCE_OFFSET, firstSequence);
+        index.putInt(entry + INDEX_COMPRESSED_LENGTH_OFFSET, compressedLength);
+        index.putInt(entry + INDEX_BLOCK_LENGTH_OFFSET, blockLength);
+        index.position(entry + INDEX_ENTRY_LENGTH);
+        return blockPosition + compressedLength;
+    }
+
+    private static void write(final FileChannel fileChannel, final ByteBuffer buffer, final long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += fileChannel.write(buffer, pos);
+        }
+    }
+}
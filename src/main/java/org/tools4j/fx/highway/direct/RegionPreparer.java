@@ -0,0 +1,164 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background worker of a {@link MappedFile} that keeps regions ahead of the highest reserved region extended and
+ * mapped so that rolling to the next region only requires a ref count increment on the appender's thread. The
+ * {@link Prefault prefault} options of the file are applied to the regions mapped by the preparer.
+ * <p>
+ * The preparer holds a reference to every region it has prepared. It releases the reference when nobody else
+ * uses the region any more and the region is behind the highest reserved region. Regions are released in index
+ * order, that is, only regions behind the slowest enumerator are ever unmapped. Unmapping hence also happens on
+ * the preparer thread and not on the hot path.
+ * <p>
+ * If the file has a {@link MappedFile#setMaxMappedRegions(int) region window}, all regions behind the highest
+ * reserved region are released when no longer in use, and the window decides which regions remain mapped. A lagging
+ * enumerator then maps its regions again instead of keeping all regions up to the appender mapped.
+ */
+public final class RegionPreparer implements Closeable {
+
+    public static final long DEFAULT_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final MappedFile file;
+    private final int regionsAhead;
+    private final long idleNanos;
+    private final Thread thread;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ArrayDeque<MappedRegion> preparedRegions = new ArrayDeque<>();
+    private final AtomicLong preparedCount = new AtomicLong();
+    private final AtomicLong releasedCount = new AtomicLong();
+
+    private int nextIndex;
+
+    RegionPreparer(final MappedFile file, final int regionsAhead, final long idleNanos) {
+        if (regionsAhead <= 0) {
+            throw new IllegalArgumentException("Regions ahead must be positive: " + regionsAhead);
+        }
+        this.file = Objects.requireNonNull(file);
+        this.regionsAhead = regionsAhead;
+        this.idleNanos = idleNanos;
+        this.thread = new Thread(this::run, "region-preparer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        if (running.compareAndSet(false, true)) {
+            nextIndex = Math.max(0, file.getMaxReservedIndex());
+            thread.start();
+        }
+    }
+
+    public int getRegionsAhead() {
+        return regionsAhead;
+    }
+
+    /**
+     * Returns the number of regions prepared by this preparer including regions that were already mapped when
+     * the preparer got to them.
+     */
+    public long getPreparedCount() {
+        return preparedCount.get();
+    }
+
+    /**
+     * Returns the number of regions released by this preparer because nobody else used them any more.
+     */
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    private void run() {
+        while (running.get()) {
+            final boolean prepared = prepareAhead();
+            final boolean released = releaseBehind();
+            if (!prepared && !released) {
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+    }
+
+    private boolean prepareAhead() {
+        final int maxIndex = file.getMaxReservedIndex() + regionsAhead;
+        boolean work = false;
+        while (nextIndex <= maxIndex && running.get()) {
+            preparedRegions.addLast(file.prepareRegion(nextIndex));
+            preparedCount.incrementAndGet();
+            nextIndex++;
+            work = true;
+        }
+        return work;
+    }
+
+    private boolean releaseBehind() {
+        final int maxReservedIndex = file.getMaxReservedIndex();
+        final boolean window = file.getMaxMappedRegions() > 0;
+        boolean work = false;
+        final Iterator<MappedRegion> it = preparedRegions.iterator();
+        while (it.hasNext()) {
+            final MappedRegion region = it.next();
+            if (region.getIndex() >= maxReservedIndex) {
+                break;
+            }
+            if (file.getReservedCount(region) == 1) {
+                it.remove();
+                file.releaseRegion(region);
+                releasedCount.incrementAndGet();
+                work = true;
+            } else if (!window) {
+                break;
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Stops the preparer thread and releases all regions still held by the preparer.
+     */
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for region preparer to stop", e);
+            }
+            MappedRegion region;
+            while ((region = preparedRegions.pollFirst()) != null) {
+                file.releaseRegion(region);
+            }
+        }
+    }
+}
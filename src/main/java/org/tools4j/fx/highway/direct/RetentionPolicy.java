@@ -0,0 +1,55 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * Decides which cycles of a {@link RollingMappedQueue} have expired and can be deleted. The current cycle is never
+ * deleted.
+ */
+@FunctionalInterface
+public interface RetentionPolicy {
+
+    /** Keeps all cycles*/
+    RetentionPolicy KEEP_ALL = (cycle, currentCycle) -> false;
+
+    /**
+     * @param cycle         a cycle before the current cycle
+     * @param currentCycle  the cycle the appender currently appends to
+     * @return true if the cycle has expired
+     */
+    boolean isExpired(long cycle, long currentCycle);
+
+    /**
+     * Returns a policy that keeps the given number of cycles including the current cycle.
+     *
+     * @param cycles the number of cycles to keep, at least one
+     * @return a policy expiring all cycles older than the given number of cycles
+     */
+    static RetentionPolicy keepCycles(final int cycles) {
+        if (cycles <= 0) {
+            throw new IllegalArgumentException("Cycles must be positive: " + cycles);
+        }
+        return (cycle, currentCycle) -> cycle <= currentCycle - cycles;
+    }
+}
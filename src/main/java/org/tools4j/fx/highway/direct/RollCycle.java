@@ -0,0 +1,82 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Roll cycles of a {@link RollingMappedQueue}. A cycle is identified by its cycle number, the number of cycle lengths
+ * since the epoch; cycle files are named after the UTC start time of the cycle.
+ */
+public enum RollCycle {
+    MINUTELY(TimeUnit.MINUTES.toMillis(1), "yyyyMMdd-HHmm"),
+    HOURLY(TimeUnit.HOURS.toMillis(1), "yyyyMMdd-HH"),
+    DAILY(TimeUnit.DAYS.toMillis(1), "yyyyMMdd");
+
+    private final long lengthMillis;
+    private final DateTimeFormatter formatter;
+
+    RollCycle(final long lengthMillis, final String pattern) {
+        this.lengthMillis = lengthMillis;
+        this.formatter = new DateTimeFormatterBuilder()
+                .appendPattern(pattern)
+                .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+                .toFormatter()
+                .withZone(ZoneOffset.UTC);
+    }
+
+    public long getLengthMillis() {
+        return lengthMillis;
+    }
+
+    public long cycle(final long epochMillis) {
+        return Math.floorDiv(epochMillis, lengthMillis);
+    }
+
+    public long getStartMillis(final long cycle) {
+        return cycle * lengthMillis;
+    }
+
+    public String format(final long cycle) {
+        return formatter.format(Instant.ofEpochMilli(getStartMillis(cycle)));
+    }
+
+    /**
+     * Parses a formatted cycle.
+     *
+     * @param text the cycle as returned by {@link #format(long)}
+     * @return the cycle number
+     * @throws java.time.format.DateTimeParseException if text is not a valid cycle of this roll cycle
+     */
+    public long parse(final CharSequence text) {
+        return cycle(LocalDateTime.parse(text, formatter).toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+}
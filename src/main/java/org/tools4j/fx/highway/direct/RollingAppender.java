@@ -0,0 +1,258 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.EpochClock;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender of a {@link RollingMappedQueue}. The cycle is checked whenever a message, claim or batch is started and
+ * never inside a batch, hence all messages of a batch are appended to the same cycle. Writers and claims return this
+ * appender when the message is finished, hence chained invocations also check the cycle for the next message.
+ * <p>
+ * A background thread opens the next cycle in advance, closes finished cycles and deletes expired cycles. Rolling
+ * hence only swaps the cycle unless the clock has skipped a cycle in which case the cycle is opened on the calling
+ * thread. The file of a cycle opened in advance is deleted again if the cycle is skipped or the appender is closed
+ * before the cycle starts, so that only cycles which have been published remain.
+ */
+public final class RollingAppender implements Appender {
+
+    public static final long DEFAULT_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RollingMappedQueue queue;
+    private final RollCycle rollCycle;
+    private final EpochClock clock;
+    private final Object prepareLock = new Object();
+    private final Queue<Cycle> retiredCycles = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread housekeeper;
+    private final DelegatingMessageWriter messageWriter = new DelegatingMessageWriter(this);
+    private final DelegatingMessageClaim messageClaim = new DelegatingMessageClaim(this);
+
+    private Cycle preparedCycle;//guarded by prepareLock
+    private Cycle cycle;
+    private long cycleEndMillis;
+    private volatile long currentCycle;
+    private boolean batch;
+
+    RollingAppender(final RollingMappedQueue queue) {
+        this.queue = Objects.requireNonNull(queue);
+        this.rollCycle = queue.getRollCycle();
+        this.clock = queue.getClock();
+        synchronized (prepareLock) {
+            startCycle(new Cycle(queue, rollCycle.cycle(clock.time())));
+        }
+        this.housekeeper = new Thread(this::runHousekeeper, "rolling-queue-housekeeper");
+        this.housekeeper.setDaemon(true);
+        this.housekeeper.start();
+    }
+
+    private Appender currentAppender() {
+        if (!batch && clock.time() >= cycleEndMillis) {
+            roll();
+        }
+        return cycle.ensureNotClosed().appender;
+    }
+
+    private void roll() {
+        final long nextCycle = rollCycle.cycle(clock.time());
+        if (nextCycle <= cycle.cycle) {
+            return;
+        }
+        //usually uncontended, the housekeeper only holds the lock while preparing right after a roll
+        synchronized (prepareLock) {
+            Cycle next = preparedCycle;
+            preparedCycle = null;
+            if (next == null || next.cycle != nextCycle) {
+                if (next != null) {
+                    //the clock has skipped the prepared cycle which has hence never been published
+                    next.unused = true;
+                    retiredCycles.add(next);
+                }
+                next = new Cycle(queue, nextCycle);
+            }
+            retiredCycles.add(cycle);
+            startCycle(next);
+        }
+    }
+
+    private void startCycle(final Cycle next) {
+        cycle = next;
+        cycleEndMillis = rollCycle.getStartMillis(next.cycle + 1);
+        currentCycle = next.cycle;
+        queue.publishLatestCycle(next.cycle);
+    }
+
+    @Override
+    public MessageWriter appendMessage() {
+        return messageWriter.wrap(currentAppender().appendMessage());
+    }
+
+    @Override
+    public MessageClaim claim(final int length) {
+        return messageClaim.wrap(currentAppender().claim(length));
+    }
+
+    @Override
+    public Appender appendBatch() {
+        currentAppender().appendBatch();
+        batch = true;
+        return this;
+    }
+
+    @Override
+    public Appender commitBatch() {
+        cycle.ensureNotClosed().appender.commitBatch();
+        batch = false;
+        return this;
+    }
+
+    @Override
+    public Appender abortBatch() {
+        cycle.ensureNotClosed().appender.abortBatch();
+        batch = false;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            LockSupport.unpark(housekeeper);
+            try {
+                housekeeper.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for housekeeper to stop", e);
+            }
+            closeRetiredCycles();
+            synchronized (prepareLock) {
+                if (preparedCycle != null) {
+                    preparedCycle.unused = true;
+                    preparedCycle.close();
+                    preparedCycle = null;
+                }
+                cycle.close();
+            }
+        }
+    }
+
+    private void runHousekeeper() {
+        long preparedFor = -1;
+        long retainedFor = -1;
+        while (running.get()) {
+            boolean work = closeRetiredCycles();
+            final long current = currentCycle;
+            if (preparedFor != current) {
+                synchronized (prepareLock) {
+                    if (preparedCycle == null && currentCycle == current) {
+                        preparedCycle = new Cycle(queue, current + 1);
+                    }
+                }
+                preparedFor = current;
+                work = true;
+            }
+            if (retainedFor != current) {
+                deleteExpiredCycles(current);
+                retainedFor = current;
+                work = true;
+            }
+            if (!work) {
+                LockSupport.parkNanos(DEFAULT_IDLE_NANOS);
+            }
+        }
+    }
+
+    private boolean closeRetiredCycles() {
+        boolean work = false;
+        Cycle retired;
+        while ((retired = retiredCycles.poll()) != null) {
+            retired.close();
+            work = true;
+        }
+        return work;
+    }
+
+    private void deleteExpiredCycles(final long current) {
+        final RetentionPolicy retentionPolicy = queue.getRetentionPolicy();
+        if (retentionPolicy == RetentionPolicy.KEEP_ALL) {
+            return;
+        }
+        for (final long c : queue.listCycles()) {
+            if (c < current && retentionPolicy.isExpired(c, current)) {
+                final File file = queue.getCycleFile(c);
+                //enumerators still reading the cycle keep their mapping; otherwise we retry on the next roll
+                file.delete();
+            }
+        }
+    }
+
+    private static final class Cycle {
+        final RollingMappedQueue rollingQueue;
+        final long cycle;
+        final Appender appender;
+        //true if the cycle file has been created by this cycle and not by a previous appender
+        final boolean created;
+        //set before the cycle is retired or closed if the cycle has never been published
+        boolean unused;
+        private boolean closed;
+
+        Cycle(final RollingMappedQueue rollingQueue, final long cycle) {
+            this.rollingQueue = rollingQueue;
+            this.cycle = cycle;
+            this.created = !rollingQueue.getCycleFile(cycle).exists();
+            final MappedQueue queue = rollingQueue.acquireCycle(cycle);
+            try {
+                this.appender = queue.appender();
+            } catch (final RuntimeException e) {
+                rollingQueue.releaseCycle(cycle);
+                throw e;
+            }
+        }
+
+        Cycle ensureNotClosed() {
+            if (!closed) {
+                return this;
+            }
+            throw new IllegalStateException("Appender has already been closed");
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                appender.close();
+                rollingQueue.releaseCycle(cycle);
+                if (unused && created) {
+                    rollingQueue.getCycleFile(cycle).delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.Objects;
+
+/**
+ * Enumerator of a {@link RollingMappedQueue} moving to the next cycle when all messages of the current cycle have
+ * been read and the appender has rolled to a later cycle. Readers return this enumerator when the message is
+ * finished, hence chained invocations also move to the next cycle.
+ */
+public final class RollingEnumerator implements Enumerator {
+
+    private final RollingMappedQueue queue;
+    private long cycle = -1;
+    private Enumerator enumerator;
+    private final DelegatingMessageReader messageReader = new DelegatingMessageReader(this);
+
+    RollingEnumerator(final RollingMappedQueue queue, final StartPosition startPosition) {
+        this.queue = Objects.requireNonNull(queue);
+        switch (startPosition.getType()) {
+            case HEAD:
+                break;
+            case TAIL:
+                final long latestCycle = queue.getLatestCycle();
+                if (latestCycle >= 0 && queue.getCycleFile(latestCycle).exists()) {
+                    openCycle(latestCycle, StartPosition.TAIL);
+                }
+                break;
+            case AT_POSITION:
+                moveToPosition(startPosition.getPosition());
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid start position: " + startPosition);
+        }
+    }
+
+    private void openCycle(final long cycle, final StartPosition startPosition) {
+        final MappedQueue cycleQueue = queue.acquireCycle(cycle);
+        try {
+            this.enumerator = cycleQueue.enumerator(startPosition);
+        } catch (final RuntimeException e) {
+            queue.releaseCycle(cycle);
+            throw e;
+        }
+        this.cycle = cycle;
+    }
+
+    private void closeCycle() {
+        if (enumerator != null) {
+            enumerator.close();
+            enumerator = null;
+            queue.releaseCycle(cycle);
+        }
+    }
+
+    //a position with cycle position zero denotes the head of the first cycle not before the cycle
+    private void moveToPosition(final long position) {
+        final long cycle = RollingMappedQueue.cycle(position);
+        final long cyclePosition = RollingMappedQueue.cyclePosition(position);
+        if (cyclePosition == 0) {
+            this.cycle = cycle - 1;
+            return;
+        }
+        if (!queue.getCycleFile(cycle).exists()) {
+            throw new IllegalArgumentException("Cycle of position does not exist: " + position);
+        }
+        openCycle(cycle, StartPosition.atPosition(cyclePosition));
+    }
+
+    /**
+     * Moves to the next cycle if the current cycle has been finished by the appender.
+     *
+     * @return true if more messages may now be available
+     */
+    private boolean moveToNextCycle() {
+        final long latestCycle = queue.getLatestCycle();
+        if (latestCycle <= cycle) {
+            return false;
+        }
+        //messages may have been appended to the current cycle before the roll
+        if (enumerator != null && enumerator.hasNextMessage()) {
+            return true;
+        }
+        closeCycle();
+        final long nextCycle = queue.nextCycle(cycle, latestCycle);
+        if (nextCycle < 0) {
+            cycle = latestCycle;
+            return false;
+        }
+        openCycle(nextCycle, StartPosition.HEAD);
+        return true;
+    }
+
+    @Override
+    public boolean hasNextMessage() {
+        do {
+            if (enumerator != null && enumerator.hasNextMessage()) {
+                return true;
+            }
+        } while (moveToNextCycle());
+        return false;
+    }
+
+    @Override
+    public MessageReader readNextMessage() {
+        if (hasNextMessage()) {
+            return messageReader.wrap(enumerator.readNextMessage());
+        }
+        throw new IllegalStateException("No next message found");
+    }
+
+    @Override
+    public Enumerator skipNextMessage() {
+        readNextMessage().finishReadMessage();
+        return this;
+    }
+
+    /**
+     * Moves to the message with the given sequence number by enumerating all messages from the first cycle.
+     */
+    @Override
+    public Enumerator seek(final long sequence) {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid sequence: " + sequence);
+        }
+        final long position = position();
+        closeCycle();
+        cycle = -1;
+        for (long i = 0; i < sequence; i++) {
+            if (!hasNextMessage()) {
+                closeCycle();
+                moveToPosition(position);
+                throw new IllegalArgumentException("Sequence " + sequence + " is beyond the end of the queue");
+            }
+            skipNextMessage();
+        }
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return enumerator != null ? RollingMappedQueue.position(cycle, enumerator.position()) :
+                RollingMappedQueue.position(cycle + 1, 0);
+    }
+
+    @Override
+    public int drain(final MessageHandler handler, final int limit) {
+        int count = 0;
+        do {
+            if (enumerator != null) {
+                count += enumerator.drain(handler, limit - count);
+            }
+        } while (count < limit && moveToNextCycle());
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closeCycle();
+    }
+}
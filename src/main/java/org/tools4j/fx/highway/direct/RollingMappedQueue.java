@@ -0,0 +1,372 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.SystemEpochClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * MappedQueue rolling to a new {@link OneToManyQueue} file per {@link RollCycle} in a directory. Supports a single
+ * Appender and multiple Enumerators which move across cycles seamlessly.
+ * <p>
+ * A small metadata file next to the cycle files holds the latest cycle. The appender publishes a new cycle only
+ * after the cycle file has been created and all messages of the previous cycle have been written; enumerators check
+ * it when no more messages are available in their current cycle. Creating the next cycle file, closing finished
+ * cycles and deleting cycles expired according to the {@link RetentionPolicy} is performed by a background thread
+ * of the appender, so rolling only swaps the cycle on the appender's thread.
+ * <p>
+ * The appender and enumerators of a queue instance share the queue of a cycle file.
+ * <p>
+ * A position of an enumerator combines the cycle in the upper bits with the position in the cycle file in the lower
+ * {@link #CYCLE_POSITION_BITS} bits.
+ */
+public class RollingMappedQueue implements MappedQueue, PositionedQueue {
+
+    public static final String SUFFIX_CYCLE = ".q";
+    public static final String SUFFIX_METADATA = ".meta";
+    public static final int METADATA_LENGTH = 64;
+    public static final int LATEST_CYCLE_OFFSET = 0;
+    public static final int CYCLE_POSITION_BITS = 37;
+
+    private final File directory;
+    private final String name;
+    private final RollCycle rollCycle;
+    private final long regionSize;
+    private final MappedFile.Mode mode;
+    private final RetentionPolicy retentionPolicy;
+    private final EpochClock clock;
+    private final WakeupSignal wakeupSignal = new WakeupSignal();
+    private final MappedFile metadataFile;
+    private final MappedRegion metadataRegion;
+    private final long latestCycleAddress;
+    private final Map<Long, CycleQueue> openCycles = new HashMap<>();
+    private final AtomicBoolean appenderCreated = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private Enumerator tailEnumerator;//guarded by this
+
+    private RollingMappedQueue(final File directory, final String name, final RollCycle rollCycle,
+                               final long regionSize, final MappedFile.Mode mode,
+                               final RetentionPolicy retentionPolicy, final EpochClock clock) throws IOException {
+        this.directory = Objects.requireNonNull(directory);
+        this.name = Objects.requireNonNull(name);
+        this.rollCycle = Objects.requireNonNull(rollCycle);
+        this.regionSize = regionSize;
+        this.mode = Objects.requireNonNull(mode);
+        this.retentionPolicy = Objects.requireNonNull(retentionPolicy);
+        this.clock = Objects.requireNonNull(clock);
+        this.metadataFile = new MappedFile(new File(directory, name + SUFFIX_METADATA), mode,
+                MappedRegion.REGION_SIZE_GRANULARITY, RollingMappedQueue::initMetadataFile);
+        this.metadataRegion = metadataFile.reserveRegion(0);
+        this.latestCycleAddress = metadataRegion.getAddress(LATEST_CYCLE_OFFSET);
+    }
+
+    public static final MappedQueue createOrAppend(final File directory, final String name,
+                                                   final RollCycle rollCycle) throws IOException {
+        return createOrAppend(directory, name, rollCycle, OneToManyQueue.DEFAULT_REGION_SIZE, RetentionPolicy.KEEP_ALL,
+                new SystemEpochClock());
+    }
+
+    public static final MappedQueue createOrAppend(final File directory, final String name,
+                                                   final RollCycle rollCycle, final long regionSize,
+                                                   final RetentionPolicy retentionPolicy,
+                                                   final EpochClock clock) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create directory: " + directory.getAbsolutePath());
+        }
+        return new RollingMappedQueue(directory, name, rollCycle, regionSize, MappedFile.Mode.READ_WRITE,
+                retentionPolicy, clock);
+    }
+
+    public static final MappedQueue openReadOnly(final File directory, final String name,
+                                                 final RollCycle rollCycle) throws IOException {
+        return openReadOnly(directory, name, rollCycle, OneToManyQueue.DEFAULT_REGION_SIZE);
+    }
+
+    public static final MappedQueue openReadOnly(final File directory, final String name,
+                                                 final RollCycle rollCycle, final long regionSize) throws IOException {
+        return new RollingMappedQueue(directory, name, rollCycle, regionSize, MappedFile.Mode.READ_ONLY,
+                RetentionPolicy.KEEP_ALL, new SystemEpochClock());
+    }
+
+    private static void initMetadataFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
+        final FileLock lock = fileChannel.lock();
+        try {
+            switch (mode) {
+                case READ_ONLY:
+                    if (fileChannel.size() < METADATA_LENGTH) {
+                        throw new IllegalArgumentException("Invalid file format");
+                    }
+                    break;
+                case READ_WRITE:
+                    if (fileChannel.size() >= METADATA_LENGTH) {
+                        break;
+                    }
+                    //else: FALL THROUGH
+                case READ_WRITE_CLEAR:
+                    final ByteBuffer header = ByteBuffer.allocate(METADATA_LENGTH).order(ByteOrder.nativeOrder());
+                    header.putLong(LATEST_CYCLE_OFFSET, -1);
+                    fileChannel.truncate(0);
+                    fileChannel.write(header, 0);
+                    fileChannel.force(true);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid mode: " + mode);
+            }
+        } finally {
+            lock.release();
+        }
+    }
+
+    static long position(final long cycle, final long cyclePosition) {
+        if (cyclePosition >>> CYCLE_POSITION_BITS != 0) {
+            throw new IllegalStateException("Position exceeds maximum cycle file length: " + cyclePosition);
+        }
+        return (cycle << CYCLE_POSITION_BITS) | cyclePosition;
+    }
+
+    static long cycle(final long position) {
+        return position >>> CYCLE_POSITION_BITS;
+    }
+
+    static long cyclePosition(final long position) {
+        return position & ((1L << CYCLE_POSITION_BITS) - 1);
+    }
+
+    RollCycle getRollCycle() {
+        return rollCycle;
+    }
+
+    RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    EpochClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return the latest cycle published by the appender or -1 if no message has been appended yet
+     */
+    long getLatestCycle() {
+        return UNSAFE.getLongVolatile(null, latestCycleAddress);
+    }
+
+    void publishLatestCycle(final long cycle) {
+        if (cycle > getLatestCycle()) {
+            UNSAFE.putOrderedLong(null, latestCycleAddress, cycle);
+        }
+    }
+
+    File getCycleFile(final long cycle) {
+        return new File(directory, name + "-" + rollCycle.format(cycle) + SUFFIX_CYCLE);
+    }
+
+    /**
+     * Opens the queue of the given cycle or returns the already open queue; must be released via
+     * {@link #releaseCycle(long)}.
+     */
+    synchronized MappedQueue acquireCycle(final long cycle) {
+        CycleQueue cycleQueue = openCycles.get(cycle);
+        if (cycleQueue == null) {
+            cycleQueue = new CycleQueue(openCycle(cycle));
+            openCycles.put(cycle, cycleQueue);
+        }
+        cycleQueue.refCount++;
+        return cycleQueue.queue;
+    }
+
+    synchronized void releaseCycle(final long cycle) {
+        final CycleQueue cycleQueue = openCycles.get(cycle);
+        if (cycleQueue != null && --cycleQueue.refCount == 0) {
+            openCycles.remove(cycle);
+            cycleQueue.queue.close();
+        }
+    }
+
+    private MappedQueue openCycle(final long cycle) {
+        final String fileName = getCycleFile(cycle).getAbsolutePath();
+        try {
+            return mode == MappedFile.Mode.READ_ONLY ? OneToManyQueue.openReadOnly(fileName, regionSize) :
+                    OneToManyQueue.createOrAppend(fileName, regionSize, wakeupSignal);
+        } catch (final IOException e) {
+            throw new RuntimeException("could not open cycle file " + fileName, e);
+        }
+    }
+
+    /**
+     * Returns all cycles with an existing cycle file in ascending order.
+     */
+    long[] listCycles() {
+        final String prefix = name + "-";
+        final String[] fileNames = directory.list((dir, n) -> n.startsWith(prefix) && n.endsWith(SUFFIX_CYCLE));
+        if (fileNames == null) {
+            return new long[0];
+        }
+        final long[] cycles = new long[fileNames.length];
+        int count = 0;
+        for (final String fileName : fileNames) {
+            try {
+                cycles[count] = rollCycle.parse(fileName.substring(prefix.length(), fileName.length() - SUFFIX_CYCLE.length()));
+                count++;
+            } catch (final DateTimeParseException e) {
+                //not a cycle file of this queue
+            }
+        }
+        final long[] result = Arrays.copyOf(cycles, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the first cycle with an existing cycle file after the given cycle and not after maxCycle.
+     *
+     * @return the next cycle or -1 if no such cycle exists
+     */
+    long nextCycle(final long cycle, final long maxCycle) {
+        for (final long c : listCycles()) {
+            if (c > cycle && c <= maxCycle) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Appender appender() {
+        if (mode == MappedFile.Mode.READ_ONLY) {
+            throw new IllegalStateException("Cannot access appender for file in read-only mode");
+        }
+        if (appenderCreated.compareAndSet(false, true)) {
+            return new RollingAppender(this);
+        }
+        throw new IllegalStateException("Only one appender supported");
+    }
+
+    @Override
+    public Enumerator enumerator(final StartPosition startPosition) {
+        return new RollingEnumerator(this, startPosition);
+    }
+
+    /**
+     * Returns the position denoting the head of the first cycle.
+     */
+    @Override
+    public long headPosition() {
+        return position(0, 0);
+    }
+
+    /**
+     * Returns the position after the last published message. The first invocation scans forward from the tail
+     * checkpoint of the latest cycle, subsequent invocations only skip the messages appended since the previous
+     * invocation.
+     */
+    @Override
+    public synchronized long tailPosition() {
+        if (tailEnumerator == null) {
+            tailEnumerator = enumerator(StartPosition.TAIL);
+        }
+        while (tailEnumerator.hasNextMessage()) {
+            tailEnumerator.skipNextMessage();
+        }
+        return tailEnumerator.position();
+    }
+
+    /**
+     * Returns the bytes between two positions summed up over all cycles in between; the tail of every cycle before
+     * the cycle of the end position is found by opening the cycle.
+     */
+    @Override
+    public long bytesBetween(final long from, final long to) {
+        final long fromCycle = cycle(from);
+        final long fromPosition = cyclePosition(from);
+        final long toCycle = cycle(to);
+        final long toPosition = cyclePosition(to);
+        long bytes = 0;
+        for (final long c : listCycles()) {
+            if (c < fromCycle || c > toCycle || (c == toCycle && toPosition == 0)) {
+                continue;
+            }
+            final long start = c == fromCycle && fromPosition > 0 ? fromPosition : OneToManyQueue.HEADER_LENGTH;
+            final long end = c == toCycle ? toPosition : cycleTailPosition(c);
+            bytes += Math.max(0, end - start);
+        }
+        return bytes;
+    }
+
+    private long cycleTailPosition(final long cycle) {
+        final MappedQueue cycleQueue = acquireCycle(cycle);
+        try {
+            return ((PositionedQueue)cycleQueue).tailPosition();
+        } finally {
+            releaseCycle(cycle);
+        }
+    }
+
+    @Override
+    public WakeupSignal wakeupSignal() {
+        return wakeupSignal;
+    }
+
+    /**
+     * Closes the metadata file; the appender and all enumerators close their cycle files themselves and must be
+     * closed first.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (tailEnumerator != null) {
+                    tailEnumerator.close();
+                    tailEnumerator = null;
+                }
+            }
+            metadataFile.releaseRegion(metadataRegion);
+            metadataFile.close();
+        }
+    }
+
+    private static final class CycleQueue {
+        final MappedQueue queue;
+        int refCount;
+
+        CycleQueue(final MappedQueue queue) {
+            this.queue = queue;
+        }
+    }
+}
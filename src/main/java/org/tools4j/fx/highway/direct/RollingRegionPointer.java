@@ -83,18 +83,32 @@ public final class RollingRegionPointer implements Closeable {
         moveToPosition(getPosition() + step);
     }
 
+    /**
+     * Moves the pointer to the given position which can be before or after the current position. If the position
+     * is in a different region, the region is reserved and the current region released; intermediate regions are
+     * not touched.
+     *
+     * @param position the new position of this pointer
+     */
     public void moveToPosition(final long position) {
-        long newOffset = position - region.getPosition();
-        while (newOffset >= region.getSize()) {
-            rollRegion();
-            newOffset = position - region.getPosition();
+        final long newOffset = position - region.getPosition();
+        if (newOffset >= 0 && newOffset < region.getSize()) {
+            offset = newOffset;
+            return;
+        }
+        final int index = file.getRegionIndexForPosition(position);
+        if (position < 0 || index < 0) {
+            throw new IllegalArgumentException("Invalid position: " + position);
         }
-        offset = newOffset;
+        final MappedRegion previousRegion = region;
+        region = file.reserveRegion(index);
+        file.releaseRegion(previousRegion);
+        offset = position - region.getPosition();
     }
 
     private void pad(final long len) {
         if (len > 0) {
-            UNSAFE.setMemory(null, region.getAddress(), len, (byte) 0);
+            UNSAFE.setMemory(null, region.getAddress(offset), len, (byte) 0);
         }
     }
 
@@ -0,0 +1,80 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * Defines where an {@link Enumerator} starts reading: at the {@link #HEAD} of the queue, at the current
+ * {@link #TAIL} or at a position previously obtained via {@link Enumerator#position()}.
+ */
+public final class StartPosition {
+
+    public enum Type {
+        HEAD,
+        TAIL,
+        AT_POSITION
+    }
+
+    /** Start with the first message of the queue */
+    public static final StartPosition HEAD = new StartPosition(Type.HEAD, -1);
+    /** Start with the first message appended after the enumerator has been created */
+    public static final StartPosition TAIL = new StartPosition(Type.TAIL, -1);
+
+    private final Type type;
+    private final long position;
+
+    private StartPosition(final Type type, final long position) {
+        this.type = type;
+        this.position = position;
+    }
+
+    /**
+     * Returns a start position for the message at the given position.
+     *
+     * @param position a position as returned by {@link Enumerator#position()}
+     * @return a start position of type {@link Type#AT_POSITION}
+     * @throws IllegalArgumentException if position is negative
+     */
+    public static StartPosition atPosition(final long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Invalid position: " + position);
+        }
+        return new StartPosition(Type.AT_POSITION, position);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the position if type is {@link Type#AT_POSITION} and -1 otherwise
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.AT_POSITION ? type + "(" + position + ")" : type.name();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+/**
+ * Defines when a {@link Flusher} writes modified bytes of a {@link MappedFile} to the storage device: never, at a
+ * fixed interval, after a number of bytes has been written or whenever the writer has completed a region.
+ */
+public final class SyncPolicy {
+
+    public enum Type {
+        NONE,
+        INTERVAL,
+        BYTES,
+        REGION_ROLL
+    }
+
+    /** Never flush explicitly, durability is left to the operating system */
+    public static final SyncPolicy NONE = new SyncPolicy(Type.NONE, 0);
+    /** Flush a region when the writer has moved to the next region */
+    public static final SyncPolicy ON_REGION_ROLL = new SyncPolicy(Type.REGION_ROLL, 0);
+
+    private final Type type;
+    private final long value;
+
+    private SyncPolicy(final Type type, final long value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * Returns a policy flushing all bytes written so far every given number of milliseconds.
+     *
+     * @param millis the flush interval in milliseconds, positive
+     * @return a sync policy of type {@link Type#INTERVAL}
+     */
+    public static SyncPolicy everyMillis(final long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Invalid interval millis: " + millis);
+        }
+        return new SyncPolicy(Type.INTERVAL, millis);
+    }
+
+    /**
+     * Returns a policy flushing all bytes written so far whenever at least the given number of bytes have been
+     * written since the last flush.
+     *
+     * @param bytes the number of bytes, positive
+     * @return a sync policy of type {@link Type#BYTES}
+     */
+    public static SyncPolicy everyBytes(final long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Invalid bytes: " + bytes);
+        }
+        return new SyncPolicy(Type.BYTES, bytes);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the interval millis for {@link Type#INTERVAL}, the bytes for {@link Type#BYTES} and zero otherwise
+     */
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value > 0 ? type + "(" + value + ")" : type.name();
+    }
+}
@@ -79,40 +79,44 @@ public class UInts {
     }
 
     public static int readUIntCompact(final MessageReader reader) {
-        final int int0 = reader.getInt8();
-        return readUIntCompact(reader, int0);
+        return readUIntCompact(reader, readUInt8(reader));
     }
 
     public static int readUIntCompact(final MessageReader reader, final int int0) {
         if ((int0 & SENTINEL_2) != SENTINEL_2) {
             return int0;
         }
-        final int int1 = reader.getInt8();
         if ((int0 & SENTINEL_4) != SENTINEL_4) {
-            return ((int0 ^ SENTINEL_2) << 8) | int1;
+            return ((int0 ^ SENTINEL_2) << 8) | readUInt8(reader);
         }
-        final int int2 = reader.getInt8();
-        final int int3 = reader.getInt8();
         if ((int0 & SENTINEL_5) != SENTINEL_5) {
+            final int int1 = readUInt8(reader);
+            final int int2 = readUInt8(reader);
+            final int int3 = readUInt8(reader);
             return ((int0 ^ SENTINEL_4) << 24) | (int1 << 16) | (int2 << 8) | int3;
         }
-        final int int4 = reader.getInt8();
-        return (int1 << 24) | (int2 << 16) | (int3 << 8) | int4;
+        //written with putInt32
+        return reader.getInt32();
     }
 
     public static long readULongCompact(final MessageReader reader) {
-        final int int0 = reader.getInt8();
+        final int int0 = readUInt8(reader);
         if ((int0 & SENTINEL_8) != SENTINEL_8) {
             return readUIntCompact(reader, int0);
         }
         if ((int0 & SENTINEL_9) != SENTINEL_9) {
             final long lint0 = int0 ^ SENTINEL_8;
-            final long lint1 = reader.getInt8();
-            final long lint2 = reader.getInt8();
-            final long lint3 = reader.getInt8();
+            final long lint1 = readUInt8(reader);
+            final long lint2 = readUInt8(reader);
+            final long lint3 = readUInt8(reader);
             final long lint4_7 = reader.getInt32() & 0xffffffffL;
             return (lint0 << 56) | (lint1 << 48) | (lint2 << 40) | (lint3 << 32) | lint4_7;
         }
         return reader.getInt64();
     }
+
+    //getInt8 returns a signed byte
+    private static int readUInt8(final MessageReader reader) {
+        return reader.getInt8() & 0xff;
+    }
 }
@@ -0,0 +1,118 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Progressive idle strategy that spins, then yields and finally parks with exponentially increasing park time
+ * until woken up by a {@link WakeupSignal}. The first idle call in the parking phase registers the thread with the
+ * signal and returns without parking so that the caller checks for messages again before parking.
+ * <p>
+ * An instance must only be used by a single thread.
+ */
+public final class WakeableIdleStrategy implements IdleStrategy {
+
+    public static final long DEFAULT_MAX_SPINS = 100;
+    public static final long DEFAULT_MAX_YIELDS = 10;
+    public static final long DEFAULT_MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    public static final long DEFAULT_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final WakeupSignal signal;
+    private final long maxSpins;
+    private final long maxYields;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+
+    private long spins;
+    private long yields;
+    private long parkNanos;
+    private boolean registered;
+    private int slot = -1;
+
+    public WakeableIdleStrategy(final WakeupSignal signal) {
+        this(signal, DEFAULT_MAX_SPINS, DEFAULT_MAX_YIELDS, DEFAULT_MIN_PARK_NANOS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    public WakeableIdleStrategy(final WakeupSignal signal, final long maxSpins, final long maxYields,
+                                final long minParkNanos, final long maxParkNanos) {
+        if (maxSpins < 0 || maxYields < 0 || minParkNanos <= 0 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException("Invalid idle parameters: maxSpins=" + maxSpins + ", maxYields="
+                    + maxYields + ", minParkNanos=" + minParkNanos + ", maxParkNanos=" + maxParkNanos);
+        }
+        this.signal = Objects.requireNonNull(signal);
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+        this.parkNanos = minParkNanos;
+    }
+
+    @Override
+    public void idle(final int workCount) {
+        if (workCount > 0) {
+            reset();
+        } else {
+            idle();
+        }
+    }
+
+    @Override
+    public void idle() {
+        if (spins < maxSpins) {
+            spins++;
+            return;
+        }
+        if (yields < maxYields) {
+            yields++;
+            Thread.yield();
+            return;
+        }
+        if (!registered) {
+            registered = true;
+            slot = signal.register(Thread.currentThread());
+            if (slot >= 0) {
+                return;
+            }
+        }
+        LockSupport.parkNanos(parkNanos);
+        parkNanos = Math.min(parkNanos << 1, maxParkNanos);
+    }
+
+    @Override
+    public void reset() {
+        spins = 0;
+        yields = 0;
+        parkNanos = minParkNanos;
+        if (slot >= 0) {
+            signal.deregister(slot);
+            slot = -1;
+        }
+        registered = false;
+    }
+}
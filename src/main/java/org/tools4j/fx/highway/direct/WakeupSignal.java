@@ -0,0 +1,104 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Wakes up consumer threads parked by a {@link WakeableIdleStrategy} when an appender of the same queue instance
+ * publishes messages. Appenders in other processes do not signal; parked consumers hence always park with a
+ * timeout.
+ * <p>
+ * While no consumer waits for the signal, signalling costs a volatile read only. While consumers are registered it
+ * involves a full fence so that a consumer checking for messages after registering either sees the published
+ * message or is woken up. A consumer registering while no other consumer waits can still miss a concurrent signal,
+ * in which case it wakes up when its park timeout expires.
+ */
+public final class WakeupSignal {
+
+    public static final int DEFAULT_MAX_WAITERS = 64;
+
+    private final AtomicReferenceArray<Thread> waiters;
+    private final AtomicInteger waiterCount = new AtomicInteger();
+
+    public WakeupSignal() {
+        this(DEFAULT_MAX_WAITERS);
+    }
+
+    public WakeupSignal(final int maxWaiters) {
+        if (maxWaiters <= 0) {
+            throw new IllegalArgumentException("Max waiters must be positive: " + maxWaiters);
+        }
+        this.waiters = new AtomicReferenceArray<>(maxWaiters);
+    }
+
+    /**
+     * Wakes up all registered waiters; invoked by appenders after publishing messages.
+     */
+    public void signal() {
+        if (waiterCount.get() > 0) {
+            //orders the published message before reading the waiter slots, the counterpart of the fence in register
+            UNSAFE.fullFence();
+            final int len = waiters.length();
+            for (int i = 0; i < len; i++) {
+                final Thread thread = waiters.get(i);
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the given thread as waiter. The caller must check for messages again after registering and before
+     * parking.
+     *
+     * @param thread the thread to wake up when signalled
+     * @return the slot of the waiter to pass to {@link #deregister(int)}, or -1 if the maximum number of waiters
+     *         is already registered
+     */
+    int register(final Thread thread) {
+        final int len = waiters.length();
+        for (int i = 0; i < len; i++) {
+            if (waiters.get(i) == null && waiters.compareAndSet(i, null, thread)) {
+                waiterCount.incrementAndGet();
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void deregister(final int slot) {
+        waiters.set(slot, null);
+        waiterCount.decrementAndGet();
+    }
+
+    public int getWaiterCount() {
+        return waiterCount.get();
+    }
+}
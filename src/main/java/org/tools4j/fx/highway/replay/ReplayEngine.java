@@ -0,0 +1,273 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.replay;
+
+import org.HdrHistogram.Histogram;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.SystemNanoClock;
+import org.tools4j.fx.highway.direct.Enumerator;
+import org.tools4j.fx.highway.direct.MessageReader;
+import org.tools4j.fx.highway.sbe.MarketDataSnapshotDecoder;
+import org.tools4j.fx.highway.sbe.MessageHeaderDecoder;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Republishes SBE encoded market data snapshots recorded in a queue at the pace given by their event timestamps, or
+ * at a multiple of it. Messages with other templates are republished immediately after the preceding message.
+ * <p>
+ * Like the pacing loop of {@link org.tools4j.fx.highway.aeron.AeronPublisher}, the schedule is derived from the
+ * start of the replay and not from the previous send: if the engine falls behind, for instance because the sink is
+ * back pressured, the following messages are sent as fast as possible until the schedule is met again. The lag of
+ * every message, the time between its scheduled and its actual publication, is recorded in a histogram; a stall
+ * hence shows as lag of all messages that were due during the stall and is not hidden by coordinated omission.
+ * <p>
+ * The engine waits for the next message by spinning, and parks the thread if the next message is due in more than
+ * {@link #SPIN_NANOS}. Offers rejected by a back pressured sink are retried after idling with the back pressure idle
+ * strategy until the sink accepts the message or the engine is stopped; a message still rejected when the engine is
+ * stopped is left unfinished and offered first when the replay is resumed. Replay is not thread safe apart from
+ * {@link #stop()} and the getters.
+ */
+public class ReplayEngine {
+
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+    public static final long SPIN_NANOS = 100000;
+
+    private final Enumerator source;
+    private final ReplaySink sink;
+    private final double speed;
+    private final NanoClock clock;
+    private final IdleStrategy backPressureIdleStrategy;
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+    private final MarketDataSnapshotDecoder snapshotDecoder = new MarketDataSnapshotDecoder();
+    private final Histogram lagHistogram = new Histogram(3);
+
+    private volatile boolean stopped;
+    private volatile long messageCount;
+    private volatile long untimedCount;
+    private volatile long backPressureCount;
+    private volatile long lastLagNanos;
+
+    //message rejected by the sink when the replay was stopped, offered again on resume
+    private MessageReader pending;
+    private boolean timed;
+    private long eventTimestamp;
+    private long startTime;
+    private long firstEventTimestamp;
+    private long lastScheduledTime;
+
+    public ReplayEngine(final Enumerator source, final ReplaySink sink, final double speed) {
+        this(source, sink, speed, new SystemNanoClock());
+    }
+
+    public ReplayEngine(final Enumerator source, final ReplaySink sink, final double speed, final NanoClock clock) {
+        this(source, sink, speed, clock, new BackoffIdleStrategy(100, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    /**
+     * Constructor for a replay engine.
+     *
+     * @param source    the enumerator of the recorded queue, positioned at the first message to replay
+     * @param sink      the sink to republish messages to
+     * @param speed     the replay speed relative to the recorded pace, for instance 1 for the original pace, 10 to
+     *                  replay 10 times faster or {@link #MAX_SPEED} to replay without pacing
+     * @param clock     the clock used for pacing and lag measurement
+     * @param backPressureIdleStrategy the idle strategy used between offers rejected by the sink
+     */
+    public ReplayEngine(final Enumerator source, final ReplaySink sink, final double speed, final NanoClock clock,
+                        final IdleStrategy backPressureIdleStrategy) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        this.source = Objects.requireNonNull(source);
+        this.sink = Objects.requireNonNull(sink);
+        this.speed = speed;
+        this.clock = Objects.requireNonNull(clock);
+        this.backPressureIdleStrategy = Objects.requireNonNull(backPressureIdleStrategy);
+    }
+
+    /**
+     * Replays messages until the end of the source is reached, the given number of messages has been replayed, the
+     * engine is {@link #stop() stopped} or the current thread is interrupted. The schedule starts with the first
+     * message replayed by every invocation, hence a replay can be resumed without catching up on the time in
+     * between. A stop request ends only the current invocation, the replay is resumed by invoking this method
+     * again.
+     *
+     * @param maxMessages the maximum number of messages to replay
+     * @return the number of messages replayed by this invocation
+     */
+    public long replay(final long maxMessages) {
+        try {
+            return replayMessages(maxMessages);
+        } finally {
+            stopped = false;
+        }
+    }
+
+    private long replayMessages(final long maxMessages) {
+        long count = 0;
+        while (count < maxMessages && !isStopped() && (pending != null || source.hasNextMessage())) {
+            final MessageReader reader = pending != null ? pending : source.readNextMessage();
+            pending = null;
+            final DirectBuffer buffer = reader.buffer();
+            final int length = messageLength(buffer);
+            final long scheduledTime = scheduledTime(count == 0);
+            awaitSchedule(scheduledTime);
+            while (!sink.offer(buffer, 0, length)) {
+                backPressureCount++;
+                if (isStopped()) {
+                    backPressureIdleStrategy.reset();
+                    pending = reader;
+                    return count;
+                }
+                backPressureIdleStrategy.idle();
+            }
+            backPressureIdleStrategy.reset();
+            final long lag = Math.max(0, clock.nanoTime() - scheduledTime);
+            lagHistogram.recordValue(lag);
+            lastLagNanos = lag;
+            reader.finishReadMessage();
+            if (!timed) {
+                untimedCount++;
+            }
+            messageCount++;
+            count++;
+        }
+        return count;
+    }
+
+    //decodes the event timestamp and returns the encoded length, or the buffer length for other messages
+    private int messageLength(final DirectBuffer buffer) {
+        if (buffer.capacity() >= MessageHeaderDecoder.ENCODED_LENGTH) {
+            headerDecoder.wrap(buffer, 0);
+            if (headerDecoder.templateId() == MarketDataSnapshotDecoder.TEMPLATE_ID &&
+                    buffer.capacity() >= MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength()) {
+                snapshotDecoder.wrap(buffer, MessageHeaderDecoder.ENCODED_LENGTH, headerDecoder.blockLength(), headerDecoder.version());
+                eventTimestamp = snapshotDecoder.eventTimestamp();
+                final MarketDataSnapshotDecoder.BidsDecoder bids = snapshotDecoder.bids();
+                while (bids.hasNext()) {
+                    bids.next();
+                }
+                final MarketDataSnapshotDecoder.AsksDecoder asks = snapshotDecoder.asks();
+                while (asks.hasNext()) {
+                    asks.next();
+                }
+                timed = true;
+                return MessageHeaderDecoder.ENCODED_LENGTH + snapshotDecoder.encodedLength();
+            }
+        }
+        timed = false;
+        return buffer.capacity();
+    }
+
+    private long scheduledTime(final boolean first) {
+        final long now = clock.nanoTime();
+        if (first) {
+            startTime = now;
+            lastScheduledTime = now;
+            firstEventTimestamp = timed ? eventTimestamp : Long.MIN_VALUE;
+            return now;
+        }
+        if (!timed) {
+            return lastScheduledTime;
+        }
+        if (speed == MAX_SPEED) {
+            lastScheduledTime = now;
+            return now;
+        }
+        if (firstEventTimestamp == Long.MIN_VALUE) {
+            //first timed message after untimed ones at the start
+            firstEventTimestamp = eventTimestamp - (long)((lastScheduledTime - startTime) * speed);
+        }
+        final long scheduled = startTime + (long)((eventTimestamp - firstEventTimestamp) / speed);
+        //recorded timestamps going backwards do not move the schedule backwards
+        lastScheduledTime = Math.max(lastScheduledTime, scheduled);
+        return lastScheduledTime;
+    }
+
+    private void awaitSchedule(final long scheduledTime) {
+        long remaining;
+        while ((remaining = scheduledTime - clock.nanoTime()) > 0 && !isStopped()) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+        }
+    }
+
+    private boolean isStopped() {
+        return stopped || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Stops a replay running in another thread after the current message, or the next replay if none is running.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the total number of messages replayed.
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Returns the number of replayed messages that were not market data snapshots and hence had no timestamp.
+     */
+    public long getUntimedCount() {
+        return untimedCount;
+    }
+
+    /**
+     * Returns the number of offers rejected by the sink because of back pressure.
+     */
+    public long getBackPressureCount() {
+        return backPressureCount;
+    }
+
+    /**
+     * Returns how far behind schedule the last message was published, in nanoseconds.
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    /**
+     * Returns the histogram with the lag of every replayed message in nanoseconds. The histogram is updated by the
+     * replaying thread and should be read after replay has returned.
+     */
+    public Histogram getLagHistogram() {
+        return lagHistogram;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.replay;
+
+import io.aeron.Publication;
+import org.agrona.DirectBuffer;
+import org.tools4j.fx.highway.direct.Appender;
+
+import java.util.Objects;
+
+/**
+ * Destination of messages republished by a {@link ReplayEngine}.
+ */
+@FunctionalInterface
+public interface ReplaySink {
+
+    /**
+     * Offers a message to the sink.
+     *
+     * @param buffer    the buffer with the message
+     * @param offset    the offset of the message in the buffer
+     * @param length    the message length
+     * @return true if the message was published, false if the sink is back pressured and the message should be
+     *         offered again
+     */
+    boolean offer(DirectBuffer buffer, int offset, int length);
+
+    /**
+     * Returns a sink appending messages to a {@link org.tools4j.fx.highway.direct.MappedQueue} through the given
+     * appender.
+     *
+     * @param appender the appender of the target queue
+     * @return a sink that is never back pressured
+     */
+    static ReplaySink appender(final Appender appender) {
+        Objects.requireNonNull(appender);
+        return (buffer, offset, length) -> {
+            appender.appendMessage().putBytes(buffer, offset, length).finishAppendMessage();
+            return true;
+        };
+    }
+
+    /**
+     * Returns a sink offering messages to an aeron publication.
+     *
+     * @param publication the connected publication
+     * @return a sink that is back pressured if the publication is back pressured or requires an admin action
+     * @throws RuntimeException from {@link #offer(DirectBuffer, int, int)} if the publication is not connected or
+     *                          closed
+     */
+    static ReplaySink publication(final Publication publication) {
+        Objects.requireNonNull(publication);
+        return (buffer, offset, length) -> {
+            final long pubres = publication.offer(buffer, offset, length);
+            if (pubres >= 0) {
+                return true;
+            }
+            if (pubres == Publication.BACK_PRESSURED || pubres == Publication.ADMIN_ACTION) {
+                return false;
+            }
+            throw new RuntimeException("publication failed with pubres=" + pubres);
+        };
+    }
+}
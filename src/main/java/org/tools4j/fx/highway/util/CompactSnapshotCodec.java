@@ -0,0 +1,156 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.util;
+
+import org.tools4j.fx.highway.direct.MessageReader;
+import org.tools4j.fx.highway.direct.MessageWriter;
+import org.tools4j.fx.highway.direct.UInts;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
+import org.tools4j.fx.highway.message.RateLevel;
+import org.tools4j.fx.highway.sbe.CurrencyPair;
+import org.tools4j.fx.highway.sbe.Venue;
+
+import java.util.List;
+
+/**
+ * Compact alternative to the SBE encoding in {@link SerializerHelper} writing a {@link MarketDataSnapshot} directly
+ * through a {@link MessageWriter}.
+ * <p>
+ * Rates are written as fixed-point values with {@link #RATE_DECIMALS} decimals, each level as the difference to the
+ * previous level; the first bid relative to zero and the first ask relative to the first bid. Quantities are written
+ * in whole units and snapshots with fractional or negative quantities are rejected. All values are
+ * {@link UInts compact} varints, signed values zig-zag encoded, hence a level with one pip spacing and a quantity in
+ * millions takes about 6 instead of 16 bytes.
+ * <p>
+ * Layout: version (1 byte), trigger timestamp (8 bytes), event timestamp relative to trigger timestamp, currency
+ * pair (1 byte), venue (1 byte), bid count, bids, ask count, asks.
+ */
+public final class CompactSnapshotCodec {
+
+    public static final byte VERSION = 1;
+    public static final int RATE_DECIMALS = 6;
+    private static final double RATE_SCALE = 1e6;
+    private static final double MAX_QUANTITY = 0x1p63;
+
+    /**
+     * Encodes the snapshot; the caller finishes the message.
+     *
+     * @param snapshot the snapshot to encode
+     * @param writer   the writer of the started message
+     * @return the writer
+     * @throws IllegalArgumentException if a quantity is not a whole non-negative number, in which case nothing has
+     *                                  been written
+     */
+    public static MessageWriter encode(final MarketDataSnapshot snapshot, final MessageWriter writer) {
+        checkQuantities(snapshot.getBids());
+        checkQuantities(snapshot.getAsks());
+        writer.putInt8(VERSION);
+        writer.putInt64(snapshot.getTriggerTimestamp());
+        UInts.writeULongCompact(zigZag(snapshot.getEventTimestamp() - snapshot.getTriggerTimestamp()), writer);
+        writer.putInt8(snapshot.getCurrencyPair().value());
+        writer.putInt8(snapshot.getVenue().value());
+        final long firstBid = encodeLevels(snapshot.getBids(), 0, writer);
+        encodeLevels(snapshot.getAsks(), firstBid, writer);
+        return writer;
+    }
+
+    //returns the fixed-point rate of the first level, or the given base rate if there are no levels
+    private static long encodeLevels(final List<? extends RateLevel> levels, final long baseRate, final MessageWriter writer) {
+        final int count = levels.size();
+        UInts.writeUIntCompact(count, writer);
+        long previous = baseRate;
+        for (int i = 0; i < count; i++) {
+            final RateLevel level = levels.get(i);
+            final long rate = toFixedPoint(level.getRate());
+            UInts.writeULongCompact(zigZag(rate - previous), writer);
+            UInts.writeULongCompact((long)level.getQuantity(), writer);
+            previous = rate;
+        }
+        return count > 0 ? toFixedPoint(levels.get(0).getRate()) : baseRate;
+    }
+
+    private static void checkQuantities(final List<? extends RateLevel> levels) {
+        for (int i = 0; i < levels.size(); i++) {
+            final double quantity = levels.get(i).getQuantity();
+            //also rejects NaN and quantities beyond the long range
+            if (!(quantity >= 0 && quantity < MAX_QUANTITY && quantity == (long)quantity)) {
+                throw new IllegalArgumentException("Quantity must be a whole non-negative number: " + quantity);
+            }
+        }
+    }
+
+    /**
+     * Decodes a snapshot written by {@link #encode(MarketDataSnapshot, MessageWriter)} into the given builder.
+     *
+     * @param reader  the reader of the message to decode
+     * @param builder the builder receiving the snapshot values
+     * @return the snapshot built by the builder
+     */
+    public static MarketDataSnapshot decode(final MessageReader reader, final MarketDataSnapshotBuilder builder) {
+        final byte version = reader.getInt8();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported compact snapshot version: " + version);
+        }
+        final long triggerTimestamp = reader.getInt64();
+        builder.setTriggerTimestamp(triggerTimestamp);
+        builder.setEventTimestamp(triggerTimestamp + unZigZag(UInts.readULongCompact(reader)));
+        builder.setCurrencyPair(CurrencyPair.get((short)(reader.getInt8() & 0xff)));
+        builder.setVenue(Venue.get((short)(reader.getInt8() & 0xff)));
+
+        long rate = 0;
+        long firstBid = 0;
+        final int bids = UInts.readUIntCompact(reader);
+        for (int i = 0; i < bids; i++) {
+            rate += unZigZag(UInts.readULongCompact(reader));
+            builder.addBid(UInts.readULongCompact(reader), fromFixedPoint(rate));
+            if (i == 0) {
+                firstBid = rate;
+            }
+        }
+        rate = firstBid;
+        final int asks = UInts.readUIntCompact(reader);
+        for (int i = 0; i < asks; i++) {
+            rate += unZigZag(UInts.readULongCompact(reader));
+            builder.addAsk(UInts.readULongCompact(reader), fromFixedPoint(rate));
+        }
+        return builder.build();
+    }
+
+    private static long toFixedPoint(final double rate) {
+        return Math.round(rate * RATE_SCALE);
+    }
+
+    private static double fromFixedPoint(final long rate) {
+        return rate / RATE_SCALE;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -23,9 +23,10 @@
  */
 package org.tools4j.fx.highway.util;
 
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.NanoClock;
 import org.agrona.concurrent.SystemNanoClock;
-import org.agrona.concurrent.UnsafeBuffer;
 import org.tools4j.fx.highway.message.MarketDataSnapshot;
 import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
 import org.tools4j.fx.highway.message.RateLevel;
@@ -71,7 +72,15 @@ public class SerializerHelper {
         return builder.build();
     }
 
-    public static int encode(final UnsafeBuffer directBuffer,
+    public static int encodedLength(final MarketDataSnapshot snapshot) {
+        return MessageHeaderEncoder.ENCODED_LENGTH + MarketDataSnapshotEncoder.BLOCK_LENGTH
+                + MarketDataSnapshotEncoder.BidsEncoder.sbeHeaderSize()
+                + snapshot.getBids().size() * MarketDataSnapshotEncoder.BidsEncoder.sbeBlockLength()
+                + MarketDataSnapshotEncoder.AsksEncoder.sbeHeaderSize()
+                + snapshot.getAsks().size() * MarketDataSnapshotEncoder.AsksEncoder.sbeBlockLength();
+    }
+
+    public static int encode(final MutableDirectBuffer directBuffer,
                       final MarketDataSnapshot fromSnapshot) {
         MESSAGE_HEADER_ENCODER
                 .wrap(directBuffer, 0)
@@ -102,7 +111,7 @@ public class SerializerHelper {
     }
 
 
-    public static MarketDataSnapshot decode(final UnsafeBuffer directBuffer, final MarketDataSnapshotBuilder builder) {
+    public static MarketDataSnapshot decode(final DirectBuffer directBuffer, final MarketDataSnapshotBuilder builder) {
         MESSAGE_HEADER_DECODER.wrap(directBuffer, 0);
 
         // Lookup the applicable flyweight to decode this type of message based on templateId and version.
@@ -0,0 +1,129 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class AppenderBatchTest {
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public AppenderBatchTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("batch").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void batchIsVisibleOnlyAfterCommit() throws Exception {
+        //when
+        appender.appendBatch();
+        for (int i = 0; i < 200; i++) {
+            appendMessage(i);
+        }
+
+        //then
+        assertThat(enumerator.hasNextMessage()).isFalse();
+
+        //when
+        appender.commitBatch();
+
+        //then
+        for (int i = 0; i < 200; i++) {
+            assertNextMessage(i);
+        }
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test
+    public void abortedBatchIsDiscarded() throws Exception {
+        //when
+        appendMessage(0);
+        appender.appendBatch();
+        for (int i = 1; i < 200; i++) {
+            appendMessage(-i);
+        }
+        appender.appendMessage().putInt64(-1000);
+        appender.abortBatch();
+        appender.appendBatch();
+        appendMessage(1);
+        appender.commitBatch();
+        appendMessage(2);
+
+        //then
+        assertNextMessage(0);
+        assertNextMessage(1);
+        assertNextMessage(2);
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    private void appendMessage(final long value) {
+        final MessageWriter writer = appender.appendMessage();
+        writer.putInt64(value);
+        writer.putInt32((int)value);
+        writer.putInt8(7);
+        writer.finishAppendMessage();
+    }
+
+    private void assertNextMessage(final long value) {
+        assertThat(enumerator.hasNextMessage()).isTrue();
+        final MessageReader reader = enumerator.readNextMessage();
+        assertThat(reader.getInt64()).isEqualTo(value);
+        assertThat(reader.getInt32()).isEqualTo((int)value);
+        assertThat(reader.getInt8()).isEqualTo((byte)7);
+        reader.finishReadMessage();
+    }
+}
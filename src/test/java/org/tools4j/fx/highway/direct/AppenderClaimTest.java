@@ -0,0 +1,188 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.MutableDirectBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.message.ImmutableMarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.tools4j.fx.highway.util.SerializerHelper.*;
+
+@RunWith(Parameterized.class)
+public class AppenderClaimTest {
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public AppenderClaimTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("claim").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void claimedMessagesAreContiguousAndMixWithAppendedMessages() throws Exception {
+        //when
+        for (int i = 0; i < 2000; i++) {
+            if (i % 3 == 0) {
+                appendMessage(i);
+            } else {
+                claimMessage(i);
+            }
+        }
+
+        //then
+        for (int i = 0; i < 2000; i++) {
+            assertNextMessage(i);
+        }
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test
+    public void claimIsVisibleOnlyAfterCommit() throws Exception {
+        //when
+        final MessageClaim claim = appender.claim(8);
+        claim.buffer().putLong(0, 42);
+
+        //then
+        assertThat(claim.length()).isEqualTo(8);
+        assertThat(enumerator.hasNextMessage()).isFalse();
+
+        //when
+        claim.commit();
+
+        //then
+        assertThat(enumerator.hasNextMessage()).isTrue();
+        assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(42);
+    }
+
+    @Test
+    public void abortedClaimIsDiscarded() throws Exception {
+        //when
+        claimMessage(0);
+        appender.claim(100).abort();
+        claimMessage(1);
+        appender.appendBatch();
+        claimMessage(2);
+        appender.claim(100).abort();
+        claimMessage(3);
+        appender.commitBatch();
+
+        //then
+        assertNextMessage(0);
+        assertNextMessage(1);
+        assertNextMessage(2);
+        assertNextMessage(3);
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test
+    public void encodeMarketDataSnapshotIntoClaim() throws Exception {
+        //given
+        final MarketDataSnapshot snapshot = givenMarketDataSnapshot(new ImmutableMarketDataSnapshot.Builder());
+        final int length = encodedLength(snapshot);
+
+        //when
+        final MessageClaim claim = appender.claim(length);
+        assertThat(encode(claim.buffer(), snapshot)).isEqualTo(length);
+        claim.commit();
+
+        //then
+        final MessageReader reader = enumerator.readNextMessage();
+        assertThat(decode(reader.buffer(), new ImmutableMarketDataSnapshot.Builder())).isEqualTo(snapshot);
+        reader.finishReadMessage();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void claimLargerThanRegionIsRejected() throws Exception {
+        appender.claim(Integer.MAX_VALUE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void claimWhileMessageNotFinishedIsRejected() throws Exception {
+        appender.appendMessage().putInt64(1);
+        appender.claim(8);
+    }
+
+    private void appendMessage(final long value) {
+        final MessageWriter writer = appender.appendMessage();
+        writer.putInt64(value);
+        for (int i = 0; i < value % 17; i++) {
+            writer.putInt64(i);
+        }
+        writer.finishAppendMessage();
+    }
+
+    //same message layout as appendMessage(value)
+    private void claimMessage(final long value) {
+        final int length = (int)(8 + 8 * (value % 17));
+        final MessageClaim claim = appender.claim(length);
+        final MutableDirectBuffer buffer = claim.buffer();
+        buffer.putLong(0, value);
+        for (int i = 0; i < value % 17; i++) {
+            buffer.putLong(8 + 8 * i, i);
+        }
+        claim.commit();
+    }
+
+    private void assertNextMessage(final long value) {
+        assertThat(enumerator.hasNextMessage()).isTrue();
+        final MessageReader reader = enumerator.readNextMessage();
+        assertThat(reader.getInt64()).isEqualTo(value);
+        for (int i = 0; i < value % 17; i++) {
+            assertThat(reader.getInt64()).isEqualTo(i);
+        }
+        reader.finishReadMessage();
+    }
+}
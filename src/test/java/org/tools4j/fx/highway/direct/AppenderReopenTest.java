@@ -0,0 +1,139 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class AppenderReopenTest {
+
+    private static final long REGION_SIZE = 4 * MappedRegion.REGION_SIZE_GRANULARITY;
+
+    private final String queueType;
+    private final int messages;
+    private final long checkpoint;
+
+    private String fileName;
+    private MappedQueue queue;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}, MESSAGES={1}, CHECKPOINT={2}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { "OneToManyQueue", 0, -1 },
+                { "OneToManyQueue", 1000, -1 },
+                { "OneToManyQueue", 1000000, -1 },
+                { "OneToManyQueue", 1000000, 0 },//invalid checkpoint, forces full scan
+                { "OneToManyQueue", 1000000, 12345 },//invalid checkpoint, forces full scan
+                { "OneToManyIndexedQueue", 0, -1 },
+                { "OneToManyIndexedQueue", 1000, -1 },
+                { "OneToManyIndexedQueue", 1000000, -1 },
+                { "OneToManyIndexedQueue", 1000000, 0 },//invalid checkpoint, forces full scan
+                { "OneToManyIndexedQueue", 1000000, 12345 }//invalid checkpoint, forces full scan
+        });
+    }
+
+    public AppenderReopenTest(final String queueType, final int messages, final long checkpoint) {
+        this.queueType = queueType;
+        this.messages = messages;
+        this.checkpoint = checkpoint;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        fileName = FileUtil.tmpDirFile("reopen").getAbsolutePath();
+        queue = createQueue(true);
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < messages; i++) {
+                appender.appendMessage().putInt64(i).putInt32(i % 7).finishAppendMessage();
+            }
+        }
+        queue.close();
+        if (checkpoint >= 0) {
+            overwriteCheckpoint(checkpoint);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+    }
+
+    @Test
+    public void reopenedAppenderContinuesAfterLastMessage() throws Exception {
+        //when
+        queue = createQueue(false);
+        final long t0 = System.nanoTime();
+        final Appender appender = queue.appender();
+        final long t1 = System.nanoTime();
+        appender.appendMessage().putInt64(messages).putInt32(messages % 7).finishAppendMessage();
+        appender.close();
+        System.out.println(queueType + ": reopened appender after " + messages + " messages in " + (t1 - t0) / 1000 + "us");
+
+        //then
+        try (final Enumerator enumerator = queue.enumerator()) {
+            for (int i = 0; i <= messages; i++) {
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.getInt64()).isEqualTo(i);
+                assertThat(reader.getInt32()).isEqualTo(i % 7);
+                reader.finishReadMessage();
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    private MappedQueue createQueue(final boolean replace) throws IOException {
+        switch (queueType) {
+            case "OneToManyQueue":
+                return replace ? OneToManyQueue.createOrReplace(fileName, REGION_SIZE) :
+                        OneToManyQueue.createOrAppend(fileName, REGION_SIZE);
+            case "OneToManyIndexedQueue":
+                return replace ? OneToManyIndexedQueue.createOrReplace(fileName, REGION_SIZE, REGION_SIZE) :
+                        OneToManyIndexedQueue.createOrAppend(fileName, REGION_SIZE, REGION_SIZE);
+            default:
+                throw new IllegalArgumentException("Unknown queue type: " + queueType);
+        }
+    }
+
+    private void overwriteCheckpoint(final long value) throws IOException {
+        final String headerFile = "OneToManyQueue".equals(queueType) ? fileName : fileName + OneToManyIndexedQueue.SUFFIX_INDEX;
+        try (final RandomAccessFile file = new RandomAccessFile(headerFile, "rw")) {
+            file.seek("OneToManyQueue".equals(queueType) ? OneToManyQueue.TAIL_CHECKPOINT_OFFSET : OneToManyIndexedQueue.TAIL_CHECKPOINT_OFFSET);
+            file.writeLong(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares replay throughput of a raw queue file with the same messages replayed from an {@link ArchivedQueue}.
+ * Messages resemble market data with a timestamp, an instrument id and a handful of slowly changing prices.
+ */
+public class ArchivedQueueReplayThroughputTest {
+
+    private final String fileName = FileUtil.tmpDirFile("replay").getAbsolutePath();
+    private final File archiveFile = new File(fileName + ArchivedQueue.SUFFIX_ARCHIVE);
+    private MappedQueue queue;
+
+    private long count;
+    private long checksum;
+
+    @Before
+    public void setup() throws Exception {
+        queue = OneToManyQueue.createOrReplace(fileName);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+        new File(fileName).delete();
+        archiveFile.delete();
+    }
+
+    @Test
+    public void replayThroughputTest() throws Exception {
+        //given
+        final int n = 2000000;
+        final int runs = 5;
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final MessageHandler handler = message -> {
+            checksum += message.getInt64();
+            message.getInt32();
+            for (int i = 0; i < 8; i++) {
+                message.getFloat64();
+            }
+            count++;
+        };
+
+        final Appender appender = queue.appender();
+        final long time = 1490000000000000000L;
+        double mid = 1.08;
+        for (int cnt = 0; cnt < n; cnt++) {
+            mid += ((cnt * 7919) % 11 - 5) * 0.00001;
+            final MessageWriter writer = appender.appendMessage();
+            writer.putInt64(time + cnt * 1000L + (cnt % 17));
+            writer.putInt32(cnt % 10);
+            for (int level = 1; level <= 4; level++) {
+                writer.putFloat64(mid - level * 0.00005).putFloat64(mid + level * 0.00005);
+            }
+            writer.finishAppendMessage();
+        }
+        appender.close();
+
+        final long t0 = clock.nanoTime();
+        final long archived = new QueueArchiver().archive(queue, archiveFile);
+        final long t1 = clock.nanoTime();
+        assertThat(archived).isEqualTo(n);
+
+        final long rawLength = new File(fileName).length();
+        System.out.println("\tmessages            : " + n);
+        System.out.println("\traw file            : " + rawLength + " bytes");
+        System.out.println("\tarchive file        : " + archiveFile.length() + " bytes (" + (100f * archiveFile.length()) / rawLength + "%)");
+        System.out.println("\tarchiving time      : " + (t1 - t0) / 1000000f + " ms");
+        System.out.println();
+
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile)) {
+            for (int run = 0; run < runs; run++) {
+                replay("raw       ", queue, handler, n, clock, time, run);
+                replay("compressed", archive, handler, n, clock, time, run);
+            }
+        }
+        System.out.println();
+    }
+
+    private void replay(final String name, final MappedQueue source, final MessageHandler handler, final int n,
+                        final NanoClock clock, final long time, final int run) {
+        //when
+        count = 0;
+        checksum = 0;
+        final Enumerator enumerator = source.enumerator();
+        final long t0 = clock.nanoTime();
+        while (enumerator.drain(handler, 256) > 0);
+        final long t1 = clock.nanoTime();
+        enumerator.close();
+
+        //then
+        System.out.println("run " + run + " " + name + ": " + (t1 - t0) / 1000f + " us total replay time (" + count + " messages, " + (count * 1000000000f) / (t1 - t0) + " messages/second)");
+        assertThat(count).isEqualTo(n);
+        long expected = 0;
+        for (int cnt = 0; cnt < n; cnt++) {
+            expected += time + cnt * 1000L + (cnt % 17);
+        }
+        assertThat(checksum).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+import sun.misc.Unsafe;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ArchivedQueueTest {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+    private static final long ARCHIVE_REGION_SIZE = 4 * MappedRegion.REGION_SIZE_GRANULARITY;
+
+    private final String fileName = FileUtil.tmpDirFile("archived").getAbsolutePath();
+    private final File archiveFile = new File(fileName + ArchivedQueue.SUFFIX_ARCHIVE);
+    private MappedQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        queue = OneToManyQueue.createOrReplace(fileName, REGION_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+        archiveFile.delete();
+    }
+
+    private void appendMessages(final int messages) {
+        final Appender appender = queue.appender();
+        for (int i = 0; i < messages; i++) {
+            final MessageWriter writer = appender.appendMessage()
+                    .putInt64(1490000000000L + i)
+                    .putFloat64(1.08 + (i % 13) * 0.00001);
+            for (int j = 0; j < i % 5; j++) {
+                writer.putInt32(j);
+            }
+            writer.finishAppendMessage();
+        }
+        appender.close();
+    }
+
+    private static void assertMessage(final MessageReader reader, final int i) {
+        assertThat(reader.getInt64()).isEqualTo(1490000000000L + i);
+        assertThat(reader.getFloat64()).isEqualTo(1.08 + (i % 13) * 0.00001);
+        for (int j = 0; j < i % 5; j++) {
+            assertThat(reader.getInt32()).isEqualTo(j);
+        }
+        reader.finishReadMessage();
+    }
+
+    @Test
+    public void replaysArchivedMessages() throws Exception {
+        //given
+        final int messages = 20000;
+        appendMessages(messages);
+
+        //when
+        final long archived = new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(queue, archiveFile);
+
+        //then
+        assertThat(archived).isEqualTo(messages);
+        assertThat(archiveFile.length()).isLessThan(new File(fileName).length() / 2);
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            assertThat(archive.getMessageCount()).isEqualTo(messages);
+            assertThat(archive.getBlockCount()).isGreaterThan(1);
+            for (int i = 0; i < messages; i++) {
+                assertThat(enumerator.position()).isEqualTo(i);
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                assertMessage(enumerator.readNextMessage(), i);
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+            assertThat(enumerator.position()).isEqualTo(messages);
+        }
+    }
+
+    @Test
+    public void replaysMessagesSpanningRegionsWithPadding() throws Exception {
+        //given: 60 byte messages so that values are padded to the next region of the queue
+        final int messages = 2000;
+        final Random random = new Random(11);
+        final long[][] values = new long[messages][8];
+        final Appender appender = queue.appender();
+        for (int i = 0; i < messages; i++) {
+            values[i][0] = random.nextInt();
+            final MessageWriter writer = appender.appendMessage().putInt32((int)values[i][0]);
+            for (int j = 1; j < 8; j++) {
+                values[i][j] = random.nextLong();
+                writer.putInt64(values[i][j]);
+            }
+            writer.finishAppendMessage();
+        }
+        appender.close();
+        final File rearchiveFile = new File(fileName + "-rearchived" + ArchivedQueue.SUFFIX_ARCHIVE);
+
+        try {
+            //when
+            new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(queue, archiveFile);
+            try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile)) {
+                new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(archive, rearchiveFile);
+            }
+
+            //then
+            for (final File file : new File[] {archiveFile, rearchiveFile}) {
+                try (final ArchivedQueue archive = ArchivedQueue.open(file);
+                     final Enumerator enumerator = archive.enumerator()) {
+                    for (int i = 0; i < messages; i++) {
+                        final MessageReader reader = enumerator.readNextMessage();
+                        assertThat(reader.getInt32()).as("message %s", i).isEqualTo((int)values[i][0]);
+                        for (int j = 1; j < 8; j++) {
+                            assertThat(reader.getInt64()).as("message %s value %s", i, j).isEqualTo(values[i][j]);
+                        }
+                        reader.finishReadMessage();
+                    }
+                    assertThat(enumerator.hasNextMessage()).isFalse();
+                }
+            }
+        } finally {
+            rearchiveFile.delete();
+        }
+    }
+
+    @Test
+    public void seeksAndStartsAtPositionAcrossBlocks() throws Exception {
+        //given
+        final int messages = 5000;
+        appendMessages(messages);
+        new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(queue, archiveFile);
+
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            //when + then
+            for (final int sequence : new int[] {4321, 17, 0, messages - 1, 2500}) {
+                enumerator.seek(sequence);
+                assertMessage(enumerator.readNextMessage(), sequence);
+                assertThat(enumerator.position()).isEqualTo(sequence + 1);
+            }
+            enumerator.seek(messages);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+            try (final Enumerator atPosition = archive.enumerator(StartPosition.atPosition(1234))) {
+                assertMessage(atPosition.readNextMessage(), 1234);
+            }
+            try (final Enumerator tail = archive.enumerator(StartPosition.TAIL)) {
+                assertThat(tail.hasNextMessage()).isFalse();
+                assertThat(tail.position()).isEqualTo(messages);
+            }
+        }
+    }
+
+    @Test
+    public void drainsWithHandlerAndBuffer() throws Exception {
+        //given
+        final int messages = 1000;
+        appendMessages(messages);
+        new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(queue, archiveFile);
+        final long[] count = {0};
+
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            //when
+            while (enumerator.drain(reader -> {
+                //message bytes are archived as returned by buffer() including the padding of the queue
+                assertThat(reader.buffer().capacity()).isGreaterThanOrEqualTo(16 + 4 * (int)(count[0] % 5));
+                assertThat(reader.buffer().getLong(0)).isEqualTo(1490000000000L + count[0]);
+                count[0]++;
+            }, 100) > 0);
+
+            //then
+            assertThat(count[0]).isEqualTo(messages);
+        }
+    }
+
+    @Test
+    public void archivesMessagesLargerThanBlockAndIncompressibleData() throws Exception {
+        //given
+        final Random random = new Random(42);
+        final byte[][] payloads = {new byte[3 * BLOCK_SIZE], new byte[100], new byte[BLOCK_SIZE - 4], new byte[0]};
+        for (final byte[] payload : payloads) {
+            random.nextBytes(payload);
+        }
+        final Appender appender = queue.appender();
+        for (final byte[] payload : payloads) {
+            appender.appendMessage().putBytes(payload, 0, payload.length).finishAppendMessage();
+        }
+        appender.close();
+
+        //when
+        new QueueArchiver(BLOCK_SIZE, ARCHIVE_REGION_SIZE).archive(queue, archiveFile);
+
+        //then
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            for (final byte[] payload : payloads) {
+                final byte[] read = new byte[payload.length];
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.buffer().capacity()).isGreaterThanOrEqualTo(payload.length);
+                reader.getBytes(read, 0, read.length).finishReadMessage();
+                assertThat(read).isEqualTo(payload);
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void archivesRolledCycleFile() throws Exception {
+        //given
+        appendMessages(3000);
+        queue.close();
+
+        //when
+        final File cycleArchive = new QueueArchiver().archiveQueueFile(new File(fileName), REGION_SIZE);
+
+        //then
+        assertThat(cycleArchive).isEqualTo(archiveFile);
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            for (int i = 0; i < 3000; i++) {
+                assertMessage(enumerator.readNextMessage(), i);
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void emptyQueueArchiveHasNoMessages() throws Exception {
+        //when
+        new QueueArchiver().archive(queue, archiveFile);
+
+        //then
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile);
+             final Enumerator enumerator = archive.enumerator()) {
+            assertThat(archive.getMessageCount()).isZero();
+            assertThat(enumerator.hasNextMessage()).isFalse();
+            assertThat(enumerator.seek(0).position()).isZero();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompleteArchiveIsRejected() throws Exception {
+        //given
+        appendMessages(100);
+        new QueueArchiver().archive(queue, archiveFile);
+        try (final RandomAccessFile raf = new RandomAccessFile(archiveFile, "rw")) {
+            raf.getChannel().write(ByteBuffer.allocate(8), ArchivedQueue.MAGIC_OFFSET);
+        }
+
+        //when
+        ArchivedQueue.open(archiveFile);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void archivedQueueHasNoAppender() throws Exception {
+        new QueueArchiver().archive(queue, archiveFile);
+        try (final ArchivedQueue archive = ArchivedQueue.open(archiveFile)) {
+            archive.appender();
+        }
+    }
+
+    @Test
+    public void codecRoundTripsRepetitiveAndRandomData() throws Exception {
+        final LzBlockCodec codec = new LzBlockCodec();
+        final Random random = new Random(7);
+        final byte[] repetitive = new byte[100000];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte)(i % 8 == 0 ? random.nextInt(4) : i % 3);
+        }
+        final byte[] noise = new byte[100000];
+        random.nextBytes(noise);
+        for (final byte[] data : new byte[][] {repetitive, noise, new byte[0], new byte[13], new byte[300]}) {
+            final byte[] compressed = new byte[LzBlockCodec.maxCompressedLength(data.length)];
+            final byte[] decompressed = new byte[data.length];
+            final int compressedLength = codec.compress(data, Unsafe.ARRAY_BYTE_BASE_OFFSET, data.length, compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET);
+            final int length = LzBlockCodec.decompress(compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET, compressedLength, decompressed, Unsafe.ARRAY_BYTE_BASE_OFFSET, decompressed.length);
+            assertThat(length).isEqualTo(data.length);
+            assertThat(decompressed).isEqualTo(data);
+        }
+    }
+}
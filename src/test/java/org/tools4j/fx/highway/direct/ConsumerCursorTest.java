@@ -0,0 +1,196 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class ConsumerCursorTest {
+
+    private static final int MESSAGES = 10000;
+    private static final String FILE_PREFIX = "cursor";
+
+    private final TestQueueType queueType;
+    private final String fileName = FileUtil.tmpDirFile(FILE_PREFIX).getAbsolutePath();
+
+    private MappedQueue queue;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public ConsumerCursorTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        FileUtil.deleteTmpDirFilesMatching(FILE_PREFIX);
+        queue = queueType.createOrAppend(fileName);
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                appender.appendMessage().putInt64(i).finishAppendMessage();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        FileUtil.deleteTmpDirFilesMatching(FILE_PREFIX);
+    }
+
+    @Test
+    public void restartedConsumerResumesAtRecordedPosition() throws Exception {
+        //given
+        final AtomicLong next = new AtomicLong();
+        try (final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "consumer"), StartPosition.HEAD)) {
+            assertThat(enumerator.drain(reader -> assertThat(reader.getInt64()).isEqualTo(next.getAndIncrement()), 3000)).isEqualTo(3000);
+            for (int i = 0; i < 1000; i++) {
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(next.getAndIncrement());
+            }
+            enumerator.skipNextMessage();
+            next.incrementAndGet();
+        }
+        queue.close();
+
+        //when
+        queue = queueType.createOrAppend(fileName);
+        try (final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "consumer"), StartPosition.HEAD)) {
+
+            //then
+            while (enumerator.hasNextMessage()) {
+                assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(next.getAndIncrement());
+            }
+        }
+        assertThat(next.get()).isEqualTo(MESSAGES);
+    }
+
+    @Test
+    public void newConsumerStartsAtInitialPosition() throws Exception {
+        //given
+        try (final ConsumerCursor cursor = ConsumerCursor.createOrOpen(fileName, "tail")) {
+            assertThat(cursor.hasPosition()).isFalse();
+            assertThat(cursor.position()).isEqualTo(ConsumerCursor.NO_POSITION);
+        }
+
+        //when
+        try (final Enumerator tail = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "tail"), StartPosition.TAIL);
+             final Enumerator head = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "head"), StartPosition.HEAD)) {
+
+            //then
+            assertThat(tail.hasNextMessage()).isFalse();
+            assertThat(head.hasNextMessage()).isTrue();
+            assertThat(head.readNextMessage().getInt64()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void chainedReadRecordsPosition() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "consumer"), StartPosition.HEAD);
+             final ConsumerCursor monitor = ConsumerCursor.openReadOnly(fileName, "consumer")) {
+            //when
+            final boolean hasNext = enumerator.readNextMessage().finishReadMessage().hasNextMessage();
+
+            //then
+            assertThat(hasNext).isTrue();
+            assertThat(monitor.position()).isEqualTo(enumerator.position());
+            assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void lagIsMeasuredFromRecordedPosition() throws Exception {
+        try (final ConsumerCursor monitor = ConsumerCursor.createOrOpen(fileName, "consumer");
+             final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "consumer"), StartPosition.HEAD)) {
+            //given
+            assertLag(ConsumerLag.measure(queue, monitor), MESSAGES);
+
+            //when
+            enumerator.drain(reader -> {}, 2500);
+            final ConsumerLag lag = ConsumerLag.measure(queue, monitor);
+
+            //then
+            assertThat(monitor.position()).isEqualTo(enumerator.position());
+            assertLag(lag, MESSAGES - 2500);
+
+            //when
+            enumerator.drain(reader -> {}, MESSAGES);
+
+            //then
+            assertLag(lag.update(queue, monitor), 0);
+        }
+    }
+
+    @Test
+    public void lagIsReadFromReadOnlyCursor() throws Exception {
+        //given
+        try (final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "consumer"), StartPosition.HEAD)) {
+            enumerator.drain(reader -> {}, 100);
+        }
+
+        //when
+        try (final ConsumerCursor cursor = ConsumerCursor.openReadOnly(fileName, "consumer")) {
+
+            //then
+            assertLag(ConsumerLag.measure(queue, cursor), MESSAGES - 100);
+        }
+    }
+
+    //messages are 8 bytes long, the byte queues add an 8 byte length field or frame header and padding at region ends
+    private void assertLag(final ConsumerLag lag, final long messages) {
+        if (queueType == TestQueueType.ONE_TO_MANY_INDEXED) {
+            assertThat(lag.getMessages()).isEqualTo(messages);
+            assertThat(lag.getBytes()).isEqualTo(8 * messages);
+        } else {
+            assertThat(lag.getMessages()).isEqualTo(ConsumerLag.UNKNOWN);
+            assertThat(lag.getBytes()).isBetween(16 * messages, 16 * messages + 8 * (1 + messages / 64));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readOnlyCursorCannotRecordPosition() throws Exception {
+        ConsumerCursor.createOrOpen(fileName, "consumer").close();
+        try (final ConsumerCursor cursor = ConsumerCursor.openReadOnly(fileName, "consumer")) {
+            cursor.position(0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidConsumerName() throws Exception {
+        ConsumerCursor.createOrOpen(fileName, "a/b");
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures catch-up throughput of an enumerator reading messages appended before, either one by one or drained
+ * with a message handler.
+ */
+@RunWith(Parameterized.class)
+public class EnumeratorDrainThroughputTest {
+
+    private final String queueType;
+    private final int drainLimit;
+    private final int numberOfBytes;
+
+    private MappedQueue queue;
+
+    private long count;
+    private long checksum;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}, DRAIN_LIMIT={1}, NBYTES={2}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { "OneToManyQueue", 0, 100 },
+                { "OneToManyQueue", 256, 100 },
+                { "OneToManyIndexedQueue", 0, 100 },
+                { "OneToManyIndexedQueue", 256, 100 },
+                { "ManyToManyQueue", 0, 100 },
+                { "ManyToManyQueue", 256, 100 }
+        });
+    }
+
+    public EnumeratorDrainThroughputTest(final String queueType, final int drainLimit, final int numberOfBytes) {
+        this.queueType = queueType;
+        this.drainLimit = drainLimit;
+        this.numberOfBytes = numberOfBytes;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("queue").getAbsolutePath();
+        switch (queueType) {
+            case "OneToManyQueue":
+                queue = OneToManyQueue.createOrReplace(fileName);
+                break;
+            case "OneToManyIndexedQueue":
+                queue = OneToManyIndexedQueue.createOrReplace(fileName);
+                break;
+            case "ManyToManyQueue":
+                queue = ManyToManyQueue.createOrReplace(fileName);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown queue type: " + queueType);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+    }
+
+    @Test
+    public void catchUpThroughputTest() throws Exception {
+        //given
+        final int n = 2000000;
+        final int runs = 5;
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final MessageHandler handler = message -> {
+            checksum += message.getInt64();
+            for (int i = 8; i + 8 <= numberOfBytes; i += 8) {
+                message.getInt64();
+            }
+            count++;
+        };
+
+        System.out.println("\tqueue               : " + queueType);
+        System.out.println("\tdrainLimit          : " + (drainLimit == 0 ? "no drain" : drainLimit));
+        System.out.println("\tmessages            : " + n);
+        System.out.println("\tmessageSize         : " + numberOfBytes + " bytes");
+        System.out.println();
+
+        final Appender appender = queue.appender();
+        for (int cnt = 0; cnt < n; cnt++) {
+            final MessageWriter writer = appender.appendMessage();
+            writer.putInt64(cnt);
+            for (int i = 8; i + 8 <= numberOfBytes; i += 8) {
+                writer.putInt64(i);
+            }
+            writer.finishAppendMessage();
+        }
+        appender.close();
+
+        for (int run = 0; run < runs; run++) {
+            //when
+            count = 0;
+            checksum = 0;
+            final Enumerator enumerator = queue.enumerator();
+            final long t0 = clock.nanoTime();
+            if (drainLimit > 0) {
+                while (enumerator.drain(handler, drainLimit) > 0);
+            } else {
+                while (enumerator.hasNextMessage()) {
+                    final MessageReader reader = enumerator.readNextMessage();
+                    handler.onMessage(reader);
+                    reader.finishReadMessage();
+                }
+            }
+            final long t1 = clock.nanoTime();
+            enumerator.close();
+
+            //then
+            System.out.println("run " + run + ": " + (t1 - t0) / 1000f + " us total receiving time (" + count + " messages, " + (count * 1000000000f) / (t1 - t0) + " messages/second)");
+            assertThat(count).isEqualTo(n);
+            assertThat(checksum).isEqualTo(((long)n) * (n - 1) / 2);
+        }
+        System.out.println();
+    }
+}
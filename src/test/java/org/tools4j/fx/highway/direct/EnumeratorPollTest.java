@@ -0,0 +1,186 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class EnumeratorPollTest {
+
+    private static final long PARK_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public EnumeratorPollTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("poll").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void pollReturnsAvailableMessages() throws Exception {
+        //given
+        for (int i = 0; i < 10; i++) {
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+        }
+        final AtomicLong sum = new AtomicLong();
+
+        //when
+        final int count = enumerator.poll(reader -> sum.addAndGet(reader.getInt64()), 4, new WakeableIdleStrategy(queue.wakeupSignal()));
+
+        //then
+        assertThat(count).isEqualTo(4);
+        assertThat(sum.get()).isEqualTo(0 + 1 + 2 + 3);
+    }
+
+    @Test(timeout = 20000)
+    public void parkedConsumerIsWokenUpByAppender() throws Exception {
+        //given: consumer parks for longer than the test takes unless woken up
+        final int messages = 10;
+        final AtomicLong received = new AtomicLong();
+        final WakeupSignal signal = queue.wakeupSignal();
+        final Thread consumer = new Thread(() -> {
+            final IdleStrategy idleStrategy = new WakeableIdleStrategy(signal, 0, 0, PARK_NANOS, PARK_NANOS);
+            while (received.get() < messages) {
+                enumerator.poll(reader -> received.incrementAndGet(), 1, idleStrategy);
+            }
+        });
+        consumer.start();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            //when
+            awaitTrue(() -> signal.getWaiterCount() == 1 && consumer.getState() == Thread.State.TIMED_WAITING);
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+
+            //then
+            final long expected = i + 1;
+            awaitTrue(() -> received.get() == expected);
+        }
+        consumer.join();
+
+        //then
+        assertThat(System.nanoTime() - start).isLessThan(messages * PARK_NANOS / 2);
+        assertThat(signal.getWaiterCount()).isEqualTo(0);
+    }
+
+    @Test(timeout = 20000)
+    public void pollWithIdleStrategies() throws Exception {
+        final IdleStrategy[] idleStrategies = {
+                new YieldingIdleStrategy(),
+                new SleepingIdleStrategy(TimeUnit.MICROSECONDS.toNanos(50)),
+                new BackoffIdleStrategy(10, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(100)),
+                new WakeableIdleStrategy(queue.wakeupSignal())
+        };
+        final int messages = 1000;
+        long value = 0;
+        for (final IdleStrategy idleStrategy : idleStrategies) {
+            //given
+            final long first = value;
+            final AtomicLong next = new AtomicLong(first);
+            final Thread consumer = new Thread(() -> {
+                while (next.get() < first + messages) {
+                    enumerator.poll(reader -> {
+                        assertThat(reader.getInt64()).isEqualTo(next.get());
+                        next.incrementAndGet();
+                    }, 16, idleStrategy);
+                }
+            });
+            consumer.start();
+
+            //when
+            for (int i = 0; i < messages; i++) {
+                appender.appendMessage().putInt64(value++).finishAppendMessage();
+                if (i % 100 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+
+            //then
+            consumer.join();
+            assertThat(next.get()).isEqualTo(value);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void interruptedPollReturnsZero() throws Exception {
+        //given
+        Thread.currentThread().interrupt();
+
+        //when
+        final int count = enumerator.poll(reader -> {}, 1, new WakeableIdleStrategy(queue.wakeupSignal()));
+
+        //then
+        assertThat(count).isEqualTo(0);
+        assertThat(Thread.interrupted()).isTrue();
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("condition not met after 5 seconds");
+            }
+            Thread.yield();
+        }
+    }
+}
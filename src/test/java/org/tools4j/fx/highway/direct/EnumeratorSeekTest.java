@@ -0,0 +1,147 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class EnumeratorSeekTest {
+
+    private static final int MESSAGES = 5000;
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public EnumeratorSeekTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("seek").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+        for (int i = 0; i < MESSAGES; i++) {
+            if (i % 2 == 0) {
+                final MessageWriter writer = appender.appendMessage();
+                writer.putInt64(i);
+                for (int j = 0; j < i % 13; j++) {
+                    writer.putInt32(j);
+                }
+                writer.finishAppendMessage();
+            } else {
+                final MessageClaim claim = appender.claim(8 + 4 * (i % 13));
+                claim.buffer().putLong(0, i);
+                claim.commit();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void seekMovesToMessageWithSequence() throws Exception {
+        final long[] sequences = {4999, 0, 1, 2500, 17, 4998, 1000, 3, 0};
+        for (final long sequence : sequences) {
+            //when
+            enumerator.seek(sequence);
+
+            //then
+            for (long i = sequence; i < Math.min(sequence + 3, MESSAGES); i++) {
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.getInt64()).isEqualTo(i);
+                reader.finishReadMessage();
+            }
+        }
+    }
+
+    @Test
+    public void seekToEndWaitsForNextMessage() throws Exception {
+        //when
+        enumerator.seek(MESSAGES);
+
+        //then
+        assertThat(enumerator.hasNextMessage()).isFalse();
+
+        //when
+        appender.appendMessage().putInt64(MESSAGES).finishAppendMessage();
+
+        //then
+        assertThat(enumerator.hasNextMessage()).isTrue();
+        assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(MESSAGES);
+    }
+
+    @Test
+    public void seekBeyondEndIsRejectedAndKeepsPosition() throws Exception {
+        //given
+        enumerator.seek(42);
+
+        //when
+        try {
+            enumerator.seek(MESSAGES + 1);
+            throw new AssertionError("Seek beyond end should fail");
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+
+        //then
+        assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(42);
+    }
+
+    @Test
+    public void seekWhileReadingMessage() throws Exception {
+        //given
+        enumerator.readNextMessage().getInt64();
+
+        //when
+        enumerator.seek(7);
+
+        //then
+        assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(7);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class EnumeratorStartPositionTest {
+
+    private static final int MESSAGES = 10000;
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public EnumeratorStartPositionTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("start").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        for (int i = 0; i < MESSAGES; i++) {
+            append(i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        queue.close();
+    }
+
+    private void append(final long value) {
+        final MessageWriter writer = appender.appendMessage();
+        writer.putInt64(value);
+        for (int j = 0; j < value % 11; j++) {
+            writer.putInt32(j);
+        }
+        writer.finishAppendMessage();
+    }
+
+    private static void assertNextMessage(final Enumerator enumerator, final long value) {
+        assertThat(enumerator.hasNextMessage()).isTrue();
+        final MessageReader reader = enumerator.readNextMessage();
+        assertThat(reader.getInt64()).isEqualTo(value);
+        reader.finishReadMessage();
+    }
+
+    @Test
+    public void headStartsWithFirstMessage() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            assertNextMessage(enumerator, 0);
+            assertNextMessage(enumerator, 1);
+        }
+    }
+
+    @Test
+    public void tailStartsWithNextAppendedMessage() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.TAIL)) {
+            //then
+            assertThat(enumerator.hasNextMessage()).isFalse();
+
+            //when
+            append(MESSAGES);
+            append(MESSAGES + 1);
+
+            //then
+            assertNextMessage(enumerator, MESSAGES);
+            assertNextMessage(enumerator, MESSAGES + 1);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void positionCanBeUsedToStartAnotherEnumerator() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator()) {
+            for (int i = 0; i < 1234; i++) {
+                assertNextMessage(enumerator, i);
+            }
+
+            //when
+            final long position = enumerator.position();
+
+            //then
+            try (final Enumerator other = queue.enumerator(StartPosition.atPosition(position))) {
+                assertThat(other.position()).isEqualTo(position);
+                assertNextMessage(other, 1234);
+                assertNextMessage(other, 1235);
+            }
+
+            //when
+            final MessageReader reader = enumerator.readNextMessage();
+            final long positionWhileReading = enumerator.position();
+            reader.finishReadMessage();
+
+            //then
+            assertThat(positionWhileReading).isEqualTo(enumerator.position());
+            try (final Enumerator other = queue.enumerator(StartPosition.atPosition(positionWhileReading))) {
+                assertNextMessage(other, 1235);
+            }
+        }
+    }
+
+    @Test
+    public void tailPositionIsPositionAfterLastMessage() throws Exception {
+        try (final Enumerator head = queue.enumerator(); final Enumerator tail = queue.enumerator(StartPosition.TAIL)) {
+            //when
+            head.seek(MESSAGES);
+
+            //then
+            assertThat(tail.position()).isEqualTo(head.position());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPositionIsRejected() throws Exception {
+        //odd positions are not aligned and beyond the end for sequences
+        queue.enumerator(StartPosition.atPosition(2 * MESSAGES + 1));
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.EpochClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.BitSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilteredEnumeratorTest {
+
+    private static final int MESSAGES = 5000;
+    private static final int KEYS = 7;
+    private static final int TEMPLATE_A = 1;
+    private static final int TEMPLATE_B = 2;
+
+    private final String fileName = FileUtil.tmpDirFile("framed").getAbsolutePath();
+    private MappedQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        //small regions so that headers span regions
+        queue = OneToManyQueue.createOrReplace(fileName, MappedRegion.REGION_SIZE_GRANULARITY);
+        final EpochClock clock = () -> 1000;
+        try (final FramedAppender appender = new FramedAppender(queue.appender(), 100, clock)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                final int templateId = i % 3 == 0 ? TEMPLATE_B : TEMPLATE_A;
+                if (i % 2 == 0) {
+                    final MessageWriter writer = appender.appendFrame(templateId, i % KEYS).putInt32(i);
+                    for (int j = 0; j < i % 5; j++) {
+                        writer.putInt64(j);
+                    }
+                    writer.finishAppendMessage();
+                } else {
+                    final MessageClaim claim = appender.claimFrame(templateId, i % KEYS, 4);
+                    claim.buffer().putInt(FrameHeader.LENGTH, i);
+                    claim.commit();
+                }
+            }
+            assertThat(appender.nextSequence()).isEqualTo(100 + MESSAGES);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void returnsOnlyMessagesWithAcceptedTemplateId() throws Exception {
+        try (final FilteredEnumerator enumerator = queue.enumerator(FrameFilter.templateIds(TEMPLATE_B), StartPosition.HEAD)) {
+            for (int i = 0; i < MESSAGES; i += 3) {
+                //when
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = enumerator.readNextMessage();
+
+                //then
+                final FrameHeader header = enumerator.header();
+                assertThat(header.version()).isEqualTo(FrameHeader.VERSION);
+                assertThat(header.templateId()).isEqualTo(TEMPLATE_B);
+                assertThat(header.key()).isEqualTo(i % KEYS);
+                assertThat(header.sequence()).isEqualTo(100 + i);
+                assertThat(header.timestamp()).isEqualTo(1000);
+                assertThat(reader.buffer().getInt(0)).isEqualTo(i);
+                assertThat(reader.getInt32()).isEqualTo(i);
+                assertThat(reader.finishReadMessage()).isSameAs(enumerator);
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void drainsOnlyMessagesWithAcceptedKeysUpToLimit() throws Exception {
+        //given
+        final BitSet keys = new BitSet();
+        keys.set(2);
+        keys.set(5);
+        final FrameFilter filter = FrameFilter.keys(keys).and(FrameFilter.templateIds(TEMPLATE_A));
+        final int[] next = {0};
+
+        try (final FilteredEnumerator enumerator = queue.enumerator(filter, StartPosition.HEAD)) {
+            //when
+            int drained;
+            int total = 0;
+            while ((drained = enumerator.drain(reader -> {
+                while (next[0] % KEYS != 2 && next[0] % KEYS != 5 || next[0] % 3 == 0) {
+                    next[0]++;
+                }
+                assertThat(enumerator.header().key()).isEqualTo(next[0] % KEYS);
+                assertThat(reader.getInt32()).isEqualTo(next[0]++);
+            }, 10)) > 0) {
+                assertThat(drained).isLessThanOrEqualTo(10);
+                total += drained;
+            }
+
+            //then
+            int expected = 0;
+            for (int i = 0; i < MESSAGES; i++) {
+                if ((i % KEYS == 2 || i % KEYS == 5) && i % 3 != 0) {
+                    expected++;
+                }
+            }
+            assertThat(total).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void positionOfAcceptedMessageIsValidStartPosition() throws Exception {
+        try (final FilteredEnumerator enumerator = queue.enumerator(FrameFilter.keys(6), StartPosition.HEAD)) {
+            enumerator.skipNextMessage();
+            assertThat(enumerator.hasNextMessage()).isTrue();
+
+            //when
+            final long position = enumerator.position();
+
+            //then
+            try (final Enumerator resumed = queue.enumerator(StartPosition.atPosition(position))) {
+                final FrameHeader header = new FrameHeader().readFrom(resumed.readNextMessage());
+                assertThat(header.key()).isEqualTo(6);
+                assertThat(header.sequence()).isEqualTo(100 + 13);
+            }
+            assertThat(enumerator.readNextMessage().getInt32()).isEqualTo(13);
+        }
+    }
+
+    @Test
+    public void filtersMergedView() throws Exception {
+        //given: a merged view of two enumerations of the same queue
+        final MergedEnumerator merged = new MergedEnumerator(queue.enumerator(), queue.enumerator());
+
+        try (final FilteredEnumerator enumerator = new FilteredEnumerator(merged, FrameFilter.templateIds(TEMPLATE_B))) {
+            //when
+            int count = 0;
+            long position = enumerator.position();
+            while (enumerator.hasNextMessage()) {
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(enumerator.header().templateId()).isEqualTo(TEMPLATE_B);
+                reader.finishReadMessage();
+                assertThat(enumerator.position()).isGreaterThan(position);
+                position = enumerator.position();
+                count++;
+            }
+
+            //then
+            assertThat(count).isEqualTo(2 * ((MESSAGES + 2) / 3));
+            assertThat(merged.position(0)).isEqualTo(merged.position(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void messageWithoutFrameHeaderIsRejected() throws Exception {
+        final String otherFileName = fileName + ".unframed";
+        try (final MappedQueue unframed = OneToManyQueue.createOrReplace(otherFileName)) {
+            final Appender appender = unframed.appender();
+            appender.appendMessage().putInt64(0).putInt64(0).putInt64(0).finishAppendMessage();
+            appender.close();
+            try (final Enumerator enumerator = unframed.enumerator(FrameFilter.keys(0), StartPosition.HEAD)) {
+                enumerator.hasNextMessage();
+            }
+        } finally {
+            new File(otherFileName).delete();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlusherTest {
+
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+
+    private final String fileName = FileUtil.tmpDirFile("flusher").getAbsolutePath();
+    private OneToManyQueue queue;
+    private Appender appender;
+
+    @Before
+    public void setup() throws Exception {
+        queue = (OneToManyQueue) OneToManyQueue.createOrReplace(fileName, REGION_SIZE);
+        appender = queue.appender();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        queue.close();
+    }
+
+    private void append(final int messages) {
+        for (int i = 0; i < messages; i++) {
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void intervalPolicyFlushesAllPublishedMessages() throws Exception {
+        //given
+        final Flusher flusher = queue.startFlusher(SyncPolicy.everyMillis(10));
+
+        //when
+        append(1000);
+        final long written = tailPosition();
+
+        //then
+        awaitTrue(() -> flusher.getDurablePosition() == written);
+        final Histogram histogram = flusher.getIntervalFlushLatencyHistogram();
+        assertThat(histogram.getTotalCount()).isEqualTo(flusher.getFlushCount()).isGreaterThan(0);
+        assertThat(histogram.getMaxValue()).isGreaterThan(0);
+    }
+
+    @Test(timeout = 10000)
+    public void bytesPolicyFlushesWhenEnoughBytesWereWritten() throws Exception {
+        //given
+        final Flusher flusher = queue.startFlusher(SyncPolicy.everyBytes(1024));
+
+        //when
+        append(10);
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        //then
+        assertThat(flusher.getDurablePosition()).isEqualTo(0);
+
+        //when
+        append(100);
+
+        //then
+        awaitTrue(() -> flusher.getDurablePosition() > 1024);
+        assertThat(flusher.getDurablePosition()).isLessThanOrEqualTo(OneToManyQueue.HEADER_LENGTH + 110 * 16);
+    }
+
+    @Test(timeout = 10000)
+    public void regionRollPolicyFlushesCompletedRegions() throws Exception {
+        //given
+        final Flusher flusher = queue.startFlusher(SyncPolicy.ON_REGION_ROLL);
+
+        //when
+        append((int)(REGION_SIZE / 16) * 3);
+
+        //then
+        awaitTrue(() -> flusher.getDurablePosition() == 3 * REGION_SIZE);
+        TimeUnit.MILLISECONDS.sleep(20);
+        assertThat(flusher.getDurablePosition()).isEqualTo(3 * REGION_SIZE);
+    }
+
+    @Test
+    public void nonePolicyNeverFlushes() throws Exception {
+        //given
+        final Flusher flusher = queue.startFlusher(SyncPolicy.NONE);
+
+        //when
+        append(1000);
+        TimeUnit.MILLISECONDS.sleep(20);
+        appender.close();
+        queue.close();
+
+        //then
+        assertThat(flusher.getDurablePosition()).isEqualTo(0);
+        assertThat(flusher.getFlushCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void closingQueueFlushesAllPublishedMessages() throws Exception {
+        //given
+        final Flusher flusher = queue.startFlusher(SyncPolicy.everyMillis(TimeUnit.HOURS.toMillis(1)));
+        append(1000);
+        final long written = tailPosition();
+
+        //when
+        appender.close();
+        queue.close();
+
+        //then
+        assertThat(flusher.getDurablePosition()).isEqualTo(written);
+    }
+
+    @Test
+    public void flushingDoesNotAffectPreparerAndWindowStatistics() throws Exception {
+        //given: regions 2 and 3 in the window with region 2 released least recently
+        final String windowFileName = FileUtil.tmpDirFile("flusher-window").getAbsolutePath();
+        try (final MappedFile file = new MappedFile(windowFileName, MappedFile.Mode.READ_WRITE_CLEAR, REGION_SIZE)) {
+            file.setMaxMappedRegions(2);
+            for (int i = 0; i < 4; i++) {
+                file.releaseRegion(file.reserveRegion(i));
+            }
+            file.setWrittenPosition(4 * REGION_SIZE);
+            final int maxReservedIndex = file.getMaxReservedIndex();
+            final long unpreparedReserveCount = file.getUnpreparedReserveCount();
+            final long mapCount = file.getMapCount();
+            final long evictionCount = file.getEvictionCount();
+
+            //when
+            final Flusher flusher = file.startFlusher(SyncPolicy.everyMillis(TimeUnit.HOURS.toMillis(1)));
+            flusher.close();
+
+            //then
+            assertThat(flusher.getDurablePosition()).isEqualTo(4 * REGION_SIZE);
+            assertThat(file.getMaxReservedIndex()).isEqualTo(maxReservedIndex);
+            assertThat(file.getUnpreparedReserveCount()).isEqualTo(unpreparedReserveCount);
+            assertThat(file.getMapCount()).isEqualTo(mapCount);
+            assertThat(file.getEvictionCount()).isEqualTo(evictionCount);
+            assertThat(file.getMappedRegionCount()).isEqualTo(2);
+
+            //when: region 0 is mapped again
+            file.releaseRegion(file.reserveRegion(0));
+            file.releaseRegion(file.reserveRegion(3));
+
+            //then: region 2 is still the least recently released region and hence evicted instead of region 3
+            assertThat(file.getMapCount()).isEqualTo(mapCount + 1);
+            assertThat(file.getEvictionCount()).isEqualTo(evictionCount + 1);
+        } finally {
+            new File(windowFileName).delete();
+        }
+    }
+
+    private long tailPosition() {
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.TAIL)) {
+            return enumerator.position();
+        }
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+}
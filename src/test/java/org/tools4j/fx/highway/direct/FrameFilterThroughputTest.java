@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
+import org.tools4j.fx.highway.message.MutableMarketDataSnapshot;
+import org.tools4j.fx.highway.sbe.CurrencyPair;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures throughput of a consumer interested in a single currency pair, either decoding every market data
+ * snapshot to find its currency pair or skipping other pairs with a {@link FrameFilter} on the {@link FrameHeader}.
+ */
+public class FrameFilterThroughputTest {
+
+    private static final int PAIRS = CurrencyPair.values().length - 1;//without NULL_VAL
+
+    private final String plainFileName = FileUtil.tmpDirFile("plain").getAbsolutePath();
+    private final String framedFileName = FileUtil.tmpDirFile("framed").getAbsolutePath();
+    private MappedQueue plain;
+    private MappedQueue framed;
+
+    private long count;
+
+    @Before
+    public void setup() throws Exception {
+        plain = OneToManyQueue.createOrReplace(plainFileName);
+        framed = OneToManyQueue.createOrReplace(framedFileName);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        plain.close();
+        framed.close();
+        new File(plainFileName).delete();
+        new File(framedFileName).delete();
+    }
+
+    @Test
+    public void selectiveConsumerThroughputTest() throws Exception {
+        //given
+        final int n = 1000000;
+        final int runs = 5;
+        final int marketDataDepth = 5;
+        final CurrencyPair subscribed = CurrencyPair.USDJPY;
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final MutableMarketDataSnapshot snapshot = new MutableMarketDataSnapshot();
+        final MutableMarketDataSnapshot decodeSnapshot = new MutableMarketDataSnapshot();
+
+        final Appender plainAppender = plain.appender();
+        final FramedAppender framedAppender = new FramedAppender(framed.appender());
+        for (int cnt = 0; cnt < n; cnt++) {
+            final CurrencyPair pair = CurrencyPair.get((short)(cnt % PAIRS));
+            final MarketDataSnapshotBuilder builder = snapshot.builder();
+            SerializerHelper.givenMarketDataSnapshot(builder, marketDataDepth, marketDataDepth);
+            builder.setCurrencyPair(pair);
+            final MarketDataSnapshot newSnapshot = builder.build();
+            final int length = SerializerHelper.encodedLength(newSnapshot);
+            final MessageClaim plainClaim = plainAppender.claim(length);
+            SerializerHelper.encode(plainClaim.buffer(), newSnapshot);
+            final MessageClaim framedClaim = framedAppender.claimFrame(1, pair.value(), length);
+            framedClaim.buffer().putBytes(FrameHeader.LENGTH, plainClaim.buffer(), 0, length);
+            framedClaim.commit();
+            plainClaim.commit();
+        }
+        plainAppender.close();
+        framedAppender.close();
+
+        System.out.println("\tmessages            : " + n);
+        System.out.println("\tcurrency pairs      : " + PAIRS);
+        System.out.println("\tmessageSize         : " + SerializerHelper.encodedLength(snapshot) + " bytes");
+        System.out.println();
+
+        for (int run = 0; run < runs; run++) {
+            //when
+            count = 0;
+            long t0 = clock.nanoTime();
+            try (final Enumerator enumerator = plain.enumerator()) {
+                while (enumerator.drain(reader -> {
+                    final MarketDataSnapshot decoded = SerializerHelper.decode(reader.buffer(), decodeSnapshot.builder());
+                    if (decoded.getCurrencyPair() == subscribed) {
+                        count++;
+                    }
+                }, 256) > 0);
+            }
+            long t1 = clock.nanoTime();
+
+            //then
+            System.out.println("run " + run + " decode all   : " + (t1 - t0) / 1000f + " us total (" + count + " of " + n + " messages, " + (n * 1000000000f) / (t1 - t0) + " messages/second scanned)");
+            assertThat(count).isEqualTo(n / PAIRS + (n % PAIRS > subscribed.ordinal() ? 1 : 0));
+
+            //when
+            count = 0;
+            t0 = clock.nanoTime();
+            try (final Enumerator enumerator = framed.enumerator(FrameFilter.keys(subscribed.value()), StartPosition.HEAD)) {
+                while (enumerator.drain(reader -> {
+                    final MarketDataSnapshot decoded = SerializerHelper.decode(reader.buffer(), decodeSnapshot.builder());
+                    if (decoded.getCurrencyPair() == subscribed) {
+                        count++;
+                    }
+                }, 256) > 0);
+            }
+            t1 = clock.nanoTime();
+
+            //then
+            System.out.println("run " + run + " frame filter : " + (t1 - t0) / 1000f + " us total (" + count + " of " + n + " messages, " + (n * 1000000000f) / (t1 - t0) + " messages/second scanned)");
+            assertThat(count).isEqualTo(n / PAIRS + (n % PAIRS > subscribed.ordinal() ? 1 : 0));
+        }
+        System.out.println();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.BufferUtil;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LzBlockCodecTest {
+
+    private final LzBlockCodec codec = new LzBlockCodec();
+
+    private byte[] roundTrip(final byte[] input) {
+        final byte[] compressed = new byte[LzBlockCodec.maxCompressedLength(input.length)];
+        final int compressedLength = codec.compress(input, Unsafe.ARRAY_BYTE_BASE_OFFSET, input.length,
+                compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET);
+        assertThat(compressedLength).isLessThanOrEqualTo(compressed.length);
+        final byte[] output = new byte[input.length];
+        final int length = LzBlockCodec.decompress(compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET, compressedLength,
+                output, Unsafe.ARRAY_BYTE_BASE_OFFSET, output.length);
+        assertThat(length).isEqualTo(input.length);
+        assertThat(output).isEqualTo(input);
+        return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    private static byte[] periodic(final int length, final int period) {
+        final byte[] input = new byte[length];
+        for (int i = 0; i < length; i++) {
+            input[i] = (byte)(17 + (i % period) * 31);
+        }
+        return input;
+    }
+
+    @Test
+    public void roundTripsEmptyAndShortInput() throws Exception {
+        roundTrip(new byte[0]);
+        roundTrip(new byte[] {1});
+        roundTrip(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+    }
+
+    @Test
+    public void roundTripsPeriodicInput() throws Exception {
+        //overlapping matches with offsets below, at and above the word size
+        for (final int period : new int[] {1, 2, 3, 5, 7, 8, 9, 16, 24, 63, 64, 65, 100}) {
+            for (final int length : new int[] {100, 1000, 5000}) {
+                final byte[] compressed = roundTrip(periodic(length, period));
+                if (length >= 10 * period) {
+                    assertThat(compressed.length).isLessThan(length / 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsZeros() throws Exception {
+        final byte[] compressed = roundTrip(new byte[65536]);
+        assertThat(compressed.length).isLessThan(1024);
+    }
+
+    @Test
+    public void roundTripsRandomInput() throws Exception {
+        final Random random = new Random(123);
+        for (final int length : new int[] {16, 100, 4096, 100000}) {
+            final byte[] input = new byte[length];
+            random.nextBytes(input);
+            roundTrip(input);
+        }
+    }
+
+    @Test
+    public void roundTripsLongRunsBetweenRandomBytes() throws Exception {
+        final Random random = new Random(456);
+        final byte[] input = new byte[200000];
+        int i = 0;
+        while (i < input.length) {
+            final int runLength = Math.min(input.length - i, random.nextInt(2000));
+            final byte value = (byte)random.nextInt();
+            Arrays.fill(input, i, i + runLength, random.nextBoolean() ? value : 0);
+            i += runLength;
+            final int literals = Math.min(input.length - i, random.nextInt(300));
+            for (int j = 0; j < literals; j++) {
+                input[i++] = (byte)random.nextInt();
+            }
+        }
+        roundTrip(input);
+    }
+
+    @Test
+    public void roundTripsOffHeap() throws Exception {
+        final byte[] input = periodic(10000, 16);
+        final ByteBuffer src = ByteBuffer.allocateDirect(input.length);
+        src.put(input);
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(LzBlockCodec.maxCompressedLength(input.length));
+        final ByteBuffer dst = ByteBuffer.allocateDirect(input.length);
+        final int compressedLength = codec.compress(null, BufferUtil.address(src), input.length,
+                null, BufferUtil.address(compressed));
+        final int length = LzBlockCodec.decompress(null, BufferUtil.address(compressed), compressedLength,
+                null, BufferUtil.address(dst), input.length);
+        final byte[] output = new byte[length];
+        dst.get(output);
+        assertThat(output).isEqualTo(input);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decompressRejectsTooSmallDestination() throws Exception {
+        final byte[] input = periodic(1000, 16);
+        final byte[] compressed = new byte[LzBlockCodec.maxCompressedLength(input.length)];
+        final int compressedLength = codec.compress(input, Unsafe.ARRAY_BYTE_BASE_OFFSET, input.length,
+                compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET);
+        LzBlockCodec.decompress(compressed, Unsafe.ARRAY_BYTE_BASE_OFFSET, compressedLength,
+                new byte[999], Unsafe.ARRAY_BYTE_BASE_OFFSET, 999);
+    }
+}
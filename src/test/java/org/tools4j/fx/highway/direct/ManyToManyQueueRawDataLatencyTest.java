@@ -0,0 +1,249 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.HdrHistogram.Histogram;
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(Parameterized.class)
+public class ManyToManyQueueRawDataLatencyTest {
+
+    private final long messagesPerSecond;
+    private final int numberOfBytes;
+    private final int numberOfProducers;
+    private final boolean affinity;
+
+    private MappedQueue queue;
+    private Appender[] appenders;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: MPS={0}, NBYTES={1}, PRODUCERS={2}, AFFINITY={3}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { 160000, 100, 2, false },
+                { 160000, 100, 4, false },
+                { 160000, 100, 8, false },
+                { 500000, 100, 2, false },
+                { 500000, 100, 4, false },
+                { 500000, 100, 8, false }
+        });
+    }
+
+    public ManyToManyQueueRawDataLatencyTest(final long messagesPerSecond,
+                                             final int numberOfBytes,
+                                             final int numberOfProducers,
+                                             final boolean affinity) {
+        this.messagesPerSecond = messagesPerSecond;
+        this.numberOfBytes = numberOfBytes;
+        this.numberOfProducers = numberOfProducers;
+        this.affinity = affinity;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        queue = ManyToManyQueue.createOrReplace(FileUtil.tmpDirFile("queue").getAbsolutePath(), 1L<<12);
+        appenders = new Appender[numberOfProducers];
+        for (int i = 0; i < numberOfProducers; i++) {
+            appenders[i] = queue.appender();
+        }
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (appenders != null) {
+            for (final Appender appender : appenders) {
+                appender.close();
+            }
+            appenders = null;
+        }
+        if (enumerator != null) {
+            enumerator.close();
+            enumerator = null;
+        }
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+    }
+
+    @Test
+    public void latencyTest() throws Exception {
+        //given
+        final long histogramMax = TimeUnit.SECONDS.toNanos(1);
+        final int w = 200000;//warmup
+        final int c = 100000;//counted
+        final int n = w+c;
+        final int nPerProducer = n / numberOfProducers;
+        final long maxTimeToRunSeconds = 30;
+
+        System.out.println("\twarmup + count      : " + w + " + " + c + " = " + n);
+        System.out.println("\tmessagesPerSecond   : " + messagesPerSecond);
+        System.out.println("\tmessageSize         : " + numberOfBytes + " bytes");
+        System.out.println("\tproducers           : " + numberOfProducers);
+        System.out.println("\tmaxTimeToRunSeconds : " + maxTimeToRunSeconds);
+        System.out.println();
+
+        final AtomicBoolean terminate = new AtomicBoolean(false);
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final Histogram histogram = new Histogram(1, histogramMax, 3);
+        final WaitLatch pubSubReadyLatch = new WaitLatch(1 + numberOfProducers);
+        final WaitLatch receivedAllLatch = new WaitLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        final int total = nPerProducer * numberOfProducers;
+
+        //when
+        final Thread subscriberThread = new AffinityThread(affinity, () -> {
+            try {
+                final AtomicLong t0 = new AtomicLong();
+                final AtomicLong t2 = new AtomicLong();
+                pubSubReadyLatch.countDown();
+                while (!terminate.get()) {
+                    if (enumerator.hasNextMessage()) {
+                        final MessageReader reader = enumerator.readNextMessage();
+                        if (count.get() == 0) t0.set(clock.nanoTime());
+                        else if (count.get() == total - 1) t2.set(clock.nanoTime());
+                        long sendTime = reader.getInt64();
+                        for (int i = 8; i < numberOfBytes; ) {
+                            if (i + 8 <= numberOfBytes) {
+                                reader.getInt64();
+                                i += 8;
+                            } else {
+                                reader.getInt8();
+                                i++;
+                            }
+                        }
+                        reader.finishReadMessage();
+                        final long time = clock.nanoTime();
+                        final int cnt = count.incrementAndGet();
+                        if (cnt <= total) {
+                            if (time - sendTime > histogramMax) {
+                                histogram.recordValue(histogramMax);
+                            } else {
+                                histogram.recordValue(time - sendTime);
+                            }
+                        }
+                        if (cnt == w) {
+                            histogram.reset();
+                        }
+                        if (count.get() >= total) {
+                            receivedAllLatch.countDown();
+                            break;
+                        }
+                    }
+                }
+                final int cnt = count.get();
+                System.out.println((t2.get() - t0.get())/1000f + " us total receiving time (" + cnt + " messages, " + (t2.get() - t0.get())/(1000f*cnt) + " us/message, " + cnt/((t2.get()-t0.get())/1000000000f) + " messages/second)");
+            } catch (final Throwable t) {
+                t.printStackTrace();
+                System.err.println("failed after receiving " + count + " messages");
+                receivedAllLatch.countDown();
+            }
+        });
+        subscriberThread.setName("subscriber-thread");
+        subscriberThread.start();
+
+        //publishers
+        final Thread[] publisherThreads = new Thread[numberOfProducers];
+        for (int p = 0; p < numberOfProducers; p++) {
+            final Appender appender = appenders[p];
+            publisherThreads[p] = new AffinityThread(affinity, () -> {
+                final long periodNs = (1000000000L * numberOfProducers)/messagesPerSecond;
+                pubSubReadyLatch.countDown();
+                pubSubReadyLatch.awaitThrowOnTimeout(5, TimeUnit.SECONDS);
+                long cnt = 0;
+                final long t0 = clock.nanoTime();
+                while (cnt < nPerProducer && !terminate.get()) {
+                    long tCur = clock.nanoTime();
+                    while (tCur - t0 < cnt * periodNs) {
+                        tCur = clock.nanoTime();
+                    }
+                    final long time = clock.nanoTime();
+                    final MessageWriter writer = appender.appendMessage();
+                    writer.putInt64(time);
+                    for (int i = 8; i < numberOfBytes; ) {
+                        if (i + 8 <= numberOfBytes) {
+                            writer.putInt64(time + i);
+                            i += 8;
+                        } else {
+                            writer.putInt8((byte)(time + i));
+                            i++;
+                        }
+                    }
+                    writer.finishAppendMessage();
+                    cnt++;
+                }
+                final long t1 = clock.nanoTime();
+                System.out.println(Thread.currentThread().getName() + ": " + (t1 - t0) / 1000f + " us total publishing time (cnt=" + cnt + ", " + (t1 - t0)/(1000f * cnt) + " us/message, " + (cnt * 1000000000f) / (t1 - t0) + " messages/second)");
+            });
+            publisherThreads[p].setName("publisher-thread-" + p);
+            publisherThreads[p].start();
+        }
+
+        //then
+        if (!receivedAllLatch.await(maxTimeToRunSeconds, TimeUnit.SECONDS)) {
+            terminate.set(true);
+            System.err.println("timeout after receiving " + count + " messages.");
+            throw new RuntimeException("simulation timed out");
+        }
+        terminate.set(true);
+
+        for (final Thread publisherThread : publisherThreads) {
+            publisherThread.join(2000);
+        }
+
+        System.out.println();
+        HistogramPrinter.printHistogram(histogram);
+    }
+
+    public static void main(String... args) throws Exception {
+        final int byteLen = 94;
+        final int[] messagesPerSec = {160000, 500000};
+        final int[] producers = {2, 4, 8};
+        for (final int mps : messagesPerSec) {
+            for (final int p : producers) {
+                final ManyToManyQueueRawDataLatencyTest latencyTest = new ManyToManyQueueRawDataLatencyTest(mps, byteLen, p, false);
+                latencyTest.setup();
+                try {
+                    latencyTest.latencyTest();
+                } finally {
+                    latencyTest.tearDown();
+                }
+            }
+        }
+    }
+}
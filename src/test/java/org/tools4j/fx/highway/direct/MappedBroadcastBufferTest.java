@@ -0,0 +1,203 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedBroadcastBufferTest {
+
+    private static final long CAPACITY = 4096;
+    private static final int TYPE_ID = 7;
+
+    private final String fileName = FileUtil.sharedMemDir("broadcast.buf").getAbsolutePath();
+    private final UnsafeBuffer message = new UnsafeBuffer(new byte[64]);
+    private MappedBroadcastBuffer buffer;
+    private BroadcastTransmitter transmitter;
+
+    @Before
+    public void setup() throws Exception {
+        buffer = MappedBroadcastBuffer.createOrReplace(fileName, CAPACITY);
+        transmitter = buffer.transmitter();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transmitter.close();
+        buffer.close();
+        new File(fileName).delete();
+    }
+
+    private void transmit(final long value) {
+        //messages of varying length filled with the value
+        final int length = 8 * (1 + (int)(value % 8));
+        for (int i = 0; i < length; i += 8) {
+            message.putLong(i, value);
+        }
+        transmitter.transmit(TYPE_ID, message, 0, length);
+    }
+
+    private static long value(final int typeId, final DirectBuffer buffer, final int offset, final int length) {
+        assertThat(typeId).isEqualTo(TYPE_ID);
+        final long value = buffer.getLong(offset);
+        assertThat(length).isEqualTo(8 * (1 + (int)(value % 8)));
+        for (int i = 8; i < length; i += 8) {
+            assertThat(buffer.getLong(offset + i)).isEqualTo(value);
+        }
+        return value;
+    }
+
+    @Test
+    public void receiversGetAllMessagesIfTheyKeepUp() throws Exception {
+        //given
+        final MappedBroadcastBuffer other = MappedBroadcastBuffer.open(fileName);
+        final BroadcastReceiver[] receivers = {buffer.receiver(), buffer.receiver(), other.receiver()};
+        final List<List<Long>> received = new ArrayList<>();
+        for (int i = 0; i < receivers.length; i++) {
+            received.add(new ArrayList<>());
+        }
+
+        //when
+        for (long value = 0; value < 1000; value++) {
+            transmit(value);
+            if (value % 10 == 9) {
+                for (int i = 0; i < receivers.length; i++) {
+                    final List<Long> list = received.get(i);
+                    assertThat(receivers[i].receive((t, b, o, l) -> list.add(value(t, b, o, l)), Integer.MAX_VALUE)).isEqualTo(10);
+                }
+            }
+        }
+
+        //then
+        for (int i = 0; i < receivers.length; i++) {
+            assertThat(received.get(i)).hasSize(1000);
+            for (int j = 0; j < 1000; j++) {
+                assertThat(received.get(i).get(j)).isEqualTo(j);
+            }
+            assertThat(receivers[i].getLappedCount()).isEqualTo(0);
+            receivers[i].close();
+        }
+        other.close();
+    }
+
+    @Test
+    public void lappedReceiverResynchronisesWithLatestMessage() throws Exception {
+        //given
+        final BroadcastReceiver receiver = buffer.receiver();
+        final int messages = 1000;
+        for (long value = 0; value < messages; value++) {
+            transmit(value);
+        }
+        final List<Long> received = new ArrayList<>();
+
+        //when
+        receiver.receive((t, b, o, l) -> received.add(value(t, b, o, l)), Integer.MAX_VALUE);
+        transmit(messages);
+        receiver.receive((t, b, o, l) -> received.add(value(t, b, o, l)), Integer.MAX_VALUE);
+
+        //then
+        assertThat(received).containsExactly(messages - 1L, (long)messages);
+        assertThat(receiver.getLappedCount()).isEqualTo(1);
+        receiver.close();
+    }
+
+    @Test
+    public void receiverStartsWithNextMessage() throws Exception {
+        //given
+        transmit(1);
+
+        //when
+        final BroadcastReceiver receiver = buffer.receiver();
+        transmit(2);
+
+        //then
+        final List<Long> received = new ArrayList<>();
+        assertThat(receiver.receive((t, b, o, l) -> received.add(value(t, b, o, l)), Integer.MAX_VALUE)).isEqualTo(1);
+        assertThat(received).containsExactly(2L);
+        receiver.close();
+    }
+
+    @Test(timeout = 20000)
+    public void concurrentReceiversSeeIntactMessagesInOrder() throws Exception {
+        //given
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread[] receivers = new Thread[3];
+        for (int i = 0; i < receivers.length; i++) {
+            final BroadcastReceiver receiver = buffer.receiver();
+            receivers[i] = new Thread(() -> {
+                final long[] last = {-1};
+                try {
+                    int count;
+                    do {
+                        count = receiver.receive((t, b, o, l) -> {
+                            final long value = value(t, b, o, l);
+                            assertThat(value).isGreaterThan(last[0]);
+                            last[0] = value;
+                        }, 16);
+                    } while (running.get() || count > 0);
+                } catch (final Throwable t) {
+                    error.set(t);
+                } finally {
+                    receiver.close();
+                }
+            });
+            receivers[i].start();
+        }
+
+        //when
+        for (long value = 0; value < 1000000; value++) {
+            transmit(value);
+        }
+        running.set(false);
+
+        //then
+        for (final Thread receiver : receivers) {
+            receiver.join();
+        }
+        assertThat(error.get()).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void messageTooLong() throws Exception {
+        transmitter.transmit(TYPE_ID, new UnsafeBuffer(new byte[1024]), 0, buffer.getMaxMessageLength() + 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void onlyOneTransmitter() throws Exception {
+        buffer.transmitter();
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.nio.channels.FileLock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedFileRegionWindowTest {
+
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+    private static final int MAX_MAPPED_REGIONS = 3;
+
+    private MappedFile file;
+
+    @Before
+    public void setup() throws Exception {
+        file = new MappedFile(FileUtil.tmpDirFile("window").getAbsolutePath(), MappedFile.Mode.READ_WRITE_CLEAR, REGION_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void instancesForSameFileExtendConcurrentlyWithLock() throws Exception {
+        //given
+        final int regions = 200;
+        final MappedFile[] files = {file, new MappedFile(FileUtil.tmpDirFile("window").getAbsolutePath(), MappedFile.Mode.READ_WRITE, REGION_SIZE)};
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread[] threads = new Thread[files.length];
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                final MappedFile mappedFile = files[i];
+                mappedFile.setLockOnExtend(true);
+                threads[i] = new Thread(() -> {
+                    try {
+                        for (int index = 0; index < regions; index++) {
+                            mappedFile.ensureFileLength((index + 1) * REGION_SIZE);
+                        }
+                    } catch (final Throwable t) {
+                        error.set(t);
+                    }
+                });
+            }
+
+            //when
+            for (final Thread thread : threads) {
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            //then
+            assertThat(error.get()).isNull();
+            assertThat(file.getFileLength()).isEqualTo(regions * REGION_SIZE);
+        } finally {
+            files[1].close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void lockedExtensionDoesNotWaitForOtherFiles() throws Exception {
+        //given: another file whose lock is held by the initialiser of a second instance
+        final String otherFileName = FileUtil.tmpDirFile("window-other").getAbsolutePath();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch unlock = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final MappedFile other = new MappedFile(otherFileName, MappedFile.Mode.READ_WRITE_CLEAR, REGION_SIZE);
+        final Thread initialiser = new Thread(() -> {
+            try (final MappedFile blocking = new MappedFile(otherFileName, MappedFile.Mode.READ_WRITE, REGION_SIZE, (channel, mode) -> {
+                try (final FileLock lock = channel.lock()) {
+                    locked.countDown();
+                    unlock.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            })) {
+                //nothing to do
+            } catch (final Throwable t) {
+                error.set(t);
+            }
+        });
+        final Thread extender = new Thread(() -> {
+            try {
+                other.ensureFileLength(REGION_SIZE);
+            } catch (final Throwable t) {
+                error.set(t);
+            }
+        });
+        other.setLockOnExtend(true);
+        file.setLockOnExtend(true);
+        try {
+            initialiser.start();
+            locked.await();
+            extender.start();
+            while (extender.getState() != Thread.State.BLOCKED && extender.isAlive()) {
+                Thread.yield();
+            }
+
+            //when
+            file.ensureFileLength(REGION_SIZE);
+
+            //then
+            assertThat(file.getFileLength()).isEqualTo(REGION_SIZE);
+            assertThat(extender.isAlive()).isTrue();
+        } finally {
+            unlock.countDown();
+            initialiser.join();
+            extender.join();
+            other.close();
+            new File(otherFileName).delete();
+        }
+        assertThat(error.get()).isNull();
+    }
+
+    @Test
+    public void unmapsReleasedRegionsWithoutWindow() throws Exception {
+        //when
+        for (int i = 0; i < 10; i++) {
+            file.releaseRegion(file.reserveRegion(i));
+        }
+
+        //then
+        assertThat(file.getMapCount()).isEqualTo(10);
+        assertThat(file.getUnmapCount()).isEqualTo(10);
+        assertThat(file.getMappedRegionCount()).isEqualTo(0);
+        assertThat(file.getEvictionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void evictsLeastRecentlyReleasedRegions() throws Exception {
+        //given
+        file.setMaxMappedRegions(MAX_MAPPED_REGIONS);
+
+        //when
+        for (int i = 0; i < 10; i++) {
+            file.releaseRegion(file.reserveRegion(i));
+        }
+
+        //then
+        assertThat(file.getMapCount()).isEqualTo(10);
+        assertThat(file.getMappedRegionCount()).isEqualTo(MAX_MAPPED_REGIONS);
+        assertThat(file.getEvictionCount()).isEqualTo(10 - MAX_MAPPED_REGIONS);
+
+        //when: recently released region is still mapped
+        final MappedRegion region9 = file.reserveRegion(9);
+        file.releaseRegion(region9);
+
+        //then
+        assertThat(file.getMapCount()).isEqualTo(10);
+
+        //when: evicted region is mapped again, evicting the least recently released region 7
+        final MappedRegion region0 = file.reserveRegion(0);
+        final MappedRegion region8 = file.reserveRegion(8);
+
+        //then
+        assertThat(file.getMapCount()).isEqualTo(11);
+        assertThat(file.getMappedRegionCount()).isEqualTo(MAX_MAPPED_REGIONS);
+        assertThat(region8.isClosed()).isFalse();
+        file.releaseRegion(region0);
+        file.releaseRegion(region8);
+    }
+
+    @Test
+    public void neverEvictsRegionsInUse() throws Exception {
+        //given
+        file.setMaxMappedRegions(MAX_MAPPED_REGIONS);
+        final MappedRegion[] regions = new MappedRegion[5];
+
+        //when
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = file.reserveRegion(i);
+        }
+
+        //then
+        assertThat(file.getMappedRegionCount()).isEqualTo(regions.length);
+        assertThat(file.getEvictionCount()).isEqualTo(0);
+        for (final MappedRegion region : regions) {
+            assertThat(region.isClosed()).isFalse();
+        }
+
+        //when
+        for (final MappedRegion region : regions) {
+            file.releaseRegion(region);
+        }
+        file.releaseRegion(file.reserveRegion(regions.length));
+
+        //then
+        assertThat(file.getMappedRegionCount()).isEqualTo(MAX_MAPPED_REGIONS);
+        assertThat(regions[0].isClosed()).isTrue();
+        assertThat(regions[regions.length - 1].isClosed()).isFalse();
+    }
+
+    @Test
+    public void preparerReleasesRegionsAheadOfLaggingPointer() throws Exception {
+        //given
+        file.setMaxMappedRegions(MAX_MAPPED_REGIONS + 4);
+        final RegionPreparer preparer = file.startRegionPreparer(2, RegionPreparer.DEFAULT_IDLE_NANOS);
+        final RollingRegionPointer slow = new RollingRegionPointer(file);
+        final RollingRegionPointer fast = new RollingRegionPointer(file);
+
+        //when
+        for (int i = 1; i <= 50; i++) {
+            final int index = i;
+            fast.moveBy(REGION_SIZE);
+            awaitTrue(() -> preparer.getPreparedCount() >= index + 2);
+        }
+
+        //then
+        awaitTrue(() -> file.getMappedRegionCount() <= MAX_MAPPED_REGIONS + 4);
+        assertThat(slow.getRegion().isClosed()).isFalse();
+
+        //when: lagging pointer maps its regions again
+        final long mapCount = file.getMapCount();
+        slow.moveBy(REGION_SIZE);
+
+        //then
+        assertThat(file.getMapCount()).isEqualTo(mapCount + 1);
+        slow.close();
+        fast.close();
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("condition not met after 5 seconds");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
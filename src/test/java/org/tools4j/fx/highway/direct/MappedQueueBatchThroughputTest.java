@@ -0,0 +1,201 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+import org.tools4j.fx.highway.util.WaitLatch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares throughput of per-message publication (batch size 0) with batched publication.
+ */
+@RunWith(Parameterized.class)
+public class MappedQueueBatchThroughputTest {
+
+    private final String queueType;
+    private final int batchSize;
+    private final int numberOfBytes;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}, BATCH={1}, NBYTES={2}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { "OneToManyQueue", 0, 100 },
+                { "OneToManyQueue", 1, 100 },
+                { "OneToManyQueue", 8, 100 },
+                { "OneToManyQueue", 64, 100 },
+                { "OneToManyIndexedQueue", 0, 100 },
+                { "OneToManyIndexedQueue", 1, 100 },
+                { "OneToManyIndexedQueue", 8, 100 },
+                { "OneToManyIndexedQueue", 64, 100 },
+                { "ManyToManyQueue", 0, 100 },
+                { "ManyToManyQueue", 1, 100 },
+                { "ManyToManyQueue", 8, 100 },
+                { "ManyToManyQueue", 64, 100 }
+        });
+    }
+
+    public MappedQueueBatchThroughputTest(final String queueType, final int batchSize, final int numberOfBytes) {
+        this.queueType = queueType;
+        this.batchSize = batchSize;
+        this.numberOfBytes = numberOfBytes;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("queue").getAbsolutePath();
+        switch (queueType) {
+            case "OneToManyQueue":
+                queue = OneToManyQueue.createOrReplace(fileName);
+                break;
+            case "OneToManyIndexedQueue":
+                queue = OneToManyIndexedQueue.createOrReplace(fileName);
+                break;
+            case "ManyToManyQueue":
+                queue = ManyToManyQueue.createOrReplace(fileName);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown queue type: " + queueType);
+        }
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+        if (enumerator != null) {
+            enumerator.close();
+            enumerator = null;
+        }
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+    }
+
+    @Test
+    public void throughputTest() throws Exception {
+        //given
+        final int n = 2000000;
+        final long maxTimeToRunSeconds = 30;
+
+        System.out.println("\tqueue               : " + queueType);
+        System.out.println("\tbatchSize           : " + (batchSize == 0 ? "no batch" : batchSize));
+        System.out.println("\tmessages            : " + n);
+        System.out.println("\tmessageSize         : " + numberOfBytes + " bytes");
+        System.out.println();
+
+        final AtomicBoolean terminate = new AtomicBoolean(false);
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final WaitLatch pubSubReadyLatch = new WaitLatch(2);
+        final WaitLatch receivedAllLatch = new WaitLatch(1);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong checksum = new AtomicLong();
+
+        //when
+        final Thread subscriberThread = new Thread(() -> {
+            pubSubReadyLatch.countDown();
+            long cnt = 0;
+            long sum = 0;
+            long t0 = 0;
+            while (cnt < n && !terminate.get()) {
+                if (enumerator.hasNextMessage()) {
+                    if (cnt == 0) t0 = clock.nanoTime();
+                    final MessageReader reader = enumerator.readNextMessage();
+                    sum += reader.getInt64();
+                    for (int i = 8; i + 8 <= numberOfBytes; i += 8) {
+                        reader.getInt64();
+                    }
+                    reader.finishReadMessage();
+                    cnt++;
+                }
+            }
+            final long t1 = clock.nanoTime();
+            count.set(cnt);
+            checksum.set(sum);
+            System.out.println((t1 - t0) / 1000f + " us total receiving time (" + cnt + " messages, " + (cnt * 1000000000f) / (t1 - t0) + " messages/second)");
+            receivedAllLatch.countDown();
+        });
+        subscriberThread.setName("subscriber-thread");
+        subscriberThread.start();
+
+        final Thread publisherThread = new Thread(() -> {
+            pubSubReadyLatch.countDown();
+            pubSubReadyLatch.awaitThrowOnTimeout(5, TimeUnit.SECONDS);
+            final long t0 = clock.nanoTime();
+            for (int cnt = 0; cnt < n && !terminate.get(); ) {
+                if (batchSize > 0) {
+                    appender.appendBatch();
+                }
+                final int end = Math.min(n, cnt + Math.max(1, batchSize));
+                for (; cnt < end; cnt++) {
+                    final MessageWriter writer = appender.appendMessage();
+                    writer.putInt64(cnt);
+                    for (int i = 8; i + 8 <= numberOfBytes; i += 8) {
+                        writer.putInt64(i);
+                    }
+                    writer.finishAppendMessage();
+                }
+                if (batchSize > 0) {
+                    appender.commitBatch();
+                }
+            }
+            final long t1 = clock.nanoTime();
+            System.out.println((t1 - t0) / 1000f + " us total publishing time (" + n + " messages, " + (n * 1000000000f) / (t1 - t0) + " messages/second)");
+        });
+        publisherThread.setName("publisher-thread");
+        publisherThread.start();
+
+        //then
+        if (!receivedAllLatch.await(maxTimeToRunSeconds, TimeUnit.SECONDS)) {
+            terminate.set(true);
+            throw new RuntimeException("simulation timed out");
+        }
+        publisherThread.join(2000);
+        assertThat(count.get()).isEqualTo(n);
+        assertThat(checksum.get()).isEqualTo(((long)n) * (n - 1) / 2);
+        System.out.println();
+    }
+}
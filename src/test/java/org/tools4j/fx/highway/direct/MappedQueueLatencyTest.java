@@ -0,0 +1,243 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.HdrHistogram.Histogram;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
+import org.tools4j.fx.highway.message.MutableMarketDataSnapshot;
+import org.tools4j.fx.highway.message.SupplierFactory;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.HistogramPrinter;
+import org.tools4j.fx.highway.util.SerializerHelper;
+import org.tools4j.fx.highway.util.WaitLatch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.tools4j.fx.highway.util.SerializerHelper.*;
+
+/**
+ * Latency of SBE encoded market data snapshots sent through a {@link MappedQueue}, either copied from and to a
+ * scratch buffer via message writer and reader or encoded into a claim and decoded from the reader buffer in place.
+ */
+@RunWith(Parameterized.class)
+public class MappedQueueLatencyTest {
+
+    private final long messagesPerSecond;
+    private final int marketDataDepth;
+    private final boolean zeroCopy;
+    private final SupplierFactory<MarketDataSnapshotBuilder> builderSupplierFactory;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: MPS={0}, D={1}, ZERO_COPY={2}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { 160000, 2, false, MutableMarketDataSnapshot.BUILDER_SUPPLIER_FACTORY },
+                { 160000, 2, true, MutableMarketDataSnapshot.BUILDER_SUPPLIER_FACTORY },
+                { 500000, 2, false, MutableMarketDataSnapshot.BUILDER_SUPPLIER_FACTORY },
+                { 500000, 2, true, MutableMarketDataSnapshot.BUILDER_SUPPLIER_FACTORY }
+        });
+    }
+
+    public MappedQueueLatencyTest(final long messagesPerSecond,
+                                  final int marketDataDepth,
+                                  final boolean zeroCopy,
+                                  final SupplierFactory<MarketDataSnapshotBuilder> builderSupplierFactory) {
+        this.messagesPerSecond = messagesPerSecond;
+        this.marketDataDepth = marketDataDepth;
+        this.zeroCopy = zeroCopy;
+        this.builderSupplierFactory = Objects.requireNonNull(builderSupplierFactory);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        queue = OneToManyQueue.createOrReplace(FileUtil.tmpDirFile("queue").getAbsolutePath());
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+        if (enumerator != null) {
+            enumerator.close();
+            enumerator = null;
+        }
+        if (queue != null) {
+            queue.close();
+            queue = null;
+        }
+    }
+
+    @Test
+    public void latencyTest() throws Exception {
+        final MarketDataSnapshotBuilder builder = builderSupplierFactory.create().get();
+        //given
+        final int w = 200000;//warmup
+        final int c = 100000;//counted
+        final int n = w+c;
+        final long maxTimeToRunSeconds = 30;
+
+        System.out.println("\twarmup + count      : " + w + " + " + c + " = " + n);
+        System.out.println("\tmessagesPerSecond   : " + messagesPerSecond);
+        System.out.println("\tmarketDataDepth     : " + marketDataDepth);
+        System.out.println("\tmessageSize         : " + encodedLength(givenMarketDataSnapshot(builder, marketDataDepth, marketDataDepth)) + " bytes");
+        System.out.println("\tzeroCopy            : " + zeroCopy);
+        System.out.println("\tmaxTimeToRunSeconds : " + maxTimeToRunSeconds);
+        System.out.println();
+
+        final AtomicBoolean terminate = new AtomicBoolean(false);
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final Histogram histogram = new Histogram(1, 1000000000, 3);
+        final WaitLatch pubSubReadyLatch = new WaitLatch(2);
+        final WaitLatch receivedAllLatch = new WaitLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+
+        //when
+        final Thread subscriberThread = new Thread(() -> {
+            final Supplier<MarketDataSnapshotBuilder> builderSupplier = builderSupplierFactory.create();
+            final UnsafeBuffer unsafeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(4096));
+            final AtomicLong t0 = new AtomicLong();
+            final AtomicLong t1 = new AtomicLong();
+            final AtomicLong t2 = new AtomicLong();
+            pubSubReadyLatch.countDown();
+            while (!terminate.get()) {
+                if (enumerator.hasNextMessage()) {
+                    final MessageReader reader = enumerator.readNextMessage();
+                    if (count.get() == 0) t0.set(clock.nanoTime());
+                    else if (count.get() == w-1) t1.set(clock.nanoTime());
+                    else if (count.get() == n-1) t2.set(clock.nanoTime());
+                    final MarketDataSnapshot decoded;
+                    if (zeroCopy) {
+                        decoded = decode(reader.buffer(), builderSupplier.get());
+                    } else {
+                        final int len = reader.getInt32();
+                        for (int i = 0; i < len; ) {
+                            if (i + 8 <= len) {
+                                unsafeBuffer.putLong(i, reader.getInt64());
+                                i += 8;
+                            } else {
+                                unsafeBuffer.putByte(i, reader.getInt8());
+                                i++;
+                            }
+                        }
+                        decoded = decode(unsafeBuffer, builderSupplier.get());
+                    }
+                    reader.finishReadMessage();
+                    final long time = clock.nanoTime();
+                    final int cnt = count.incrementAndGet();
+                    if (cnt <= n) {
+                        histogram.recordValue(time - decoded.getEventTimestamp());
+                    }
+                    if (cnt == w) {
+                        histogram.reset();
+                    }
+                    if (cnt >= n) {
+                        receivedAllLatch.countDown();
+                        break;
+                    }
+                }
+            }
+            System.out.println((t2.get() - t0.get())/1000.0 + " us total receiving time (" + (t2.get() - t1.get())/(1000f*c) + " us/message, " + c/((t2.get()-t1.get())/1000000000f) + " messages/second)");
+        });
+        subscriberThread.setName("subscriber-thread");
+        subscriberThread.start();
+
+        //publisher
+        final Thread publisherThread = new Thread(() -> {
+            final Supplier<MarketDataSnapshotBuilder> builderSupplier = builderSupplierFactory.create();
+            final UnsafeBuffer unsafeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(4096));
+            final long periodNs = 1000000000/messagesPerSecond;
+            pubSubReadyLatch.countDown();
+            pubSubReadyLatch.awaitThrowOnTimeout(5, TimeUnit.SECONDS);
+            long cnt = 0;
+            final long t0 = clock.nanoTime();
+            while (cnt < n && !terminate.get()) {
+                long tCur = clock.nanoTime();
+                while (tCur - t0 < cnt * periodNs) {
+                    tCur = clock.nanoTime();
+                }
+                final MarketDataSnapshot newSnapshot = givenMarketDataSnapshot(builderSupplier.get(), marketDataDepth, marketDataDepth);
+                if (zeroCopy) {
+                    final MessageClaim claim = appender.claim(encodedLength(newSnapshot));
+                    encode(claim.buffer(), newSnapshot);
+                    claim.commit();
+                } else {
+                    final int len = encode(unsafeBuffer, newSnapshot);
+                    final MessageWriter writer = appender.appendMessage();
+                    writer.putInt32(len);
+                    for (int i = 0; i < len; ) {
+                        if (i + 8 <= len) {
+                            writer.putInt64(unsafeBuffer.getLong(i));
+                            i += 8;
+                        } else {
+                            writer.putInt8(unsafeBuffer.getByte(i));
+                            i++;
+                        }
+                    }
+                    writer.finishAppendMessage();
+                }
+                cnt++;
+            }
+            final long t1 = clock.nanoTime();
+            System.out.println((t1 - t0) / 1000.0 + " us total publishing time (cnt=" + cnt + ")");
+        });
+        publisherThread.setName("publisher-thread");
+        publisherThread.start();
+
+        //then
+        if (!receivedAllLatch.await(maxTimeToRunSeconds, TimeUnit.SECONDS)) {
+            terminate.set(true);
+            System.err.println("timeout after receiving " + count + " messages.");
+            throw new RuntimeException("simulation timed out");
+        }
+        terminate.set(true);
+
+        publisherThread.join(2000);
+
+        System.out.println();
+        HistogramPrinter.printHistogram(histogram);
+    }
+}
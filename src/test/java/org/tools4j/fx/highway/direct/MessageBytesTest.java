@@ -0,0 +1,171 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class MessageBytesTest {
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public MessageBytesTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("bytes").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void bytesAreCopiedAcrossRegions() throws Exception {
+        //given
+        final int messages = 100;
+        final int maxLength = 1500;
+        final byte[] bytes = new byte[maxLength + 3];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)(i * 31);
+        }
+        final ByteBuffer heapBuffer = ByteBuffer.wrap(bytes);
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(bytes.length);
+        directBuffer.put(bytes).clear();
+        final UnsafeBuffer unsafeBuffer = new UnsafeBuffer(bytes);
+
+        //when
+        for (int i = 0; i < messages; i++) {
+            final int len = messageLength(i);
+            final MessageWriter writer = appender.appendMessage();
+            writer.putInt8(i);
+            switch (i % 4) {
+                case 0:
+                    writer.putBytes(bytes, 3, len);
+                    break;
+                case 1:
+                    writer.putBytes(heapBuffer, 3, len);
+                    break;
+                case 2:
+                    writer.putBytes(directBuffer, 3, len);
+                    break;
+                default:
+                    writer.putBytes(unsafeBuffer, 3, len);
+                    break;
+            }
+            writer.putInt64(-i);
+            writer.finishAppendMessage();
+        }
+
+        //then
+        final byte[] readBytes = new byte[maxLength];
+        final ByteBuffer readHeapBuffer = ByteBuffer.allocate(maxLength);
+        final ByteBuffer readDirectBuffer = ByteBuffer.allocateDirect(maxLength);
+        final UnsafeBuffer readUnsafeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(maxLength));
+        for (int i = 0; i < messages; i++) {
+            final int len = messageLength(i);
+            final MessageReader reader = enumerator.readNextMessage();
+            assertThat(reader.getInt8()).isEqualTo((byte)i);
+            switch ((i + 1) % 4) {
+                case 0:
+                    reader.getBytes(readBytes, 0, len);
+                    break;
+                case 1:
+                    reader.getBytes(readHeapBuffer, 0, len);
+                    readHeapBuffer.get(readBytes, 0, len).clear();
+                    break;
+                case 2:
+                    reader.getBytes(readDirectBuffer, 0, len);
+                    readDirectBuffer.get(readBytes, 0, len).clear();
+                    break;
+                default:
+                    reader.getBytes(readUnsafeBuffer, 0, len);
+                    readUnsafeBuffer.getBytes(0, readBytes, 0, len);
+                    break;
+            }
+            assertThat(Arrays.copyOf(readBytes, len)).isEqualTo(Arrays.copyOfRange(bytes, 3, 3 + len));
+            assertThat(reader.getInt64()).isEqualTo(-i);
+            reader.finishReadMessage();
+        }
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test
+    public void paddingAtRegionEndDoesNotOverwriteOtherMessages() throws Exception {
+        //given
+        final int messages = 2000;
+
+        //when
+        for (int i = 0; i < messages; i++) {
+            appender.appendMessage().putInt32(i).putInt64(i).finishAppendMessage();
+        }
+
+        //then
+        for (int i = 0; i < messages; i++) {
+            final MessageReader reader = enumerator.readNextMessage();
+            assertThat(reader.getInt32()).isEqualTo(i);
+            assertThat(reader.getInt64()).isEqualTo(i);
+            reader.finishReadMessage();
+        }
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void putBytesOutOfBoundsIsRejected() throws Exception {
+        appender.appendMessage().putBytes(new byte[8], 4, 8);
+    }
+
+    private static int messageLength(final int index) {
+        return (index * 97) % 1500;
+    }
+}
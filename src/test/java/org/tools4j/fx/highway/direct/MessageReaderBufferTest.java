@@ -0,0 +1,114 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.agrona.DirectBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class MessageReaderBufferTest {
+
+    private final TestQueueType queueType;
+
+    private MappedQueue queue;
+    private Appender appender;
+    private Enumerator enumerator;
+
+    @Parameterized.Parameters(name = "{index}: QUEUE={0}")
+    public static Collection<Object[]> testRunParameters() {
+        return TestQueueType.parameters();
+    }
+
+    public MessageReaderBufferTest(final TestQueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        final String fileName = FileUtil.tmpDirFile("buffer").getAbsolutePath();
+        queue = queueType.createOrReplace(fileName);
+        appender = queue.appender();
+        enumerator = queue.enumerator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        enumerator.close();
+        queue.close();
+    }
+
+    @Test
+    public void bufferContainsRemainingMessageBytesAlsoAcrossRegions() throws Exception {
+        //given
+        final int messages = 200;
+
+        //when
+        for (int i = 0; i < messages; i++) {
+            final MessageWriter writer = appender.appendMessage();
+            writer.putInt32(messageLength(i));
+            for (int j = 0; j < messageLength(i); j++) {
+                writer.putInt8(i + j);
+            }
+            writer.finishAppendMessage();
+        }
+
+        //then
+        for (int i = 0; i < messages; i++) {
+            final MessageReader reader = enumerator.readNextMessage();
+            final int len = reader.getInt32();
+            assertThat(len).isEqualTo(messageLength(i));
+            final DirectBuffer buffer = reader.buffer();
+            assertThat(buffer.capacity()).isGreaterThanOrEqualTo(len);
+            for (int j = 0; j < len; j++) {
+                assertThat(buffer.getByte(j)).isEqualTo((byte)(i + j));
+            }
+            //buffer does not move the reader
+            assertThat(reader.getInt8()).isEqualTo((byte)i);
+            reader.finishReadMessage();
+        }
+        assertThat(enumerator.hasNextMessage()).isFalse();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bufferAfterFinishReadMessageIsRejected() throws Exception {
+        appender.appendMessage().putInt64(1).finishAppendMessage();
+        final MessageReader reader = enumerator.readNextMessage();
+        reader.finishReadMessage();
+        reader.buffer();
+    }
+
+    private static int messageLength(final int index) {
+        return 1 + (index * 37) % 1500;
+    }
+}
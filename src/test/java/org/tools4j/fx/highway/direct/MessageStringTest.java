@@ -0,0 +1,207 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.octtech.bw.ByteWatcherSingleThread;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageStringTest {
+
+    private static final String[] STRINGS = {"", "a", "AUDUSD", "EBS", "Hello World"};
+    private static final String[] UNICODE_STRINGS = {"", "abc", "\u00e4\u00f6\u00fc", "\u20ac 100", "x\u0000y"};
+    private static final int MESSAGES = 10000;
+    private static final int RUNS = 5;
+    //tolerates the measuring overhead of the byte watcher, but not a single allocation per message
+    private static final long MAX_WATCHER_NOISE = 1024;
+
+    private final String fileName = FileUtil.tmpDirFile("strings").getAbsolutePath();
+    private MappedQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        //small regions so that strings span regions
+        queue = OneToManyQueue.createOrReplace(fileName, MappedRegion.REGION_SIZE_GRANULARITY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void readsStringsIntoAppendable() throws Exception {
+        try (final Appender appender = queue.appender()) {
+            for (final String s : STRINGS) {
+                appender.appendMessage().putStringAscii(s).finishAppendMessage();
+            }
+            for (final String s : UNICODE_STRINGS) {
+                appender.appendMessage().putStringUtf8(s).putString(s).finishAppendMessage();
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        final MutableAsciiString ascii = new MutableAsciiString(1);
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (final String s : STRINGS) {
+                sb.setLength(0);
+                enumerator.readNextMessage().getStringAscii(sb).finishReadMessage();
+                assertThat(sb.toString()).isEqualTo(s);
+            }
+            for (final String s : UNICODE_STRINGS) {
+                sb.setLength(0);
+                final MessageReader reader = enumerator.readNextMessage().getStringUtf8(sb);
+                assertThat(sb.toString()).isEqualTo(s);
+                sb.setLength(0);
+                reader.getString(sb).finishReadMessage();
+                assertThat(sb.toString()).isEqualTo(s);
+            }
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (final String s : STRINGS) {
+                enumerator.readNextMessage().getStringAscii(ascii).finishReadMessage();
+                assertThat(ascii.toString()).isEqualTo(s);
+                assertThat(ascii.contentEquals(s)).isTrue();
+                assertThat(ascii).isEqualTo(new MutableAsciiString().append(s));
+                assertThat(ascii.hashCode()).isEqualTo(s.hashCode());
+            }
+            for (final String s : UNICODE_STRINGS) {
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.getStringUtf8().toString()).isEqualTo(s);
+                assertThat(reader.getString().toString()).isEqualTo(s);
+                reader.finishReadMessage();
+            }
+        }
+    }
+
+    @Test
+    public void comparesStringsWithoutDecoding() throws Exception {
+        try (final Appender appender = queue.appender()) {
+            for (final String s : STRINGS) {
+                appender.appendMessage().putStringAscii(s).putInt32(s.length()).finishAppendMessage();
+            }
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (final String s : STRINGS) {
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.equalsStringAscii(s)).isTrue();
+                assertThat(reader.getInt32()).isEqualTo(s.length());
+                reader.finishReadMessage();
+            }
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (final String s : STRINGS) {
+                //mismatch must still consume the string
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.equalsStringAscii(s + "x")).isFalse();
+                assertThat(reader.getInt32()).isEqualTo(s.length());
+                reader.finishReadMessage();
+            }
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            enumerator.skipNextMessage().skipNextMessage();
+            final MessageReader reader = enumerator.readNextMessage();
+            assertThat(reader.equalsStringAscii("AUDUSX")).isFalse();
+            assertThat(reader.getInt32()).isEqualTo(6);
+            reader.finishReadMessage();
+        }
+    }
+
+    @Test
+    public void readsStringsWithoutAllocation() throws Exception {
+        //a single region as mapping regions allocates
+        queue.close();
+        queue = OneToManyQueue.createOrReplace(fileName);
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                appender.appendMessage()
+                        .putStringAscii(STRINGS[i % STRINGS.length])
+                        .putStringUtf8(UNICODE_STRINGS[i % UNICODE_STRINGS.length])
+                        .putString(UNICODE_STRINGS[i % UNICODE_STRINGS.length])
+                        .finishAppendMessage();
+            }
+        }
+        final StringBuilder sb = new StringBuilder(64);
+        final MutableAsciiString ascii = new MutableAsciiString(64);
+        final ByteWatcherSingleThread byteWatcher = new ByteWatcherSingleThread(Thread.currentThread());
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            //the last run is measured, the other runs warm up
+            for (int run = 0; run < RUNS; run++) {
+                enumerator.seek(0);
+                byteWatcher.reset();
+                final int matches = readStrings(enumerator, sb, ascii);
+                final long allocated = byteWatcher.calculateAllocations();
+                assertThat(matches).isEqualTo(MESSAGES / STRINGS.length);
+                if (run == RUNS - 1) {
+                    assertThat(allocated).isLessThan(MAX_WATCHER_NOISE);
+                }
+            }
+            for (int run = 0; run < RUNS; run++) {
+                enumerator.seek(0);
+                byteWatcher.reset();
+                final int matches = compareStrings(enumerator);
+                final long allocated = byteWatcher.calculateAllocations();
+                assertThat(matches).isEqualTo(MESSAGES / STRINGS.length);
+                if (run == RUNS - 1) {
+                    assertThat(allocated).isLessThan(MAX_WATCHER_NOISE);
+                }
+            }
+        }
+    }
+
+    private static int readStrings(final Enumerator enumerator, final StringBuilder sb, final MutableAsciiString ascii) {
+        int matches = 0;
+        while (enumerator.hasNextMessage()) {
+            final MessageReader reader = enumerator.readNextMessage();
+            reader.getStringAscii(ascii);
+            if (ascii.contentEquals("AUDUSD")) {
+                matches++;
+            }
+            sb.setLength(0);
+            reader.getStringUtf8(sb);
+            sb.setLength(0);
+            reader.getString(sb);
+            reader.finishReadMessage();
+        }
+        return matches;
+    }
+
+    private static int compareStrings(final Enumerator enumerator) {
+        int matches = 0;
+        while (enumerator.hasNextMessage()) {
+            final MessageReader reader = enumerator.readNextMessage();
+            if (reader.equalsStringAscii("AUDUSD")) {
+                matches++;
+            }
+            reader.finishReadMessage();
+        }
+        return matches;
+    }
+}
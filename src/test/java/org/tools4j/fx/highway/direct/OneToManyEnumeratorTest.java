@@ -0,0 +1,134 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+public class OneToManyEnumeratorTest {
+
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+    private static final int MESSAGES = 1000;
+
+    private final String fileName = FileUtil.tmpDirFile("one-to-many").getAbsolutePath();
+    private MappedQueue queue;
+    private final List<Long> positions = new ArrayList<>();
+    private final List<Long> payloadEnds = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        queue = OneToManyQueue.createOrReplace(fileName, REGION_SIZE);
+        try (final Appender appender = queue.appender();
+             final Enumerator enumerator = queue.enumerator()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                //payload values look like valid length fields, claims pad region ends
+                if (i % 10 == 0) {
+                    final MessageClaim claim = appender.claim(1000);
+                    claim.buffer().putLong(0, 0);
+                    claim.commit();
+                } else {
+                    appender.appendMessage().putInt64(0).putInt64(i).finishAppendMessage();
+                }
+            }
+            while (enumerator.hasNextMessage()) {
+                final long position = enumerator.position();
+                final MessageReader reader = enumerator.readNextMessage();
+                positions.add(position);
+                payloadEnds.add(position + 8 + ((reader.buffer().capacity() + 7) & ~7));
+                reader.finishReadMessage();
+            }
+            positions.add(enumerator.position());
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+    }
+
+    private long tailCheckpoint() throws Exception {
+        try (final MappedFile file = new MappedFile(fileName, MappedFile.Mode.READ_ONLY, REGION_SIZE)) {
+            final MappedRegion header = file.reserveRegion(0);
+            try {
+                return UNSAFE.getLongVolatile(null, header.getAddress(OneToManyQueue.TAIL_CHECKPOINT_OFFSET));
+            } finally {
+                file.releaseRegion(header);
+            }
+        }
+    }
+
+    @Test
+    public void messagePositionsAfterCheckpointAreAccepted() throws Exception {
+        final long checkpoint = tailCheckpoint();
+        for (int i = 0; i < positions.size(); i++) {
+            if (positions.get(i) < checkpoint) {
+                continue;
+            }
+            try (final Enumerator enumerator = queue.enumerator(StartPosition.atPosition(positions.get(i)))) {
+                assertThat(enumerator.position()).isEqualTo(positions.get(i));
+                assertThat(enumerator.hasNextMessage()).isEqualTo(i < MESSAGES);
+            }
+        }
+    }
+
+    @Test
+    public void payloadPositionsAfterCheckpointAreRejected() throws Exception {
+        final long checkpoint = tailCheckpoint();
+        assertThat(checkpoint).isGreaterThan(REGION_SIZE);
+        for (int i = 0; i < MESSAGES; i++) {
+            if (positions.get(i) < checkpoint) {
+                continue;
+            }
+            for (long position = positions.get(i) + 8; position < payloadEnds.get(i); position += 8) {
+                assertRejected(position);
+            }
+        }
+    }
+
+    @Test
+    public void invalidPositionsAreRejected() throws Exception {
+        final long tail = positions.get(MESSAGES);
+        assertRejected(0);
+        assertRejected(OneToManyQueue.HEADER_LENGTH - 8);
+        assertRejected(tail - 1);
+        assertRejected(tail + 8);
+    }
+
+    private void assertRejected(final long position) {
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.atPosition(position))) {
+            fail("Position " + position + " should be rejected but enumerator starts at " + enumerator.position());
+        } catch (final IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.direct.OneToManyRingQueue.OverflowPolicy;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OneToManyRingQueueTest {
+
+    private static final long CAPACITY = 4096;
+
+    private final String fileName = FileUtil.sharedMemDir("ring.q").getAbsolutePath();
+    private OneToManyRingQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        queue = OneToManyRingQueue.createOrReplace(fileName, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+    }
+
+    private static void appendMessage(final Appender appender, final long value) {
+        //messages of varying length
+        final MessageWriter writer = appender.appendMessage().putInt64(value);
+        for (int i = 0; i < value % 7; i++) {
+            writer.putInt8((byte)i);
+        }
+        writer.putInt32((int)value).finishAppendMessage();
+    }
+
+    private static void assertMessage(final MessageReader reader, final long value) {
+        assertThat(reader.getInt64()).isEqualTo(value);
+        for (int i = 0; i < value % 7; i++) {
+            assertThat(reader.getInt8()).isEqualTo((byte)i);
+        }
+        assertThat(reader.getInt32()).isEqualTo((int)value);
+    }
+
+    @Test(timeout = 20000)
+    public void appenderWrapsAroundWithConcurrentConsumers() throws Exception {
+        //given
+        final int messages = 100000;
+        final long fileLength = new File(fileName).length();
+        final Enumerator[] enumerators = {queue.enumerator(), queue.enumerator(), OneToManyRingQueue.open(fileName).enumerator()};
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread[] consumers = new Thread[enumerators.length];
+        for (int i = 0; i < consumers.length; i++) {
+            final Enumerator enumerator = enumerators[i];
+            consumers[i] = new Thread(() -> {
+                try {
+                    long next = 0;
+                    while (next < messages) {
+                        if (enumerator.hasNextMessage()) {
+                            assertMessage(enumerator.readNextMessage(), next++);
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                } catch (final Throwable t) {
+                    error.set(t);
+                }
+            });
+            consumers[i].start();
+        }
+
+        //when
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < messages; i++) {
+                appendMessage(appender, i);
+            }
+        }
+
+        //then
+        for (final Thread consumer : consumers) {
+            consumer.join();
+        }
+        assertThat(error.get()).isNull();
+        assertThat(new File(fileName).length()).isEqualTo(fileLength);
+        assertThat(queue.getFile().getMapCount()).isEqualTo(1);
+        for (final Enumerator enumerator : enumerators) {
+            assertThat(enumerator.hasNextMessage()).isFalse();
+            enumerator.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void slowestConsumerAppliesBackpressure() throws Exception {
+        //given
+        final Enumerator fast = queue.enumerator();
+        final Enumerator slow = queue.enumerator();
+        final Appender appender = queue.appender();
+        final int messages = (int)(CAPACITY / 16);//16 bytes per message, ring buffer is full
+        for (int i = 0; i < messages; i++) {
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+        }
+        assertThat(fast.drain(reader -> {}, Integer.MAX_VALUE)).isEqualTo(messages);
+
+        //when
+        final AtomicLong appended = new AtomicLong();
+        final Thread producer = new Thread(() -> {
+            appender.appendMessage().putInt64(messages).finishAppendMessage();
+            appended.set(1);
+        });
+        producer.start();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        //then
+        assertThat(appended.get()).isEqualTo(0);
+        assertThat(fast.hasNextMessage()).isFalse();
+
+        //when
+        slow.skipNextMessage();
+        producer.join();
+
+        //then
+        assertThat(appended.get()).isEqualTo(1);
+        assertThat(fast.readNextMessage().getInt64()).isEqualTo(messages);
+        assertThat(slow.drain(reader -> {}, Integer.MAX_VALUE)).isEqualTo(messages);
+        appender.close();
+        fast.close();
+        slow.close();
+    }
+
+    @Test
+    public void closedEnumeratorReleasesConsumerSlot() throws Exception {
+        //given
+        final Appender appender = queue.appender();
+        queue.enumerator().close();
+
+        //when
+        for (int i = 0; i < 10 * CAPACITY / 16; i++) {
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+        }
+
+        //then
+        appender.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lappedConsumerFails() throws Exception {
+        queue.close();
+        queue = OneToManyRingQueue.createOrReplace(fileName, CAPACITY, 4, OverflowPolicy.LAP_CONSUMERS);
+        try (final Enumerator enumerator = queue.enumerator();
+             final Appender appender = queue.appender()) {
+            for (int i = 0; i < 2 * CAPACITY / 16; i++) {
+                appender.appendMessage().putInt64(i).finishAppendMessage();
+            }
+            enumerator.hasNextMessage();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooManyConsumers() throws Exception {
+        queue.close();
+        queue = OneToManyRingQueue.createOrReplace(fileName, CAPACITY, 2, OverflowPolicy.BACKPRESSURE);
+        try (final Enumerator first = queue.enumerator();
+             final Enumerator second = queue.enumerator()) {
+            assertThat(first.hasNextMessage()).isFalse();
+            assertThat(second.hasNextMessage()).isFalse();
+            queue.enumerator();
+        }
+    }
+
+    @Test
+    public void lagIsMeasuredWithoutConsumerSlot() throws Exception {
+        //given: a single consumer slot taken by the consumer
+        queue.close();
+        queue = OneToManyRingQueue.createOrReplace(fileName, CAPACITY, 1, OverflowPolicy.BACKPRESSURE);
+        try (final Appender appender = queue.appender();
+             final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(fileName, "lag"), StartPosition.HEAD);
+             final ConsumerCursor monitor = ConsumerCursor.openReadOnly(fileName, "lag")) {
+            for (int i = 0; i < 10; i++) {
+                appender.appendMessage().putInt64(i).finishAppendMessage();
+            }
+
+            //when
+            enumerator.drain(reader -> {}, 4);
+            final ConsumerLag lag = ConsumerLag.measure(queue, monitor);
+
+            //then
+            assertThat(lag.getMessages()).isEqualTo(ConsumerLag.UNKNOWN);
+            assertThat(lag.getBytes()).isEqualTo(6 * 16);
+        } finally {
+            ConsumerCursor.cursorFile(fileName, "lag").delete();
+        }
+    }
+
+    @Test
+    public void headStartsAtTailAfterWrapAround() throws Exception {
+        //given
+        final Appender appender = queue.appender();
+        final Enumerator head = queue.enumerator(StartPosition.HEAD);
+        appender.appendMessage().putInt64(0).finishAppendMessage();
+        assertThat(head.readNextMessage().getInt64()).isEqualTo(0);
+        head.close();
+
+        //when
+        for (int i = 1; i < 2 * CAPACITY / 16; i++) {
+            appender.appendMessage().putInt64(i).finishAppendMessage();
+        }
+        final Enumerator afterWrap = queue.enumerator(StartPosition.HEAD);
+        appender.appendMessage().putInt64(-1).finishAppendMessage();
+
+        //then
+        assertThat(afterWrap.readNextMessage().getInt64()).isEqualTo(-1);
+        appender.close();
+        afterWrap.close();
+    }
+
+    @Test
+    public void claimAndBatchAcrossRingEnd() throws Exception {
+        //given
+        final Appender appender = queue.appender();
+        final Enumerator enumerator = queue.enumerator();
+        final int claimLength = 1000;
+        for (int i = 0; i < 50; i++) {
+            //when
+            final MessageClaim claim = appender.claim(claimLength);
+            claim.buffer().setMemory(0, claimLength, (byte)i);
+            claim.commit();
+            appender.appendBatch();
+            appendMessage(appender, i);
+            appendMessage(appender, i + 1);
+            appender.commitBatch();
+
+            //then
+            final MessageReader reader = enumerator.readNextMessage();
+            assertThat(reader.buffer().capacity()).isEqualTo(claimLength);
+            assertThat(reader.buffer().getByte(claimLength - 1)).isEqualTo((byte)i);
+            reader.finishReadMessage();
+            assertMessage(enumerator.readNextMessage(), i);
+            assertMessage(enumerator.readNextMessage(), i + 1);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+        appender.close();
+        enumerator.close();
+    }
+
+    @Test
+    public void abortedBatchIsNotPublished() throws Exception {
+        //given
+        final Appender appender = queue.appender();
+        final Enumerator enumerator = queue.enumerator();
+
+        //when
+        appender.appendBatch();
+        appendMessage(appender, 1);
+        assertThat(enumerator.hasNextMessage()).isFalse();
+        appender.abortBatch();
+        appendMessage(appender, 2);
+
+        //then
+        assertMessage(enumerator.readNextMessage(), 2);
+        assertThat(enumerator.hasNextMessage()).isFalse();
+        appender.close();
+        enumerator.close();
+    }
+
+    @Test
+    public void reopenedAppenderContinuesAtTail() throws Exception {
+        //given
+        try (final Appender appender = queue.appender()) {
+            appendMessage(appender, 1);
+        }
+        queue.close();
+
+        //when
+        queue = OneToManyRingQueue.open(fileName);
+        try (final Appender appender = queue.appender();
+             final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            appendMessage(appender, 2);
+
+            //then
+            assertMessage(enumerator.readNextMessage(), 1);
+            assertMessage(enumerator.readNextMessage(), 2);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.sbe.CurrencyPair;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitionedMappedQueueTest {
+
+    private static final int PAIRS = CurrencyPair.values().length - 1;//without NULL_VAL
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+
+    private final String fileName = FileUtil.tmpDirFile("partitioned").getAbsolutePath();
+    private PartitionedMappedQueue<CurrencyPair> queue;
+
+    @Before
+    public void setup() throws Exception {
+        queue = PartitionedMappedQueue.createOrReplace(fileName, PAIRS, Partitioner.ordinal(), REGION_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        for (int i = 0; i < PAIRS; i++) {
+            new File(PartitionedMappedQueue.partitionFileName(fileName, i)).delete();
+        }
+        PartitionedMappedQueue.partitionsFile(fileName).delete();
+    }
+
+    private static CurrencyPair pairOf(final long value) {
+        //EURUSD traffic dominates
+        return value % 3 == 0 ? CurrencyPair.get((short)(value % PAIRS)) : CurrencyPair.EURUSD;
+    }
+
+    private void appendMessages(final int messages) {
+        try (final PartitionedAppender<CurrencyPair> appender = queue.appender()) {
+            for (long i = 0; i < messages; i++) {
+                final CurrencyPair pair = pairOf(i);
+                appender.appendMessage(pair).putInt8((byte)pair.value()).putInt64(i).finishAppendMessage();
+            }
+        }
+    }
+
+    @Test
+    public void consumerReadsOnlyPartitionOfSubscribedKey() throws Exception {
+        //given
+        final int messages = 10000;
+        appendMessages(messages);
+
+        //when
+        final List<Long> values = new ArrayList<>();
+        try (final Enumerator enumerator = queue.enumerator(CurrencyPair.USDJPY)) {
+            while (enumerator.hasNextMessage()) {
+                final MessageReader reader = enumerator.readNextMessage();
+                assertThat(reader.getInt8()).isEqualTo((byte)CurrencyPair.USDJPY.value());
+                values.add(reader.getInt64());
+                reader.finishReadMessage();
+            }
+        }
+
+        //then
+        final List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < messages; i++) {
+            if (pairOf(i) == CurrencyPair.USDJPY) {
+                expected.add(i);
+            }
+        }
+        assertThat(values).isEqualTo(expected);
+        assertThat(values.size()).isLessThan(messages / 10);
+    }
+
+    @Test
+    public void mergedEnumeratorReturnsSubscribedPartitionsInOrder() throws Exception {
+        //given
+        final int messages = 10000;
+        appendMessages(messages);
+
+        for (final boolean drain : new boolean[] {false, true}) {
+            //when
+            final List<Long> eurusd = new ArrayList<>();
+            final List<Long> usdjpy = new ArrayList<>();
+            final MessageHandler handler = reader -> {
+                final CurrencyPair pair = CurrencyPair.get(reader.getInt8());
+                assertThat(pair).isIn(CurrencyPair.EURUSD, CurrencyPair.USDJPY);
+                (pair == CurrencyPair.EURUSD ? eurusd : usdjpy).add(reader.getInt64());
+            };
+            try (final Enumerator enumerator = queue.mergedEnumerator(StartPosition.HEAD, CurrencyPair.USDJPY, CurrencyPair.EURUSD, CurrencyPair.USDJPY)) {
+                if (drain) {
+                    while (enumerator.drain(handler, 100) > 0);
+                } else {
+                    while (enumerator.hasNextMessage()) {
+                        final MessageReader reader = enumerator.readNextMessage();
+                        handler.onMessage(reader);
+                        assertThat(reader.finishReadMessage()).isSameAs(enumerator);
+                    }
+                }
+            }
+
+            //then
+            int expectedEurusd = 0;
+            int expectedUsdjpy = 0;
+            for (long i = 0; i < messages; i++) {
+                if (pairOf(i) == CurrencyPair.EURUSD) {
+                    assertThat(eurusd.get(expectedEurusd++)).isEqualTo(i);
+                } else if (pairOf(i) == CurrencyPair.USDJPY) {
+                    assertThat(usdjpy.get(expectedUsdjpy++)).isEqualTo(i);
+                }
+            }
+            assertThat(eurusd).hasSize(expectedEurusd);
+            assertThat(usdjpy).hasSize(expectedUsdjpy);
+        }
+    }
+
+    @Test
+    public void mergedEnumeratorOfAllPartitionsAlternatesBetweenPartitions() throws Exception {
+        //given
+        appendMessages(30);
+
+        //when
+        final List<CurrencyPair> pairs = new ArrayList<>();
+        try (final Enumerator enumerator = queue.mergedEnumerator(StartPosition.HEAD)) {
+            for (int i = 0; i < 4; i++) {
+                final MessageReader reader = enumerator.readNextMessage();
+                pairs.add(CurrencyPair.get(reader.getInt8()));
+                reader.finishReadMessage();
+            }
+        }
+
+        //then
+        assertThat(pairs).containsExactly(CurrencyPair.EURUSD, CurrencyPair.GBPUSD, CurrencyPair.USDJPY, CurrencyPair.AUDUSD);
+    }
+
+    @Test
+    public void mergedEnumeratorPositionsResumePartitions() throws Exception {
+        //given
+        appendMessages(300);
+        final int partition = queue.partitionOf(CurrencyPair.USDJPY);
+        final List<Long> expected = new ArrayList<>();
+
+        try (final MergedEnumerator enumerator = (MergedEnumerator)queue.mergedEnumerator(StartPosition.HEAD)) {
+            enumerator.drain(reader -> {}, 100);
+            try (final Enumerator partitionEnumerator = queue.partition(partition).enumerator(StartPosition.atPosition(enumerator.position(partition)))) {
+                while (partitionEnumerator.hasNextMessage()) {
+                    final MessageReader reader = partitionEnumerator.readNextMessage();
+                    reader.getInt8();
+                    expected.add(reader.getInt64());
+                    reader.finishReadMessage();
+                }
+            }
+
+            //when
+            final List<Long> values = new ArrayList<>();
+            while (enumerator.hasNextMessage()) {
+                final MessageReader reader = enumerator.readNextMessage();
+                if (reader.getInt8() == CurrencyPair.USDJPY.value()) {
+                    values.add(reader.getInt64());
+                }
+                reader.finishReadMessage();
+            }
+
+            //then
+            assertThat(enumerator.getEnumeratorCount()).isEqualTo(PAIRS);
+            assertThat(values).isNotEmpty().isEqualTo(expected);
+
+            //when
+            enumerator.seek(0);
+
+            //then
+            assertThat(enumerator.drain(reader -> {}, Integer.MAX_VALUE)).isEqualTo(300);
+        }
+    }
+
+    @Test
+    public void reopenedQueueAppendsToPartitions() throws Exception {
+        //given
+        appendMessages(100);
+        queue.close();
+
+        //when
+        queue = PartitionedMappedQueue.createOrAppend(fileName, PAIRS, Partitioner.ordinal(), REGION_SIZE);
+        try (final PartitionedAppender<CurrencyPair> appender = queue.appender()) {
+            appender.appendMessage(CurrencyPair.NZDUSD).putInt8((byte)CurrencyPair.NZDUSD.value()).putInt64(100).finishAppendMessage();
+        }
+
+        //then
+        final PartitionedMappedQueue<CurrencyPair> readOnly = PartitionedMappedQueue.openReadOnly(fileName, PAIRS, Partitioner.ordinal(), REGION_SIZE);
+        try (final Enumerator enumerator = readOnly.enumerator(CurrencyPair.NZDUSD, StartPosition.TAIL)) {
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        } finally {
+            readOnly.close();
+        }
+        long count = 0;
+        long last = -1;
+        try (final Enumerator enumerator = queue.enumerator(CurrencyPair.NZDUSD)) {
+            while (enumerator.hasNextMessage()) {
+                final MessageReader reader = enumerator.readNextMessage();
+                reader.getInt8();
+                last = reader.getInt64();
+                reader.finishReadMessage();
+                count++;
+            }
+        }
+        assertThat(last).isEqualTo(100);
+        assertThat(count).isGreaterThan(1);
+    }
+
+    @Test
+    public void reopeningWithOtherPartitionCountIsRejected() throws Exception {
+        //given
+        appendMessages(10);
+        queue.close();
+
+        //when
+        for (final int partitions : new int[] {PAIRS - 1, PAIRS + 1}) {
+            try {
+                PartitionedMappedQueue.createOrAppend(fileName, partitions, Partitioner.ordinal(), REGION_SIZE).close();
+                throw new AssertionError("Queue with " + partitions + " partitions should be rejected");
+            } catch (final IllegalArgumentException e) {
+                //then
+                assertThat(e.getMessage()).contains(String.valueOf(PAIRS));
+            }
+            try {
+                PartitionedMappedQueue.openReadOnly(fileName, partitions, Partitioner.ordinal(), REGION_SIZE).close();
+                throw new AssertionError("Read-only queue with " + partitions + " partitions should be rejected");
+            } catch (final IllegalArgumentException e) {
+                //then
+                assertThat(e.getMessage()).contains(String.valueOf(PAIRS));
+            }
+        }
+        queue = PartitionedMappedQueue.openReadOnly(fileName, PAIRS, Partitioner.ordinal(), REGION_SIZE);
+        assertThat(queue.getPartitionCount()).isEqualTo(PAIRS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyWithoutPartitionIsRejected() throws Exception {
+        queue.appender().appendMessage(CurrencyPair.NULL_VAL);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void onlyOneAppenderIsSupported() throws Exception {
+        queue.appender();
+        queue.appender();
+    }
+
+    @Test
+    public void hashPartitionerMapsKeysToValidPartitions() throws Exception {
+        final Partitioner<Object> partitioner = Partitioner.hash(3);
+        for (final Object key : new Object[] {"EURUSD", -17L, Integer.MIN_VALUE, CurrencyPair.USDJPY}) {
+            assertThat(partitioner.partition(key)).isBetween(0, 2);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.HdrHistogram.Histogram;
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.HistogramPrinter;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.tools4j.fx.highway.direct.UnsafeAccess.UNSAFE;
+
+/**
+ * Measures latency of the first write to every page of a region, with and without region preparer and
+ * prefaulting.
+ */
+@RunWith(Parameterized.class)
+public class PrefaultLatencyTest {
+
+    private static final long REGION_SIZE = 1L << 20;//1 MB
+
+    private final Set<Prefault> prefault;
+    private final boolean preparer;
+
+    private MappedFile file;
+
+    @Parameterized.Parameters(name = "{index}: PREFAULT={0}, PREPARER={1}")
+    public static Collection testRunParameters() {
+        return Arrays.asList(new Object[][] {
+                { EnumSet.noneOf(Prefault.class), false },
+                { EnumSet.noneOf(Prefault.class), true },
+                { EnumSet.of(Prefault.TOUCH), true },
+                { EnumSet.of(Prefault.WILLNEED, Prefault.TOUCH), true },
+                { EnumSet.of(Prefault.HUGEPAGE, Prefault.MLOCK, Prefault.TOUCH), true }
+        });
+    }
+
+    public PrefaultLatencyTest(final Set<Prefault> prefault, final boolean preparer) {
+        this.prefault = prefault;
+        this.preparer = preparer;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        file = new MappedFile(FileUtil.sharedMemDir("prefault").getAbsolutePath(), MappedFile.Mode.READ_WRITE_CLEAR, REGION_SIZE, (c, m) -> {}, prefault);
+        if (preparer) {
+            file.startRegionPreparer(2, RegionPreparer.DEFAULT_IDLE_NANOS);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    @Test
+    public void firstWriteLatencyTest() throws Exception {
+        //given
+        final int w = 32;//warmup regions
+        final int c = 64;//counted regions
+        final long pageSize = UNSAFE.pageSize();
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final Histogram pageHistogram = new Histogram(1, TimeUnit.SECONDS.toNanos(1), 3);
+        final Histogram regionHistogram = new Histogram(1, TimeUnit.SECONDS.toNanos(1), 3);
+
+        System.out.println("\twarmup + count : " + w + " + " + c + " = " + (w + c) + " regions");
+        System.out.println("\tregionSize     : " + REGION_SIZE + " bytes");
+        System.out.println("\tprefault       : " + prefault);
+        System.out.println("\tpreparer       : " + preparer);
+        System.out.println();
+
+        //when
+        final RollingRegionPointer ptr = new RollingRegionPointer(file);
+        for (int r = 0; r < w + c; r++) {
+            if (r == w) {
+                pageHistogram.reset();
+                regionHistogram.reset();
+            }
+            //give preparer time to catch up as it would at realistic message rates
+            Thread.sleep(5);
+            final long regionStart = clock.nanoTime();
+            for (long offset = 0; offset < REGION_SIZE; offset += pageSize) {
+                final long t0 = clock.nanoTime();
+                UNSAFE.putLong(null, ptr.getAndIncrementAddress(pageSize, false), t0);
+                pageHistogram.recordValue(Math.max(1, clock.nanoTime() - t0));
+            }
+            regionHistogram.recordValue(clock.nanoTime() - regionStart);
+        }
+        ptr.close();
+
+        //then
+        System.out.println("unprepared reservations: " + file.getUnpreparedReserveCount());
+        System.out.println("prefault failures      : " + file.getPrefaultFailureCount());
+        System.out.println();
+        System.out.println("First write per page:");
+        HistogramPrinter.printHistogram(pageHistogram);
+        System.out.println("First writes per region (" + REGION_SIZE / pageSize + " pages):");
+        HistogramPrinter.printHistogram(regionHistogram);
+    }
+}
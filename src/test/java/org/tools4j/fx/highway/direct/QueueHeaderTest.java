@@ -0,0 +1,130 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class QueueHeaderTest {
+
+    private static final String FILE_PREFIX = "queue-header";
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+
+    private final String fileName = FileUtil.tmpDirFile(FILE_PREFIX).getAbsolutePath();
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteTmpDirFilesMatching(FILE_PREFIX);
+    }
+
+    @Test
+    public void reopensQueueWithValidHeader() throws Exception {
+        //given
+        try (final MappedQueue queue = OneToManyQueue.createOrReplace(fileName, REGION_SIZE);
+             final Appender appender = queue.appender()) {
+            appender.appendMessage().putInt64(42).finishAppendMessage();
+        }
+
+        //when
+        try (final MappedQueue queue = OneToManyQueue.openReadOnly(fileName, REGION_SIZE);
+             final Enumerator enumerator = queue.enumerator()) {
+
+            //then
+            assertThat(enumerator.hasNextMessage()).isTrue();
+            assertThat(enumerator.readNextMessage().getInt64()).isEqualTo(42);
+        }
+    }
+
+    @Test
+    public void rejectsOneToManyQueueWithoutMagic() throws Exception {
+        //given: the header of a file written before the magic was added
+        writeLegacyHeader(fileName, OneToManyQueue.HEADER_LENGTH);
+
+        //then
+        assertRejected(() -> OneToManyQueue.createOrAppend(fileName, REGION_SIZE), "Invalid file format");
+        assertRejected(() -> OneToManyQueue.openReadOnly(fileName, REGION_SIZE), "Invalid file format");
+    }
+
+    @Test
+    public void rejectsIndexedQueueWithoutMagic() throws Exception {
+        //given: the header of a file written before the magic was added
+        writeLegacyHeader(fileName + OneToManyIndexedQueue.SUFFIX_INDEX, OneToManyIndexedQueue.INDEX_HEADER_LENGTH);
+
+        //then
+        assertRejected(() -> OneToManyIndexedQueue.createOrAppend(fileName, REGION_SIZE, REGION_SIZE), "Invalid file format");
+        assertRejected(() -> OneToManyIndexedQueue.openReadOnly(fileName, REGION_SIZE, REGION_SIZE), "Invalid file format");
+    }
+
+    @Test
+    public void rejectsUnsupportedVersion() throws Exception {
+        //given
+        OneToManyQueue.createOrReplace(fileName, REGION_SIZE).close();
+        OneToManyIndexedQueue.createOrReplace(fileName, REGION_SIZE, REGION_SIZE).close();
+        writeVersion(fileName, OneToManyQueue.VERSION_OFFSET, OneToManyQueue.VERSION + 1);
+        writeVersion(fileName + OneToManyIndexedQueue.SUFFIX_INDEX, OneToManyIndexedQueue.VERSION_OFFSET, OneToManyIndexedQueue.VERSION + 1);
+
+        //then
+        assertRejected(() -> OneToManyQueue.createOrAppend(fileName, REGION_SIZE), "Unsupported file format version: 2");
+        assertRejected(() -> OneToManyIndexedQueue.openReadOnly(fileName, REGION_SIZE, REGION_SIZE), "Unsupported file format version: 2");
+    }
+
+    private static void writeLegacyHeader(final String fileName, final int headerLength) throws IOException {
+        final ByteBuffer init = ByteBuffer.allocate(headerLength + 8).order(ByteOrder.nativeOrder());
+        init.putLong(0, headerLength);
+        init.putLong(headerLength, -1);
+        try (final RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.getChannel().write(init, 0);
+        }
+    }
+
+    private static void writeVersion(final String fileName, final int offset, final int version) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+        buffer.putInt(0, version);
+        try (final RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.getChannel().write(buffer, offset);
+        }
+    }
+
+    private static void assertRejected(final QueueOpener opener, final String message) throws IOException {
+        try {
+            opener.open().close();
+            fail("Expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo(message);
+        }
+    }
+
+    private interface QueueOpener {
+        MappedQueue open() throws IOException;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RegionPreparerTest {
+
+    private static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+    private static final int REGIONS_AHEAD = 4;
+
+    private MappedFile file;
+    private RegionPreparer preparer;
+
+    @Before
+    public void setup() throws Exception {
+        file = new MappedFile(FileUtil.tmpDirFile("preparer").getAbsolutePath(), MappedFile.Mode.READ_WRITE_CLEAR, REGION_SIZE);
+        preparer = file.startRegionPreparer(REGIONS_AHEAD, RegionPreparer.DEFAULT_IDLE_NANOS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    @Test
+    public void rollsToPreparedRegions() throws Exception {
+        //given
+        awaitTrue(() -> preparer.getPreparedCount() >= REGIONS_AHEAD);
+        assertThat(file.getFileLength()).isGreaterThanOrEqualTo(REGIONS_AHEAD * REGION_SIZE);
+
+        //when
+        final RollingRegionPointer ptr = new RollingRegionPointer(file);
+        for (int i = 1; i < 100; i++) {
+            final int index = i;
+            awaitTrue(() -> preparer.getPreparedCount() >= index + REGIONS_AHEAD);
+            ptr.moveBy(REGION_SIZE);
+        }
+
+        //then
+        assertThat(file.getUnpreparedReserveCount()).isEqualTo(0);
+        awaitTrue(() -> preparer.getReleasedCount() == 99);
+        ptr.close();
+    }
+
+    @Test
+    public void keepsRegionsInUse() throws Exception {
+        //given
+        final RollingRegionPointer slow = new RollingRegionPointer(file);
+        final RollingRegionPointer fast = new RollingRegionPointer(file);
+
+        //when
+        fast.moveBy(10 * REGION_SIZE);
+        awaitTrue(() -> preparer.getPreparedCount() >= 10 + REGIONS_AHEAD);
+
+        //then
+        assertThat(preparer.getReleasedCount()).isEqualTo(0);
+        assertThat(slow.getRegion().isClosed()).isFalse();
+
+        //when
+        slow.close();
+
+        //then
+        awaitTrue(() -> preparer.getReleasedCount() == 10);
+        fast.close();
+    }
+
+    @Test(timeout = 20000)
+    public void maxReservedIndexDoesNotMoveBackwardsWithConcurrentReservations() throws Exception {
+        //given
+        final int regions = 200;
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int index = offset; index < regions; index += threads.length) {
+                        file.releaseRegion(file.reserveRegion(index));
+                    }
+                } catch (final Throwable t) {
+                    error.set(t);
+                }
+            });
+        }
+
+        //when
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        //then
+        assertThat(error.get()).isNull();
+        assertThat(file.getMaxReservedIndex()).isEqualTo(regions - 1);
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("condition not met after 5 seconds");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollingMappedQueueTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final int RETAINED_CYCLES = 10;
+
+    private final AtomicLong time = new AtomicLong(TimeUnit.DAYS.toMillis(17000));
+    private File directory;
+    private MappedQueue queue;
+    private Appender appender;
+    private long value;
+
+    @Before
+    public void setup() throws Exception {
+        directory = FileUtil.tmpDirFile("rolling");
+        if (directory.exists()) {
+            FileUtil.deleteRecursively(directory);
+        }
+        queue = RollingMappedQueue.createOrAppend(directory, "queue", RollCycle.MINUTELY,
+                MappedRegion.REGION_SIZE_GRANULARITY, RetentionPolicy.keepCycles(RETAINED_CYCLES), time::get);
+        appender = queue.appender();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        appender.close();
+        queue.close();
+    }
+
+    private void append(final int messages) {
+        for (int i = 0; i < messages; i++) {
+            appender.appendMessage().putInt64(value++).finishAppendMessage();
+        }
+    }
+
+    private static long assertMessages(final Enumerator enumerator, final long first, final int count) {
+        for (long i = first; i < first + count; i++) {
+            assertThat(enumerator.hasNextMessage()).isTrue();
+            final MessageReader reader = enumerator.readNextMessage();
+            assertThat(reader.getInt64()).isEqualTo(i);
+            reader.finishReadMessage();
+        }
+        return first + count;
+    }
+
+    @Test
+    public void enumeratorMovesAcrossCycles() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator()) {
+            //given
+            assertThat(enumerator.hasNextMessage()).isFalse();
+            append(100);
+            time.addAndGet(MINUTE);
+            append(100);
+            time.addAndGet(5 * MINUTE);
+            append(100);
+
+            //then
+            assertMessages(enumerator, 0, 300);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+
+            //when
+            time.addAndGet(MINUTE);
+            append(10);
+
+            //then
+            assertMessages(enumerator, 300, 10);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void chainedInvocationsMoveAcrossCycles() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator()) {
+            //when
+            Appender chainedAppender = appender.appendMessage().putInt64(0).finishAppendMessage();
+            time.addAndGet(MINUTE);
+            chainedAppender = chainedAppender.appendMessage().putInt64(1).finishAppendMessage();
+            time.addAndGet(MINUTE);
+            final MessageClaim claim = chainedAppender.claim(8);
+            claim.buffer().putLong(0, 2);
+            chainedAppender = claim.commit();
+
+            //then
+            assertThat(chainedAppender).isSameAs(appender);
+            Enumerator chainedEnumerator = enumerator;
+            for (long i = 0; i < 3; i++) {
+                assertThat(chainedEnumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = chainedEnumerator.readNextMessage();
+                assertThat(reader.getInt64()).isEqualTo(i);
+                chainedEnumerator = reader.finishReadMessage();
+            }
+            assertThat(chainedEnumerator).isSameAs(enumerator);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void tailAndPositionAcrossCycles() throws Exception {
+        //given
+        append(100);
+        time.addAndGet(MINUTE);
+        append(100);
+
+        try (final Enumerator head = queue.enumerator();
+             final Enumerator tail = queue.enumerator(StartPosition.TAIL)) {
+            assertMessages(head, 0, 50);
+            final long position = head.position();
+
+            //when
+            time.addAndGet(MINUTE);
+            append(100);
+
+            //then
+            assertMessages(tail, 200, 100);
+            assertThat(tail.hasNextMessage()).isFalse();
+            try (final Enumerator other = queue.enumerator(StartPosition.atPosition(position))) {
+                assertMessages(other, 50, 250);
+                assertThat(other.hasNextMessage()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    public void seekAcrossCycles() throws Exception {
+        //given
+        append(100);
+        time.addAndGet(MINUTE);
+        append(100);
+
+        try (final Enumerator enumerator = queue.enumerator()) {
+            //when
+            enumerator.seek(150);
+
+            //then
+            assertMessages(enumerator, 150, 50);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+
+            //when
+            try {
+                enumerator.seek(201);
+                throw new AssertionError("Seek beyond end should fail");
+            } catch (final IllegalArgumentException e) {
+                //expected
+            }
+
+            //then
+            enumerator.seek(99);
+            assertMessages(enumerator, 99, 2);
+        }
+    }
+
+    @Test
+    public void batchIsNotSplitAcrossCycles() throws Exception {
+        try (final Enumerator enumerator = queue.enumerator()) {
+            //when
+            appender.appendBatch();
+            append(10);
+            time.addAndGet(MINUTE);
+            append(10);
+            appender.commitBatch();
+            append(10);
+
+            //then
+            assertMessages(enumerator, 0, 30);
+            assertThat(queue.enumerator(StartPosition.TAIL).position()).isEqualTo(enumerator.position());
+        }
+    }
+
+    @Test
+    public void lagIsMeasuredAcrossCycles() throws Exception {
+        //given: messages of 8 bytes with an 8 byte length field
+        append(100);
+        time.addAndGet(MINUTE);
+        append(100);
+        final String cursorFileName = new File(directory, "queue").getAbsolutePath();
+
+        try (final ConsumerCursor monitor = ConsumerCursor.createOrOpen(cursorFileName, "consumer");
+             final Enumerator enumerator = queue.enumerator(ConsumerCursor.createOrOpen(cursorFileName, "consumer"), StartPosition.HEAD)) {
+            final ConsumerLag lag = ConsumerLag.measure(queue, monitor);
+            assertThat(lag.getMessages()).isEqualTo(ConsumerLag.UNKNOWN);
+            assertThat(lag.getBytes()).isEqualTo(200 * 16);
+
+            //when
+            enumerator.drain(reader -> {}, 50);
+
+            //then
+            assertThat(lag.update(queue, monitor).getBytes()).isEqualTo(150 * 16);
+
+            //when
+            append(10);
+            enumerator.drain(reader -> {}, 100);
+
+            //then
+            assertThat(lag.update(queue, monitor).getBytes()).isEqualTo(60 * 16);
+
+            //when
+            enumerator.drain(reader -> {}, 100);
+
+            //then
+            assertThat(lag.update(queue, monitor).getBytes()).isZero();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void unusedPreparedCyclesAreDeleted() throws Exception {
+        //given
+        final RollingMappedQueue rollingQueue = (RollingMappedQueue)queue;
+        final long first = RollCycle.MINUTELY.cycle(time.get());
+        append(10);
+        awaitCycleFile(rollingQueue, first + 1);
+
+        //when: the clock skips the prepared cycle
+        time.addAndGet(2 * MINUTE);
+        append(10);
+        awaitCycleFile(rollingQueue, first + 3);
+
+        //then
+        assertThat(rollingQueue.listCycles()).containsExactly(first, first + 2, first + 3);
+
+        //when
+        appender.close();
+
+        //then
+        assertThat(rollingQueue.listCycles()).containsExactly(first, first + 2);
+        try (final Enumerator enumerator = queue.enumerator()) {
+            assertMessages(enumerator, 0, 20);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    private static void awaitCycleFile(final RollingMappedQueue queue, final long cycle) throws InterruptedException {
+        while (!queue.getCycleFile(cycle).exists()) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void expiredCyclesAreDeleted() throws Exception {
+        //when
+        for (int i = 0; i < RETAINED_CYCLES + 2; i++) {
+            append(10);
+            time.addAndGet(MINUTE);
+        }
+        append(10);
+
+        //then
+        File[] cycleFiles;
+        do {
+            Thread.sleep(10);
+            cycleFiles = directory.listFiles((dir, name) -> name.endsWith(RollingMappedQueue.SUFFIX_CYCLE));
+        } while (cycleFiles.length > RETAINED_CYCLES + 1);//plus the prepared next cycle
+        try (final Enumerator enumerator = queue.enumerator()) {
+            assertMessages(enumerator, 30, 10 * RETAINED_CYCLES);
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+}
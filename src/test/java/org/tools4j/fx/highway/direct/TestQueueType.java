@@ -0,0 +1,92 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.direct;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Queue types for tests parameterized by queue, all using small regions so that tests cross region boundaries.
+ */
+enum TestQueueType {
+    ONE_TO_MANY {
+        @Override
+        MappedQueue open(final String fileName, final MappedFile.Mode mode) throws IOException {
+            return mode == MappedFile.Mode.READ_WRITE_CLEAR ?
+                    OneToManyQueue.createOrReplace(fileName, REGION_SIZE) :
+                    OneToManyQueue.createOrAppend(fileName, REGION_SIZE);
+        }
+    },
+    ONE_TO_MANY_INDEXED {
+        @Override
+        MappedQueue open(final String fileName, final MappedFile.Mode mode) throws IOException {
+            return mode == MappedFile.Mode.READ_WRITE_CLEAR ?
+                    OneToManyIndexedQueue.createOrReplace(fileName, REGION_SIZE, REGION_SIZE) :
+                    OneToManyIndexedQueue.createOrAppend(fileName, REGION_SIZE, REGION_SIZE);
+        }
+    },
+    MANY_TO_MANY {
+        @Override
+        MappedQueue open(final String fileName, final MappedFile.Mode mode) throws IOException {
+            //frames never straddle regions, larger regions keep the padding small
+            return mode == MappedFile.Mode.READ_WRITE_CLEAR ?
+                    ManyToManyQueue.createOrReplace(fileName, 4 * REGION_SIZE) :
+                    ManyToManyQueue.createOrAppend(fileName, 4 * REGION_SIZE);
+        }
+    };
+
+    static final long REGION_SIZE = MappedRegion.REGION_SIZE_GRANULARITY;
+
+    /**
+     * Opens a queue of this type.
+     *
+     * @param fileName  the queue file name
+     * @param mode      {@link MappedFile.Mode#READ_WRITE_CLEAR READ_WRITE_CLEAR} to replace an existing queue and
+     *                  {@link MappedFile.Mode#READ_WRITE READ_WRITE} to append to it
+     * @return the queue
+     * @throws IOException if opening the queue files fails
+     */
+    abstract MappedQueue open(String fileName, MappedFile.Mode mode) throws IOException;
+
+    MappedQueue createOrReplace(final String fileName) throws IOException {
+        return open(fileName, MappedFile.Mode.READ_WRITE_CLEAR);
+    }
+
+    MappedQueue createOrAppend(final String fileName) throws IOException {
+        return open(fileName, MappedFile.Mode.READ_WRITE);
+    }
+
+    /**
+     * @return the parameters of a {@link org.junit.runners.Parameterized Parameterized} test with one queue type per run
+     */
+    static Collection<Object[]> parameters() {
+        final List<Object[]> parameters = new ArrayList<>();
+        for (final TestQueueType queueType : values()) {
+            parameters.add(new Object[] {queueType});
+        }
+        return parameters;
+    }
+}
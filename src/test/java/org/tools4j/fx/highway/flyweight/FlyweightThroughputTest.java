@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.flyweight;
+
+import org.agrona.concurrent.NanoClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.direct.*;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MutableMarketDataSnapshot;
+import org.tools4j.fx.highway.message.RateLevel;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Measures throughput of writing and reading market data snapshots through claimed queue memory, either with the
+ * SBE codec or with the generated {@link MarketDataSnapshotFlyweight}.
+ */
+public class FlyweightThroughputTest {
+
+    private final String sbeFileName = FileUtil.tmpDirFile("sbe").getAbsolutePath();
+    private final String flyweightFileName = FileUtil.tmpDirFile("flyweight").getAbsolutePath();
+    private MappedQueue sbe;
+    private MappedQueue flyweight;
+
+    private double sum;
+
+    @Before
+    public void setup() throws Exception {
+        sbe = OneToManyQueue.createOrReplace(sbeFileName);
+        flyweight = OneToManyQueue.createOrReplace(flyweightFileName);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sbe.close();
+        flyweight.close();
+        new File(sbeFileName).delete();
+        new File(flyweightFileName).delete();
+    }
+
+    @Test
+    public void sbeVersusFlyweightThroughputTest() throws Exception {
+        //given
+        final int n = 500000;
+        final int runs = 5;
+        final int marketDataDepth = 10;
+        final NanoClock clock = SerializerHelper.NANO_CLOCK;
+        final MarketDataSnapshot snapshot = SerializerHelper.givenMarketDataSnapshot(
+                new MutableMarketDataSnapshot().builder(), marketDataDepth, marketDataDepth);
+        final MutableMarketDataSnapshot decodeSnapshot = new MutableMarketDataSnapshot();
+        final MarketDataSnapshotFlyweight fw = new MarketDataSnapshotFlyweight();
+        final double expectedSum = n * sumOfRates(snapshot);
+
+        System.out.println("\tmessages            : " + n);
+        System.out.println("\tsbe messageSize     : " + SerializerHelper.encodedLength(snapshot) + " bytes");
+        System.out.println("\tflyweight size      : " + MarketDataSnapshotFlyweight.LENGTH + " bytes");
+        System.out.println();
+
+        for (int run = 0; run < runs; run++) {
+            //when
+            long t0 = clock.nanoTime();
+            try (final Appender appender = sbe.appender()) {
+                final int length = SerializerHelper.encodedLength(snapshot);
+                for (int i = 0; i < n; i++) {
+                    final MessageClaim claim = appender.claim(length);
+                    SerializerHelper.encode(claim.buffer(), snapshot);
+                    claim.commit();
+                }
+            }
+            long t1 = clock.nanoTime();
+            sum = 0;
+            try (final Enumerator enumerator = sbe.enumerator()) {
+                while (enumerator.drain(reader -> {
+                    sum += sumOfRates(SerializerHelper.decode(reader.buffer(), decodeSnapshot.builder()));
+                }, 256) > 0);
+            }
+            long t2 = clock.nanoTime();
+
+            //then
+            System.out.println("run " + run + " sbe       : write " + (n * 1000000000f) / (t1 - t0) + " messages/second, read " + (n * 1000000000f) / (t2 - t1) + " messages/second");
+            assertThat(sum).isCloseTo(expectedSum, within(expectedSum * 1e-9));
+
+            //when
+            t0 = clock.nanoTime();
+            try (final Appender appender = flyweight.appender()) {
+                for (int i = 0; i < n; i++) {
+                    write(snapshot, fw.claim(appender)).commit();
+                }
+            }
+            t1 = clock.nanoTime();
+            sum = 0;
+            try (final Enumerator enumerator = flyweight.enumerator()) {
+                while (enumerator.drain(reader -> {
+                    sum += sumOfRates(fw.wrap(reader.buffer(), 0));
+                }, 256) > 0);
+            }
+            t2 = clock.nanoTime();
+
+            //then
+            System.out.println("run " + run + " flyweight : write " + (n * 1000000000f) / (t1 - t0) + " messages/second, read " + (n * 1000000000f) / (t2 - t1) + " messages/second");
+            assertThat(sum).isCloseTo(expectedSum, within(expectedSum * 1e-9));
+
+            //start next run with empty queues
+            tearDown();
+            setup();
+        }
+        System.out.println();
+    }
+
+    private static MarketDataSnapshotFlyweight write(final MarketDataSnapshot snapshot, final MarketDataSnapshotFlyweight fw) {
+        final List<? extends RateLevel> bids = snapshot.getBids();
+        final List<? extends RateLevel> asks = snapshot.getAsks();
+        fw.triggerTimestamp(snapshot.getTriggerTimestamp())
+                .eventTimestamp(snapshot.getEventTimestamp())
+                .currencyPair(snapshot.getCurrencyPair().value())
+                .venue(snapshot.getVenue().value())
+                .bidCount(bids.size())
+                .askCount(asks.size());
+        for (int i = 0; i < bids.size(); i++) {
+            fw.bidQuantity(i, bids.get(i).getQuantity()).bidRate(i, bids.get(i).getRate());
+        }
+        for (int i = 0; i < asks.size(); i++) {
+            fw.askQuantity(i, asks.get(i).getQuantity()).askRate(i, asks.get(i).getRate());
+        }
+        return fw;
+    }
+
+    private static double sumOfRates(final MarketDataSnapshot snapshot) {
+        double sum = 0;
+        for (int i = 0; i < snapshot.getBids().size(); i++) {
+            sum += snapshot.getBids().get(i).getRate();
+        }
+        for (int i = 0; i < snapshot.getAsks().size(); i++) {
+            sum += snapshot.getAsks().get(i).getRate();
+        }
+        return sum;
+    }
+
+    private static double sumOfRates(final MarketDataSnapshotFlyweight fw) {
+        double sum = 0;
+        for (int i = 0; i < fw.bidCount(); i++) {
+            sum += fw.bidRate(i);
+        }
+        for (int i = 0; i < fw.askCount(); i++) {
+            sum += fw.askRate(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.flyweight;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.direct.*;
+import org.tools4j.fx.highway.util.FileUtil;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarketDataSnapshotFlyweightTest {
+
+    private static final int MESSAGES = 1000;
+
+    private final String fileName = FileUtil.tmpDirFile("flyweight").getAbsolutePath();
+    private MappedQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        //small regions so that claims are padded to the next region
+        queue = OneToManyQueue.createOrReplace(fileName, MappedRegion.REGION_SIZE_GRANULARITY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void layoutIsAligned() throws Exception {
+        assertThat(MarketDataSnapshotFlyweight.TRIGGER_TIMESTAMP_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.EVENT_TIMESTAMP_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.BID_QUANTITY_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.BID_RATE_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.ASK_QUANTITY_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.ASK_RATE_OFFSET % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.LENGTH % 8).isEqualTo(0);
+        assertThat(MarketDataSnapshotFlyweight.LENGTH).isEqualTo(MarketDataSnapshotFlyweight.ASK_RATE_OFFSET + 8 * MarketDataSnapshotFlyweight.ASK_RATE_LENGTH);
+    }
+
+    @Test
+    public void readsFieldsWrittenToClaim() throws Exception {
+        final MarketDataSnapshotFlyweight flyweight = new MarketDataSnapshotFlyweight();
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                flyweight.claim(appender);
+                //fields in any order
+                for (int level = MarketDataSnapshotFlyweight.ASK_RATE_LENGTH - 1; level >= 0; level--) {
+                    flyweight
+                            .askRate(level, i + 0.25 * level)
+                            .askQuantity(level, 1000000 * level)
+                            .bidRate(level, i - 0.25 * level)
+                            .bidQuantity(level, 2000000 * level);
+                }
+                flyweight.askCount(i % 11).bidCount(10 - i % 11)
+                        .venue(i % 7).currencyPair(250 + i % 6)
+                        .eventTimestamp(-i).triggerTimestamp(i)
+                        .commit();
+            }
+            flyweight.claim(appender).triggerTimestamp(-1).abort();
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = enumerator.readNextMessage();
+                flyweight.wrap(reader.buffer(), 0);
+                assertThat(flyweight.triggerTimestamp()).isEqualTo(i);
+                assertThat(flyweight.eventTimestamp()).isEqualTo(-i);
+                assertThat(flyweight.currencyPair()).isEqualTo(250 + i % 6);
+                assertThat(flyweight.venue()).isEqualTo(i % 7);
+                assertThat(flyweight.bidCount()).isEqualTo(10 - i % 11);
+                assertThat(flyweight.askCount()).isEqualTo(i % 11);
+                for (int level = 0; level < MarketDataSnapshotFlyweight.BID_RATE_LENGTH; level++) {
+                    assertThat(flyweight.bidRate(level)).isEqualTo(i - 0.25 * level);
+                    assertThat(flyweight.bidQuantity(level)).isEqualTo(2000000 * level);
+                    assertThat(flyweight.askRate(level)).isEqualTo(i + 0.25 * level);
+                    assertThat(flyweight.askQuantity(level)).isEqualTo(1000000 * level);
+                }
+                reader.finishReadMessage();
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void arrayIndexIsChecked() throws Exception {
+        try (final Appender appender = queue.appender()) {
+            final MarketDataSnapshotFlyweight flyweight = new MarketDataSnapshotFlyweight().claim(appender);
+            try {
+                flyweight.bidRate(MarketDataSnapshotFlyweight.BID_RATE_LENGTH, 1.0);
+            } finally {
+                flyweight.abort();
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutClaimThrowsException() throws Exception {
+        new MarketDataSnapshotFlyweight().commit();
+    }
+}
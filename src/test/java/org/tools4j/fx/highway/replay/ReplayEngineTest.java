@@ -0,0 +1,340 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.replay;
+
+import io.aeron.Publication;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools4j.fx.highway.direct.Appender;
+import org.tools4j.fx.highway.direct.Enumerator;
+import org.tools4j.fx.highway.direct.MappedQueue;
+import org.tools4j.fx.highway.direct.MessageClaim;
+import org.tools4j.fx.highway.direct.MessageReader;
+import org.tools4j.fx.highway.direct.OneToManyQueue;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
+import org.tools4j.fx.highway.message.MutableMarketDataSnapshot;
+import org.tools4j.fx.highway.util.FileUtil;
+import org.tools4j.fx.highway.util.SerializerHelper;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReplayEngineTest {
+
+    private static final int MESSAGES = 20;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long FIRST_EVENT_TIMESTAMP = 1490000000000000000L;
+
+    private final String recordedFileName = FileUtil.tmpDirFile("recorded").getAbsolutePath();
+    private final String replayedFileName = FileUtil.tmpDirFile("replayed").getAbsolutePath();
+    private MappedQueue recorded;
+    private MappedQueue replayed;
+
+    @Before
+    public void setup() throws Exception {
+        recorded = OneToManyQueue.createOrReplace(recordedFileName);
+        replayed = OneToManyQueue.createOrReplace(replayedFileName);
+        final Appender appender = recorded.appender();
+        for (int i = 0; i < MESSAGES; i++) {
+            final MarketDataSnapshot snapshot = snapshot(i);
+            final MessageClaim claim = appender.claim(SerializerHelper.encodedLength(snapshot));
+            SerializerHelper.encode(claim.buffer(), snapshot);
+            claim.commit();
+        }
+        appender.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recorded.close();
+        replayed.close();
+        new File(recordedFileName).delete();
+        new File(replayedFileName).delete();
+    }
+
+    private static MarketDataSnapshot snapshot(final int i) {
+        final MarketDataSnapshotBuilder builder = new MutableMarketDataSnapshot().builder();
+        SerializerHelper.givenMarketDataSnapshot(builder, 1 + i % 3, 2);
+        builder.setEventTimestamp(FIRST_EVENT_TIMESTAMP + i * INTERVAL_NANOS);
+        return builder.build();
+    }
+
+    private long replay(final double speed, final ReplaySink sink) {
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            final ReplayEngine engine = new ReplayEngine(enumerator, sink, speed);
+            final long t0 = System.nanoTime();
+            assertThat(engine.replay(Long.MAX_VALUE)).isEqualTo(MESSAGES);
+            final long t1 = System.nanoTime();
+            assertThat(engine.getLagHistogram().getTotalCount()).isEqualTo(MESSAGES);
+            assertThat(engine.getUntimedCount()).isZero();
+            return t1 - t0;
+        }
+    }
+
+    @Test
+    public void replaysAtOriginalPaceIntoQueue() throws Exception {
+        //given
+        final Appender appender = replayed.appender();
+
+        //when
+        final long elapsed = replay(1, ReplaySink.appender(appender));
+        appender.close();
+
+        //then
+        assertThat(elapsed).isGreaterThanOrEqualTo((MESSAGES - 1) * INTERVAL_NANOS);
+        try (final Enumerator enumerator = replayed.enumerator()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                final MarketDataSnapshot expected = snapshot(i);
+                final MessageReader reader = enumerator.readNextMessage();
+                final MarketDataSnapshot actual = SerializerHelper.decode(reader.buffer(), new MutableMarketDataSnapshot().builder());
+                assertThat(actual.getEventTimestamp()).isEqualTo(expected.getEventTimestamp());
+                assertThat(actual.getBids().size()).isEqualTo(expected.getBids().size());
+                assertThat(actual.getAsks().get(1).getRate()).isEqualTo(expected.getAsks().get(1).getRate());
+                reader.finishReadMessage();
+            }
+        }
+    }
+
+    @Test
+    public void republishesEncodedLengthOnly() throws Exception {
+        //given
+        final int[] lengths = new int[MESSAGES];
+        final int[] count = {0};
+
+        //when
+        replay(ReplayEngine.MAX_SPEED, (buffer, offset, length) -> {
+            lengths[count[0]++] = length;
+            return true;
+        });
+
+        //then
+        for (int i = 0; i < MESSAGES; i++) {
+            assertThat(lengths[i]).isEqualTo(SerializerHelper.encodedLength(snapshot(i)));
+        }
+    }
+
+    @Test
+    public void replaysFasterWithSpeedFactor() throws Exception {
+        //given: a clock advancing with every read so that parking overshoots do not make the test flaky
+        final long[] time = {0};
+        final NanoClock clock = () -> time[0] += TimeUnit.MICROSECONDS.toNanos(100);
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            final ReplayEngine engine = new ReplayEngine(enumerator, (buffer, offset, length) -> true, 10, clock);
+
+            //when
+            final long t0 = clock.nanoTime();
+            assertThat(engine.replay(Long.MAX_VALUE)).isEqualTo(MESSAGES);
+            final long elapsed = clock.nanoTime() - t0;
+
+            //then
+            assertThat(elapsed).isGreaterThanOrEqualTo((MESSAGES - 1) * INTERVAL_NANOS / 10);
+            assertThat(elapsed).isLessThan((MESSAGES - 1) * INTERVAL_NANOS / 10 + INTERVAL_NANOS);
+        }
+    }
+
+    @Test
+    public void lagOfStalledSinkIsRecordedForAllDelayedMessages() throws Exception {
+        //given
+        final long stallNanos = (MESSAGES + 10) * INTERVAL_NANOS;
+        final boolean[] stalled = {false};
+        final ReplaySink stallingSink = (buffer, offset, length) -> {
+            if (!stalled[0]) {
+                stalled[0] = true;
+                final long end = System.nanoTime() + stallNanos;
+                while (System.nanoTime() < end) {
+                    LockSupport.parkNanos(end - System.nanoTime());
+                }
+            }
+            return true;
+        };
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            final ReplayEngine engine = new ReplayEngine(enumerator, stallingSink, 1);
+
+            //when
+            engine.replay(Long.MAX_VALUE);
+
+            //then
+            //the stall of the first message delays all others, not only the message that was stalled
+            assertThat(engine.getLagHistogram().getTotalCount()).isEqualTo(MESSAGES);
+            assertThat(engine.getLagHistogram().getValueAtPercentile(50)).isGreaterThan(stallNanos / 2);
+            assertThat(engine.getLastLagNanos()).isGreaterThanOrEqualTo(stallNanos - (MESSAGES - 1) * INTERVAL_NANOS);
+        }
+    }
+
+    @Test
+    public void retriesBackPressuredAeronPublication() throws Exception {
+        //given
+        final Publication publication = mock(Publication.class);
+        when(publication.offer(any(DirectBuffer.class), anyInt(), anyInt()))
+                .thenReturn(Publication.BACK_PRESSURED, Publication.ADMIN_ACTION, 64L);
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            final ReplayEngine engine = new ReplayEngine(enumerator, ReplaySink.publication(publication), ReplayEngine.MAX_SPEED);
+
+            //when
+            engine.replay(1);
+
+            //then
+            assertThat(engine.getMessageCount()).isEqualTo(1);
+            assertThat(engine.getBackPressureCount()).isEqualTo(2);
+            verify(publication, times(3)).offer(any(DirectBuffer.class), anyInt(), anyInt());
+        }
+    }
+
+    @Test
+    public void stopsWhileBackPressured() throws Exception {
+        //given
+        final ReplayEngine[] engine = {null};
+        final ReplaySink sink = (buffer, offset, length) -> {
+            if (engine[0].getBackPressureCount() == 2) {
+                engine[0].stop();
+            }
+            return false;
+        };
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            engine[0] = new ReplayEngine(enumerator, sink, ReplayEngine.MAX_SPEED);
+
+            //when
+            final long count = engine[0].replay(Long.MAX_VALUE);
+
+            //then
+            assertThat(count).isZero();
+            assertThat(engine[0].getMessageCount()).isZero();
+            assertThat(engine[0].getBackPressureCount()).isEqualTo(3);
+            assertThat(engine[0].getLagHistogram().getTotalCount()).isZero();
+        }
+    }
+
+    @Test
+    public void resumesWithMessageRejectedWhenStopped() throws Exception {
+        //given: a sink rejecting the third message until the engine is stopped
+        final ReplayEngine[] engine = {null};
+        final boolean[] rejecting = {true};
+        final Appender appender = replayed.appender();
+        final ReplaySink sink = (buffer, offset, length) -> {
+            if (rejecting[0] && engine[0].getMessageCount() == 2) {
+                engine[0].stop();
+                return false;
+            }
+            appender.appendMessage().putBytes(buffer, offset, length).finishAppendMessage();
+            return true;
+        };
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            engine[0] = new ReplayEngine(enumerator, sink, ReplayEngine.MAX_SPEED);
+
+            //when
+            final long stoppedCount = engine[0].replay(Long.MAX_VALUE);
+
+            //then
+            assertThat(stoppedCount).isEqualTo(2);
+            assertThat(engine[0].getBackPressureCount()).isEqualTo(1);
+
+            //when
+            rejecting[0] = false;
+            final long resumedCount = engine[0].replay(Long.MAX_VALUE);
+
+            //then
+            assertThat(resumedCount).isEqualTo(MESSAGES - 2);
+            assertThat(engine[0].getMessageCount()).isEqualTo(MESSAGES);
+        } finally {
+            appender.close();
+        }
+        try (final Enumerator enumerator = replayed.enumerator()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                final MessageReader reader = enumerator.readNextMessage();
+                final MarketDataSnapshot actual = SerializerHelper.decode(reader.buffer(), new MutableMarketDataSnapshot().builder());
+                assertThat(actual.getEventTimestamp()).isEqualTo(snapshot(i).getEventTimestamp());
+                reader.finishReadMessage();
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void returnsWhenInterruptedWhileBackPressured() throws Exception {
+        //given
+        final ReplaySink sink = (buffer, offset, length) -> {
+            Thread.currentThread().interrupt();
+            return false;
+        };
+
+        try (final Enumerator enumerator = recorded.enumerator()) {
+            final ReplayEngine engine = new ReplayEngine(enumerator, sink, ReplayEngine.MAX_SPEED);
+
+            //when
+            final long count = engine.replay(Long.MAX_VALUE);
+
+            //then
+            assertThat(Thread.interrupted()).isTrue();
+            assertThat(count).isZero();
+            assertThat(engine.getBackPressureCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void replaysUntimedMessagesAfterPrecedingMessage() throws Exception {
+        //given
+        final UnsafeBuffer other = new UnsafeBuffer(ByteBuffer.allocate(16));
+        final MappedQueue mixed = OneToManyQueue.createOrReplace(recordedFileName + ".mixed");
+        try {
+            final Appender appender = mixed.appender();
+            appender.appendMessage().putBytes(other, 0, other.capacity()).finishAppendMessage();
+            appender.appendMessage().putBytes(other, 0, other.capacity()).finishAppendMessage();
+            appender.close();
+            final int[] count = {0};
+            try (final Enumerator enumerator = mixed.enumerator()) {
+                final ReplayEngine engine = new ReplayEngine(enumerator, (buffer, offset, length) -> count[0]++ >= 0, 1);
+
+                //when
+                engine.replay(Long.MAX_VALUE);
+
+                //then
+                assertThat(count[0]).isEqualTo(2);
+                assertThat(engine.getUntimedCount()).isEqualTo(2);
+            }
+        } finally {
+            mixed.close();
+            new File(recordedFileName + ".mixed").delete();
+        }
+    }
+}
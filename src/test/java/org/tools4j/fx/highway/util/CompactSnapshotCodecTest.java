@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 fx-highway (tools4j), Marco Terzer
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.fx.highway.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.octtech.bw.ByteWatcherSingleThread;
+import org.tools4j.fx.highway.direct.*;
+import org.tools4j.fx.highway.message.MarketDataSnapshot;
+import org.tools4j.fx.highway.message.MarketDataSnapshotBuilder;
+import org.tools4j.fx.highway.message.MutableMarketDataSnapshot;
+import org.tools4j.fx.highway.message.RateLevel;
+import org.tools4j.fx.highway.sbe.CurrencyPair;
+import org.tools4j.fx.highway.sbe.Venue;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class CompactSnapshotCodecTest {
+
+    private static final int MESSAGES = 2000;
+    private static final int RUNS = 5;
+    //tolerates the measuring overhead of the byte watcher, but not a single allocation per message
+    private static final long MAX_WATCHER_NOISE = 1024;
+
+    private final String fileName = FileUtil.tmpDirFile("compact").getAbsolutePath();
+    private MappedQueue queue;
+
+    @Before
+    public void setup() throws Exception {
+        //small regions so that snapshots span regions
+        queue = OneToManyQueue.createOrReplace(fileName, MappedRegion.REGION_SIZE_GRANULARITY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.close();
+        new File(fileName).delete();
+    }
+
+    @Test
+    public void decodesEncodedSnapshots() throws Exception {
+        final MutableMarketDataSnapshot snapshot = new MutableMarketDataSnapshot();
+        final MarketDataSnapshot[] expected = new MarketDataSnapshot[MESSAGES];
+        try (final Appender appender = queue.appender()) {
+            for (int i = 0; i < MESSAGES; i++) {
+                expected[i] = SerializerHelper.givenMarketDataSnapshot(new MutableMarketDataSnapshot().builder(), i % 11, (i + 3) % 11);
+                CompactSnapshotCodec.encode(expected[i], appender.appendMessage()).finishAppendMessage();
+            }
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                assertThat(enumerator.hasNextMessage()).isTrue();
+                final MessageReader reader = enumerator.readNextMessage();
+                final MarketDataSnapshot actual = CompactSnapshotCodec.decode(reader, snapshot.builder());
+                reader.finishReadMessage();
+                assertSnapshot(actual, expected[i]);
+            }
+            assertThat(enumerator.hasNextMessage()).isFalse();
+        }
+    }
+
+    @Test
+    public void decodesEventBeforeTriggerAndNegativeRates() throws Exception {
+        final MutableMarketDataSnapshot expected = new MutableMarketDataSnapshot();
+        final MarketDataSnapshotBuilder builder = expected.builder();
+        builder.setTriggerTimestamp(1000);
+        builder.setEventTimestamp(990);
+        builder.setCurrencyPair(CurrencyPair.USDJPY);
+        builder.setVenue(Venue.EBS);
+        builder.addBid(123, 0.5);
+        builder.addAsk(456, -1.25);
+        builder.addAsk(1L << 62, 108.123456);
+        try (final Appender appender = queue.appender()) {
+            CompactSnapshotCodec.encode(expected, appender.appendMessage()).finishAppendMessage();
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            final MarketDataSnapshot actual = CompactSnapshotCodec.decode(enumerator.readNextMessage(), new MutableMarketDataSnapshot().builder());
+            assertSnapshot(actual, expected);
+        }
+    }
+
+    @Test
+    public void compactSnapshotIsSmallerThanSbe() throws Exception {
+        final MarketDataSnapshot snapshot = SerializerHelper.givenMarketDataSnapshot(new MutableMarketDataSnapshot().builder());
+        try (final Appender appender = queue.appender()) {
+            CompactSnapshotCodec.encode(snapshot, appender.appendMessage()).finishAppendMessage();
+        }
+        try (final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            enumerator.readNextMessage().finishReadMessage();
+            final long compactLength = enumerator.position() - OneToManyQueue.HEADER_LENGTH - 8;
+            final int sbeLength = SerializerHelper.encodedLength(snapshot);
+            System.out.println("10x10 snapshot: compact=" + compactLength + " bytes, sbe=" + sbeLength + " bytes");
+            assertThat(compactLength).isLessThan(sbeLength / 2);
+        }
+    }
+
+    @Test
+    public void rejectsFractionalAndNegativeQuantities() throws Exception {
+        for (final double quantity : new double[] {0.5, 1e6 + 0.25, -1, Double.NaN, 0x1p63}) {
+            final MutableMarketDataSnapshot snapshot = new MutableMarketDataSnapshot();
+            final MarketDataSnapshotBuilder builder = snapshot.builder();
+            builder.setCurrencyPair(CurrencyPair.EURUSD);
+            builder.setVenue(Venue.EBS);
+            builder.addBid(1000000, 1.1);
+            builder.addAsk(quantity, 1.2);
+            try (final Appender appender = queue.appender()) {
+                final MessageWriter writer = appender.appendMessage();
+                try {
+                    CompactSnapshotCodec.encode(snapshot, writer);
+                    throw new AssertionError("Quantity " + quantity + " should be rejected");
+                } catch (final IllegalArgumentException e) {
+                    //expected
+                }
+            }
+            queue.close();
+            queue = OneToManyQueue.createOrReplace(fileName, MappedRegion.REGION_SIZE_GRANULARITY);
+        }
+    }
+
+    @Test
+    public void encodesAndDecodesWithoutAllocation() throws Exception {
+        //a single region as mapping regions allocates
+        queue.close();
+        queue = OneToManyQueue.createOrReplace(fileName);
+        final MarketDataSnapshot[] snapshots = new MarketDataSnapshot[11];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = SerializerHelper.givenMarketDataSnapshot(new MutableMarketDataSnapshot().builder(), i, (i + 3) % 11);
+        }
+        final MutableMarketDataSnapshot snapshot = new MutableMarketDataSnapshot();
+        final ByteWatcherSingleThread byteWatcher = new ByteWatcherSingleThread(Thread.currentThread());
+        try (final Appender appender = queue.appender();
+             final Enumerator enumerator = queue.enumerator(StartPosition.HEAD)) {
+            //the last run is measured, the other runs warm up
+            for (int run = 0; run < RUNS; run++) {
+                byteWatcher.reset();
+                for (int i = 0; i < MESSAGES; i++) {
+                    CompactSnapshotCodec.encode(snapshots[i % snapshots.length], appender.appendMessage()).finishAppendMessage();
+                }
+                final long encodeAllocated = byteWatcher.calculateAllocations();
+                byteWatcher.reset();
+                long triggerTimestamps = 0;
+                for (int i = 0; i < MESSAGES; i++) {
+                    final MessageReader reader = enumerator.readNextMessage();
+                    triggerTimestamps += CompactSnapshotCodec.decode(reader, snapshot.builder()).getTriggerTimestamp();
+                    reader.finishReadMessage();
+                }
+                final long decodeAllocated = byteWatcher.calculateAllocations();
+                assertThat(triggerTimestamps).isNotZero();
+                if (run == RUNS - 1) {
+                    assertThat(encodeAllocated).isLessThan(MAX_WATCHER_NOISE);
+                    assertThat(decodeAllocated).isLessThan(MAX_WATCHER_NOISE);
+                }
+            }
+        }
+    }
+
+    private static void assertSnapshot(final MarketDataSnapshot actual, final MarketDataSnapshot expected) {
+        assertThat(actual.getTriggerTimestamp()).isEqualTo(expected.getTriggerTimestamp());
+        assertThat(actual.getEventTimestamp()).isEqualTo(expected.getEventTimestamp());
+        assertThat(actual.getCurrencyPair()).isEqualTo(expected.getCurrencyPair());
+        assertThat(actual.getVenue()).isEqualTo(expected.getVenue());
+        assertLevels(actual.getBids(), expected.getBids());
+        assertLevels(actual.getAsks(), expected.getAsks());
+    }
+
+    private static void assertLevels(final List<? extends RateLevel> actual, final List<? extends RateLevel> expected) {
+        assertThat(actual.size()).isEqualTo(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getQuantity()).isEqualTo(expected.get(i).getQuantity());
+            assertThat(actual.get(i).getRate()).isCloseTo(expected.get(i).getRate(), within(0.5e-6));
+        }
+    }
+}